@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Imports the timestamped values of a file in bulk.  The reading thread hands
+ * chunks of lines to parser threads which run the dispatcher, matched values
+ * are collected per point and written in time order in batches through the
+ * PointValueDao.  The newest value of each point is saved through its runtime
+ * at the end so the point's cache and current value are up to date.
+ *
+ * With one parser thread the lines are parsed on the reading thread.  The parser threads
+ * belong to the data source and are shared by its imports.
+ *
+ * Values older than a point's current value are written straight to the PointValueDao, so
+ * they don't go through the runtime's backdate handling and backdate listeners are not
+ * notified.  Outside of tail mode every change to the file imports the whole file again;
+ * values with the same time as a saved value are saved again.
+ *
+ * @author Terry Packer
+ */
+public class AsciiFileBulkImporter {
+
+	private static final Log LOG = LogFactory.getLog(AsciiFileBulkImporter.class);
+
+	public static final String PARSER_THREADS_PROPERTY = "asciiFile.bulkImport.parserThreads";
+	public static final String BATCH_SIZE_PROPERTY = "asciiFile.bulkImport.batchSize";
+	private static final int CHUNK_SIZE = 1000;
+
+	private static final Comparator<PointValueTime> TIME_ORDER = new Comparator<PointValueTime>() {
+		@Override
+		public int compare(PointValueTime o1, PointValueTime o2) {
+			return Long.compare(o1.getTime(), o2.getTime());
+		}
+	};
+
+	private final AsciiFileLineDispatcher dispatcher;
+	private final int batchSize;
+	private final ThreadPoolExecutor parsers;
+	private final int maxPending;
+	private final LinkedList<Future<?>> pending = new LinkedList<Future<?>>();
+	private List<String> chunk = new ArrayList<String>(CHUNK_SIZE);
+
+	private final PointValueDao pointValueDao;
+	private final ConcurrentHashMap<Integer, PointBatch> batches = new ConcurrentHashMap<Integer, PointBatch>();
+
+	private long lines;
+	private final AtomicLong values = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private volatile TranslatableMessage firstRejection;
+
+	/**
+	 * Create the parser threads for a data source's imports
+	 * @param name - for the parser threads
+	 * @return the pool, null if lines should be parsed on the reading thread
+	 */
+	public static ThreadPoolExecutor createParsers(final String name) {
+		int threads = Common.envProps.getInt(PARSER_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+		if (threads <= 1)
+			return null;
+		ThreadPoolExecutor parsers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + " parser " + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		//Idle between imports
+		parsers.allowCoreThreadTimeOut(true);
+		return parsers;
+	}
+
+	/**
+	 * @param dispatcher - for the timestamped points, its callbacks must call addValue and reject
+	 * @param parsers - from createParsers, null to parse on the reading thread
+	 */
+	public AsciiFileBulkImporter(AsciiFileLineDispatcher dispatcher, ThreadPoolExecutor parsers) {
+		this.dispatcher = dispatcher;
+		this.batchSize = Math.max(1, Common.envProps.getInt(BATCH_SIZE_PROPERTY, 5000));
+		this.parsers = parsers;
+		this.maxPending = parsers == null ? 0 : parsers.getMaximumPoolSize() * 2;
+		this.pointValueDao = Common.databaseProxy.newPointValueDao();
+	}
+
+	/**
+	 * Add a line read from the file, only called by the reading thread
+	 * @param line
+	 */
+	public void addLine(String line) {
+		lines++;
+		chunk.add(line);
+		if (chunk.size() >= CHUNK_SIZE) {
+			submit(chunk);
+			chunk = new ArrayList<String>(CHUNK_SIZE);
+		}
+	}
+
+	private void submit(final List<String> block) {
+		if (parsers == null) {
+			parse(block);
+			return;
+		}
+		try {
+			pending.add(parsers.submit(new Runnable() {
+				@Override
+				public void run() {
+					parse(block);
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			//The data source is stopping
+			parse(block);
+			return;
+		}
+		//Don't let the reader get too far ahead of the parsers
+		while (pending.size() > maxPending)
+			waitFor(pending.removeFirst());
+	}
+
+	private void parse(List<String> block) {
+		for (String line : block)
+			dispatcher.dispatch(line);
+	}
+
+	private void waitFor(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("Error parsing lines", e.getCause());
+		}
+	}
+
+	/**
+	 * A value was matched for a point, may be called by any parser thread
+	 * @param dp
+	 * @param pvt
+	 */
+	public void addValue(DataPointRT dp, PointValueTime pvt) {
+		values.incrementAndGet();
+		PointBatch batch = batches.get(dp.getId());
+		if (batch == null) {
+			batch = new PointBatch(dp);
+			PointBatch existing = batches.putIfAbsent(dp.getId(), batch);
+			if (existing != null)
+				batch = existing;
+		}
+		batch.add(pvt);
+	}
+
+	/**
+	 * A matched row could not be imported
+	 * @param message
+	 */
+	public void reject(TranslatableMessage message) {
+		if (rejected.incrementAndGet() == 1)
+			firstRejection = message;
+	}
+
+	/**
+	 * Parse any remaining lines and write all the values
+	 */
+	public void finish() {
+		if (!chunk.isEmpty()) {
+			submit(chunk);
+			chunk = new ArrayList<String>(CHUNK_SIZE);
+		}
+		while (!pending.isEmpty())
+			waitFor(pending.removeFirst());
+
+		for (PointBatch batch : batches.values())
+			batch.finish();
+		batches.clear();
+	}
+
+	public long getLines() {
+		return lines;
+	}
+
+	public long getValues() {
+		return values.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public TranslatableMessage getFirstRejection() {
+		return firstRejection;
+	}
+
+	/**
+	 * Values for one point, the newest is held back to be saved through the runtime
+	 */
+	class PointBatch {
+		private final DataPointRT dp;
+		private List<PointValueTime> values;
+		private PointValueTime latest;
+
+		PointBatch(DataPointRT dp) {
+			this.dp = dp;
+			this.values = new ArrayList<PointValueTime>(batchSize);
+		}
+
+		synchronized void add(PointValueTime pvt) {
+			if (latest == null || pvt.getTime() >= latest.getTime()) {
+				if (latest != null)
+					values.add(latest);
+				latest = pvt;
+			} else
+				values.add(pvt);
+			if (values.size() >= batchSize)
+				write();
+		}
+
+		private void write() {
+			Collections.sort(values, TIME_ORDER);
+			for (PointValueTime pvt : values)
+				pointValueDao.savePointValueAsync(dp.getId(), pvt, null);
+			values = new ArrayList<PointValueTime>(batchSize);
+		}
+
+		synchronized void finish() {
+			write();
+			if (latest != null)
+				dp.savePointValueDirectToCache(latest, null, true, true);
+		}
+	}
+}
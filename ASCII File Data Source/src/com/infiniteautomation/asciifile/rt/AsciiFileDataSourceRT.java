@@ -1,15 +1,27 @@
 package com.infiniteautomation.asciifile.rt;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +38,7 @@ import com.infiniteautomation.mango.regex.MatchCallback;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
@@ -47,10 +60,33 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 	public static final int DATA_SOURCE_EXCEPTION_EVENT = 3;
 	public static final int POINT_READ_PATTERN_MISMATCH_EVENT = 4;
 	public static final int POLL_ABORTED_EVENT = 5;
+	public static final int BULK_IMPORT_EVENT = 6;
+
+	private static final int TAIL_BUFFER_SIZE = 64 * 1024;
+	private static final int BULK_IMPORT_PROGRESS_LINES = 1000000;
 
 	private File file; // File
 	private FileAlterationObserver fobs;
+	private DirectoryWatcher watcher;
 	private boolean restrictedPath;
+	private boolean initialRead;
+
+	//Tail mode state, guarded by fileLock
+	private final Object fileLock = new Object();
+	private long tailPosition; //Offset just past the last complete line read
+	private String tailIdentity; //Inode (or creation time) of the file being tailed
+	private boolean tailFromEnd; //Nothing saved for the file, skip what it already holds
+	private AsciiFileTailState savedTailState; //Last state written to the database
+	private long tailStalledEnd = -1; //End of the file when a final line without a terminator was last seen
+	private volatile boolean tailPending; //A final line without a terminator is waiting to be read
+	private ByteBuffer tailBuffer;
+	private ByteArrayOutputStream tailLine;
+	//Line dispatch state, guarded by fileLock
+	private List<DataPointRT> dispatcherPoints; //Points the dispatchers were built for
+	private AsciiFileLineDispatcher dispatcher; //Points updated as each line is read
+	private AsciiFileLineDispatcher bulkDispatcher; //Timestamped points when bulk importing
+	private AsciiFileBulkImporter importer; //Only set during a bulk import
+	private ThreadPoolExecutor bulkParsers; //Parser threads for bulk imports, null to parse on the reading thread
 
 	public AsciiFileDataSourceRT(AsciiFileDataSourceVO vo) {
 		super(vo);
@@ -76,6 +112,10 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 			raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true,
 					new TranslatableMessage("file.event.readFailed", vo.getFilePath()));
 			return false;
+		} else if (vo.isWatchDirectory()) {
+			this.watcher = new DirectoryWatcher(this.file.getAbsoluteFile().toPath());
+			this.watcher.start();
+			return true;
 		} else {
 			this.fobs = new FileAlterationObserver(this.file);
 			this.fobs.initialize();
@@ -104,6 +144,10 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 		if (connected) {
 			returnToNormal(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis());
 		}
+		if (vo.isTailFile())
+			loadTailState();
+		if (vo.isBulkImport())
+			bulkParsers = AsciiFileBulkImporter.createParsers("ASCII File " + vo.getXid());
 		super.initialize();
 
 	}
@@ -111,9 +155,18 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 	@Override
 	public void terminate() {
 		super.terminate();
+		if (this.bulkParsers != null) {
+			this.bulkParsers.shutdown();
+			this.bulkParsers = null;
+		}
+		if (this.watcher != null) {
+			this.watcher.shutdown();
+			this.watcher = null;
+		}
 		if (this.file != null) {
 			try {
-				this.fobs.destroy();
+				if (this.fobs != null)
+					this.fobs.destroy();
 			} catch (Exception e) {
 				LOG.debug("Error destroying file observer");
 				raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true,
@@ -174,10 +227,15 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 	public void forcePointRead(DataPointRT dataPoint) {
 		List<DataPointRT> dataPoints = new ArrayList<>(1);
 		dataPoints.add(dataPoint);
-		fileEvent(dataPoints);
+		//Always read the whole file as the tail position belongs to all the points
+		fileEvent(dataPoints, false);
 	}
 
 	private void fileEvent(List<DataPointRT> dataPoints) {
+		fileEvent(dataPoints, vo.isTailFile());
+	}
+
+	private void fileEvent(List<DataPointRT> dataPoints, boolean tail) {
 		// Should never happen
 		if (this.file == null) {
 			raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
@@ -193,69 +251,21 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
 		// The file is modified or we've just started, so read it.
 		try {
-			BufferedReader reader = new BufferedReader(new FileReader(this.file));
-
-			String msg;
 			if (!dataPoints.isEmpty()) {
-
-				// TODO optimize to be better than numLines*numPoints
-				while ((msg = reader.readLine()) != null) {
-					// Give all points the chance to find their data
-					for (final DataPointRT dp : dataPoints) {
-						AsciiFilePointLocatorRT pl = dp.getPointLocator();
-						final AsciiFilePointLocatorVO plVo = pl.getVo();
-
-						MatchCallback callback = new MatchCallback() {
-
-							@Override
-							public void onMatch(String pointIdentifier, PointValueTime value) {
-								if (!plVo.getHasTimestamp())
-									dp.updatePointValue(value);
-								else
-									dp.savePointValueDirectToCache(value, null, true, true);
-							}
-
-							@Override
-							public void pointPatternMismatch(String message, String pointValueRegex) {
-								//N/A
-							}
-
-							@Override
-							public void messagePatternMismatch(String message, String messageRegex) {
-								//N/A
-							}
-
-							@Override
-							public void pointNotIdentified(String message, String messageRegex,
-									int pointIdentifierIndex) {
-								raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
-										new TranslatableMessage("file.event.insufficientGroups",
-												dp.getVO().getExtendedName()));
-							}
-
-							@Override
-							public void matchGeneralFailure(Exception e) {
-								if (e instanceof ParseException)
-									raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-											new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
-								else if (e instanceof NumberFormatException) {
-									raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-											new TranslatableMessage("file.event.notNumber", e.getMessage()));
-								} else
-									raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-											new TranslatableMessage("file.event.readFailed", e.getMessage()));
-							}
-
-						};
-
-						matchPointValueTime(msg, pl.getValuePattern(), plVo.getPointIdentifier(),
-								plVo.getPointIdentifierIndex(), plVo.getDataTypeId(),
-								plVo.getValueIndex(), plVo.getHasTimestamp(), plVo.getTimestampIndex(),
-								plVo.getTimestampFormat(), callback);
-
+				synchronized (fileLock) {
+					prepareDispatchers(dataPoints);
+					if (bulkDispatcher != null)
+						importer = new AsciiFileBulkImporter(bulkDispatcher, bulkParsers);
+					try {
+						if (tail)
+							tailFile();
+						else
+							readFile();
+					} finally {
+						if (importer != null)
+							finishBulkImport();
 					}
 				}
-				reader.close();
 				returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
 			}
 		} catch (FileNotFoundException e) {
@@ -271,6 +281,331 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
 	}
 
+	/**
+	 * Read and parse the whole file
+	 * @throws IOException
+	 */
+	private void readFile() throws IOException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(this.file))) {
+			String msg;
+			while ((msg = reader.readLine()) != null)
+				processLine(msg);
+		}
+	}
+
+	/**
+	 * Read and parse only the complete lines appended since the last read.  
+	 * A file that is shorter than our position or has a different identity 
+	 * was truncated or rotated so it is read from the start.
+	 * 
+	 * A final line without a terminator is read once the file has not grown 
+	 * between two reads.  The position is saved with the data source after 
+	 * every read.
+	 * 
+	 * @throws IOException
+	 */
+	private void tailFile() throws IOException {
+		Path path = this.file.toPath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		String identity = (attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime()).toString();
+		if (tailFromEnd) {
+			tailFromEnd = false;
+			tailIdentity = identity;
+			tailPosition = findLastLineEnd(path, attributes.size());
+		} else if (!identity.equals(tailIdentity) || attributes.size() < tailPosition) {
+			if (tailIdentity != null && LOG.isDebugEnabled())
+				LOG.debug("File " + path + " was truncated or rotated, reading from the start");
+			tailIdentity = identity;
+			tailPosition = 0;
+			tailStalledEnd = -1;
+		}
+		if (attributes.size() == tailPosition) {
+			tailPending = false;
+			saveTailState();
+			return;
+		}
+
+		if (tailBuffer == null) {
+			tailBuffer = ByteBuffer.allocate(TAIL_BUFFER_SIZE);
+			tailLine = new ByteArrayOutputStream();
+		}
+		Charset charset = Charset.defaultCharset(); //Same as the FileReader
+		long chunkStart = tailPosition;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			channel.position(tailPosition);
+			tailLine.reset();
+			tailBuffer.clear();
+			while (channel.read(tailBuffer) > 0) {
+				byte[] data = tailBuffer.array();
+				int limit = tailBuffer.position();
+				int lineStart = 0;
+				for (int i = 0; i < limit; i++) {
+					if (data[i] != '\n')
+						continue;
+					tailLine.write(data, lineStart, i - lineStart);
+					processLine(toLine(tailLine, charset));
+					tailLine.reset();
+					lineStart = i + 1;
+					tailPosition = chunkStart + lineStart;
+				}
+				//Keep the partial line, it is read again next time
+				tailLine.write(data, lineStart, limit - lineStart);
+				chunkStart += limit;
+				tailBuffer.clear();
+			}
+		}
+
+		if (tailLine.size() == 0) {
+			tailStalledEnd = -1;
+			tailPending = false;
+		} else if (chunkStart == tailStalledEnd) {
+			//The file stopped growing, so the partial line is the final line
+			processLine(toLine(tailLine, charset));
+			tailLine.reset();
+			tailPosition = chunkStart;
+			tailStalledEnd = -1;
+			tailPending = false;
+		} else {
+			tailStalledEnd = chunkStart;
+			tailPending = true;
+		}
+		saveTailState();
+	}
+
+	private String toLine(ByteArrayOutputStream bytes, Charset charset) {
+		String line = new String(bytes.toByteArray(), charset);
+		if (line.endsWith("\r"))
+			line = line.substring(0, line.length() - 1);
+		return line;
+	}
+
+	/**
+	 * Find where to start tailing a file we have no saved position for
+	 * @param path
+	 * @param size
+	 * @return offset just past the last line terminator in the end of the file, or its size
+	 * @throws IOException
+	 */
+	private long findLastLineEnd(Path path, long size) throws IOException {
+		int length = (int) Math.min(size, TAIL_BUFFER_SIZE);
+		if (length == 0)
+			return size;
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		long start = size - length;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) <= 0)
+					break;
+			}
+		}
+		byte[] data = buffer.array();
+		for (int i = buffer.position() - 1; i >= 0; i--) {
+			if (data[i] == '\n')
+				return start + i + 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Carry on from the saved position, if there is none for this file
+	 * start at its end
+	 */
+	private void loadTailState() {
+		Object data = null;
+		try {
+			data = DataSourceDao.instance.getPersistentData(vo.getId());
+		} catch (Exception e) {
+			LOG.warn("Unable to load the tail position of data source " + vo.getXid(), e);
+		}
+		synchronized (fileLock) {
+			if (data instanceof AsciiFileTailState
+					&& ((AsciiFileTailState) data).getPath().equals(vo.getFilePath())) {
+				savedTailState = (AsciiFileTailState) data;
+				tailIdentity = savedTailState.getIdentity();
+				tailPosition = savedTailState.getPosition();
+			} else
+				tailFromEnd = true;
+		}
+	}
+
+	/**
+	 * Save the position with the data source if it moved
+	 */
+	private void saveTailState() {
+		if (savedTailState != null && savedTailState.getPosition() == tailPosition
+				&& savedTailState.getIdentity().equals(tailIdentity))
+			return;
+		AsciiFileTailState state = new AsciiFileTailState(vo.getFilePath(), tailIdentity, tailPosition);
+		try {
+			DataSourceDao.instance.savePersistentData(vo.getId(), state);
+			savedTailState = state;
+		} catch (Exception e) {
+			LOG.warn("Unable to save the tail position of data source " + vo.getXid(), e);
+		}
+	}
+
+	/**
+	 * Give the points the chance to find their data in a line
+	 * @param line
+	 */
+	private void processLine(String line) {
+		dispatcher.dispatch(line);
+		if (importer != null) {
+			importer.addLine(line);
+			if (importer.getLines() % BULK_IMPORT_PROGRESS_LINES == 0)
+				raiseEvent(BULK_IMPORT_EVENT, Common.timer.currentTimeMillis(), false,
+						new TranslatableMessage("file.event.bulkImportProgress", importer.getLines(),
+								vo.getFilePath()));
+		}
+	}
+
+	/**
+	 * Build the dispatchers for a list of points, they are 
+	 * kept until the points change.
+	 * 
+	 * @param dataPoints
+	 */
+	private void prepareDispatchers(List<DataPointRT> dataPoints) {
+		if (dispatcher != null && isSamePoints(dataPoints))
+			return;
+		dispatcher = new AsciiFileLineDispatcher();
+		bulkDispatcher = null;
+		for (DataPointRT dp : dataPoints) {
+			AsciiFilePointLocatorVO plVo = ((AsciiFilePointLocatorRT) dp.getPointLocator()).getVo();
+			if (vo.isBulkImport() && plVo.getHasTimestamp()) {
+				if (bulkDispatcher == null)
+					bulkDispatcher = new AsciiFileLineDispatcher();
+				bulkDispatcher.add(dp, createBulkImportCallback(dp));
+			} else
+				dispatcher.add(dp, createCallback(dp));
+		}
+		dispatcherPoints = new ArrayList<>(dataPoints);
+	}
+
+	/**
+	 * Were the dispatchers built for these points, an edited point has a new runtime
+	 * @param dataPoints
+	 * @return
+	 */
+	private boolean isSamePoints(List<DataPointRT> dataPoints) {
+		if (dispatcherPoints.size() != dataPoints.size())
+			return false;
+		for (int i = 0; i < dataPoints.size(); i++)
+			if (dispatcherPoints.get(i) != dataPoints.get(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Write the imported values and report the results
+	 */
+	private void finishBulkImport() {
+		try {
+			importer.finish();
+			if (importer.getValues() > 0)
+				raiseEvent(BULK_IMPORT_EVENT, Common.timer.currentTimeMillis(), false,
+						new TranslatableMessage("file.event.bulkImportComplete", importer.getValues(),
+								importer.getLines(), vo.getFilePath()));
+			if (importer.getRejected() > 0)
+				raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
+						new TranslatableMessage("file.event.bulkImportRejected", importer.getRejected(),
+								importer.getFirstRejection()));
+		} finally {
+			importer = null;
+		}
+	}
+
+	/**
+	 * Create the callback to collect a point's values during a bulk import
+	 * @param dp
+	 * @return
+	 */
+	private MatchCallback createBulkImportCallback(final DataPointRT dp) {
+		return new MatchCallback() {
+
+			@Override
+			public void onMatch(String pointIdentifier, PointValueTime value) {
+				importer.addValue(dp, value);
+			}
+
+			@Override
+			public void pointPatternMismatch(String message, String pointValueRegex) {
+				//N/A
+			}
+
+			@Override
+			public void messagePatternMismatch(String message, String messageRegex) {
+				//N/A
+			}
+
+			@Override
+			public void pointNotIdentified(String message, String messageRegex,
+					int pointIdentifierIndex) {
+				importer.reject(new TranslatableMessage("file.event.insufficientGroups",
+						dp.getVO().getExtendedName()));
+			}
+
+			@Override
+			public void matchGeneralFailure(Exception e) {
+				importer.reject(getFailureMessage(e));
+			}
+
+		};
+	}
+
+	/**
+	 * Create the callback to update a point when it matches a line
+	 * @param dp
+	 * @return
+	 */
+	private MatchCallback createCallback(final DataPointRT dp) {
+		final AsciiFilePointLocatorVO plVo = ((AsciiFilePointLocatorRT) dp.getPointLocator()).getVo();
+		return new MatchCallback() {
+
+			@Override
+			public void onMatch(String pointIdentifier, PointValueTime value) {
+				if (!plVo.getHasTimestamp())
+					dp.updatePointValue(value);
+				else
+					dp.savePointValueDirectToCache(value, null, true, true);
+			}
+
+			@Override
+			public void pointPatternMismatch(String message, String pointValueRegex) {
+				//N/A
+			}
+
+			@Override
+			public void messagePatternMismatch(String message, String messageRegex) {
+				//N/A
+			}
+
+			@Override
+			public void pointNotIdentified(String message, String messageRegex,
+					int pointIdentifierIndex) {
+				raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
+						new TranslatableMessage("file.event.insufficientGroups",
+								dp.getVO().getExtendedName()));
+			}
+
+			@Override
+			public void matchGeneralFailure(Exception e) {
+				raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+						getFailureMessage(e));
+			}
+
+		};
+	}
+
+	private TranslatableMessage getFailureMessage(Exception e) {
+		if (e instanceof ParseException)
+			return new TranslatableMessage("file.event.dateParseFailed", e.getMessage());
+		else if (e instanceof NumberFormatException)
+			return new TranslatableMessage("file.event.notNumber", e.getMessage());
+		else
+			return new TranslatableMessage("file.event.readFailed", e.getMessage());
+	}
+
 	@Override
 	protected void doPoll(long time) {
 		if (restrictedPath) {
@@ -280,9 +615,83 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 		}
 		if (fobs != null)
 			fobs.checkAndNotify();
+		else if (watcher != null && !initialRead && !dataPoints.isEmpty()) {
+			//The watcher only tells us about changes, read what is already there once
+			initialRead = true;
+			fileEvent(dataPoints);
+		} else if (watcher != null && tailPending)
+			//Nothing was written since the last read, read the unterminated final line
+			fileEvent(dataPoints);
 
 	}
 
+	/**
+	 * Get a copy of the points for use outside of the polling thread
+	 * @return
+	 */
+	private List<DataPointRT> getDataPointsSnapshot() {
+		synchronized (pointListChangeLock) {
+			return new ArrayList<>(dataPoints);
+		}
+	}
+
+	/**
+	 * Waits on a WatchService for the directory containing the file
+	 * and reads the file whenever it is created or modified.
+	 * 
+	 * @author Terry Packer
+	 */
+	class DirectoryWatcher extends Thread {
+
+		private final Path fileName;
+		private final WatchService watchService;
+		private volatile boolean running = true;
+
+		DirectoryWatcher(Path path) throws IOException {
+			super("ASCII File Watcher " + vo.getXid());
+			setDaemon(true);
+			this.fileName = path.getFileName();
+			this.watchService = path.getFileSystem().newWatchService();
+			path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				WatchKey key;
+				try {
+					key = watchService.take();
+				} catch (InterruptedException | ClosedWatchServiceException e) {
+					break;
+				}
+
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					//Events may have been lost so assume our file changed
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context()))
+						changed = true;
+				}
+				if (!key.reset()) {
+					raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+							new TranslatableMessage("file.event.watchFailed", vo.getFilePath()));
+					break;
+				}
+				if (changed && running)
+					fileEvent(getDataPointsSnapshot());
+			}
+		}
+
+		void shutdown() {
+			running = false;
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				LOG.debug("Error closing watch service", e);
+			}
+		}
+	}
+
 	public static void matchPointValueTime(String message, Pattern pattern, String pointIdentifier,
 			int pointIdentifierIndex, int dataTypeId, int valueIndex, boolean hasTimestamp, int timestampIndex,
 			String timestampFormat, MatchCallback callback) {
@@ -292,44 +701,12 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 				LOG.debug("Message matched regex: " + pattern.pattern());
 
 			// Parse out the Identifier
-			//String matchedPointIdentifier = null;
 			try {
-				if (pointIdentifierIndex > messageMatcher.groupCount() || valueIndex > messageMatcher.groupCount()) {
+				if (pointIdentifierIndex > messageMatcher.groupCount()) {
 					callback.pointNotIdentified(message, pattern.pattern(), pointIdentifierIndex);
 				} else if (pointIdentifier.equals(messageMatcher.group(pointIdentifierIndex))) {
-					if (LOG.isDebugEnabled())
-						LOG.debug("Point Identified: " + messageMatcher.group(pointIdentifierIndex));
-
-					String value = messageMatcher.group(valueIndex);
-					PointValueTime newValue;
-					Date dt;
-					if (hasTimestamp && !timestampFormat.equals(".")) {
-						SimpleDateFormat fmt = new SimpleDateFormat(timestampFormat);
-						dt = fmt.parse(messageMatcher.group(timestampIndex));
-					} else if (hasTimestamp) {
-						dt = new Date(Long.parseLong(messageMatcher.group(timestampIndex)));
-					} else {
-						dt = new Date();
-					}
-
-					// Switch on the type
-					switch (dataTypeId) {
-					case DataTypes.ALPHANUMERIC:
-						newValue = new PointValueTime(value, dt.getTime());
-						break;
-					case DataTypes.NUMERIC:
-						newValue = new PointValueTime(Double.parseDouble(value), dt.getTime());
-						break;
-					case DataTypes.MULTISTATE:
-						newValue = new PointValueTime(Integer.parseInt(value), dt.getTime());
-						break;
-					case DataTypes.BINARY:
-						newValue = new PointValueTime(Boolean.parseBoolean(value), dt.getTime());
-						break;
-					default:
-						throw new ShouldNeverHappenException("Uknown Data type for point");
-					}
-					callback.onMatch(messageMatcher.group(pointIdentifierIndex), newValue);
+					matchPointValueTime(message, messageMatcher, pointIdentifier, pointIdentifierIndex, dataTypeId,
+							valueIndex, hasTimestamp, timestampIndex, timestampFormat, callback);
 				}
 			} catch (Exception e) {
 				callback.matchGeneralFailure(e);
@@ -338,6 +715,52 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 		}
 	}
 
+	/**
+	 * Extract the value and time for a point from a message that its pattern 
+	 * has already matched and identified.
+	 */
+	public static void matchPointValueTime(String message, Matcher messageMatcher, String pointIdentifier,
+			int pointIdentifierIndex, int dataTypeId, int valueIndex, boolean hasTimestamp, int timestampIndex,
+			String timestampFormat, MatchCallback callback) {
+		try {
+			if (valueIndex > messageMatcher.groupCount()) {
+				callback.pointNotIdentified(message, messageMatcher.pattern().pattern(), pointIdentifierIndex);
+				return;
+			}
+			if (LOG.isDebugEnabled())
+				LOG.debug("Point Identified: " + pointIdentifier);
+
+			String value = messageMatcher.group(valueIndex);
+			PointValueTime newValue;
+			long time;
+			if (hasTimestamp)
+				time = AsciiFileTimestampParser.parse(messageMatcher.group(timestampIndex), timestampFormat);
+			else
+				time = System.currentTimeMillis();
+
+			// Switch on the type
+			switch (dataTypeId) {
+			case DataTypes.ALPHANUMERIC:
+				newValue = new PointValueTime(value, time);
+				break;
+			case DataTypes.NUMERIC:
+				newValue = new PointValueTime(Double.parseDouble(value), time);
+				break;
+			case DataTypes.MULTISTATE:
+				newValue = new PointValueTime(Integer.parseInt(value), time);
+				break;
+			case DataTypes.BINARY:
+				newValue = new PointValueTime(Boolean.parseBoolean(value), time);
+				break;
+			default:
+				throw new ShouldNeverHappenException("Uknown Data type for point");
+			}
+			callback.onMatch(pointIdentifier, newValue);
+		} catch (Exception e) {
+			callback.matchGeneralFailure(e);
+		}
+	}
+
 	@Override
 	public void SystemSettingsSaved(String key, String oldValue, String newValue) {
 		this.restrictedPath = isPathRestricted(newValue);
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+
+/**
+ * Routes lines of a file to the points they contain values for.  Points
+ * that share a value regex and identifier index are grouped so each distinct
+ * regex is run once per line and the identifier it captures is looked up
+ * in a hash map, instead of every point running its own regex on every line.
+ *
+ * @author Terry Packer
+ */
+public class AsciiFileLineDispatcher {
+
+	private final Map<String, PatternGroup> groups = new LinkedHashMap<String, PatternGroup>();
+
+	/**
+	 * Add a point and the callback to use when it matches
+	 * @param dp
+	 * @param callback
+	 */
+	public void add(DataPointRT dp, MatchCallback callback) {
+		AsciiFilePointLocatorRT pl = dp.getPointLocator();
+		AsciiFilePointLocatorVO plVo = pl.getVo();
+		String key = plVo.getPointIdentifierIndex() + ":" + plVo.getValueRegex();
+		PatternGroup group = groups.get(key);
+		if (group == null) {
+			group = new PatternGroup(pl.getValuePattern(), plVo.getPointIdentifierIndex());
+			groups.put(key, group);
+		}
+		List<PointEntry> entries = group.pointsByIdentifier.get(plVo.getPointIdentifier());
+		if (entries == null) {
+			entries = new ArrayList<PointEntry>(1);
+			group.pointsByIdentifier.put(plVo.getPointIdentifier(), entries);
+		}
+		PointEntry entry = new PointEntry(plVo, callback);
+		entries.add(entry);
+		group.entries.add(entry);
+	}
+
+	/**
+	 * Run each distinct pattern on the line and hand it to the points with the identifier
+	 * @param line
+	 */
+	public void dispatch(String line) {
+		for (PatternGroup group : groups.values()) {
+			Matcher matcher = group.pattern.matcher(line);
+			if (!matcher.find())
+				continue;
+
+			if (group.identifierIndex > matcher.groupCount()) {
+				for (PointEntry entry : group.entries)
+					entry.callback.pointNotIdentified(line, group.pattern.pattern(), group.identifierIndex);
+				continue;
+			}
+
+			String identifier = matcher.group(group.identifierIndex);
+			List<PointEntry> entries = group.pointsByIdentifier.get(identifier);
+			if (entries == null)
+				continue;
+			for (PointEntry entry : entries) {
+				AsciiFilePointLocatorVO plVo = entry.vo;
+				AsciiFileDataSourceRT.matchPointValueTime(line, matcher, identifier, group.identifierIndex,
+						plVo.getDataTypeId(), plVo.getValueIndex(), plVo.getHasTimestamp(),
+						plVo.getTimestampIndex(), plVo.getTimestampFormat(), entry.callback);
+			}
+		}
+	}
+
+	static class PatternGroup {
+		final Pattern pattern;
+		final int identifierIndex;
+		final Map<String, List<PointEntry>> pointsByIdentifier = new HashMap<String, List<PointEntry>>();
+		final List<PointEntry> entries = new ArrayList<PointEntry>();
+
+		PatternGroup(Pattern pattern, int identifierIndex) {
+			this.pattern = pattern;
+			this.identifierIndex = identifierIndex;
+		}
+	}
+
+	static class PointEntry {
+		final AsciiFilePointLocatorVO vo;
+		final MatchCallback callback;
+
+		PointEntry(AsciiFilePointLocatorVO vo, MatchCallback callback) {
+			this.vo = vo;
+			this.callback = callback;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.io.Serializable;
+
+/**
+ * How far a tailed file has been read, saved as the data source's persistent data
+ * so a restart carries on where it left off instead of importing the file again.
+ *
+ * @author Terry Packer
+ */
+public class AsciiFileTailState implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String path;
+	private final String identity;
+	private final long position;
+
+	/**
+	 * @param path - file that was read
+	 * @param identity - inode or creation time of the file
+	 * @param position - offset just past the last line read
+	 */
+	public AsciiFileTailState(String path, String identity, long position) {
+		this.path = path;
+		this.identity = identity;
+		this.position = position;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getIdentity() {
+		return identity;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses point timestamps with a SimpleDateFormat that is created once per format
+ * and thread rather than for every line.  The formats keep their SimpleDateFormat
+ * meaning, including lenient parsing of non padded fields.
+ *
+ * @author Terry Packer
+ */
+public class AsciiFileTimestampParser {
+
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> FORMATS = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+		@Override
+		protected Map<String, SimpleDateFormat> initialValue() {
+			return new HashMap<String, SimpleDateFormat>();
+		}
+	};
+
+	/**
+	 * Parse a timestamp
+	 * @param text
+	 * @param format - SimpleDateFormat pattern or "." for epoch milliseconds
+	 * @return epoch milliseconds
+	 * @throws ParseException
+	 */
+	public static long parse(String text, String format) throws ParseException {
+		if (format.equals("."))
+			return Long.parseLong(text);
+		return getFormat(format).parse(text).getTime();
+	}
+
+	private static SimpleDateFormat getFormat(String format) {
+		Map<String, SimpleDateFormat> formats = FORMATS.get();
+		SimpleDateFormat sdf = formats.get(format);
+		if (sdf == null) {
+			sdf = new SimpleDateFormat(format);
+			formats.put(format, sdf);
+		}
+		return sdf;
+	}
+}
@@ -48,4 +48,34 @@ public class AsciiFileDataSourceModel extends AbstractDataSourceModel<AsciiFileD
 	    this.data.setFilePath(filePath);
 	}
 
+	@JsonGetter("tailFile")
+	public boolean isTailFile() {
+	    return this.data.isTailFile();
+	}
+
+	@JsonSetter("tailFile")
+	public void setTailFile(boolean tailFile) {
+	    this.data.setTailFile(tailFile);
+	}
+
+	@JsonGetter("watchDirectory")
+	public boolean isWatchDirectory() {
+	    return this.data.isWatchDirectory();
+	}
+
+	@JsonSetter("watchDirectory")
+	public void setWatchDirectory(boolean watchDirectory) {
+	    this.data.setWatchDirectory(watchDirectory);
+	}
+
+	@JsonGetter("bulkImport")
+	public boolean isBulkImport() {
+	    return this.data.isBulkImport();
+	}
+
+	@JsonSetter("bulkImport")
+	public void setBulkImport(boolean bulkImport) {
+	    this.data.setBulkImport(bulkImport);
+	}
+
 }
@@ -38,6 +38,7 @@ public class AsciiFileDataSourceVO extends DataSourceVO<AsciiFileDataSourceVO>{
         EVENT_CODES.addElement(AsciiFileDataSourceRT.POINT_READ_EXCEPTION_EVENT, "POINT_READ_EXCEPTION");
         EVENT_CODES.addElement(AsciiFileDataSourceRT.POINT_READ_PATTERN_MISMATCH_EVENT, "POINT_READ_PATTERN_MISMATCH_EVENT");
         EVENT_CODES.addElement(AsciiFileDataSourceRT.POLL_ABORTED_EVENT, "POLL_ABORTED");
+        EVENT_CODES.addElement(AsciiFileDataSourceRT.BULK_IMPORT_EVENT, "BULK_IMPORT");
    }
     
     @JsonProperty
@@ -46,6 +47,12 @@ public class AsciiFileDataSourceVO extends DataSourceVO<AsciiFileDataSourceVO>{
     private int updatePeriodType = Common.TimePeriods.MINUTES;
     @JsonProperty
     private int updatePeriods = 5;
+    @JsonProperty
+    private boolean tailFile; //Only read what was appended since the last read
+    @JsonProperty
+    private boolean watchDirectory; //Use a WatchService instead of polling for changes
+    @JsonProperty
+    private boolean bulkImport; //Write timestamped values in batches
     
 	@Override
 	public TranslatableMessage getConnectionDescription() {
@@ -74,6 +81,8 @@ public class AsciiFileDataSourceVO extends DataSourceVO<AsciiFileDataSourceVO>{
 		eventTypes.add(createEventType(AsciiFileDataSourceRT.POINT_READ_EXCEPTION_EVENT, new TranslatableMessage(
                 "event.ds.pointRead")));	
 		eventTypes.add(createPollAbortedEventType(AsciiFileDataSourceRT.POLL_ABORTED_EVENT));
+		eventTypes.add(createEventType(AsciiFileDataSourceRT.BULK_IMPORT_EVENT, new TranslatableMessage(
+                "file.event.bulkImport")));
 	}
 	/*
 	 * (non-Javadoc)
@@ -108,6 +117,30 @@ public class AsciiFileDataSourceVO extends DataSourceVO<AsciiFileDataSourceVO>{
 		this.updatePeriodType = updatePeriodType;
 	}
 	
+	public boolean isTailFile() {
+		return tailFile;
+	}
+	
+	public void setTailFile(boolean tailFile) {
+		this.tailFile = tailFile;
+	}
+	
+	public boolean isWatchDirectory() {
+		return watchDirectory;
+	}
+	
+	public void setWatchDirectory(boolean watchDirectory) {
+		this.watchDirectory = watchDirectory;
+	}
+	
+	public boolean isBulkImport() {
+		return bulkImport;
+	}
+	
+	public void setBulkImport(boolean bulkImport) {
+		this.bulkImport = bulkImport;
+	}
+	
 	@Override
     public void validate(ProcessResult response) {
         super.validate(response);
@@ -141,13 +174,16 @@ public class AsciiFileDataSourceVO extends DataSourceVO<AsciiFileDataSourceVO>{
     // /
     //
     private static final long serialVersionUID = -1;
-    private static final int version = 1;
+    private static final int version = 3;
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeInt(version);
         SerializationHelper.writeSafeUTF(out, this.filePath);
         out.writeInt(updatePeriodType);
         out.writeInt(updatePeriods);
+        out.writeBoolean(tailFile);
+        out.writeBoolean(watchDirectory);
+        out.writeBoolean(bulkImport);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -158,6 +194,23 @@ public class AsciiFileDataSourceVO extends DataSourceVO<AsciiFileDataSourceVO>{
             this.filePath = SerializationHelper.readSafeUTF(in);
             updatePeriodType = in.readInt();
             updatePeriods = in.readInt();
+            tailFile = false;
+            watchDirectory = false;
+            bulkImport = false;
+        }else if (ver == 2) {
+            this.filePath = SerializationHelper.readSafeUTF(in);
+            updatePeriodType = in.readInt();
+            updatePeriods = in.readInt();
+            tailFile = in.readBoolean();
+            watchDirectory = in.readBoolean();
+            bulkImport = false;
+        }else if (ver == 3) {
+            this.filePath = SerializationHelper.readSafeUTF(in);
+            updatePeriodType = in.readInt();
+            updatePeriods = in.readInt();
+            tailFile = in.readBoolean();
+            watchDirectory = in.readBoolean();
+            bulkImport = in.readBoolean();
         }
     }
 
@@ -38,12 +38,15 @@ public class AsciiFileEditDwr extends DataSourceEditDwr {
 
 	@DwrPermission(user = true)
 	public ProcessResult saveFileDataSource(BasicDataSourceVO basic, int updatePeriods, int updatePeriodType,
-			String filePath) {
+			String filePath, boolean tailFile, boolean watchDirectory, boolean bulkImport) {
 		AsciiFileDataSourceVO ds = (AsciiFileDataSourceVO) Common.getHttpUser().getEditDataSource();
 
 		setBasicProps(ds, basic);
 		ds.setUpdatePeriods(updatePeriods);
 		ds.setUpdatePeriodType(updatePeriodType);
+		ds.setTailFile(tailFile);
+		ds.setWatchDirectory(watchDirectory);
+		ds.setBulkImport(bulkImport);
 		try {
 			ds.setFilePath(new File(filePath).getCanonicalPath());
 		} catch(IOException e) {
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.util.Calendar;
+
+import org.junit.Test;
+
+/**
+ * @author Terry Packer
+ *
+ */
+public class AsciiFileTimestampParserTest {
+
+	@Test
+	public void testNonPaddedFields() throws ParseException{
+		assertEquals(time(2017, 3, 5, 0, 0, 0, 0), AsciiFileTimestampParser.parse("3/5/2017", "MM/dd/yyyy"));
+		assertEquals(time(2017, 11, 25, 0, 0, 0, 0), AsciiFileTimestampParser.parse("11/25/2017", "MM/dd/yyyy"));
+	}
+
+	@Test
+	public void testMilliseconds() throws ParseException{
+		//S is milliseconds, not a fraction of a second
+		assertEquals(time(2017, 3, 5, 10, 0, 0, 5), AsciiFileTimestampParser.parse("2017-03-05 10:00:00.5", "yyyy-MM-dd HH:mm:ss.S"));
+		assertEquals(time(2017, 3, 5, 10, 0, 0, 250), AsciiFileTimestampParser.parse("2017-03-05 10:00:00.250", "yyyy-MM-dd HH:mm:ss.SSS"));
+	}
+
+	@Test
+	public void testLowerCaseAmPm() throws ParseException{
+		assertEquals(time(2017, 3, 5, 22, 30, 0, 0), AsciiFileTimestampParser.parse("2017-03-05 10:30 pm", "yyyy-MM-dd hh:mm a"));
+		assertEquals(time(2017, 3, 5, 10, 30, 0, 0), AsciiFileTimestampParser.parse("2017-03-05 10:30 am", "yyyy-MM-dd hh:mm a"));
+	}
+
+	@Test
+	public void testTwelveHourWithoutMarker() throws ParseException{
+		assertEquals(time(2017, 3, 5, 10, 30, 0, 0), AsciiFileTimestampParser.parse("2017-03-05 10:30", "yyyy-MM-dd hh:mm"));
+		assertEquals(time(2017, 3, 5, 0, 15, 0, 0), AsciiFileTimestampParser.parse("2017-03-05 12:15", "yyyy-MM-dd hh:mm"));
+	}
+
+	@Test
+	public void testEpochMilliseconds() throws ParseException{
+		assertEquals(1488700800123L, AsciiFileTimestampParser.parse("1488700800123", "."));
+	}
+
+	@Test
+	public void testReusedFormat() throws ParseException{
+		//The cached format must not keep state from the previous parse
+		assertEquals(time(2017, 3, 5, 22, 30, 0, 0), AsciiFileTimestampParser.parse("2017-03-05 10:30 PM", "yyyy-MM-dd hh:mm a"));
+		assertEquals(time(2017, 3, 6, 9, 0, 0, 0), AsciiFileTimestampParser.parse("2017-03-06 09:00 AM", "yyyy-MM-dd hh:mm a"));
+	}
+
+	@Test(expected = ParseException.class)
+	public void testInvalid() throws ParseException{
+		AsciiFileTimestampParser.parse("not a time", "yyyy-MM-dd HH:mm");
+	}
+
+	private long time(int year, int month, int day, int hour, int minute, int second, int millis) {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(year, month - 1, day, hour, minute, second);
+		c.set(Calendar.MILLISECOND, millis);
+		return c.getTimeInMillis();
+	}
+}
@@ -10,7 +10,7 @@
 	 */
 	function saveDataSourceImpl(basic){
 
-		AsciiFileEditDwr.saveFileDataSource(basic, $get("updatePeriods"), $get("updatePeriodType"), $get("filePath"), saveDataSourceCB);
+		AsciiFileEditDwr.saveFileDataSource(basic, $get("updatePeriods"), $get("updatePeriodType"), $get("filePath"), $get("tailFile"), $get("watchDirectory"), $get("bulkImport"), saveDataSourceCB);
 	}
 	
 	function hideTSindex() {
@@ -176,6 +176,18 @@
  <td class="formLabelRequired"><fmt:message key="dsEdit.file.path"/></td>
  <td><input id="filePath" type="text" value="${dataSource.filePath}"></input></td>
 </tr>
+<tr>
+  <td class="formLabelRequired"><fmt:message key="dsEdit.file.tailFile"/></td>
+  <td class="formField"><sst:checkbox id="tailFile" selectedValue="${dataSource.tailFile}"/></td>
+</tr>
+<tr>
+  <td class="formLabelRequired"><fmt:message key="dsEdit.file.watchDirectory"/></td>
+  <td class="formField"><sst:checkbox id="watchDirectory" selectedValue="${dataSource.watchDirectory}"/></td>
+</tr>
+<tr>
+  <td class="formLabelRequired"><fmt:message key="dsEdit.file.bulkImport"/></td>
+  <td class="formField"><sst:checkbox id="bulkImport" selectedValue="${dataSource.bulkImport}"/></td>
+</tr>
 <tr>
  <td align="right"><input id="fileTestButton" type="button" value="<fmt:message key="dsEdit.file.check"/>" onclick="checkFile();"></input></td>
  <td class="formError" id="fileTestMessage"></td>
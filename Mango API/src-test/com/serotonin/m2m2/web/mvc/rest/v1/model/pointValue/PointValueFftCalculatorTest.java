@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.web.mvc.rest.BaseRestTest;
+
+/**
+ * BaseRestTest sets up the env properties the maximum window size is read from.
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointValueFftCalculatorTest extends BaseRestTest {
+
+	@Test
+	public void testWindowSize() {
+		int max = PointValueFftCalculator.getMaxWindowSize();
+		assertTrue(PointValueFftCalculator.isValidWindowSize(2));
+		assertTrue(PointValueFftCalculator.isValidWindowSize(PointValueFftCalculator.DEFAULT_WINDOW_SIZE));
+		assertTrue(PointValueFftCalculator.isValidWindowSize(max));
+
+		assertFalse(PointValueFftCalculator.isValidWindowSize(0));
+		assertFalse(PointValueFftCalculator.isValidWindowSize(1));
+		assertFalse(PointValueFftCalculator.isValidWindowSize(-1024));
+		assertFalse(PointValueFftCalculator.isValidWindowSize(1000));
+		assertFalse(PointValueFftCalculator.isValidWindowSize(max * 2));
+		assertFalse(PointValueFftCalculator.isValidWindowSize(Integer.MIN_VALUE));
+	}
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.SetPointSource;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.dataSource.PointLocatorVO;
+
+/**
+ * Imports values into points that are looked up from a map instead of the database,
+ * the values saved are captured from a mock point value dao.
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointValueImporterTest {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	private PointValueDao dao;
+	private User user;
+	private Map<String, DataPointVO> existing;
+	private List<List<String>> lookups;
+
+	@Before
+	public void setup() {
+		dao = mock(PointValueDao.class);
+		user = new User();
+		user.setUsername("admin");
+		user.setPermissions("superadmin");
+		existing = new HashMap<String, DataPointVO>();
+		lookups = new ArrayList<List<String>>();
+		point(1, "DP_1", DataTypes.NUMERIC);
+		point(2, "DP_2", DataTypes.NUMERIC);
+		point(3, "DP_3", DataTypes.ALPHANUMERIC);
+	}
+
+	@Test
+	public void testCsvDefaultColumns() throws IOException {
+		PointValueImporter importer = importer(false, 100);
+		importer.importCsv(reader(
+				"DP_1,1000,1.5,first",
+				"DP_3,2000,text",
+				"DP_1,500,2.5"));
+		importer.finish();
+
+		List<PointValueTime> saved = saved(3);
+		//Values of a point are saved in time order
+		assertValue(saved.get(0), 500, 2.5);
+		assertValue(saved.get(1), 1000, 1.5);
+		assertEquals("first", ((AnnotatedPointValueTime)saved.get(1)).getSourceMessage().getArgs()[0]);
+		assertEquals(2000, saved.get(2).getTime());
+		assertEquals("text", saved.get(2).getValue().getStringValue());
+		assertResult(importer, 3, 0);
+	}
+
+	@Test
+	public void testCsvHeader() throws IOException {
+		PointValueImporter importer = importer(false, 100);
+		importer.importCsv(reader(
+				"xid,annotation,value,timestamp",
+				"DP_1,note,4,1970-01-01T00:00:03.000Z",
+				"DP_1,,5,4000"));
+		importer.finish();
+
+		List<PointValueTime> saved = saved(2);
+		assertValue(saved.get(0), 3000, 4);
+		assertTrue(saved.get(0) instanceof AnnotatedPointValueTime);
+		assertValue(saved.get(1), 4000, 5);
+		assertTrue(!(saved.get(1) instanceof AnnotatedPointValueTime));
+		assertResult(importer, 2, 0);
+	}
+
+	@Test
+	public void testCsvHeaderColumnsInAnyOrder() throws IOException {
+		PointValueImporter importer = importer(false, 100);
+		importer.importCsv(reader(
+				"xid,dataType,timestamp,value",
+				"DP_1,numeric,1000,7",
+				"DP_1,NOT_A_TYPE,2000,8"));
+		importer.finish();
+
+		//The second row names a data type that doesn't exist
+		assertValue(saved(1).get(0), 1000, 7);
+		assertResult(importer, 1, 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void testCsvHeaderWithoutValue() throws IOException {
+		importer(false, 100).importCsv(reader(
+				"xid,timestamp",
+				"DP_1,1000"));
+	}
+
+	@Test
+	public void testBatches() throws IOException {
+		PointValueImporter importer = importer(false, 3);
+		List<String> rows = new ArrayList<String>();
+		for(int i=0; i<8; i++)
+			rows.add((i % 2 == 0 ? "DP_1" : "DP_2") + "," + (10000 - i * 1000) + "," + i);
+		importer.importCsv(reader(rows.toArray(new String[rows.size()])));
+
+		//Two full batches are saved before finishing, the xids are looked up once
+		verify(dao, times(6)).savePointValueAsync(anyInt(), any(PointValueTime.class), (SetPointSource)any());
+		assertEquals(1, lookups.size());
+		assertEquals(2, lookups.get(0).size());
+		importer.finish();
+
+		ArgumentCaptor<Integer> ids = ArgumentCaptor.forClass(Integer.class);
+		List<PointValueTime> saved = saved(8, ids);
+		//Each batch is sorted by time per point, not across batches
+		assertEquals(1, (int)ids.getAllValues().get(0));
+		assertValue(saved.get(0), 8000, 2);
+		assertValue(saved.get(1), 10000, 0);
+		assertEquals(2, (int)ids.getAllValues().get(2));
+		assertValue(saved.get(2), 9000, 1);
+		assertResult(importer, 8, 0);
+	}
+
+	@Test
+	public void testRejected() throws IOException {
+		PointValueImporter importer = importer(false, 100);
+		importer.importCsv(reader(
+				"DP_MISSING,1000,1",
+				",1000,1",
+				"DP_1,1000,abc",
+				"DP_1,1000",
+				"DP_1," + (System.currentTimeMillis() + 2 * DAY) + ",1",
+				"DP_1,yesterday,1",
+				"DP_MISSING,2000,2",
+				"DP_1,1000,1"));
+		importer.finish();
+
+		assertValue(saved(1).get(0), 1000, 1);
+		PointValueImportResultModel result = importer.getResult();
+		assertEquals(1, result.getImported());
+		assertEquals(7, result.getRejected());
+
+		//An unknown xid is reported once however many rows it has
+		List<String> errors = result.getErrors();
+		assertEquals(6, errors.size());
+		assertTrue(errors.contains("Row 2: Missing xid"));
+		assertTrue(errors.get(1).startsWith("Row 6 [DP_1]: Invalid"));
+		assertTrue(errors.contains("[DP_MISSING]: Point does not exist"));
+		assertTrue(errors.contains("Row 3 [DP_1]: Invalid value"));
+		assertTrue(errors.contains("Row 4 [DP_1]: Missing value"));
+		assertTrue(errors.contains("Row 5 [DP_1]: Future dated points not acceptable."));
+	}
+
+	@Test
+	public void testUnitConversion() throws IOException {
+		existing.get("DP_1").setUnit(SI.CELSIUS);
+		existing.get("DP_1").setRenderedUnit(NonSI.FAHRENHEIT);
+		PointValueImporter importer = importer(true, 100);
+		importer.importCsv(reader(
+				"DP_1,1000,212",
+				"DP_1,2000,32",
+				"DP_3,1000,text"));
+		importer.finish();
+
+		List<PointValueTime> saved = saved(2);
+		assertValue(saved.get(0), 1000, 100);
+		assertValue(saved.get(1), 2000, 0);
+		assertResult(importer, 2, 1);
+		assertTrue(importer.getResult().getErrors().get(0).startsWith("[DP_3]: Cannot perform unit conversion"));
+	}
+
+	private PointValueImporter importer(boolean unitConversion, int batchSize) {
+		return new PointValueImporter(user, unitConversion, batchSize, DAY, dao){
+			@Override
+			List<DataPointVO> lookup(List<String> xids) {
+				lookups.add(new ArrayList<String>(xids));
+				List<DataPointVO> vos = new ArrayList<DataPointVO>();
+				for(String xid : xids)
+					if(existing.containsKey(xid))
+						vos.add(existing.get(xid));
+				return vos;
+			}
+
+			@Override
+			DataPointRT getRuntime(DataPointVO vo) {
+				return null;
+			}
+		};
+	}
+
+	private void point(int id, String xid, int dataTypeId) {
+		PointLocatorVO locator = mock(PointLocatorVO.class);
+		when(locator.getDataTypeId()).thenReturn(dataTypeId);
+		when(locator.isSettable()).thenReturn(true);
+		DataPointVO vo = new DataPointVO();
+		vo.setId(id);
+		vo.setXid(xid);
+		vo.setPointLocator(locator);
+		existing.put(xid, vo);
+	}
+
+	private BufferedReader reader(String... lines) {
+		StringBuilder text = new StringBuilder();
+		for(String line : lines)
+			text.append(line).append('\n');
+		return new BufferedReader(new StringReader(text.toString()));
+	}
+
+	private List<PointValueTime> saved(int count) {
+		return saved(count, ArgumentCaptor.forClass(Integer.class));
+	}
+
+	private List<PointValueTime> saved(int count, ArgumentCaptor<Integer> ids) {
+		ArgumentCaptor<PointValueTime> values = ArgumentCaptor.forClass(PointValueTime.class);
+		verify(dao, times(count)).savePointValueAsync(ids.capture(), values.capture(), (SetPointSource)any());
+		return values.getAllValues();
+	}
+
+	private void assertValue(PointValueTime pvt, long time, double value) {
+		assertEquals(time, pvt.getTime());
+		assertEquals(value, pvt.getDoubleValue(), 0.0001);
+	}
+
+	private void assertResult(PointValueImporter importer, long imported, long rejected) {
+		assertEquals(imported, importer.getResult().getImported());
+		assertEquals(rejected, importer.getResult().getRejected());
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueSnapshotIndex.PointSnapshot;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueSnapshotIndex.SnapshotValue;
+
+/**
+ * Tests the ring of a point's latest values
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointValueSnapshotIndexTest {
+
+	private static final List<PointValueTime> NONE = Collections.emptyList();
+
+	@Test
+	public void testWrapAround() {
+		PointSnapshot snapshot = ready(3);
+		for(int i=1; i<=7; i++)
+			snapshot.pointUpdated(value(i, i * 1000));
+
+		//Oldest values are evicted as the ring wraps
+		assertTimes(snapshot.getLatest(3), 7000, 6000, 5000);
+		assertTimes(snapshot.getLatest(2), 7000, 6000);
+		for(SnapshotValue value : snapshot.getLatest(3))
+			assertTrue(value.isCached());
+	}
+
+	@Test
+	public void testBackdates() {
+		PointSnapshot snapshot = ready(3);
+		snapshot.pointUpdated(value(1, 1000));
+		snapshot.pointUpdated(value(2, 2000));
+		snapshot.pointUpdated(value(3, 3000));
+
+		//Inserted in time order, the oldest value is dropped
+		snapshot.pointBackdated(value(4, 2500));
+		assertTimes(snapshot.getLatest(3), 3000, 2500, 2000);
+		assertFalse(snapshot.getLatest(3).get(1).isCached());
+
+		//Older than everything in a full ring
+		snapshot.pointBackdated(value(5, 500));
+		assertTimes(snapshot.getLatest(3), 3000, 2500, 2000);
+
+		//Same time replaces the value
+		snapshot.pointBackdated(value(6, 2000));
+		assertEquals(6, snapshot.getLatest(3).get(2).getValue().getDoubleValue(), 0);
+		assertTimes(snapshot.getLatest(3), 3000, 2500, 2000);
+	}
+
+	@Test
+	public void testBackdateWrapped() {
+		PointSnapshot snapshot = ready(4);
+		for(int i=1; i<=6; i++)
+			snapshot.pointUpdated(value(i, i * 1000));
+
+		//Shifting the older values down crosses the end of the array
+		snapshot.pointBackdated(value(0, 4500));
+		assertTimes(snapshot.getLatest(4), 6000, 5000, 4500, 4000);
+	}
+
+	@Test
+	public void testFill() {
+		PointSnapshot snapshot = new PointSnapshot(1, 5);
+		assertTrue(snapshot.startListening());
+		assertFalse(snapshot.startListening());
+		assertNull(snapshot.getLatest(1));
+
+		List<PointValueTime> disk = new ArrayList<PointValueTime>();
+		disk.add(value(3, 3000));
+		disk.add(value(2, 2000));
+		disk.add(value(1, 1000));
+		List<PointValueTime> cache = new ArrayList<PointValueTime>();
+		cache.add(value(4, 4000));
+		cache.add(value(3, 3000));
+		snapshot.fill(disk, cache);
+
+		List<SnapshotValue> latest = snapshot.getLatest(5);
+		assertTimes(latest, 4000, 3000, 2000, 1000);
+		assertTrue(latest.get(0).isCached());
+		assertTrue(latest.get(1).isCached());
+		assertFalse(latest.get(2).isCached());
+		assertFalse(latest.get(3).isCached());
+	}
+
+	@Test
+	public void testLimit() {
+		PointSnapshot snapshot = ready(3);
+		snapshot.pointUpdated(value(1, 1000));
+		snapshot.pointUpdated(value(2, 2000));
+
+		//A ring that isn't full holds the whole history
+		assertTimes(snapshot.getLatest(10), 2000, 1000);
+
+		snapshot.pointUpdated(value(3, 3000));
+		assertNull(snapshot.getLatest(4));
+		assertTimes(snapshot.getLatest(3), 3000, 2000, 1000);
+	}
+
+	@Test
+	public void testTerminated() {
+		PointSnapshot snapshot = ready(3);
+		snapshot.pointUpdated(value(1, 1000));
+		snapshot.pointTerminated();
+		assertNull(snapshot.getLatest(1));
+
+		//Values are ignored until the ring is filled again
+		snapshot.pointUpdated(value(2, 2000));
+		assertTrue(snapshot.startListening());
+		snapshot.fill(NONE, NONE);
+		assertTrue(snapshot.getLatest(3).isEmpty());
+	}
+
+	@Test
+	public void testTerminatedHook() {
+		final List<Integer> terminated = new ArrayList<Integer>();
+		PointSnapshot snapshot = new PointSnapshot(1, 3){
+			@Override
+			void terminated() {
+				//The ring is already cleared when the index forgets it
+				assertNull(getLatest(1));
+				terminated.add(1);
+			}
+		};
+		snapshot.startListening();
+		snapshot.fill(NONE, NONE);
+		snapshot.pointTerminated();
+		assertEquals(1, terminated.size());
+	}
+
+	private PointSnapshot ready(int size) {
+		PointSnapshot snapshot = new PointSnapshot(1, size);
+		snapshot.startListening();
+		snapshot.fill(NONE, NONE);
+		return snapshot;
+	}
+
+	private PointValueTime value(double value, long time) {
+		return new PointValueTime(value, time);
+	}
+
+	private void assertTimes(List<SnapshotValue> values, long... times) {
+		assertEquals(times.length, values.size());
+		for(int i=0; i<times.length; i++)
+			assertEquals(times[i], values.get(i).getValue().getTime());
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.ImageValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.mvc.rest.BaseRestTest;
+import com.serotonin.m2m2.web.mvc.rest.v1.BinaryPointValueStreamMessageConverter;
+
+/**
+ * Writes values with the binary writer and reads them back following the format
+ * described on the PointValueTimeBinaryWriter.
+ *
+ * BaseRestTest sets up the env properties the writer needs.
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointValueTimeBinaryWriterTest extends BaseRestTest {
+
+	@Test
+	public void testEveryValueType() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter("localhost", 8080, bytes, false, false);
+		DataPointVO vo = point(5, "DP_1");
+		writer.startSeries(vo);
+		writer.writePointValueTime(1.5d, 1000, null, vo);
+		writer.writePointValueTime(3, 2000, "annotated", vo);
+		writer.writePointValueTime("text", 3000, null, vo);
+		writer.writePointValueTime((DataValue)null, 4000, null, vo);
+		writer.writePointValueTime(new BinaryValue(true), 5000, null, vo);
+		writer.writePointValueTime(new BinaryValue(false), 5500, null, vo);
+		writer.writePointValueTime(new MultistateValue(-7), 6000, null, vo);
+		writer.writePointValueTime(new NumericValue(-2.25), 7000, null, vo);
+		writer.writePointValueTime(new AlphanumericValue("été ✓"), 8000, "✓", vo);
+		writer.writePointValueTime(new ImageValue(11, ImageValue.TYPE_JPG), 9000, null, vo);
+		writer.finish();
+
+		List<DecodedSeries> decoded = decode(bytes.toByteArray());
+		assertEquals(1, decoded.size());
+		DecodedSeries series = decoded.get(0);
+		assertEquals("DP_1", series.xid);
+
+		//A chunk per change of type, the alphanumeric and image values share one
+		assertArrayEquals(new byte[] {
+				PointValueTimeBinaryWriter.TYPE_DOUBLE,
+				PointValueTimeBinaryWriter.TYPE_INT,
+				PointValueTimeBinaryWriter.TYPE_STRING,
+				PointValueTimeBinaryWriter.TYPE_NULL,
+				PointValueTimeBinaryWriter.TYPE_BOOLEAN,
+				PointValueTimeBinaryWriter.TYPE_INT,
+				PointValueTimeBinaryWriter.TYPE_DOUBLE,
+				PointValueTimeBinaryWriter.TYPE_STRING}, series.chunkTypes());
+
+		assertEquals(10, series.values.size());
+		assertValue(series.values.get(0), 1000, 1.5d, null);
+		assertValue(series.values.get(1), 2000, 3, "annotated");
+		assertValue(series.values.get(2), 3000, "text", null);
+		assertValue(series.values.get(3), 4000, null, null);
+		assertValue(series.values.get(4), 5000, true, null);
+		assertValue(series.values.get(5), 5500, false, null);
+		assertValue(series.values.get(6), 6000, -7, null);
+		assertValue(series.values.get(7), 7000, -2.25d, null);
+		assertValue(series.values.get(8), 8000, "été ✓", "✓");
+		assertValue(series.values.get(9), 9000, "http://localhost:8080/imageValue/hst9000_5.jpg", null);
+	}
+
+	@Test
+	public void testChunksAndTimesOutOfOrder() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter("localhost", 8080, bytes, false, false);
+		DataPointVO vo = point(1, "DP_1");
+		int total = PointValueTimeBinaryWriter.CHUNK_SIZE * 2 + 10;
+		writer.startSeries(vo);
+		for(int i=0; i<total; i++)
+			writer.writePointValueTime((double)i, time(i), i % 100 == 0 ? "a" + i : null, vo);
+		writer.finish();
+
+		List<DecodedSeries> decoded = decode(bytes.toByteArray());
+		DecodedSeries series = decoded.get(0);
+		assertEquals(3, series.chunkTypes().length);
+		assertEquals(total, series.values.size());
+		for(int i=0; i<total; i++)
+			assertValue(series.values.get(i), time(i), (double)i, i % 100 == 0 ? "a" + i : null);
+	}
+
+	@Test
+	public void testSeries() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter("localhost", 8080, bytes, false, false);
+		DataPointVO first = point(1, "DP_1");
+		DataPointVO empty = point(2, "DP_2");
+		DataPointVO last = point(3, "DP_3");
+		writer.startSeries(first);
+		writer.writePointValueTime(1, 1000, null, first);
+		writer.startSeries(empty);
+		writer.startSeries(last);
+		writer.writePointValueTime(2, 1000, null, last);
+		writer.finish();
+
+		List<DecodedSeries> decoded = decode(bytes.toByteArray());
+		assertEquals(3, decoded.size());
+		assertEquals("DP_1", decoded.get(0).xid);
+		assertEquals(1, decoded.get(0).values.size());
+		assertValue(decoded.get(0).values.get(0), 1000, 1, null);
+		assertEquals("DP_2", decoded.get(1).xid);
+		assertTrue(decoded.get(1).values.isEmpty());
+		assertEquals("DP_3", decoded.get(2).xid);
+		assertValue(decoded.get(2).values.get(0), 1000, 2, null);
+	}
+
+	@Test
+	public void testConverter() throws IOException {
+		BinaryPointValueStreamMessageConverter converter = new BinaryPointValueStreamMessageConverter();
+		assertTrue(converter.canWrite(PointValueTimeBinaryStream.class, BinaryPointValueStreamMessageConverter.MEDIA_TYPE));
+		assertFalse(converter.canRead(PointValueTimeBinaryStream.class, BinaryPointValueStreamMessageConverter.MEDIA_TYPE));
+
+		final DataPointVO vo = point(1, "DP_1");
+		PointValueTimeBinaryStream stream = new PointValueTimeBinaryStream() {
+			@Override
+			public void streamData(OutputStream out) throws IOException {
+				PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter("localhost", 8080, out, false, false);
+				writer.startSeries(vo);
+				writer.writePointValueTime(new NumericValue(4.5), 1000, null, vo);
+				writer.finish();
+			}
+		};
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		converter.write(stream, BinaryPointValueStreamMessageConverter.MEDIA_TYPE, message);
+
+		assertEquals(BinaryPointValueStreamMessageConverter.MEDIA_TYPE, message.getHeaders().getContentType());
+		List<DecodedSeries> decoded = decode(message.getBodyAsBytes());
+		assertEquals(1, decoded.size());
+		assertValue(decoded.get(0).values.get(0), 1000, 4.5d, null);
+	}
+
+	/**
+	 * Times that step back every other value and cross zero
+	 */
+	private long time(int i) {
+		return i % 2 == 0 ? i * 1000L - 5000 : i * 1000L - 9000;
+	}
+
+	private DataPointVO point(int id, String xid) {
+		DataPointVO vo = new DataPointVO();
+		vo.setId(id);
+		vo.setXid(xid);
+		return vo;
+	}
+
+	private void assertValue(DecodedValue decoded, long time, Object value, String annotation) {
+		assertEquals(time, decoded.time);
+		if(value == null)
+			assertNull(decoded.value);
+		else
+			assertEquals(value, decoded.value);
+		assertEquals(annotation, decoded.annotation);
+	}
+
+	private List<DecodedSeries> decode(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		byte[] magic = new byte[4];
+		in.readFully(magic);
+		assertEquals("MPVB", new String(magic, StandardCharsets.US_ASCII));
+		assertEquals(PointValueTimeBinaryWriter.VERSION, in.readByte());
+
+		List<DecodedSeries> decoded = new ArrayList<DecodedSeries>();
+		DecodedSeries series = null;
+		while(true){
+			byte block = in.readByte();
+			if(block == PointValueTimeBinaryWriter.BLOCK_END)
+				break;
+			if(block == PointValueTimeBinaryWriter.BLOCK_SERIES){
+				series = new DecodedSeries(readString(in));
+				decoded.add(series);
+				continue;
+			}
+			assertEquals(PointValueTimeBinaryWriter.BLOCK_CHUNK, block);
+
+			byte type = in.readByte();
+			series.types.add(type);
+			int count = in.readInt();
+			DecodedValue[] values = new DecodedValue[count];
+			long time = in.readLong();
+			for(int i=0; i<count; i++){
+				if(i > 0){
+					long zigZag = readVarLong(in);
+					time += (zigZag >>> 1) ^ -(zigZag & 1);
+				}
+				values[i] = new DecodedValue(time);
+			}
+			for(int i=0; i<count; i++){
+				switch(type){
+					case PointValueTimeBinaryWriter.TYPE_DOUBLE:
+						values[i].value = in.readDouble();
+					break;
+					case PointValueTimeBinaryWriter.TYPE_INT:
+						values[i].value = in.readInt();
+					break;
+					case PointValueTimeBinaryWriter.TYPE_BOOLEAN:
+						values[i].value = in.readByte() == 1;
+					break;
+					case PointValueTimeBinaryWriter.TYPE_STRING:
+						values[i].value = readString(in);
+					break;
+				}
+			}
+			int annotationCount = in.readInt();
+			for(int i=0; i<annotationCount; i++){
+				int index = in.readInt();
+				values[index].annotation = readString(in);
+			}
+			for(DecodedValue value : values)
+				series.values.add(value);
+		}
+		assertEquals(-1, in.read());
+		return decoded;
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[(int)readVarLong(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		while(true){
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return value;
+			shift += 7;
+		}
+	}
+
+	class DecodedSeries {
+		final String xid;
+		final List<Byte> types = new ArrayList<Byte>();
+		final List<DecodedValue> values = new ArrayList<DecodedValue>();
+
+		DecodedSeries(String xid) {
+			this.xid = xid;
+		}
+
+		byte[] chunkTypes() {
+			byte[] chunkTypes = new byte[types.size()];
+			for(int i=0; i<chunkTypes.length; i++)
+				chunkTypes[i] = types.get(i);
+			return chunkTypes;
+		}
+	}
+
+	class DecodedValue {
+		final long time;
+		Object value;
+		String annotation;
+
+		DecodedValue(long time) {
+			this.time = time;
+		}
+	}
+}
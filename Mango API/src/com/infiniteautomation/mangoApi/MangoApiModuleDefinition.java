@@ -5,6 +5,7 @@
 package com.infiniteautomation.mangoApi;
 
 import com.serotonin.m2m2.module.ModuleElementDefinition;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.logging.LogFileIndexer;
 
 /**
  * @author Terry Packer
@@ -19,5 +20,15 @@ public class MangoApiModuleDefinition extends ModuleElementDefinition{
 	@Override
 	public void postInitialize() {
 		super.postInitialize();
+		LogFileIndexer.instance.start();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.module.ModuleElementDefinition#preTerminate()
+	 */
+	@Override
+	public void preTerminate() {
+		LogFileIndexer.instance.stop();
+		super.preTerminate();
 	}
 }
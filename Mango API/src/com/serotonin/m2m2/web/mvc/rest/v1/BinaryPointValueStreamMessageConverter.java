@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeBinaryStream;
+
+/**
+ * Writes point value streams in the binary columnar format of the PointValueTimeBinaryWriter
+ * 
+ * @author Terry Packer
+ *
+ */
+public class BinaryPointValueStreamMessageConverter extends AbstractHttpMessageConverter<PointValueTimeBinaryStream> {
+	
+	public static final String MEDIA_TYPE_VALUE = "application/x-mango-point-values";
+	public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+	public BinaryPointValueStreamMessageConverter() {
+		super(MEDIA_TYPE);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return PointValueTimeBinaryStream.class.isAssignableFrom(clazz);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.http.converter.AbstractHttpMessageConverter#canRead(java.lang.Class, org.springframework.http.MediaType)
+	 */
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.http.converter.AbstractHttpMessageConverter#readInternal(java.lang.Class, org.springframework.http.HttpInputMessage)
+	 */
+	@Override
+	protected PointValueTimeBinaryStream readInternal(Class<? extends PointValueTimeBinaryStream> clazz,
+			HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+		//Not supported
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.http.converter.AbstractHttpMessageConverter#writeInternal(java.lang.Object, org.springframework.http.HttpOutputMessage)
+	 */
+	@Override
+	protected void writeInternal(PointValueTimeBinaryStream stream, HttpOutputMessage outputMessage)
+			throws IOException, HttpMessageNotWritableException {
+		stream.streamData(outputMessage.getBody());
+	}
+}
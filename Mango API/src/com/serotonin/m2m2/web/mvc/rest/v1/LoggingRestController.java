@@ -88,7 +88,7 @@ public class LoggingRestController extends MangoRestController{
 					"by-filename/ma.log/?classname=com.serotonin.m2m2m.Common\n" + 
 					"by-filename/ma.log/?methodName=setPointValue\n" + 
 					"NOTE: Querying non ma.log files is not supported.")
-	@RequestMapping(method = RequestMethod.GET, produces={"application/json"}, value="/by-filename/{filename}")
+	@RequestMapping(method = RequestMethod.GET, produces={"application/json", "text/csv"}, value="/by-filename/{filename}")
     public ResponseEntity<QueryArrayStream<?>> query(
     		@PathVariable String filename, 
     		HttpServletRequest request) {
@@ -28,5 +28,6 @@ public class MangoRestModuleSpringConfiguration extends WebMvcConfigurerAdapter{
 	public void configureMessageConverters(
 			List<HttpMessageConverter<?>> converters) {
 		converters.add(new CsvObjectStreamMessageConverter());
+		converters.add(new BinaryPointValueStreamMessageConverter());
 	}
 }
@@ -4,6 +4,9 @@
  */
 package com.serotonin.m2m2.web.mvc.rest.v1;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -64,8 +67,12 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.IdPointValueRollupCal
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.IdPointValueTimeDatabaseStream;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.IdPointValueTimeLatestPointValueFacadeStream;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueFftCalculator;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueImportResultModel;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueImporter;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueRollupCalculator;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeDatabaseStream;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueSnapshotIndex;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueSnapshotIndex.SnapshotValue;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.RecentPointValueTimeModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.XidPointValueMapRollupCalculator;
@@ -76,6 +83,7 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.statistics.Statistics
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriod;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriodType;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.FftWindowFunction;
 import com.serotonin.m2m2.web.taglib.Functions;
 import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
@@ -155,7 +163,12 @@ public class PointValueRestController extends MangoRestController{
     				imageServletBuilder.port(request.getLocalPort());
     				
 	    			List<RecentPointValueTimeModel> models;
-	    			if(useCache){
+	    			List<SnapshotValue> snapshot = useCache ? PointValueSnapshotIndex.instance.getLatestValues(vo, limit) : null;
+	    			if(snapshot != null){
+	    				models = new ArrayList<>(snapshot.size());
+	    				for(SnapshotValue value : snapshot)
+	    					models.add(createRecentPointValueTimeModel(vo, value.getValue(), imageServletBuilder, useRendered, unitConversion, value.isCached()));
+	    			}else if(useCache){
 		    			//In an effort not to expand the PointValueCache we avoid the PointValueFacade
 	    				DataPointRT rt = Common.runtimeManager.getDataPoint(vo.getId());
 	    				if(rt != null){
@@ -785,7 +798,7 @@ public class PointValueRestController extends MangoRestController{
 			response=PointValueTimeModel.class,
 			responseContainer="List"
 			)
-    @RequestMapping(method = RequestMethod.GET, value="/{xids}/multiple-points-multiple-arrays", produces={"application/json","text/csv"})
+    @RequestMapping(method = RequestMethod.GET, value="/{xids}/multiple-points-multiple-arrays", produces={"application/json","text/csv",BinaryPointValueStreamMessageConverter.MEDIA_TYPE_VALUE})
     public ResponseEntity<ObjectStream<Map<String, List<PointValueTime>>>> getPointValuesForMultiplePointsAsMultipleArrays(
     		HttpServletRequest request, 
     		
@@ -826,7 +839,11 @@ public class PointValueRestController extends MangoRestController{
             
             @ApiParam(value = "Limit", required = false, allowMultiple = false)
             @RequestParam(value="limit", required=false)
-            Integer limit
+            Integer limit,
+            
+            @ApiParam(value = "Query the points concurrently", required = false, defaultValue="false", allowMultiple = false)
+            @RequestParam(value="parallel", required=false, defaultValue="false")
+            boolean parallel
     		){
         
     	RestProcessResult<ObjectStream<Map<String, List<PointValueTime>>>> result = new RestProcessResult<ObjectStream<Map<String, List<PointValueTime>>>>(HttpStatus.OK);
@@ -886,7 +903,7 @@ public class PointValueRestController extends MangoRestController{
     				}
     				return result.createResponseEntity();
     			}else{
-    				XidPointValueTimeMapDatabaseStream pvtDatabaseStream = new XidPointValueTimeMapDatabaseStream(request.getServerName(), request.getServerPort(), pointIdMap, useRendered, unitConversion, from.getMillis(), to.getMillis(), this.dao, limit);
+    				XidPointValueTimeMapDatabaseStream pvtDatabaseStream = new XidPointValueTimeMapDatabaseStream(request.getServerName(), request.getServerPort(), pointIdMap, useRendered, unitConversion, from.getMillis(), to.getMillis(), this.dao, limit, parallel);
 	    			return result.createResponseEntity(pvtDatabaseStream);
     			}
 	    	}catch(PermissionException e){
@@ -905,7 +922,7 @@ public class PointValueRestController extends MangoRestController{
 			response=PointValueTimeModel.class,
 			responseContainer="List"
 			)
-    @RequestMapping(method = RequestMethod.GET, value="/{xid}", produces={"application/json","text/csv"})
+    @RequestMapping(method = RequestMethod.GET, value="/{xid}", produces={"application/json","text/csv",BinaryPointValueStreamMessageConverter.MEDIA_TYPE_VALUE})
     public ResponseEntity<QueryArrayStream<PointValueTimeModel>> getPointValues(
     		HttpServletRequest request, 
     		
@@ -946,7 +963,19 @@ public class PointValueRestController extends MangoRestController{
             
             @ApiParam(value = "Limit", required = false, allowMultiple = false)
             @RequestParam(value="limit", required=false)
-            Integer limit
+            Integer limit,
+            
+            @ApiParam(value = "FFT window size in samples, a power of 2 no larger than rest.pointValues.fft.maxWindowSize (default 65536)", required = false, allowMultiple = false)
+            @RequestParam(value="fftWindowSize", required=false)
+            Integer fftWindowSize,
+            
+            @ApiParam(value = "Fraction of each FFT window that overlaps the next", required = false, allowMultiple = false)
+            @RequestParam(value="fftOverlap", required=false)
+            Double fftOverlap,
+            
+            @ApiParam(value = "FFT window function", required = false, allowMultiple = false)
+            @RequestParam(value="fftWindow", required=false)
+            FftWindowFunction fftWindow
     		){
         
     	RestProcessResult<QueryArrayStream<PointValueTimeModel>> result = new RestProcessResult<QueryArrayStream<PointValueTimeModel>>(HttpStatus.OK);
@@ -978,9 +1007,14 @@ public class PointValueRestController extends MangoRestController{
 	    			//Are we using rollup
 	    			if((rollup != null)&&(rollup != RollupEnum.NONE)){
 	    				if(rollup == RollupEnum.FFT){
+	    					if(fftWindowSize != null && !PointValueFftCalculator.isValidWindowSize(fftWindowSize)){
+	    						result.addRestMessage(HttpStatus.BAD_REQUEST, new TranslatableMessage("common.default",
+	    								"fftWindowSize must be a power of 2 between 2 and " + PointValueFftCalculator.getMaxWindowSize()));
+	    						return result.createResponseEntity();
+	    					}
 	    					//Special Rollup for FFT's with no time rollup action
 	    					//TODO Need a way to return frequency or period values
-	    					PointValueFftCalculator calc = new PointValueFftCalculator(vo, from.getMillis(), to.getMillis(), true);
+	    					PointValueFftCalculator calc = new PointValueFftCalculator(vo, from.getMillis(), to.getMillis(), true, fftWindowSize, fftOverlap, fftWindow);
 	    					return result.createResponseEntity(calc);
 	    				}else{
 		    				TimePeriod timePeriod = null;
@@ -1240,6 +1274,43 @@ public class PointValueRestController extends MangoRestController{
 		return result.createResponseEntity();
     }
 
+	@ApiOperation(
+			value = "Import point values for many data points",
+			notes = "Streamed body of newline delimited JSON objects {xid, value, timestamp, annotation, dataType} or CSV with the columns xid, timestamp, value, annotation " +
+					"or a header row naming them. Every value is saved in time order regardless of the point logging settings, the latest value of each running point is put into its cache at the end. " +
+					"Values that can't be imported are counted and the first errors returned."
+			)
+	@RequestMapping(method = RequestMethod.POST, value = "/import", produces={"application/json"}, consumes={PointValueImporter.NDJSON_MEDIA_TYPE, "text/csv"})
+    public ResponseEntity<PointValueImportResultModel> importPointValues(
+    		HttpServletRequest request, 
+
+    		@ApiParam(value = "Numeric values are in the displayed unit", required = false, defaultValue="false", allowMultiple = false)
+    		@RequestParam(required=false, defaultValue="false") boolean unitConversion) {
+		
+		RestProcessResult<PointValueImportResultModel> result = new RestProcessResult<PointValueImportResultModel>(HttpStatus.OK);
+		
+		User user = this.checkUser(request, result);
+		if(result.isOk()){
+			PointValueImporter importer = new PointValueImporter(user, unitConversion);
+			try{
+				//Read the body as it arrives rather than binding it
+				BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), Common.UTF8_CS));
+				if(request.getContentType() != null && request.getContentType().startsWith("text/csv"))
+					importer.importCsv(reader);
+				else
+					importer.importNdjson(reader);
+			}catch(IOException e){
+				LOG.warn("Point value import ended early: " + e.getMessage());
+				result.addRestMessage(HttpStatus.BAD_REQUEST, new TranslatableMessage("common.default", e.getMessage()));
+			}finally{
+				//Keep what was read before any failure
+				importer.finish();
+			}
+			return result.createResponseEntity(importer.getResult());
+		}
+		return result.createResponseEntity();
+    }
+
 	/**
 	 * 
 	 * Helper method for setting a point value
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.joda.time.DateTime;
+
+/**
+ * Sparse index of a Mango Log4J file.  The file is split into blocks of
+ * about BLOCK_SIZE bytes that always start on the first line of a log event,
+ * each block records the time range and the levels of the events in it so
+ * a query can read only the blocks that can match.
+ *
+ * The index is extended from where it left off each time it is updated and
+ * rebuilt if the file was truncated or replaced by a roll over.
+ *
+ * @author Terry Packer
+ */
+public class LogFileIndex {
+
+	static final int BLOCK_SIZE = 64 * 1024;
+	//Read through a heap buffer rather than mapping the live file, a mapping locks the file on Windows until GC
+	private static final int READ_SIZE = 1024 * 1024;
+	private static final int FINGERPRINT_SIZE = 64;
+
+	//Levels in the order of the bits in a block's level mask
+	static final Level[] LEVELS = new Level[]{Level.FATAL, Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG, Level.TRACE};
+
+	private final File file;
+	private final List<Block> blocks = new ArrayList<Block>();
+	//Length of the file up to the last complete line we have indexed
+	private long indexedLength;
+	private byte[] fingerprint;
+	private ByteBuffer readBuffer;
+
+	public LogFileIndex(File file){
+		this.file = file;
+	}
+
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Index anything written since the last update
+	 * @throws IOException
+	 */
+	public synchronized void update() throws IOException{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()){
+			long length = channel.size();
+			byte[] currentFingerprint = readFingerprint(channel, length);
+			if(length < indexedLength || fingerprint == null || !startsWith(currentFingerprint, fingerprint)){
+				blocks.clear();
+				indexedLength = 0;
+			}
+			fingerprint = currentFingerprint;
+
+			long position = indexedLength;
+			while(position < length){
+				long size = Math.min(READ_SIZE, length - position);
+				ByteBuffer buffer = read(channel, position, (int)size);
+				size = buffer.limit();
+				if(size == 0)
+					break;
+				int consumed = indexLines(buffer, position);
+				if(consumed == 0){
+					//Partial line at the end of the file, or a line longer than the buffer
+					if(position + size == length)
+						break;
+					consumed = (int)size;
+					if(!blocks.isEmpty())
+						blocks.get(blocks.size() - 1).end = position + size;
+				}
+				position += consumed;
+				indexedLength = position;
+			}
+		}
+	}
+
+	/**
+	 * Read part of the file into the reused buffer
+	 * @param channel
+	 * @param position
+	 * @param size
+	 * @return the buffer, from 0 to the number of bytes read
+	 * @throws IOException
+	 */
+	private ByteBuffer read(FileChannel channel, long position, int size) throws IOException{
+		if(readBuffer == null)
+			readBuffer = ByteBuffer.allocate(READ_SIZE);
+		readBuffer.clear();
+		readBuffer.limit(size);
+		while(readBuffer.hasRemaining()){
+			if(channel.read(readBuffer, position + readBuffer.position()) < 0)
+				break;
+		}
+		readBuffer.flip();
+		return readBuffer;
+	}
+
+	/**
+	 * Index all complete lines in the buffer
+	 * @param buffer
+	 * @param bufferStart - offset of the buffer in the file
+	 * @return number of bytes consumed
+	 */
+	private int indexLines(ByteBuffer buffer, long bufferStart){
+		int lineStart = 0;
+		int limit = buffer.limit();
+		for(int i=0; i<limit; i++){
+			if(buffer.get(i) != '\n')
+				continue;
+			indexLine(buffer, lineStart, i, bufferStart);
+			lineStart = i + 1;
+		}
+		return lineStart;
+	}
+
+	private void indexLine(ByteBuffer buffer, int start, int end, long bufferStart){
+		long offset = bufferStart + start;
+		Block current = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+
+		int levelIndex = parseLevel(buffer, start, end);
+		long time = levelIndex < 0 ? -1 : parseTime(buffer, start + 6, end);
+		//Events have a level and a time, everything else belongs to the previous event
+		if(time >= 0){
+			if(current == null || offset - current.start >= BLOCK_SIZE){
+				current = new Block(offset, time);
+				blocks.add(current);
+			}
+			current.levels |= 1 << levelIndex;
+			if(time > current.lastTime)
+				current.lastTime = time;
+		}else if(current == null){
+			//Lines before the first event
+			current = new Block(offset, Long.MIN_VALUE);
+			blocks.add(current);
+		}
+		current.end = bufferStart + end + 1;
+	}
+
+	/**
+	 * Level is the first 5 characters of an event line, space padded
+	 * @return index into LEVELS or -1
+	 */
+	private int parseLevel(ByteBuffer buffer, int start, int end){
+		if(end - start < 30)
+			return -1;
+		for(int l=0; l<LEVELS.length; l++){
+			String name = LEVELS[l].name();
+			boolean match = true;
+			for(int c=0; c<5 && match; c++){
+				byte expected = c < name.length() ? (byte)name.charAt(c) : (byte)' ';
+				match = buffer.get(start + c) == expected;
+			}
+			if(match && buffer.get(start + 5) == ' ')
+				return l;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parse yyyy-MM-dd'T'HH:mm:ss,SSS in the local time zone
+	 * @return time or -1 if not a timestamp
+	 */
+	private long parseTime(ByteBuffer buffer, int start, int end){
+		if(end - start < 23)
+			return -1;
+		int year = digits(buffer, start, 4);
+		int month = digits(buffer, start + 5, 2);
+		int day = digits(buffer, start + 8, 2);
+		int hour = digits(buffer, start + 11, 2);
+		int minute = digits(buffer, start + 14, 2);
+		int second = digits(buffer, start + 17, 2);
+		int millis = digits(buffer, start + 20, 3);
+		if(year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0)
+			return -1;
+		try{
+			return new DateTime(year, month, day, hour, minute, second, millis).getMillis();
+		}catch(IllegalArgumentException e){
+			return -1;
+		}
+	}
+
+	private int digits(ByteBuffer buffer, int start, int count){
+		int value = 0;
+		for(int i=start; i<start + count; i++){
+			byte b = buffer.get(i);
+			if(b < '0' || b > '9')
+				return -1;
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	private byte[] readFingerprint(FileChannel channel, long length) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(FINGERPRINT_SIZE, length));
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, buffer.position()) < 0)
+				break;
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	private boolean startsWith(byte[] current, byte[] previous){
+		if(current.length < previous.length)
+			return false;
+		for(int i=0; i<previous.length; i++)
+			if(current[i] != previous[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Find the byte ranges that may contain events matching the bounds,
+	 * adjacent ranges are merged.  Anything written after the last update
+	 * is always included.
+	 *
+	 * @param earliest - inclusive, null for no bound
+	 * @param latest - inclusive, null for no bound
+	 * @param levelMask - bits of the LEVELS that can match
+	 * @param fileLength - current length of the file
+	 * @return list of [start, end) offsets
+	 */
+	public synchronized List<long[]> getRanges(Long earliest, Long latest, int levelMask, long fileLength){
+		List<long[]> ranges = new ArrayList<long[]>();
+		long[] last = null;
+		for(Block block : blocks){
+			boolean matches = (block.levels & levelMask) != 0
+					&& (earliest == null || block.lastTime >= earliest)
+					&& (latest == null || block.firstTime <= latest);
+			if(!matches)
+				continue;
+			if(last != null && last[1] == block.start)
+				last[1] = block.end;
+			else{
+				last = new long[]{block.start, block.end};
+				ranges.add(last);
+			}
+		}
+		//Not indexed yet
+		if(indexedLength < fileLength){
+			if(last != null && last[1] == indexedLength)
+				last[1] = fileLength;
+			else
+				ranges.add(new long[]{indexedLength, fileLength});
+		}
+		return ranges;
+	}
+
+	static class Block{
+		final long start;
+		final long firstTime;
+		long end;
+		long lastTime;
+		int levels;
+
+		Block(long start, long firstTime){
+			this.start = start;
+			this.end = start;
+			this.firstTime = firstTime;
+			this.lastTime = firstTime;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.Common;
+import com.serotonin.timer.CronTimerTrigger;
+import com.serotonin.timer.TimerTask;
+
+/**
+ * Keeps a LogFileIndex for every Mango log file in the logs directory,
+ * the indexes are brought up to date every minute in the background
+ * and again just before they are queried.
+ *
+ * @author Terry Packer
+ */
+public class LogFileIndexer {
+
+	private static final Log LOG = LogFactory.getLog(LogFileIndexer.class);
+
+	public static final LogFileIndexer instance = new LogFileIndexer();
+
+	private final ConcurrentHashMap<String, LogFileIndex> indexes = new ConcurrentHashMap<String, LogFileIndex>();
+	private TimerTask task;
+
+	private LogFileIndexer(){ }
+
+	/**
+	 * Start indexing in the background
+	 */
+	public synchronized void start(){
+		if(task != null)
+			return;
+		try{
+			task = new TimerTask(new CronTimerTrigger("0 * * * * ?"), "Log file indexer", "LOG_INDEXER", 0){
+				@Override
+				public void run(long runtime) {
+					indexAll();
+				}
+			};
+		}catch(ParseException e){
+			throw new ShouldNeverHappenException(e);
+		}
+		Common.timer.schedule(task);
+	}
+
+	public synchronized void stop(){
+		if(task != null){
+			task.cancel();
+			task = null;
+		}
+	}
+
+	/**
+	 * Get the up to date index for a log file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public LogFileIndex getIndex(File file) throws IOException{
+		LogFileIndex index = indexes.get(file.getName());
+		if(index == null){
+			index = new LogFileIndex(file);
+			LogFileIndex existing = indexes.putIfAbsent(file.getName(), index);
+			if(existing != null)
+				index = existing;
+		}
+		index.update();
+		return index;
+	}
+
+	/**
+	 * Index any new log files and drop the indexes of removed files
+	 */
+	private void indexAll(){
+		File[] files = Common.getLogsDir().listFiles();
+		if(files == null)
+			return;
+		for(File file : files){
+			if(!file.getName().matches(LogQueryArrayStream.LOGFILE_REGEX))
+				continue;
+			try{
+				getIndex(file);
+			}catch(IOException e){
+				LOG.warn("Unable to index " + file.getName(), e);
+			}
+		}
+
+		Iterator<LogFileIndex> it = indexes.values().iterator();
+		while(it.hasNext()){
+			if(!it.next().getFile().exists())
+				it.remove();
+		}
+	}
+}
@@ -6,13 +6,16 @@ package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.QueryArrayStream;
 
+import au.com.bytecode.opencsv.CSVWriter;
 import net.jazdw.rql.parser.ASTNode;
 
 /**
@@ -40,7 +43,7 @@ public class LogQueryArrayStream implements QueryArrayStream<LogMessageModel>{
 			return;
 		
 		if(filename.matches(LOGFILE_REGEX)){
-			processLog4j(jgen);
+			processLog4j(new MangoLogFilePatternReceiver(query, jgen));
 		}else{
 			throw new IOException("Cannot query non Mango Log4J Files");
 		}
@@ -49,14 +52,13 @@ public class LogQueryArrayStream implements QueryArrayStream<LogMessageModel>{
 	}
 
 	/**
-	 * Specifically Process a Log4J file
+	 * Specifically Process a Log4J file, only the parts of the file
+	 * that the index says can match the query are read.
 	 * 
-	 * @param jgen
+	 * @param receiver
 	 * @throws IOException 
 	 */
-	private void processLog4j(JsonGenerator jgen) throws IOException {
-		MangoLogFilePatternReceiver receiver = new MangoLogFilePatternReceiver(query, jgen);
-
+	private void processLog4j(MangoLogFilePatternReceiver receiver) throws IOException {
 		try {
 			File logsDir = Common.getLogsDir();
 			File logFile = new File(logsDir, filename);
@@ -64,13 +66,15 @@ public class LogQueryArrayStream implements QueryArrayStream<LogMessageModel>{
 				return;
 			
 		    receiver.setLogFormat("LEVEL TIMESTAMP (CLASS.METHOD:LINE) - MESSAGE"); //"%-5p %d{ISO8601} (%C.%M:%L) - %m %n"
-		    receiver.setFileURL(logFile.toURI().toURL().toExternalForm());
-		    receiver.setUseCurrentThread(true);
-
-		    //Start the parsing
-		    receiver.activateOptions();
-	    } catch (MalformedURLException e) {
-			throw new IOException(e);
+		    
+		    int levelMask = 0;
+		    for(int i=0; i<LogFileIndex.LEVELS.length; i++)
+		    	if(receiver.acceptsLevel(LogFileIndex.LEVELS[i]))
+		    		levelMask |= 1 << i;
+		    
+		    LogFileIndex index = LogFileIndexer.instance.getIndex(logFile);
+		    List<long[]> ranges = index.getRanges(receiver.getEarliestTime(), receiver.getLatestTime(), levelMask, logFile.length());
+		    receiver.processRanges(logFile, ranges);
 		} finally {
 	        receiver.shutdown();
 	    }
@@ -82,7 +86,28 @@ public class LogQueryArrayStream implements QueryArrayStream<LogMessageModel>{
 	@Override
 	public void streamData(CSVPojoWriter<LogMessageModel> writer)
 			throws IOException {
-		//No Op For now
+		if(filename == null)
+			return;
+		
+		if(!filename.matches(LOGFILE_REGEX))
+			throw new IOException("Cannot query non Mango Log4J Files");
+		
+		final CSVWriter csv = writer.getWriter();
+		csv.writeNext(new String[]{"level", "classname", "method", "lineNumber", "time", "message", "stackTrace"});
+		processLog4j(new MangoLogFilePatternReceiver(query, new MangoLogFilePatternReceiver.LogMessageWriter(){
+			@Override
+			public void write(LogMessageModel model) throws IOException {
+				csv.writeNext(new String[]{
+						model.getLevel(),
+						model.getClassname(),
+						model.getMethod(),
+						model.getLineNumber() == null ? null : model.getLineNumber().toString(),
+						Long.toString(model.getTime()),
+						model.getMessage(),
+						model.getStackTrace() == null ? null : StringUtils.join(model.getStackTrace(), '\n')
+				});
+			}
+		}));
 	}
 
 }
@@ -5,12 +5,18 @@
 package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,6 +29,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.logging.log4j.Level;
@@ -55,7 +62,7 @@ public class MangoLogFilePatternReceiver{
 	private long waitMillis = 100; //2000; //default 2 seconds
 	  
 	  
-	private JsonGenerator jgen;
+	private LogMessageWriter writer;
 	//Filtering
 	private QueryComparison classComparison;
 	private QueryComparison methodComparison;
@@ -68,9 +75,18 @@ public class MangoLogFilePatternReceiver{
 	private Level thresholdLevel;
 	boolean active;
 	
-	public MangoLogFilePatternReceiver(ASTNode query, JsonGenerator jgen){
+	public MangoLogFilePatternReceiver(ASTNode query, final JsonGenerator jgen){
+		this(query, new LogMessageWriter(){
+			@Override
+			public void write(LogMessageModel model) throws IOException {
+				jgen.writeObject(model);
+			}
+		});
+	}
+	
+	public MangoLogFilePatternReceiver(ASTNode query, LogMessageWriter writer){
 
-		this.jgen = jgen;
+		this.writer = writer;
 		
 		if(query != null){
 			this.limit = query.accept(new RQLToLimitVisitor());
@@ -117,34 +133,8 @@ public class MangoLogFilePatternReceiver{
      */
     public void doPost(final LoggingEvent event) {
 
-        if(levelComparison != null){
-        	switch(levelComparison.getComparison()){
-        	case GREATER_THAN:
-        		if(event.getLevel().intLevel() <= thresholdLevel.intLevel())
-        			return;
-        	case GREATER_THAN_EQUAL_TO:
-        		if(event.getLevel().intLevel() < thresholdLevel.intLevel())
-        			return;
-        	break;
-        	case EQUAL_TO:
-        		if(!event.getLevel().equals(thresholdLevel))
-        			return;
-        	break;
-        	case NOT_EQUAL_TO:
-        		if(event.getLevel().equals(thresholdLevel))
-        			return;
-        	break;
-        	case LESS_THAN:
-        		if(event.getLevel().intLevel() >= thresholdLevel.intLevel())
-        			return;
-        	case LESS_THAN_EQUAL_TO:
-        		if(event.getLevel().intLevel() > thresholdLevel.intLevel())
-        			return;
-        	break;
-        	default:
-        	break;
-        	}
-        }
+        if(!acceptsLevel(event.getLevel()))
+        	return;
         
         if(timeComparison != null){
         	switch(timeComparison.getComparison()){
@@ -251,7 +241,7 @@ public class MangoLogFilePatternReceiver{
         String[] stackTrace = event.getStackTrace();
         
 		try {
-			jgen.writeObject(new LogMessageModel(
+			writer.write(new LogMessageModel(
 					event.getLevel().toString(),
 					classname,
 					method,
@@ -265,6 +255,108 @@ public class MangoLogFilePatternReceiver{
 		this.count++;
   }
 
+    /**
+     * Does the level pass the level filter of the query
+     * @param level
+     * @return
+     */
+    public boolean acceptsLevel(Level level){
+        if(levelComparison != null){
+        	switch(levelComparison.getComparison()){
+        	case GREATER_THAN:
+        		if(level.intLevel() <= thresholdLevel.intLevel())
+        			return false;
+        	case GREATER_THAN_EQUAL_TO:
+        		if(level.intLevel() < thresholdLevel.intLevel())
+        			return false;
+        	break;
+        	case EQUAL_TO:
+        		if(!level.equals(thresholdLevel))
+        			return false;
+        	break;
+        	case NOT_EQUAL_TO:
+        		if(level.equals(thresholdLevel))
+        			return false;
+        	break;
+        	case LESS_THAN:
+        		if(level.intLevel() >= thresholdLevel.intLevel())
+        			return false;
+        	case LESS_THAN_EQUAL_TO:
+        		if(level.intLevel() > thresholdLevel.intLevel())
+        			return false;
+        	break;
+        	default:
+        	break;
+        	}
+        }
+        return true;
+    }
+    
+    /**
+     * Earliest time an event can have to pass the time filter
+     * @return null if unbounded
+     */
+    public Long getEarliestTime(){
+    	if(timeComparison == null)
+    		return null;
+    	switch(timeComparison.getComparison()){
+    	case GREATER_THAN:
+    		return timeValue + 1;
+    	case GREATER_THAN_EQUAL_TO:
+    	case EQUAL_TO:
+    		return timeValue;
+    	default:
+    		return null;
+    	}
+    }
+    
+    /**
+     * Latest time an event can have to pass the time filter
+     * @return null if unbounded
+     */
+    public Long getLatestTime(){
+    	if(timeComparison == null)
+    		return null;
+    	switch(timeComparison.getComparison()){
+    	case LESS_THAN:
+    		return timeValue - 1;
+    	case LESS_THAN_EQUAL_TO:
+    	case EQUAL_TO:
+    		return timeValue;
+    	default:
+    		return null;
+    	}
+    }
+    
+    /**
+     * Parse only the given byte ranges of the file, each range must start on the first line of an event
+     * @param file
+     * @param ranges - [start, end) offsets
+     * @throws IOException
+     */
+    public void processRanges(File file, List<long[]> ranges) throws IOException{
+    	this.fileURL = file.toURI().toURL().toExternalForm();
+    	initialize();
+    	createPattern();
+    	try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+    		for(long[] range : ranges){
+    			if((this.limit != null)&&(this.count >= this.limit))
+    				return;
+    			channel.position(range[0]);
+    			InputStream in = new BoundedInputStream(Channels.newInputStream(channel), range[1] - range[0]);
+    			process(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    		}
+    	}
+    }
+    
+    /**
+     * Destination for the matching log messages
+     * @author Terry Packer
+     */
+    public interface LogMessageWriter{
+    	void write(LogMessageModel model) throws IOException;
+    }
+
 
 	private final List<String> keywords = new ArrayList<String>();
 
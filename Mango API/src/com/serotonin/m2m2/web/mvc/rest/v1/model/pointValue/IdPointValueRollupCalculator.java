@@ -6,8 +6,6 @@ package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -15,13 +13,7 @@ import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
-import com.serotonin.m2m2.DataTypes;
-import com.serotonin.m2m2.db.dao.PointValueDao;
-import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
-import com.serotonin.m2m2.rt.dataImage.PointValueTime;
-import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.util.DateUtils;
 import com.serotonin.m2m2.view.quantize2.BucketCalculator;
 import com.serotonin.m2m2.view.quantize2.BucketsBucketCalculator;
@@ -35,9 +27,7 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.statistics.IdPointVal
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriod;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriodType;
-import com.serotonin.m2m2.web.mvc.rest.v1.statistics.AnalogStatisticsChildQuantizer;
-import com.serotonin.m2m2.web.mvc.rest.v1.statistics.ParentDataQuantizer;
-import com.serotonin.m2m2.web.mvc.rest.v1.statistics.ValueChangeCounterChildQuantizer;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.MultiPointRollupEngine;
 
 /**
  * @author Terry Packer
@@ -72,55 +62,18 @@ public class IdPointValueRollupCalculator implements QueryArrayStream<PointValue
 	}
 
 	
-	/**
-	 * Calculate statistics, if TimePeriod is null the entire range will be used
-	 * @return
-	 */
-	public void calculate(final ParentDataQuantizer quantizer, DateTime from, DateTime to, Map<Integer, DataValue> endValues){
-		
-        //Make the call to get the data and quantize it
-        Common.databaseProxy.newPointValueDao().getPointValuesBetween(new ArrayList<Integer>(this.voMap.keySet()), from.getMillis(), to.getMillis(),
-                new MappedRowCallback<IdPointValueTime>() {
-                    @Override
-                    public void row(IdPointValueTime pvt, int row) {
-                        quantizer.data(pvt.getId(), pvt.getValue(), pvt.getTime());
-                    }
-                });
-        quantizer.done(endValues);
-        return;
-	}
-
-
 	/* (non-Javadoc)
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeStream#streamData(java.io.Writer)
 	 */
 	@Override
 	public void streamData(JsonGenerator jgen) {
 		this.setupDates();
-		DateTime startTime = this.getStartTime();
-		DateTime endTime = this.getEndTime();
-        BucketCalculator bc = this.getBucketCalculator(startTime, endTime);
+        BucketCalculator bc = this.getBucketCalculator(this.getStartTime(), this.getEndTime());
         IdPointValueStatisticsQuantizerJsonCallback callback = new IdPointValueStatisticsQuantizerJsonCallback(this.host, this.port, jgen, 
         		this.voMap, this.useRendered,
 				this.unitConversion, this.rollup, this.limit);
 		try {
-			//Time ordered list of end values
-			Map<Integer, DataValue> endValues = new HashMap<Integer, DataValue>(this.voMap.size());
-			Iterator<Integer> it = this.voMap.keySet().iterator();
-			ParentDataQuantizer quantizer = new ParentDataQuantizer(bc, callback);
-			
-			while(it.hasNext()){
-				DataPointVO vo = this.voMap.get(it.next());
-				DataValue startValue = this.getStartValue(vo);
-				
-		        if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC) {
-		            quantizer.startQuantizer(vo.getId(), startValue, new AnalogStatisticsChildQuantizer(vo.getId(), quantizer));
-		        }else {
-		            quantizer.startQuantizer(vo.getId(), startValue, new ValueChangeCounterChildQuantizer(vo.getId(), quantizer));
-		        }
-		        endValues.put(vo.getId(), getEndValue(vo));
-			}
-			this.calculate(quantizer, startTime, endTime, endValues);
+			new MultiPointRollupEngine(this.voMap, bc, from.getMillis()).execute(callback);
 		} catch (Exception e) {
 			LOG.error(e.getMessage(), e);
 		}
@@ -135,31 +88,11 @@ public class IdPointValueRollupCalculator implements QueryArrayStream<PointValue
 	public void streamData(CSVPojoWriter<PointValueTimeModel> writer)
 			throws IOException {
 		this.setupDates();
-		DateTime startTime = this.getStartTime();
-		DateTime endTime = this.getEndTime();
-        BucketCalculator bc = this.getBucketCalculator(startTime, endTime);
+        BucketCalculator bc = this.getBucketCalculator(this.getStartTime(), this.getEndTime());
         IdPointValueStatisticsQuantizerCsvCallback callback = new IdPointValueStatisticsQuantizerCsvCallback(this.host, this.port, writer.getWriter(), 
         		this.voMap, this.useRendered,
 				this.unitConversion, this.rollup);
-
-			//Time ordered list of end values
-        	Map<Integer, DataValue> endValues = new HashMap<Integer, DataValue>(this.voMap.size());
-			Iterator<Integer> it = this.voMap.keySet().iterator();
-			ParentDataQuantizer quantizer = new ParentDataQuantizer(bc, callback);
-			while(it.hasNext()){
-				DataPointVO vo = this.voMap.get(it.next());
-				DataValue startValue = this.getStartValue(vo);
-		        if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC) {
-		            quantizer.startQuantizer(vo.getId(), startValue,
-		            		new AnalogStatisticsChildQuantizer(vo.getId(), quantizer));
-		        }else{
-		            quantizer.startQuantizer(vo.getId(),startValue, 
-		            		new ValueChangeCounterChildQuantizer(vo.getId(), quantizer));
-		        }
-		        endValues.put(vo.getId(), getEndValue(vo));
-			}
-			this.calculate(quantizer, startTime, endTime, endValues);
-
+        new MultiPointRollupEngine(this.voMap, bc, from.getMillis()).execute(callback);
 	}
 
 	private void setupDates(){
@@ -198,24 +131,4 @@ public class IdPointValueRollupCalculator implements QueryArrayStream<PointValue
         return to;
 	}
 	
-	private DataValue getStartValue(DataPointVO vo){
-        // Determine the start and end values. This is important for
-        // properly calculating average.
-	    PointValueDao pvd = Common.databaseProxy.newPointValueDao();
-        PointValueTime startPvt = pvd.getPointValueAt(vo.getId(), from.getMillis());
-        //Try our best to get the closest value
-        if(startPvt == null)
-        	startPvt = pvd.getPointValueBefore(vo.getId(), from.getMillis());
-        DataValue startValue = PointValueTime.getValue(startPvt);
-        return startValue;
-	}
-	
-	private DataValue getEndValue(DataPointVO vo){
-		PointValueTime endPvt = Common.databaseProxy.newPointValueDao().getPointValueAt(vo.getId(), to.getMillis());
-        if(endPvt != null)
-        	return endPvt.getValue();
-        else
-        	return null;
-	}
-	
 }
@@ -18,7 +18,6 @@ import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.vo.DataPointVO;
-import com.serotonin.m2m2.web.taglib.Functions;
 
 import au.com.bytecode.opencsv.CSVWriter;
 
@@ -94,7 +93,7 @@ public class IdPointValueTimeCsvStreamCallback extends PointValueTimeCsvWriter i
 				}else{
 					//Write the line
 					if(this.limiter.limited())
-						return;
+						throw new QueryCancelledException();
 					this.writer.writeNext(rowData);
 					for(int i=0; i< this.rowData.length; i++)
 						this.rowData[i] = new String();
@@ -105,10 +104,10 @@ public class IdPointValueTimeCsvStreamCallback extends PointValueTimeCsvWriter i
 			
 			if(useRendered){
 				//Convert to Alphanumeric Value
-				this.rowData[this.columnMap.get(vo.getId())] = Functions.getRenderedText(vo, pvt);
+				this.rowData[this.columnMap.get(vo.getId())] = this.transformer.render(vo, pvt);
 			}else if(unitConversion){
 				if (pvt.getValue() instanceof NumericValue)
-					this.rowData[this.columnMap.get(vo.getId())] = Double.toString(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue()));
+					this.rowData[this.columnMap.get(vo.getId())] = Double.toString(this.transformer.convert(vo, pvt.getValue().getDoubleValue()));
 				else
 					this.rowData[this.columnMap.get(vo.getId())] = this.createDataValueString(pvt.getValue());
 			}else{
@@ -117,6 +116,8 @@ public class IdPointValueTimeCsvStreamCallback extends PointValueTimeCsvWriter i
 				else
 					this.rowData[this.columnMap.get(vo.getId())] = this.createDataValueString(pvt.getValue());
 			}
+		}catch(QueryCancelledException e){
+			throw e;
 		}catch(Exception e){
 			LOG.error(e.getMessage(), e);
 		}
@@ -59,9 +59,13 @@ public class IdPointValueTimeDatabaseStream implements QueryArrayStream<PointVal
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeStream#streamData(com.fasterxml.jackson.core.JsonGenerator)
 	 */
 	@Override
-	public void streamData(JsonGenerator jgen) {
+	public void streamData(JsonGenerator jgen) throws IOException {
 		IdPointValueTimeJsonStreamCallback callback = new IdPointValueTimeJsonStreamCallback(host, port, jgen, pointMap, useRendered, unitConversion, limit);
-		this.dao.getPointValuesBetween(new ArrayList<Integer>(pointMap.keySet()), from, to, callback);
+		try{
+			this.dao.getPointValuesBetween(new ArrayList<Integer>(pointMap.keySet()), from, to, callback);
+		}catch(QueryCancelledException e){
+			e.rethrowIOException();
+		}
 		callback.finish();
 	}
 
@@ -72,7 +76,11 @@ public class IdPointValueTimeDatabaseStream implements QueryArrayStream<PointVal
 	public void streamData(CSVPojoWriter<PointValueTimeModel> writer)
 			throws IOException {
 		IdPointValueTimeCsvStreamCallback callback = new IdPointValueTimeCsvStreamCallback(host, port, writer.getWriter(), pointMap, useRendered, unitConversion, limit);
-		this.dao.getPointValuesBetween(new ArrayList<Integer>(pointMap.keySet()), from, to, callback);
+		try{
+			this.dao.getPointValuesBetween(new ArrayList<Integer>(pointMap.keySet()), from, to, callback);
+		}catch(QueryCancelledException e){
+			e.rethrowIOException();
+		}
 		callback.finish();
 	}
 
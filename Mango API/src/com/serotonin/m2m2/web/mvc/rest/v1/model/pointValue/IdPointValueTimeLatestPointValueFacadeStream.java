@@ -13,7 +13,6 @@ import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
-import com.serotonin.m2m2.rt.dataImage.PointValueFacade;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter;
@@ -68,9 +67,8 @@ public class IdPointValueTimeLatestPointValueFacadeStream implements QueryArrayS
 		Iterator<Integer> it = this.pointMap.keySet().iterator();
 		while(it.hasNext()){
 			DataPointVO vo = this.pointMap.get(it.next());
-			PointValueFacade pointValueFacade = new PointValueFacade(vo.getId(), useCache);
 
-			List<PointValueTime> pvts = pointValueFacade.getLatestPointValues(limit);
+			List<PointValueTime> pvts = PointValueSnapshotIndex.instance.getLatestPointValues(vo, limit, useCache);
 			for(PointValueTime pvt : pvts)
 				ipvts.add(new IdPointValueTime(vo.getId(), pvt.getValue(), pvt.getTime()));
 		}
@@ -107,9 +105,8 @@ public class IdPointValueTimeLatestPointValueFacadeStream implements QueryArrayS
 		Iterator<Integer> it = this.pointMap.keySet().iterator();
 		while(it.hasNext()){
 			DataPointVO vo = this.pointMap.get(it.next());
-			PointValueFacade pointValueFacade = new PointValueFacade(vo.getId(), useCache);
 
-			List<PointValueTime> pvts = pointValueFacade.getLatestPointValues(limit);
+			List<PointValueTime> pvts = PointValueSnapshotIndex.instance.getLatestPointValues(vo, limit, useCache);
 			for(PointValueTime pvt : pvts)
 				ipvts.add(new IdPointValueTime(vo.getId(), pvt.getValue(), pvt.getTime()));
 		}
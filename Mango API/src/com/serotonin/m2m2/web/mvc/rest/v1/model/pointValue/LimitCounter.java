@@ -43,4 +43,13 @@ public class LimitCounter {
 		}
 	}
 	
+	/**
+	 * Have all the values allowed by the limit been counted, the query
+	 * can be stopped without reading the next value
+	 * @return
+	 */
+	public boolean reached(){
+		return use && count >= limit;
+	}
+	
 }
@@ -7,158 +7,107 @@ package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
 import java.io.IOException;
 import java.util.Collections;
 
-import org.apache.commons.math3.complex.Complex;
-import org.joda.time.DateTime;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
-import com.serotonin.m2m2.view.quantize2.FftGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.pair.LongPair;
 import com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.QueryArrayStream;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.FftWindowFunction;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.WelchSpectrumEstimator;
+
+import au.com.bytecode.opencsv.CSVWriter;
 
 /**
+ * Amplitude spectrum of a point's values using Welch's method.
+ *
+ * The values are resampled onto a uniform grid at the average sample period
+ * (holding the last value between samples) and streamed through the estimator,
+ * so memory use depends on the window size and not on the number of values.
+ *
  * @author Terry Packer
  *
  */
 public class PointValueFftCalculator implements QueryArrayStream<PointValueTimeModel>{
 
+	private static final Log LOG = LogFactory.getLog(PointValueFftCalculator.class);
+
+	public static final int DEFAULT_WINDOW_SIZE = 1024;
+	public static final String MAX_WINDOW_SIZE_PROPERTY = "rest.pointValues.fft.maxWindowSize";
+	public static final int DEFAULT_MAX_WINDOW_SIZE = 65536;
+	public static final double DEFAULT_OVERLAP = 0.5d;
+	private static final double MAX_OVERLAP = 0.95d;
+
 	private DataPointVO vo;
 	private long from;
 	private long to;
 	private boolean returnFrequency;
+	private final Integer windowSize;
+	private final double overlap;
+	private final FftWindowFunction windowFunction;
+
 	/**
-	 * 
+	 *
 	 * @param vo
 	 * @param from
 	 * @param to
 	 * @param returnFreqency - Return data as Period (s) or Frequency (Hz)
 	 */
 	public PointValueFftCalculator(DataPointVO vo, long from, long to, boolean returnFreqency){
+		this(vo, from, to, returnFreqency, null, null, null);
+	}
+
+	/**
+	 *
+	 * @param vo
+	 * @param from
+	 * @param to
+	 * @param returnFreqency - Return data as Period (s) or Frequency (Hz)
+	 * @param windowSize - samples per FFT segment, a power of 2 checked with isValidWindowSize, null for default
+	 * @param overlap - fraction of each segment that overlaps the next, limited to [0,0.95], null for default
+	 * @param windowFunction - null for Hann
+	 */
+	public PointValueFftCalculator(DataPointVO vo, long from, long to, boolean returnFreqency,
+			Integer windowSize, Double overlap, FftWindowFunction windowFunction){
 		this.vo = vo;
 		this.from = from;
 		this.to = to;
 		this.returnFrequency = returnFreqency;
+		this.windowSize = windowSize;
+		this.overlap = overlap == null ? DEFAULT_OVERLAP : Math.min(Math.max(overlap, 0d), MAX_OVERLAP);
+		this.windowFunction = windowFunction == null ? FftWindowFunction.HANN : windowFunction;
 	}
 
-	
+
 	/* (non-Javadoc)
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeStream#streamData(java.io.Writer)
 	 */
 	@Override
 	public void streamData(JsonGenerator jgen) {
-		
 		this.setupDates();
-		DateTime startTime = new DateTime(from);
-		DateTime endTime = new DateTime(to);
-		
-		FftGenerator generator = this.calculate(startTime, endTime);
-		double[] fftData = generator.getValues();
-		double sampleRateHz = 1000d / generator.getAverageSamplePeriodMs();
-		double dataLength = (double)fftData.length;
-		
-		/**
-		 * Depending on if fftData.length is even or odd we need to pull out 
-		 * the values of interest.
-		 * 
-		 * fftData[0] is the steady state Real Value
-		 * 
-		 * if length is even
-		 *  fftData[2*i] = Re[i], 0<=i<length/2
-		 *  fftData[2*i+1] = Im[i], 0<i<length/2 
-		 *  fftData[1] = Re[n/2]
-		 * 
-		 * if length is odd 
-		 *  fftData[2*i] = Re[i], 0<=i<(length+1)/2 
-		 *  fftData[2*i+1] = Im[i], 0<i<(length-1)/2
-		 *  fftData[1] = Im[(length-1)/2]
-		 * 
-		 */
-		//Output The Real Steady State Mangitude
+		WelchSpectrumEstimator estimator = this.calculate();
+		if(estimator == null)
+			return;
+
 		try {
-			jgen.writeStartObject();
-			jgen.writeNumberField("value", fftData[0]); //Amplitude
-			double frequency = 0;
-			jgen.writeNumberField("frequency", frequency);
-			jgen.writeEndObject();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-		double realComponent, imaginaryComponent, frequency;
-		
-		if(fftData.length % 2 == 0){
-			for(int i=2; i<fftData.length/2; i++){
-				try {
-					realComponent = fftData[i*2];
-					imaginaryComponent = fftData[2*i+1];
-					Complex c = new Complex(realComponent, imaginaryComponent);
-					jgen.writeStartObject();
-					jgen.writeNumberField("value", c.abs()); //Amplitude
-					
-					if(this.returnFrequency)
-						frequency = (double)i * sampleRateHz / dataLength;
-					else
-						frequency = 1d/((double)i * sampleRateHz / dataLength);
-					
-					jgen.writeNumberField("frequency", frequency);
-					jgen.writeEndObject();
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-		}else{
-			
-			for(int i=2; i<(fftData.length-1)/2; i++){
-				try {
-					realComponent = fftData[i*2];
-					imaginaryComponent = fftData[2*i+1];
-					Complex c = new Complex(realComponent, imaginaryComponent);
-					jgen.writeStartObject();
-					jgen.writeNumberField("value", c.abs()); //Amplitude
-					if(this.returnFrequency)
-						frequency = (double)i * sampleRateHz / dataLength;
-					else
-						frequency = 1d/((double)i * sampleRateHz / dataLength);
-
-					jgen.writeNumberField("frequency", frequency);
-					jgen.writeEndObject();
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			//Write the last value out as it isn't in order in the array
-			try {
-				realComponent = fftData[fftData.length/2];
-				imaginaryComponent = fftData[1];
-				Complex c = new Complex(realComponent, imaginaryComponent);
+			for(int bin=0; bin<estimator.getBins(); bin++){
 				jgen.writeStartObject();
-				jgen.writeNumberField("value", c.abs()); //Amplitude
-
-				if(this.returnFrequency)
-					frequency = (double)(((fftData.length-1)/2)-1) * sampleRateHz / dataLength;
-				else
-					frequency = 1d/((double)(((fftData.length-1)/2)-1) * sampleRateHz / dataLength);
-
-				jgen.writeNumberField("frequency", frequency);
+				jgen.writeNumberField("value", estimator.getAmplitude(bin)); //Amplitude
+				jgen.writeNumberField("frequency", getFrequency(estimator, bin));
 				jgen.writeEndObject();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
 			}
+		} catch (IOException e) {
+			LOG.error(e.getMessage(), e);
 		}
-
-		
 	}
-	
-	
+
+
 	/* (non-Javadoc)
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.QueryArrayStream#streamData(com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter)
 	 */
@@ -166,32 +115,112 @@ public class PointValueFftCalculator implements QueryArrayStream<PointValueTimeM
 	public void streamData(CSVPojoWriter<PointValueTimeModel> writer)
 			throws IOException {
 		this.setupDates();
-		
-		
+		WelchSpectrumEstimator estimator = this.calculate();
+
+		CSVWriter csv = writer.getWriter();
+		csv.writeNext(new String[]{"value", "frequency"});
+		if(estimator == null)
+			return;
+
+		String[] line = new String[2];
+		for(int bin=0; bin<estimator.getBins(); bin++){
+			line[0] = Double.toString(estimator.getAmplitude(bin));
+			line[1] = Double.toString(getFrequency(estimator, bin));
+			csv.writeNext(line);
+		}
 	}
-	
+
 	/**
-	 * Generate FFT
+	 * Frequency in Hz or period in s of a bin, the steady state bin is always 0
+	 * @param estimator
+	 * @param bin
 	 * @return
 	 */
-	public FftGenerator calculate(DateTime from, DateTime to){
+	private double getFrequency(WelchSpectrumEstimator estimator, int bin){
+		double frequency = estimator.getFrequency(bin);
+		if(this.returnFrequency || bin == 0)
+			return frequency;
+		else
+			return 1d/frequency;
+	}
+
+	/**
+	 * Generate the spectrum (assume that setup dates has been called)
+	 * @return null if there are not enough values
+	 */
+	public WelchSpectrumEstimator calculate(){
 		PointValueDao pvd = Common.databaseProxy.newPointValueDao();
-		long count = pvd.dateRangeCount(vo.getId(), from.getMillis(), to.getMillis());
-	
-		final FftGenerator generator = new FftGenerator(count);
-        //Make the call to get the data and quantize it
-        pvd.getPointValuesBetween(vo.getId(), from.getMillis(), to.getMillis(),
+		final PointValueTime first = pvd.getPointValueAfter(vo.getId(), from);
+		final PointValueTime last = pvd.getPointValueBefore(vo.getId(), to);
+		if(first == null || last == null || last.getTime() <= first.getTime())
+			return null;
+		long count = pvd.dateRangeCount(vo.getId(), first.getTime(), last.getTime());
+		if(count < 2)
+			return null;
+
+		//Resample at the average period
+		final double samplePeriodMs = (double)(last.getTime() - first.getTime()) / (double)(count - 1);
+		final long samples = (long)Math.floor((last.getTime() - first.getTime()) / samplePeriodMs) + 1;
+		int size = getSegmentSize(samples);
+		if(size < 2)
+			return null;
+
+		final WelchSpectrumEstimator estimator = new WelchSpectrumEstimator(size, overlap, windowFunction, 1000d / samplePeriodMs);
+		final double[] lastValue = new double[1];
+		final long[] emitted = new long[1];
+
+        pvd.getPointValuesBetween(vo.getId(), first.getTime(), last.getTime() + 1,
                 new MappedRowCallback<PointValueTime>() {
                     @Override
                     public void row(PointValueTime pvt, int row) {
-                        generator.data(pvt);
+                    	//Hold the previous value up to this value's time
+                    	if(row > 0){
+                    		while(emitted[0] < samples && first.getTime() + emitted[0] * samplePeriodMs < pvt.getTime()){
+                    			estimator.addSample(lastValue[0]);
+                    			emitted[0]++;
+                    		}
+                    	}
+                        lastValue[0] = pvt.getValue().getDoubleValue();
                     }
                 });
-        
-        generator.done(getEndValue());
-        return generator;
+
+        while(emitted[0] < samples){
+        	estimator.addSample(lastValue[0]);
+        	emitted[0]++;
+        }
+        return estimator;
 	}
-	
+
+	/**
+	 * @return largest window size a request may ask for
+	 */
+	public static int getMaxWindowSize(){
+		return Common.envProps.getInt(MAX_WINDOW_SIZE_PROPERTY, DEFAULT_MAX_WINDOW_SIZE);
+	}
+
+	/**
+	 * Is the requested window size a power of 2, at least 2 and no larger than the maximum
+	 * @param windowSize
+	 * @return
+	 */
+	public static boolean isValidWindowSize(int windowSize){
+		return windowSize > 1 && Integer.bitCount(windowSize) == 1 && windowSize <= getMaxWindowSize();
+	}
+
+	/**
+	 * Largest power of 2 that is no more than the requested window size or the number of samples
+	 * @param samples
+	 * @return
+	 */
+	private int getSegmentSize(long samples){
+		long limit = windowSize == null ? DEFAULT_WINDOW_SIZE : windowSize;
+		if(samples < limit)
+			limit = samples;
+		if(limit < 2)
+			return 0;
+		return Integer.highestOneBit((int)Math.min(limit, Integer.MAX_VALUE));
+	}
+
 	/**
 	 * Setup the dates based on available data
 	 */
@@ -205,14 +234,5 @@ public class PointValueFftCalculator implements QueryArrayStream<PointValueTimeM
         }
 
 	}
-	
-	/**
-	 * Get the value at to (assume that setup dates has been called)
-	 * @return
-	 */
-	private PointValueTime getEndValue(){
-		PointValueTime endPvt = Common.databaseProxy.newPointValueDao().getPointValueAt(vo.getId(), to);
-        return endPvt;
-	}
 
 }
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Outcome of a point value import
+ *
+ * @author Terry Packer
+ */
+public class PointValueImportResultModel {
+
+	@JsonProperty
+	private long imported;
+	@JsonProperty
+	private long rejected;
+	//The first errors, one per rejected point or value
+	@JsonProperty
+	private List<String> errors;
+
+	public PointValueImportResultModel() { }
+
+	public PointValueImportResultModel(long imported, long rejected, List<String> errors) {
+		this.imported = imported;
+		this.rejected = rejected;
+		this.errors = errors;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+	public void setImported(long imported) {
+		this.imported = imported;
+	}
+	public long getRejected() {
+		return rejected;
+	}
+	public void setRejected(long rejected) {
+		this.rejected = rejected;
+	}
+	public List<String> getErrors() {
+		return errors;
+	}
+	public void setErrors(List<String> errors) {
+		this.errors = errors;
+	}
+}
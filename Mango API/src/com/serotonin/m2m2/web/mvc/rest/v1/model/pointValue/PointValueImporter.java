@@ -0,0 +1,462 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.measure.converter.UnitConverter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.db.MappedRowCallback;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.db.dao.SystemSettingsDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.PermissionException;
+import com.serotonin.m2m2.vo.permission.Permissions;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.RollupCache;
+import com.serotonin.m2m2.web.mvc.spring.MangoRestSpringConfiguration;
+
+/**
+ * Imports point values for many points from a streamed body.  Values are read in batches
+ * of rest.pointValues.import.batchSize, the xids of a batch that haven't been seen are
+ * looked up in one query, and each point is validated and permission checked once.
+ *
+ * The values of a batch are grouped by point, sorted by time and saved to the point value
+ * store.  Every value is saved whatever the point's logging settings.  The latest value of
+ * each running point is also put into the point's cache, without logging it again, when the
+ * import finishes.  As the values don't go through the points' listeners the in memory latest
+ * values and the rollup cache series of every imported point are dropped at the end.
+ *
+ * Not thread safe, one per request.
+ *
+ * @author Terry Packer
+ */
+public class PointValueImporter {
+
+	private static final Log LOG = LogFactory.getLog(PointValueImporter.class);
+
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+	public static final String BATCH_SIZE_PROPERTY = "rest.pointValues.import.batchSize";
+
+	//Errors returned to the client, the rest are only counted
+	private static final int MAX_ERRORS = 100;
+	//Xids per lookup query
+	private static final int XID_QUERY_SIZE = 500;
+
+	private static final Comparator<PointValueTime> TIME_ORDER = new Comparator<PointValueTime>() {
+		@Override
+		public int compare(PointValueTime o1, PointValueTime o2) {
+			return Long.compare(o1.getTime(), o2.getTime());
+		}
+	};
+
+	private final User user;
+	private final boolean unitConversion;
+	private final int batchSize;
+	private final long futureDateLimit;
+	private final PointValueDao pointValueDao;
+
+	//Every xid seen so far
+	private final Map<String, ImportPoint> points = new HashMap<String, ImportPoint>();
+	//Current batch
+	private final List<XidPointValueTimeModel> pending;
+	private final int[] pendingRows;
+
+	private long imported;
+	private long rejected;
+	private final List<String> errors = new ArrayList<String>();
+
+	/**
+	 * @param user - user setting the values
+	 * @param unitConversion - numeric values are in the points' rendered units
+	 */
+	public PointValueImporter(User user, boolean unitConversion) {
+		this(user, unitConversion, Common.envProps.getInt(BATCH_SIZE_PROPERTY, 10000),
+				SystemSettingsDao.getFutureDateLimit(), Common.databaseProxy.newPointValueDao());
+	}
+
+	PointValueImporter(User user, boolean unitConversion, int batchSize, long futureDateLimit, PointValueDao pointValueDao) {
+		this.user = user;
+		this.unitConversion = unitConversion;
+		this.batchSize = Math.max(1, batchSize);
+		this.futureDateLimit = futureDateLimit;
+		this.pointValueDao = pointValueDao;
+		this.pending = new ArrayList<XidPointValueTimeModel>(batchSize);
+		this.pendingRows = new int[batchSize];
+	}
+
+	/**
+	 * Import one JSON object per line, {xid, value, timestamp, annotation, dataType}
+	 * @param reader
+	 * @throws IOException
+	 */
+	public void importNdjson(BufferedReader reader) throws IOException {
+		ObjectMapper mapper = MangoRestSpringConfiguration.getObjectMapper();
+		String line;
+		int row = 0;
+		while((line = reader.readLine()) != null){
+			row++;
+			if(StringUtils.isBlank(line))
+				continue;
+			XidPointValueTimeModel model;
+			try{
+				model = mapper.readValue(line, XidPointValueTimeModel.class);
+			}catch(IOException e){
+				reject(row, null, "Invalid JSON");
+				continue;
+			}
+			add(model, row);
+		}
+	}
+
+	/**
+	 * Import CSV rows, the columns are xid, timestamp, value and annotation unless the
+	 * first row is a header naming them.  Timestamps are epoch milliseconds or ISO 8601 and
+	 * the dataType column is optional.
+	 * @param reader
+	 * @throws IOException
+	 */
+	public void importCsv(BufferedReader reader) throws IOException {
+		CSVReader csv = new CSVReader(reader);
+		int xidColumn = 0, timestampColumn = 1, valueColumn = 2, annotationColumn = 3, dataTypeColumn = -1;
+		String[] next;
+		int row = 0;
+		while((next = csv.readNext()) != null){
+			row++;
+			if(row == 1 && next.length > 0 && "xid".equalsIgnoreCase(next[0].trim())){
+				xidColumn = timestampColumn = valueColumn = annotationColumn = -1;
+				for(int i=0; i<next.length; i++){
+					String header = next[i].trim();
+					if("xid".equalsIgnoreCase(header))
+						xidColumn = i;
+					else if("timestamp".equalsIgnoreCase(header))
+						timestampColumn = i;
+					else if("value".equalsIgnoreCase(header))
+						valueColumn = i;
+					else if("annotation".equalsIgnoreCase(header))
+						annotationColumn = i;
+					else if("dataType".equalsIgnoreCase(header))
+						dataTypeColumn = i;
+				}
+				if(xidColumn == -1 || valueColumn == -1)
+					throw new IOException("CSV header must have xid and value columns");
+				continue;
+			}
+			if(next.length == 1 && StringUtils.isBlank(next[0]))
+				continue;
+
+			XidPointValueTimeModel model = new XidPointValueTimeModel();
+			try{
+				model.setXid(column(next, xidColumn));
+				model.setValue(column(next, valueColumn));
+				String timestamp = column(next, timestampColumn);
+				if(timestamp != null)
+					model.setTimestamp(StringUtils.isNumeric(timestamp) ? Long.parseLong(timestamp) : new DateTime(timestamp).getMillis());
+				model.setAnnotation(column(next, annotationColumn));
+				String dataType = column(next, dataTypeColumn);
+				if(dataType != null)
+					model.setType(DataTypeEnum.valueOf(dataType.toUpperCase()));
+			}catch(IllegalArgumentException e){
+				reject(row, model.getXid(), "Invalid " + e.getMessage());
+				continue;
+			}
+			add(model, row);
+		}
+	}
+
+	/**
+	 * Save the remaining values, put the latest value of each running point into its
+	 * cache and drop what was cached from the values before the import
+	 */
+	public void finish() {
+		flush();
+		for(ImportPoint point : points.values()){
+			if(!point.written)
+				continue;
+			if(point.rt != null){
+				if(point.latest != null){
+					point.rt.savePointValueDirectToCache(point.latest, null, false, true);
+					point.latest = null;
+				}
+				PointValueSnapshotIndex.instance.invalidate(point.vo.getId());
+			}
+			RollupCache.instance.invalidate(point.vo.getId());
+			point.written = false;
+		}
+		if(LOG.isDebugEnabled())
+			LOG.debug("Imported " + imported + " point values, rejected " + rejected);
+	}
+
+	public PointValueImportResultModel getResult() {
+		return new PointValueImportResultModel(imported, rejected, errors);
+	}
+
+	private String column(String[] row, int column) {
+		if(column < 0 || column >= row.length || row[column].isEmpty())
+			return null;
+		return row[column];
+	}
+
+	private void add(XidPointValueTimeModel model, int row) {
+		if(StringUtils.isBlank(model.getXid())){
+			reject(row, null, "Missing xid");
+			return;
+		}
+		pendingRows[pending.size()] = row;
+		pending.add(model);
+		if(pending.size() == batchSize)
+			flush();
+	}
+
+	/**
+	 * Resolve the new xids of the batch and save its values by point
+	 */
+	private void flush() {
+		if(pending.isEmpty())
+			return;
+
+		Set<String> unknown = new LinkedHashSet<String>();
+		for(XidPointValueTimeModel model : pending)
+			if(!points.containsKey(model.getXid()))
+				unknown.add(model.getXid());
+		if(!unknown.isEmpty())
+			resolve(unknown);
+
+		List<ImportPoint> batch = new ArrayList<ImportPoint>();
+		for(int i=0; i<pending.size(); i++){
+			XidPointValueTimeModel model = pending.get(i);
+			ImportPoint point = points.get(model.getXid());
+			if(point.rejection != null){
+				rejected++;
+				continue;
+			}
+			PointValueTime pvt = point.convert(model, pendingRows[i]);
+			if(pvt == null)
+				continue;
+			if(point.values.isEmpty())
+				batch.add(point);
+			point.values.add(pvt);
+		}
+		pending.clear();
+
+		for(ImportPoint point : batch)
+			imported += point.write();
+	}
+
+	/**
+	 * Look up points by xid, a few hundred per query
+	 * @param xids
+	 */
+	private void resolve(Set<String> xids) {
+		List<String> chunk = new ArrayList<String>(XID_QUERY_SIZE);
+		for(String xid : xids){
+			chunk.add(xid);
+			if(chunk.size() == XID_QUERY_SIZE){
+				query(chunk);
+				chunk.clear();
+			}
+		}
+		if(!chunk.isEmpty())
+			query(chunk);
+
+		for(String xid : xids)
+			if(!points.containsKey(xid))
+				points.put(xid, new ImportPoint(xid, "Point does not exist"));
+	}
+
+	private void query(List<String> xids) {
+		for(DataPointVO vo : lookup(xids))
+			points.put(vo.getXid(), new ImportPoint(vo));
+	}
+
+	/**
+	 * @param xids
+	 * @return the points that exist
+	 */
+	List<DataPointVO> lookup(List<String> xids) {
+		StringBuilder sql = new StringBuilder(DataPointDao.instance.getSelectAllSql());
+		sql.append(" WHERE dp.xid IN (");
+		for(int i=0; i<xids.size(); i++)
+			sql.append(i == 0 ? "?" : ",?");
+		sql.append(")");
+
+		final List<DataPointVO> vos = new ArrayList<DataPointVO>(xids.size());
+		DataPointDao.instance.query(sql.toString(), xids.toArray(), DataPointDao.instance.getRowMapper(), new MappedRowCallback<DataPointVO>(){
+			@Override
+			public void row(DataPointVO vo, int index) {
+				vos.add(vo);
+			}
+		});
+		return vos;
+	}
+
+	/**
+	 * @param vo
+	 * @return the running point, null if it isn't running
+	 */
+	DataPointRT getRuntime(DataPointVO vo) {
+		return Common.runtimeManager.getDataPoint(vo.getId());
+	}
+
+	private void reject(int row, String xid, String message) {
+		rejected++;
+		if(errors.size() < MAX_ERRORS)
+			errors.add("Row " + row + (xid == null ? "" : " [" + xid + "]") + ": " + message);
+	}
+
+	/**
+	 * A point being imported and its values in the current batch
+	 */
+	class ImportPoint {
+		final DataPointVO vo;
+		final DataPointRT rt;
+		//Why values of this point are rejected, null if they can be saved
+		final String rejection;
+		//Rendered unit to unit, resolved on first use
+		UnitConverter converter;
+
+		List<PointValueTime> values = new ArrayList<PointValueTime>();
+		//Newest value of a running point, put into its cache at the end
+		PointValueTime latest;
+		//Values were saved since the last finish
+		boolean written;
+
+		ImportPoint(String xid, String rejection) {
+			this.vo = null;
+			this.rt = null;
+			this.rejection = rejection;
+			//Once per point rather than for every value
+			if(errors.size() < MAX_ERRORS)
+				errors.add("[" + xid + "]: " + rejection);
+		}
+
+		ImportPoint(DataPointVO vo) {
+			this.vo = vo;
+			String rejection = null;
+			try{
+				if(!Permissions.hasDataPointSetPermission(user, vo))
+					rejection = "Permission denied";
+			}catch(PermissionException e){
+				rejection = "Permission denied";
+			}
+			if(rejection == null && unitConversion && vo.getPointLocator().getDataTypeId() != DataTypes.NUMERIC)
+				rejection = "Cannot perform unit conversion on Non Numeric data types.";
+			if(rejection != null && errors.size() < MAX_ERRORS)
+				errors.add("[" + vo.getXid() + "]: " + rejection);
+			this.rejection = rejection;
+			this.rt = rejection == null ? getRuntime(vo) : null;
+		}
+
+		/**
+		 * Validate a value for this point
+		 * @return the value, null if it was rejected
+		 */
+		PointValueTime convert(XidPointValueTimeModel model, int row) {
+			int dataTypeId = vo.getPointLocator().getDataTypeId();
+			if(model.getType() != null && DataTypeEnum.convertFrom(model.getType()) != dataTypeId){
+				reject(row, vo.getXid(), new TranslatableMessage("event.ds.dataType").translate(Common.getTranslations()));
+				return null;
+			}
+
+			long time = model.getTimestamp() == 0 ? System.currentTimeMillis() : model.getTimestamp();
+			if(time > System.currentTimeMillis() + futureDateLimit){
+				reject(row, vo.getXid(), "Future dated points not acceptable.");
+				return null;
+			}
+
+			Object value = model.getValue();
+			if(value == null){
+				reject(row, vo.getXid(), "Missing value");
+				return null;
+			}
+			DataValue dataValue;
+			try{
+				switch(dataTypeId){
+					case DataTypes.ALPHANUMERIC:
+						dataValue = new AlphanumericValue(value.toString());
+					break;
+					case DataTypes.BINARY:
+						dataValue = value instanceof Boolean ? new BinaryValue((Boolean)value) : DataValue.stringToValue((String)value, dataTypeId);
+					break;
+					case DataTypes.MULTISTATE:
+						if(value instanceof Number)
+							dataValue = new MultistateValue(((Number)value).intValue());
+						else
+							dataValue = vo.getTextRenderer().parseText((String)value, dataTypeId);
+					break;
+					case DataTypes.NUMERIC:
+						double number = value instanceof Number ? ((Number)value).doubleValue() : Double.parseDouble((String)value);
+						if(unitConversion){
+							if(converter == null)
+								converter = vo.getRenderedUnit().getConverterTo(vo.getUnit());
+							number = converter.convert(number);
+						}
+						dataValue = new NumericValue(number);
+					break;
+					default:
+						reject(row, vo.getXid(), "Values of this data type can't be imported");
+						return null;
+				}
+			}catch(Exception e){
+				//Missing values, wrong types and unparseable text
+				dataValue = null;
+			}
+			if(dataValue == null){
+				reject(row, vo.getXid(), "Invalid value");
+				return null;
+			}
+
+			if(model.getAnnotation() != null)
+				return new AnnotatedPointValueTime(dataValue, time, new TranslatableMessage("common.default", model.getAnnotation()));
+			return new PointValueTime(dataValue, time);
+		}
+
+		/**
+		 * Save the batch's values in time order
+		 * @return the number of values
+		 */
+		int write() {
+			int count = values.size();
+			Collections.sort(values, TIME_ORDER);
+			for(PointValueTime pvt : values){
+				pointValueDao.savePointValueAsync(vo.getId(), pvt, null);
+				if(rt != null && (latest == null || pvt.getTime() >= latest.getTime()))
+					latest = pvt;
+			}
+			values = new ArrayList<PointValueTime>();
+			written = written || count > 0;
+			return count;
+		}
+	}
+}
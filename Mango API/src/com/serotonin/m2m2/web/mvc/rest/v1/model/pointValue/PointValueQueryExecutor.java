@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Bounded pool shared by all REST point value queries that fetch
+ * several points concurrently.  The pool size is set by the env property
+ * rest.pointValues.queryThreads, idle threads are released after a minute.
+ *
+ * @author Terry Packer
+ */
+public class PointValueQueryExecutor {
+
+	private static final int DEFAULT_THREADS = 4;
+	private static volatile PointValueQueryExecutor instance;
+
+	private final ThreadPoolExecutor executor;
+	private final int threads;
+
+	private PointValueQueryExecutor(int threads){
+		this.threads = threads;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Point value query " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static PointValueQueryExecutor getInstance(){
+		if(instance == null){
+			synchronized(PointValueQueryExecutor.class){
+				if(instance == null){
+					int threads = Common.envProps.getInt("rest.pointValues.queryThreads", DEFAULT_THREADS);
+					if(threads < 1)
+						threads = 1;
+					instance = new PointValueQueryExecutor(threads);
+				}
+			}
+		}
+		return instance;
+	}
+
+	public <T> Future<T> submit(Callable<T> task){
+		return this.executor.submit(task);
+	}
+
+	/**
+	 * Number of queries that can run at the same time
+	 * @return
+	 */
+	public int getThreads(){
+		return threads;
+	}
+}
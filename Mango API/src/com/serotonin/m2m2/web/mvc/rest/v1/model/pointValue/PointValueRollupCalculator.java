@@ -6,6 +6,7 @@ package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -23,8 +24,10 @@ import com.serotonin.m2m2.view.quantize2.AbstractDataQuantizer;
 import com.serotonin.m2m2.view.quantize2.AnalogStatisticsQuantizer;
 import com.serotonin.m2m2.view.quantize2.BucketCalculator;
 import com.serotonin.m2m2.view.quantize2.BucketsBucketCalculator;
+import com.serotonin.m2m2.view.quantize2.StatisticsGeneratorQuantizerCallback;
 import com.serotonin.m2m2.view.quantize2.TimePeriodBucketCalculator;
 import com.serotonin.m2m2.view.quantize2.ValueChangeCounterQuantizer;
+import com.serotonin.m2m2.view.stats.AnalogStatistics;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.pair.LongPair;
 import com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter;
@@ -36,6 +39,8 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.statistics.NumericPoi
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriod;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriodType;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.RollupCache;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.RollupCacheEntry;
 
 /**
  * @author Terry Packer
@@ -97,6 +102,10 @@ public class PointValueRollupCalculator implements QueryArrayStream<PointValueTi
 	public void streamData(JsonGenerator jgen) {
 		
 		this.setupDates();
+		if(RollupCache.instance.canCache(vo, rollup, period)){
+			this.streamCached(new PointValueTimeJsonWriter(host, port, jgen, useRendered, unitConversion));
+			return;
+		}
 
 		DataValue startValue = this.getStartValue();
 		
@@ -129,6 +138,10 @@ public class PointValueRollupCalculator implements QueryArrayStream<PointValueTi
 	public void streamData(CSVPojoWriter<PointValueTimeModel> writer)
 			throws IOException {
 		this.setupDates();
+		if(RollupCache.instance.canCache(vo, rollup, period)){
+			this.streamCached(new PointValueTimeCsvWriter(host, port, writer.getWriter(), useRendered, unitConversion));
+			return;
+		}
 
 		DataValue startValue = this.getStartValue();
 
@@ -153,6 +166,122 @@ public class PointValueRollupCalculator implements QueryArrayStream<PointValueTi
 		this.calculate(quantizer, startTime, endTime);
 	}
 
+	/**
+	 * Write the periods that are in the rollup cache and compute the rest,
+	 * storing any newly finished periods.
+	 * 
+	 * Backdates drop the series through the cache's point listener, the number of values
+	 * in the cached periods is only compared with the database when the cache asks for it,
+	 * if it no longer matches the whole series is dropped and recomputed.
+	 * 
+	 * @param writer
+	 */
+	private void streamCached(final PointValueTimeWriter writer){
+		final RollupCache cache = RollupCache.instance;
+		final PointValueDao pvd = Common.databaseProxy.newPointValueDao();
+		final DateTime startTime = this.getStartTime();
+		final DateTime endTime = this.getEndTime();
+		final String seriesId = cache.getSeriesId(vo, rollup, period, startTime.getZone());
+		final Map<Long, RollupCacheEntry> cached = cache.getEntries(vo.getId(), seriesId, startTime.getMillis(), endTime.getMillis());
+		final LimitCounter limiter = new LimitCounter(limit);
+
+		//Find the run of cached periods from the start
+		BucketCalculator bc = this.getBucketCalculator(startTime, endTime);
+		DateTime tailStart = bc.getStartTime();
+		int cachedPeriods = 0;
+		long cachedCount = 0;
+		long firstTime = 0, lastTime = 0;
+		while(tailStart.isBefore(endTime)){
+			RollupCacheEntry entry = cached.get(tailStart.getMillis());
+			if(entry == null)
+				break;
+			DateTime periodTo = bc.getNextPeriodTo();
+			if(periodTo.isAfter(endTime))
+				break;
+			cachedPeriods++;
+			if(entry.getCount() > 0){
+				if(cachedCount == 0)
+					firstTime = entry.getFirstTime();
+				lastTime = entry.getLastTime();
+			}
+			cachedCount += entry.getCount();
+			tailStart = periodTo;
+		}
+
+		if(cachedPeriods > 0 && cache.needsValidation(seriesId)){
+			if(!agrees(pvd, startTime.getMillis(), tailStart.getMillis(), cachedCount, firstTime, lastTime)){
+				cache.invalidate(seriesId);
+				cached.clear();
+				cachedPeriods = 0;
+				tailStart = startTime;
+			}else
+				cache.validated(seriesId);
+		}
+
+		try{
+			DateTime periodFrom = startTime;
+			BucketCalculator cachedBc = this.getBucketCalculator(startTime, endTime);
+			for(int i=0; i<cachedPeriods; i++){
+				if(limiter.limited())
+					return;
+				cached.get(periodFrom.getMillis()).write(writer, vo, rollup);
+				periodFrom = cachedBc.getNextPeriodTo();
+			}
+		}catch(IOException e){
+			LOG.error(e.getMessage(), e);
+			return;
+		}
+
+		if(!tailStart.isBefore(endTime))
+			return;
+
+		//Compute the tail, the value going into the first period is the value at or before its start
+		final long now = Common.timer.currentTimeMillis();
+		final AnalogStatisticsQuantizer quantizer = new AnalogStatisticsQuantizer(this.getBucketCalculator(tailStart, endTime),
+				PointValueTime.getValue(pvd.getPointValueBefore(vo.getId(), tailStart.getMillis() + 1)),
+				new StatisticsGeneratorQuantizerCallback<AnalogStatistics>(){
+					@Override
+					public void quantizedStatistics(AnalogStatistics statisticsGenerator, boolean done) {
+						RollupCacheEntry entry = RollupCacheEntry.create(statisticsGenerator, rollup);
+						long periodEnd = statisticsGenerator.getPeriodEndTime();
+						if(periodEnd < endTime.getMillis() && periodEnd <= now && !cached.containsKey(entry.getTime()))
+							cache.store(vo.getId(), seriesId, entry);
+						if(limiter.limited())
+							return;
+						try{
+							entry.write(writer, vo, rollup);
+						}catch(IOException e){
+							LOG.error(e.getMessage(), e);
+						}
+					}
+				});
+		this.calculate(quantizer, tailStart, endTime);
+	}
+
+	/**
+	 * Does the history of the point still have the values the cached periods were computed
+	 * from, checked by their number and the times of the first and last of them.  Changing
+	 * a value in place or moving values inside the range is not noticed.
+	 * @param pvd
+	 * @param from
+	 * @param to - exclusive
+	 * @param count
+	 * @param firstTime
+	 * @param lastTime
+	 * @return
+	 */
+	private boolean agrees(PointValueDao pvd, long from, long to, long count, long firstTime, long lastTime){
+		if(pvd.dateRangeCount(vo.getId(), from, to - 1) != count)
+			return false;
+		if(count == 0)
+			return true;
+		PointValueTime first = pvd.getPointValueAfter(vo.getId(), from);
+		if(first == null || first.getTime() != firstTime)
+			return false;
+		PointValueTime last = pvd.getPointValueBefore(vo.getId(), to);
+		return last != null && last.getTime() == lastTime;
+	}
+
 	private void setupDates(){
         // Determine the start and end times.
         if (from == null) {
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueFacade;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Keeps the most recent values of running points in memory so the latest value endpoints
+ * can be answered without the database.  A point's ring is filled from its cache and
+ * the database the first time it is queried and then kept up to date by a data point
+ * listener, until the point is stopped, when the ring and its listener are dropped.
+ *
+ * The ring size is set with the env property rest.pointValues.snapshotSize, 0 disables it.
+ *
+ * @author Terry Packer
+ */
+public class PointValueSnapshotIndex {
+
+	private static final Log LOG = LogFactory.getLog(PointValueSnapshotIndex.class);
+
+	public static final String SIZE_PROPERTY = "rest.pointValues.snapshotSize";
+
+	public static final PointValueSnapshotIndex instance = new PointValueSnapshotIndex();
+
+	private final ConcurrentHashMap<Integer, PointSnapshot> snapshots = new ConcurrentHashMap<Integer, PointSnapshot>();
+	private final int size;
+
+	private PointValueSnapshotIndex() {
+		this.size = Common.envProps.getInt(SIZE_PROPERTY, 100);
+	}
+
+	/**
+	 * Get the latest values of a point, from memory when possible
+	 * @param vo
+	 * @param limit
+	 * @param useCache - include values that are only in the point's cache
+	 * @return values in time descending order
+	 */
+	public List<PointValueTime> getLatestPointValues(DataPointVO vo, int limit, boolean useCache) {
+		if(useCache){
+			List<SnapshotValue> values = getLatestValues(vo, limit);
+			if(values != null){
+				List<PointValueTime> pvts = new ArrayList<PointValueTime>(values.size());
+				for(SnapshotValue value : values)
+					pvts.add(value.getValue());
+				return pvts;
+			}
+		}
+		return new PointValueFacade(vo.getId(), useCache).getLatestPointValues(limit);
+	}
+
+	/**
+	 * Get the latest values of a running point from memory
+	 * @param vo
+	 * @param limit
+	 * @return values in time descending order, null if they can't be answered from memory
+	 */
+	public List<SnapshotValue> getLatestValues(DataPointVO vo, int limit) {
+		if(size <= 0 || limit <= 0)
+			return null;
+		DataPointRT rt = Common.runtimeManager.getDataPoint(vo.getId());
+		if(rt == null)
+			return null;
+
+		final int dataPointId = vo.getId();
+		PointSnapshot snapshot = snapshots.get(dataPointId);
+		if(snapshot == null){
+			snapshot = new PointSnapshot(dataPointId, size){
+				@Override
+				void terminated() {
+					evict(dataPointId, this);
+				}
+			};
+			PointSnapshot existing = snapshots.putIfAbsent(dataPointId, snapshot);
+			if(existing == null)
+				Common.runtimeManager.addDataPointListener(dataPointId, snapshot);
+			else
+				snapshot = existing;
+		}
+
+		if(snapshot.startListening())
+			snapshot.fill(rt);
+		return snapshot.getLatest(limit);
+	}
+
+	/**
+	 * Drop the values of a point, for when values were saved around the point's
+	 * listener.  The ring is filled again the next time the point is queried.
+	 * @param dataPointId
+	 */
+	public void invalidate(int dataPointId) {
+		PointSnapshot snapshot = snapshots.get(dataPointId);
+		if(snapshot != null)
+			snapshot.pointTerminated();
+	}
+
+	/**
+	 * Stop listening to a point and forget its ring
+	 * @param dataPointId
+	 * @param snapshot
+	 */
+	private void evict(int dataPointId, PointSnapshot snapshot) {
+		if(snapshots.remove(dataPointId, snapshot))
+			Common.runtimeManager.removeDataPointListener(dataPointId, snapshot);
+	}
+
+	/**
+	 * A value and whether it came from the point's cache
+	 */
+	public static class SnapshotValue {
+		private final PointValueTime value;
+		private final boolean cached;
+
+		SnapshotValue(PointValueTime value, boolean cached) {
+			this.value = value;
+			this.cached = cached;
+		}
+
+		public PointValueTime getValue() {
+			return value;
+		}
+
+		public boolean isCached() {
+			return cached;
+		}
+	}
+
+	/**
+	 * Ring of the latest values of one point, newest first
+	 *
+	 * @author Terry Packer
+	 */
+	static class PointSnapshot implements DataPointListener {
+
+		private final int dataPointId;
+		private final PointValueTime[] values;
+		private final boolean[] cached;
+		//Physical index of the newest value
+		private int start;
+		private int count;
+		//Values are being added, set until the point stops
+		private boolean listening;
+		//Filled from the cache and database so queries can be answered
+		private boolean ready;
+
+		PointSnapshot(int dataPointId, int size) {
+			this.dataPointId = dataPointId;
+			this.values = new PointValueTime[size];
+			this.cached = new boolean[size];
+		}
+
+		/**
+		 * @return true if the caller must fill the ring
+		 */
+		synchronized boolean startListening() {
+			if(listening)
+				return false;
+			listening = true;
+			return true;
+		}
+
+		/**
+		 * Merge the point's cache and the latest values in the database, outside the lock
+		 * so the point's updates are not held up by the query
+		 * @param rt
+		 */
+		void fill(DataPointRT rt) {
+			try{
+				List<PointValueTime> disk = Common.databaseProxy.newPointValueDao().getLatestPointValues(dataPointId, values.length);
+				fill(disk, rt.getCacheCopy());
+			}catch(RuntimeException e){
+				LOG.error("Failed to fill point value snapshot for point " + dataPointId, e);
+				synchronized(this){
+					clear();
+				}
+			}
+		}
+
+		/**
+		 * Merge values into the ring and make it ready to be queried
+		 * @param disk - values from the database
+		 * @param cache - values from the point's cache
+		 */
+		synchronized void fill(List<PointValueTime> disk, List<PointValueTime> cache) {
+			if(!listening)
+				return;
+			for(PointValueTime pvt : disk)
+				add(pvt, false);
+			for(PointValueTime pvt : cache)
+				add(pvt, true);
+			ready = true;
+		}
+
+		/**
+		 * @param limit
+		 * @return the latest values, null if not ready or the limit is beyond what the ring holds
+		 */
+		synchronized List<SnapshotValue> getLatest(int limit) {
+			//A ring that isn't full holds the whole history
+			if(!ready || (limit > values.length && count == values.length))
+				return null;
+			int n = Math.min(limit, count);
+			List<SnapshotValue> latest = new ArrayList<SnapshotValue>(n);
+			for(int i=0; i<n; i++){
+				int index = physical(i);
+				latest.add(new SnapshotValue(values[index], cached[index]));
+			}
+			return latest;
+		}
+
+		/**
+		 * Add a value in time order, a value with the same time as one in the ring replaces it
+		 */
+		private void add(PointValueTime pvt, boolean fromCache) {
+			//Find the first value that is not newer
+			int position = 0;
+			while(position < count && values[physical(position)].getTime() > pvt.getTime())
+				position++;
+
+			if(position < count && values[physical(position)].getTime() == pvt.getTime()){
+				int index = physical(position);
+				values[index] = pvt;
+				cached[index] = cached[index] || fromCache;
+				return;
+			}
+
+			if(position == 0){
+				//Newest value, the common case
+				start = (start - 1 + values.length) % values.length;
+				values[start] = pvt;
+				cached[start] = fromCache;
+				if(count < values.length)
+					count++;
+				return;
+			}
+
+			if(position == values.length)
+				return; //Older than everything in a full ring
+
+			//Shift the older values down, dropping the oldest if the ring is full
+			int last = count < values.length ? count : values.length - 1;
+			for(int i=last; i>position; i--){
+				values[physical(i)] = values[physical(i - 1)];
+				cached[physical(i)] = cached[physical(i - 1)];
+			}
+			values[physical(position)] = pvt;
+			cached[physical(position)] = fromCache;
+			if(count < values.length)
+				count++;
+		}
+
+		private int physical(int logical) {
+			return (start + logical) % values.length;
+		}
+
+		/**
+		 * Called after the point stopped and the ring was cleared
+		 */
+		void terminated() { }
+
+		private void clear() {
+			for(int i=0; i<values.length; i++)
+				values[i] = null;
+			start = 0;
+			count = 0;
+			listening = false;
+			ready = false;
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointUpdated(com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public synchronized void pointUpdated(PointValueTime newValue) {
+			if(listening && newValue != null)
+				add(newValue, true);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointBackdated(com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public synchronized void pointBackdated(PointValueTime value) {
+			if(listening && value != null)
+				add(value, false);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointTerminated()
+		 */
+		@Override
+		public void pointTerminated() {
+			synchronized(this){
+				clear();
+			}
+			terminated();
+		}
+
+		@Override
+		public void pointInitialized() { }
+
+		@Override
+		public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+
+		@Override
+		public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+
+		@Override
+		public void pointLogged(PointValueTime value) { }
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#getListenerName()
+		 */
+		@Override
+		public String getListenerName() {
+			return "Point value snapshot for DP " + dataPointId;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A point value stream that can be written in the binary columnar format
+ * of the PointValueTimeBinaryWriter
+ * 
+ * @author Terry Packer
+ */
+public interface PointValueTimeBinaryStream {
+
+	/**
+	 * Write the point values to the output
+	 * @param out
+	 * @throws IOException
+	 */
+	public void streamData(OutputStream out) throws IOException;
+
+}
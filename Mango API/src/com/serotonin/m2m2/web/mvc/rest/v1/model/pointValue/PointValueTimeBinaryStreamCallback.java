@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.io.IOException;
+
+import com.serotonin.db.MappedRowCallback;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Writes the values of one point into a PointValueTimeBinaryWriter
+ * 
+ * @author Terry Packer
+ */
+public class PointValueTimeBinaryStreamCallback implements MappedRowCallback<PointValueTime>{
+
+	private final PointValueTimeBinaryWriter writer;
+	private final Translations translations;
+	private final DataPointVO vo;
+	private final LimitCounter limiter;
+	
+	/**
+	 * @param writer - writer with the point's series started
+	 * @param vo
+	 * @param limit
+	 */
+	public PointValueTimeBinaryStreamCallback(PointValueTimeBinaryWriter writer, DataPointVO vo, Integer limit) {
+		this.writer = writer;
+		this.vo = vo;
+		this.limiter = new LimitCounter(limit);
+		this.translations = Common.getTranslations();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.db.MappedRowCallback#row(java.lang.Object, int)
+	 */
+	@Override
+	public void row(PointValueTime pvt, int index) {
+		if(this.limiter.limited())
+			return;
+		
+		try{
+			String annotation = null;
+			if(pvt.isAnnotated())
+				annotation = ((AnnotatedPointValueTime) pvt).getAnnotation(translations);
+			if(writer.useRendered){
+				//Convert to Alphanumeric Value
+				String textValue = writer.transformer.render(vo, pvt);
+				writer.writePointValueTime(new AlphanumericValue(textValue), pvt.getTime(), annotation, vo);
+			}else{
+				//Numeric values are converted a chunk at a time by the writer
+				writer.writePointValueTime(pvt.getValue(), pvt.getTime(), annotation, vo);
+			}
+		}catch(IOException e){
+			//Client has gone away, stop the query
+			throw new QueryCancelledException(e);
+		}
+		
+		if(this.limiter.reached())
+			throw new QueryCancelledException();
+	}
+
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Writes point values in a compact binary columnar format, values are buffered into
+ * chunks of up to CHUNK_SIZE and each chunk is written as a timestamp column followed
+ * by a value column so clients can read whole arrays without parsing field names.
+ *
+ * All numbers are big endian:
+ *
+ * stream     := 'M' 'P' 'V' 'B' version(byte) series* END(byte 0)
+ * series     := SERIES(byte 1) xid(string) chunk*
+ * chunk      := CHUNK(byte 2) type(byte) count(int) firstTime(long) timeDelta(varlong) x (count - 1)
+ *               values annotationCount(int) (index(int) annotation(string)) x annotationCount
+ * values     := NULL(0): nothing, DOUBLE(1): IEEE 754 double x count, INT(2): int x count,
+ *               BOOLEAN(3): byte x count, STRING(4): string x count
+ * string     := length(varint) UTF-8 bytes
+ *
+ * Time deltas are zig zag encoded so values out of time order still round trip.
+ * A new chunk is started whenever the type of the values changes.
+ *
+ * @author Terry Packer
+ */
+public class PointValueTimeBinaryWriter extends PointValueTimeWriter {
+
+	public static final byte VERSION = 1;
+	public static final int CHUNK_SIZE = 1024;
+
+	public static final byte BLOCK_END = 0;
+	public static final byte BLOCK_SERIES = 1;
+	public static final byte BLOCK_CHUNK = 2;
+
+	public static final byte TYPE_NULL = 0;
+	public static final byte TYPE_DOUBLE = 1;
+	public static final byte TYPE_INT = 2;
+	public static final byte TYPE_BOOLEAN = 3;
+	public static final byte TYPE_STRING = 4;
+
+	private final DataOutputStream out;
+	//Point whose numeric values are converted to its rendered unit when a chunk is written
+	private DataPointVO convertPoint;
+
+	//Current chunk
+	private byte type;
+	private int count;
+	private final long[] times = new long[CHUNK_SIZE];
+	private final double[] doubles = new double[CHUNK_SIZE];
+	private final int[] ints = new int[CHUNK_SIZE];
+	private final boolean[] booleans = new boolean[CHUNK_SIZE];
+	private final String[] strings = new String[CHUNK_SIZE];
+	private final String[] annotations = new String[CHUNK_SIZE];
+	private int annotationCount;
+
+	public PointValueTimeBinaryWriter(String host, int port, OutputStream out, boolean useRendered, boolean unitConversion) throws IOException {
+		super(host, port, useRendered, unitConversion);
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeBytes("MPVB");
+		this.out.writeByte(VERSION);
+	}
+
+	/**
+	 * Start the values of a point, ends the previous point's values.  With unit conversion
+	 * the numeric values of the point are written raw and converted a chunk at a time.
+	 * @param vo
+	 * @throws IOException
+	 */
+	public void startSeries(DataPointVO vo) throws IOException {
+		flushChunk();
+		out.writeByte(BLOCK_SERIES);
+		writeString(vo.getXid());
+		if(unitConversion && !useRendered && vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)
+			convertPoint = vo;
+		else
+			convertPoint = null;
+	}
+
+	/**
+	 * Write any buffered values and the end of the stream
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		flushChunk();
+		out.writeByte(BLOCK_END);
+		out.flush();
+	}
+
+	@Override
+	public void writePointValueTime(double value, long timestamp, String annotation, DataPointVO vo) throws IOException {
+		doubles[add(TYPE_DOUBLE, timestamp, annotation)] = value;
+	}
+
+	@Override
+	public void writePointValueTime(int value, long timestamp, String annotation, DataPointVO vo) throws IOException {
+		ints[add(TYPE_INT, timestamp, annotation)] = value;
+	}
+
+	@Override
+	public void writePointValueTime(String value, long timestamp, String annotation, DataPointVO vo) throws IOException {
+		strings[add(TYPE_STRING, timestamp, annotation)] = value;
+	}
+
+	@Override
+	public void writePointValueTime(DataValue value, long timestamp, String annotation, DataPointVO vo) throws IOException {
+		if(value == null){
+			add(TYPE_NULL, timestamp, annotation);
+			return;
+		}
+		switch(value.getDataType()){
+			case DataTypes.ALPHANUMERIC:
+				writePointValueTime(value.getStringValue(), timestamp, annotation, vo);
+			break;
+			case DataTypes.BINARY:
+				booleans[add(TYPE_BOOLEAN, timestamp, annotation)] = value.getBooleanValue();
+			break;
+			case DataTypes.MULTISTATE:
+				writePointValueTime(value.getIntegerValue(), timestamp, annotation, vo);
+			break;
+			case DataTypes.NUMERIC:
+				writePointValueTime(value.getDoubleValue(), timestamp, annotation, vo);
+			break;
+			case DataTypes.IMAGE:
+				writePointValueTime(imageServletBuilder.buildAndExpand(timestamp, vo.getId()).toUri().toString(), timestamp, annotation, vo);
+			break;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeWriter#writeAllStatistics(com.serotonin.m2m2.view.stats.StatisticsGenerator, com.serotonin.m2m2.vo.DataPointVO)
+	 */
+	@Override
+	public void writeAllStatistics(StatisticsGenerator statisticsGenerator, DataPointVO vo) throws IOException {
+		throw new ShouldNeverHappenException("Statistics are not supported by the binary format");
+	}
+
+	/**
+	 * Make room for a value in the current chunk
+	 * @return the index to store the value at
+	 */
+	private int add(byte type, long timestamp, String annotation) throws IOException {
+		if(count == CHUNK_SIZE || (count > 0 && type != this.type))
+			flushChunk();
+		this.type = type;
+		times[count] = timestamp;
+		if(annotation != null){
+			annotations[count] = annotation;
+			annotationCount++;
+		}
+		return count++;
+	}
+
+	private void flushChunk() throws IOException {
+		if(count == 0)
+			return;
+
+		out.writeByte(BLOCK_CHUNK);
+		out.writeByte(type);
+		out.writeInt(count);
+		out.writeLong(times[0]);
+		for(int i=1; i<count; i++){
+			long delta = times[i] - times[i - 1];
+			writeVarLong((delta << 1) ^ (delta >> 63));
+		}
+
+		switch(type){
+			case TYPE_DOUBLE:
+				if(convertPoint != null)
+					transformer.convert(convertPoint, doubles, 0, count);
+				for(int i=0; i<count; i++)
+					out.writeDouble(doubles[i]);
+			break;
+			case TYPE_INT:
+				for(int i=0; i<count; i++)
+					out.writeInt(ints[i]);
+			break;
+			case TYPE_BOOLEAN:
+				for(int i=0; i<count; i++)
+					out.writeByte(booleans[i] ? 1 : 0);
+			break;
+			case TYPE_STRING:
+				for(int i=0; i<count; i++){
+					writeString(strings[i]);
+					strings[i] = null;
+				}
+			break;
+		}
+
+		out.writeInt(annotationCount);
+		if(annotationCount > 0){
+			for(int i=0; i<count; i++){
+				if(annotations[i] != null){
+					out.writeInt(i);
+					writeString(annotations[i]);
+					annotations[i] = null;
+				}
+			}
+		}
+		annotationCount = 0;
+		count = 0;
+	}
+
+	private void writeString(String value) throws IOException {
+		byte[] bytes = (value == null ? "" : value).getBytes(Common.UTF8_CS);
+		writeVarLong(bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		while((value & ~0x7FL) != 0){
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+}
@@ -5,6 +5,7 @@
 package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.serotonin.m2m2.db.dao.PointValueDao;
@@ -16,7 +17,7 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.QueryArrayStream;
  * @author Terry Packer
  *
  */
-public class PointValueTimeDatabaseStream implements QueryArrayStream<PointValueTimeModel>{
+public class PointValueTimeDatabaseStream implements QueryArrayStream<PointValueTimeModel>, PointValueTimeBinaryStream{
 
 	private String host;
 	private int port;
@@ -49,8 +50,12 @@ public class PointValueTimeDatabaseStream implements QueryArrayStream<PointValue
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeStream#streamData(com.fasterxml.jackson.core.JsonGenerator)
 	 */
 	@Override
-	public void streamData(JsonGenerator jgen) {
-		this.dao.getPointValuesBetween(vo.getId(), from, to, new PointValueTimeJsonStreamCallback(host, port, jgen, vo, useRendered, unitConversion, limit));
+	public void streamData(JsonGenerator jgen) throws IOException {
+		try{
+			this.dao.getPointValuesBetween(vo.getId(), from, to, new PointValueTimeJsonStreamCallback(host, port, jgen, vo, useRendered, unitConversion, limit));
+		}catch(QueryCancelledException e){
+			e.rethrowIOException();
+		}
 	}
 
 	/* (non-Javadoc)
@@ -59,7 +64,26 @@ public class PointValueTimeDatabaseStream implements QueryArrayStream<PointValue
 	@Override
 	public void streamData(CSVPojoWriter<PointValueTimeModel> writer)
 			throws IOException {
-		this.dao.getPointValuesBetween(vo.getId(), from, to, new PointValueTimeCsvStreamCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, false, false, limit));
+		try{
+			this.dao.getPointValuesBetween(vo.getId(), from, to, new PointValueTimeCsvStreamCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, false, false, limit));
+		}catch(QueryCancelledException e){
+			e.rethrowIOException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeBinaryStream#streamData(java.io.OutputStream)
+	 */
+	@Override
+	public void streamData(OutputStream out) throws IOException {
+		PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(host, port, out, useRendered, unitConversion);
+		writer.startSeries(vo);
+		try{
+			this.dao.getPointValuesBetween(vo.getId(), from, to, new PointValueTimeBinaryStreamCallback(writer, vo, limit));
+		}catch(QueryCancelledException e){
+			e.rethrowIOException();
+		}
+		writer.finish();
 	}
 
 }
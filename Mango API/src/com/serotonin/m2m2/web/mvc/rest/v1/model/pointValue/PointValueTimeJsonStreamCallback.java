@@ -6,9 +6,6 @@ package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
 
 import java.io.IOException;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
@@ -18,7 +15,6 @@ import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.vo.DataPointVO;
-import com.serotonin.m2m2.web.taglib.Functions;
 
 /**
  * @author Terry Packer
@@ -26,8 +22,6 @@ import com.serotonin.m2m2.web.taglib.Functions;
  */
 public class PointValueTimeJsonStreamCallback extends PointValueTimeJsonWriter implements MappedRowCallback<PointValueTime>{
 
-	private final Log LOG = LogFactory.getLog(PointValueTimeJsonStreamCallback.class);
-
 	private Translations translations;
 	private DataPointVO vo;
 	private final LimitCounter limiter;
@@ -56,20 +50,23 @@ public class PointValueTimeJsonStreamCallback extends PointValueTimeJsonWriter i
 				annotation = ((AnnotatedPointValueTime) pvt).getAnnotation(translations);
 			if(useRendered){
 				//Convert to Alphanumeric Value
-				String textValue = Functions.getRenderedText(vo, pvt);
+				String textValue = this.transformer.render(vo, pvt);
 				this.writePointValueTime(new AlphanumericValue(textValue), pvt.getTime(), annotation, vo);
 			}else if(unitConversion){
 				if (pvt.getValue() instanceof NumericValue)
-					this.writePointValueTime(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue()), pvt.getTime(), annotation, vo);
+					this.writePointValueTime(this.transformer.convert(vo, pvt.getValue().getDoubleValue()), pvt.getTime(), annotation, vo);
 				else
 					this.writePointValueTime(pvt.getValue(), pvt.getTime(), annotation, vo);
 			}else{
 				this.writePointValueTime(pvt.getValue(), pvt.getTime(), annotation, vo);
 			}
 		}catch(IOException e){
-			LOG.error(e.getMessage(), e);
+			//Client has gone away, stop the query
+			throw new QueryCancelledException(e);
 		}
 		
+		if(this.limiter.reached())
+			throw new QueryCancelledException();
 	}
 
 }
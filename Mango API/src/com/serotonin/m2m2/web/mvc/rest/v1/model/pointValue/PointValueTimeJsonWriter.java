@@ -162,7 +162,7 @@ public class PointValueTimeJsonWriter extends PointValueTimeWriter{
 			}else if(unitConversion){
 				//Convert Value, must be numeric
 				if (value instanceof NumericValue)
-					this.jgen.writeNumberField(name, vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value.getDoubleValue()));
+					this.jgen.writeNumberField(name, this.transformer.convert(vo, value.getDoubleValue()));
 				else
 					this.writeDataValue(name, value, timestamp, vo);
 			}else{
@@ -204,7 +204,7 @@ public class PointValueTimeJsonWriter extends PointValueTimeWriter{
 	    	if(useRendered){
 	    		this.jgen.writeStringField(name, vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL));
 			}else if(unitConversion){
-				this.jgen.writeNumberField(name, vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value));
+				this.jgen.writeNumberField(name, this.transformer.convert(vo, value));
 			}else{
 				this.jgen.writeNumberField(name, value);
 			}
@@ -31,6 +31,7 @@ public abstract class PointValueTimeWriter {
 	protected boolean unitConversion;
 	protected final String noDataMessage;
 	protected UriComponentsBuilder imageServletBuilder;
+	protected final PointValueTransformer transformer = new PointValueTransformer();
 	
 	public PointValueTimeWriter(String host, int port, boolean useRendered, boolean unitConversion){
 		this.useRendered = useRendered;
@@ -73,11 +74,11 @@ public abstract class PointValueTimeWriter {
 		}else{
 	    	if(useRendered){
 	    		//Convert to Alphanumeric Value
-				String textValue = Functions.getRenderedText(vo, new PointValueTime(value, time));
+				String textValue = this.transformer.render(vo, new PointValueTime(value, time));
 				this.writePointValueTime(new AlphanumericValue(textValue), time, null, vo);
 			}else if(unitConversion){
 				//Convert Value, must be numeric
-				this.writePointValueTime(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value), time, null, vo);
+				this.writePointValueTime(this.transformer.convert(vo, value), time, null, vo);
 			}else{
 				this.writePointValueTime(value, time, null, vo);
 
@@ -107,12 +108,12 @@ public abstract class PointValueTimeWriter {
 		}else{
 	    	if(useRendered){
 	    		//Convert to Alphanumeric Value
-				String textValue = Functions.getRenderedText(vo, new PointValueTime(value, time));
+				String textValue = this.transformer.render(vo, new PointValueTime(value, time));
 				this.writePointValueTime(new AlphanumericValue(textValue), time, null, vo);
 			}else if(unitConversion){
 				//Convert Value, must be numeric
 				if (value instanceof NumericValue)
-					this.writePointValueTime(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value.getDoubleValue()), time, null,vo );
+					this.writePointValueTime(this.transformer.convert(vo, value.getDoubleValue()), time, null,vo );
 				else
 					this.writePointValueTime(value, time, null, vo);
 			}else{
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.measure.converter.UnitConverter;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.taglib.Functions;
+
+/**
+ * Transforms point values for output, resolving what is needed for each point once per
+ * query instead of for every value.  The converter to the rendered unit is looked up the
+ * first time it is used and the rendered text of binary and multistate values, which only
+ * have a few distinct values, is kept.
+ *
+ * Not thread safe, each writer has its own.
+ *
+ * @author Terry Packer
+ */
+public class PointValueTransformer {
+
+	//Distinct rendered values kept per point
+	private static final int MAX_RENDERED_VALUES = 256;
+
+	private final Map<Integer, PointTransform> transforms = new HashMap<Integer, PointTransform>();
+
+	/**
+	 * Convert a value to the point's rendered unit
+	 * @param vo
+	 * @param value
+	 * @return
+	 */
+	public double convert(DataPointVO vo, double value) {
+		return getTransform(vo).getConverter().convert(value);
+	}
+
+	/**
+	 * Convert values to the point's rendered unit in place
+	 * @param vo
+	 * @param values
+	 * @param offset - first value to convert
+	 * @param count - number of values to convert
+	 */
+	public void convert(DataPointVO vo, double[] values, int offset, int count) {
+		UnitConverter converter = getTransform(vo).getConverter();
+		if(converter == UnitConverter.IDENTITY)
+			return;
+		for(int i=offset; i<offset + count; i++)
+			values[i] = converter.convert(values[i]);
+	}
+
+	/**
+	 * Render a value with the point's text renderer
+	 * @param vo
+	 * @param pvt
+	 * @return
+	 */
+	public String render(DataPointVO vo, PointValueTime pvt) {
+		return getTransform(vo).render(pvt);
+	}
+
+	private PointTransform getTransform(DataPointVO vo) {
+		PointTransform transform = transforms.get(vo.getId());
+		if(transform == null){
+			transform = new PointTransform(vo);
+			transforms.put(vo.getId(), transform);
+		}
+		return transform;
+	}
+
+	static class PointTransform {
+		final DataPointVO vo;
+		UnitConverter converter;
+		//Rendered text by value for binary and multistate points, null for other types
+		final Map<Integer, String> rendered;
+
+		PointTransform(DataPointVO vo) {
+			this.vo = vo;
+			int dataType = vo.getPointLocator().getDataTypeId();
+			if(dataType == DataTypes.BINARY || dataType == DataTypes.MULTISTATE)
+				this.rendered = new HashMap<Integer, String>();
+			else
+				this.rendered = null;
+		}
+
+		UnitConverter getConverter() {
+			if(converter == null)
+				converter = vo.getUnit().getConverterTo(vo.getRenderedUnit());
+			return converter;
+		}
+
+		String render(PointValueTime pvt) {
+			DataValue value = pvt.getValue();
+			if(rendered == null || value == null)
+				return Functions.getRenderedText(vo, pvt);
+
+			Integer key;
+			switch(value.getDataType()){
+				case DataTypes.BINARY:
+					key = value.getBooleanValue() ? 1 : 0;
+				break;
+				case DataTypes.MULTISTATE:
+					key = value.getIntegerValue();
+				break;
+				default:
+					return Functions.getRenderedText(vo, pvt);
+			}
+			String text = rendered.get(key);
+			if(text == null){
+				text = Functions.getRenderedText(vo, pvt);
+				if(rendered.size() < MAX_RENDERED_VALUES)
+					rendered.put(key, text);
+			}
+			return text;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
+
+import java.io.IOException;
+
+/**
+ * Thrown from a point value callback to stop the query feeding it, the DAO stops
+ * reading rows and closes its statement or cursor as the exception passes through.
+ * 
+ * Thrown once the limit has been written, which is a normal end of the query, or when
+ * writing fails because the client has gone away.
+ * 
+ * @author Terry Packer
+ */
+public class QueryCancelledException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The limit has been reached
+	 */
+	public QueryCancelledException() {
+		super("Limit reached", null, false, false);
+	}
+
+	/**
+	 * Writing to the client failed
+	 * @param cause
+	 */
+	public QueryCancelledException(IOException cause) {
+		super(cause.getMessage(), cause, false, false);
+	}
+
+	/**
+	 * Rethrow the failure to write to the client, does nothing if the limit was reached
+	 * @throws IOException
+	 */
+	public void rethrowIOException() throws IOException {
+		if (getCause() instanceof IOException)
+			throw (IOException) getCause();
+	}
+}
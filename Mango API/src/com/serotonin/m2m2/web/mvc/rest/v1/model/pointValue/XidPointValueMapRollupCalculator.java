@@ -15,19 +15,16 @@ import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
-import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
-import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.util.DateUtils;
-import com.serotonin.m2m2.view.quantize2.AbstractDataQuantizer;
-import com.serotonin.m2m2.view.quantize2.AnalogStatisticsQuantizer;
 import com.serotonin.m2m2.view.quantize2.BucketCalculator;
 import com.serotonin.m2m2.view.quantize2.BucketsBucketCalculator;
 import com.serotonin.m2m2.view.quantize2.TimePeriodBucketCalculator;
-import com.serotonin.m2m2.view.quantize2.ValueChangeCounterQuantizer;
+import com.serotonin.m2m2.view.stats.AnalogStatistics;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.view.stats.ValueChangeCounter;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.pair.LongPair;
 import com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter;
@@ -39,6 +36,8 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.statistics.NumericPoi
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriod;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriodType;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.MultiPointRollupEngine;
+import com.serotonin.m2m2.web.mvc.rest.v1.statistics.MultiPointRollupEngine.StatisticsBuffer;
 
 /**
  * Compute a Rollup Map for multiple data points of the form:
@@ -46,6 +45,8 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriodType;
  * xid1 : [rolled up values],
  * xid2 : [rolled up values]
  * 
+ * All points are rolled up together in one pass over the data, the periods
+ * are then written out one point at a time.
  * 
  * @author Terry Packer
  *
@@ -79,58 +80,27 @@ public class XidPointValueMapRollupCalculator implements ObjectStream<Map<String
 	}
 
 	
-	/**
-	 * Calculate statistics, if TimePeriod is null the entire range will be used
-	 * @return
-	 */
-	public void calculate(DataPointVO vo, final AbstractDataQuantizer quantizer, DateTime from, DateTime to){
-		
-        //Make the call to get the data and quantize it
-        Common.databaseProxy.newPointValueDao().getPointValuesBetween(vo.getId(), from.getMillis(), to.getMillis(),
-                new MappedRowCallback<PointValueTime>() {
-                    @Override
-                    public void row(PointValueTime pvt, int row) {
-                        quantizer.data(pvt);
-                    }
-                });
-        
-        quantizer.done(getEndValue(vo));
-        return;
-	}
-
-
 	/* (non-Javadoc)
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeStream#streamData(java.io.Writer)
 	 */
 	@Override
 	public void streamData(JsonGenerator jgen) {
-		this.setupDates();
-		DateTime startTime = this.getStartTime();
-		DateTime endTime = this.getEndTime();
+		StatisticsBuffer buffer = this.calculate();
 		try {
 			Iterator<Integer> it = this.voMap.keySet().iterator();
 			while(it.hasNext()){
 				DataPointVO vo = this.voMap.get(it.next());
 				jgen.writeArrayFieldStart(vo.getXid());
 				
-				DataValue startValue = this.getStartValue(vo);
-		        BucketCalculator bc = this.getBucketCalculator(startTime, endTime);
-		        
-		        final AbstractDataQuantizer quantizer;
 		        if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC) {
-		            quantizer = new AnalogStatisticsQuantizer(bc, 
-		            		startValue,
-		            		new NumericPointValueStatisticsQuantizerJsonCallback(host, port, jgen, vo, this.useRendered, this.unitConversion, this.rollup, this.limit));
+		        	NumericPointValueStatisticsQuantizerJsonCallback callback = new NumericPointValueStatisticsQuantizerJsonCallback(host, port, jgen, vo, this.useRendered, this.unitConversion, this.rollup, this.limit);
+		        	for(StatisticsGenerator stats : buffer.getPeriods(vo.getId()))
+		        		callback.quantizedStatistics((AnalogStatistics)stats, false);
 		        }else {
-		            if (!rollup.nonNumericSupport()) {
-		                LOG.warn("Invalid non-numeric rollup type: " + rollup);
-		                rollup = RollupEnum.FIRST; //Default to first
-		            }
-		            quantizer = new ValueChangeCounterQuantizer(bc, startValue,
-		            		new NonNumericPointValueStatisticsQuantizerJsonCallback(host, port, jgen, vo, useRendered, unitConversion, this.rollup, this.limit));
+		        	NonNumericPointValueStatisticsQuantizerJsonCallback callback = new NonNumericPointValueStatisticsQuantizerJsonCallback(host, port, jgen, vo, useRendered, unitConversion, getNonNumericRollup(), this.limit);
+		        	for(StatisticsGenerator stats : buffer.getPeriods(vo.getId()))
+		        		callback.quantizedStatistics((ValueChangeCounter)stats, false);
 		        }
-				
-				this.calculate(vo, quantizer, startTime, endTime);
 				jgen.writeEndArray();
 			}
 		} catch (IOException e) {
@@ -146,41 +116,52 @@ public class XidPointValueMapRollupCalculator implements ObjectStream<Map<String
 	@Override
 	public void streamData(CSVPojoWriter<Map<String, List<PointValueTime>>> writer)
 			throws IOException {
-		this.setupDates();
+		StatisticsBuffer buffer = this.calculate();
 
 		Iterator<Integer> it = this.voMap.keySet().iterator();
 		boolean writeHeaders = true;
 		
 		while(it.hasNext()){
 			DataPointVO vo = this.voMap.get(it.next());
-			DataValue startValue = this.getStartValue(vo);
-	
-			DateTime startTime = this.getStartTime();
-			DateTime endTime = this.getEndTime();
-	        BucketCalculator bc = this.getBucketCalculator(startTime, endTime);
-	        
-	        final AbstractDataQuantizer quantizer;
 	        if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC) {
-	            quantizer = new AnalogStatisticsQuantizer(bc, 
-	            		startValue,
-	            		new NumericPointValueStatisticsQuantizerCsvCallback(host, port, writer.getWriter(), vo, this.useRendered, this.unitConversion, this.rollup, true, writeHeaders, this.limit));
+	        	NumericPointValueStatisticsQuantizerCsvCallback callback = new NumericPointValueStatisticsQuantizerCsvCallback(host, port, writer.getWriter(), vo, this.useRendered, this.unitConversion, this.rollup, true, writeHeaders, this.limit);
+	        	for(StatisticsGenerator stats : buffer.getPeriods(vo.getId()))
+	        		callback.quantizedStatistics((AnalogStatistics)stats, false);
 	        }else {
-	            if (!rollup.nonNumericSupport()) {
-	                LOG.warn("Invalid non-numeric rollup type: " + rollup);
-		            quantizer = new ValueChangeCounterQuantizer(bc, startValue,
-		            		new NonNumericPointValueStatisticsQuantizerCsvCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, RollupEnum.FIRST, true, writeHeaders, this.limit));
-	            }else{
-		            quantizer = new ValueChangeCounterQuantizer(bc, startValue,
-		            		new NonNumericPointValueStatisticsQuantizerCsvCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, this.rollup, true, writeHeaders, this.limit));
-	            }
+	        	NonNumericPointValueStatisticsQuantizerCsvCallback callback = new NonNumericPointValueStatisticsQuantizerCsvCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, getNonNumericRollup(), true, writeHeaders, this.limit);
+	        	for(StatisticsGenerator stats : buffer.getPeriods(vo.getId()))
+	        		callback.quantizedStatistics((ValueChangeCounter)stats, false);
 	        }
 			
-			this.calculate(vo, quantizer, startTime, endTime);
-			
 			//Only write the headers on the first iteration
 			writeHeaders = false;
 		}
 	}
+	
+	/**
+	 * Roll up all points in one pass, keeping the periods for each point so 
+	 * they can be written out one point at a time.
+	 * @return
+	 */
+	private StatisticsBuffer calculate(){
+		this.setupDates();
+		BucketCalculator bc = this.getBucketCalculator(this.getStartTime(), this.getEndTime());
+		StatisticsBuffer buffer = new StatisticsBuffer(this.limit);
+		new MultiPointRollupEngine(this.voMap, bc, from.getMillis()).execute(buffer);
+		return buffer;
+	}
+	
+	/**
+	 * Non numeric points can only use some rollups
+	 * @return
+	 */
+	private RollupEnum getNonNumericRollup(){
+        if (!rollup.nonNumericSupport()) {
+            LOG.warn("Invalid non-numeric rollup type: " + rollup);
+            return RollupEnum.FIRST; //Default to first
+        }
+        return rollup;
+	}
 
 	private void setupDates(){
         // Determine the start and end times.
@@ -217,21 +198,5 @@ public class XidPointValueMapRollupCalculator implements ObjectStream<Map<String
 	private DateTime getEndTime(){
         return to;
 	}
-	private DataValue getStartValue(DataPointVO vo){
-        // Determine the start and end values. This is important for
-        // properly calculating average.
-	    PointValueDao pvd = Common.databaseProxy.newPointValueDao();
-        PointValueTime startPvt = pvd.getPointValueAt(vo.getId(), from.getMillis());
-        //Try our best to get the closest value
-        if(startPvt == null)
-        	startPvt = pvd.getPointValueBefore(vo.getId(), from.getMillis());
-        DataValue startValue = PointValueTime.getValue(startPvt);
-        return startValue;
-	}
-	
-	private DataValue getEndValue(DataPointVO vo){
-		PointValueTime endPvt = Common.databaseProxy.newPointValueDao().getPointValueAt(vo.getId(), to.getMillis());
-        return PointValueTime.getValue(endPvt);
-	}
 	
 }
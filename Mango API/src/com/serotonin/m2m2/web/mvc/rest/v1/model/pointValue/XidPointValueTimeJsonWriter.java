@@ -15,7 +15,6 @@ import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.XidTimeJsonWriter;
-import com.serotonin.m2m2.web.taglib.Functions;
 
 /**
  * 
@@ -46,10 +45,10 @@ public class XidPointValueTimeJsonWriter extends PointValueTimeJsonWriter implem
 	public void writeXidTime(JsonGenerator jgen, DataPointVO vo, IdPointValueTime value) throws IOException {
 		if(useRendered){
 			//Convert to Alphanumeric Value
-			this.writeXidPointValue(value.getTime(), new AlphanumericValue(Functions.getRenderedText(vo, value)), vo);
+			this.writeXidPointValue(value.getTime(), new AlphanumericValue(this.transformer.render(vo, value)), vo);
 		}else if(unitConversion){
 			if (value.getValue() instanceof NumericValue)
-				this.writeXidPointValue(value.getTime(), new NumericValue(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value.getValue().getDoubleValue())), vo);
+				this.writeXidPointValue(value.getTime(), new NumericValue(this.transformer.convert(vo, value.getValue().getDoubleValue())), vo);
 			else
 				this.writeXidPointValue(value.getTime(), value.getValue(), vo);
 		}else{
@@ -13,7 +13,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.serotonin.m2m2.rt.dataImage.PointValueFacade;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.web.mvc.rest.v1.csv.CSVPojoWriter;
@@ -64,11 +63,10 @@ public class XidPointValueTimeLatestPointFacadeStream implements ObjectStream<Ma
 		while(it.hasNext()){
 			try {
 				DataPointVO vo = this.pointMap.get(it.next());
-				PointValueFacade pointValueFacade = new PointValueFacade(vo.getId(), useCache);
 				PointValueTimeJsonStreamCallback callback = new PointValueTimeJsonStreamCallback(host, port, jgen, vo, useRendered, unitConversion, null);
 
 				jgen.writeArrayFieldStart(vo.getXid());
-				List<PointValueTime> pvts = pointValueFacade.getLatestPointValues(limit);
+				List<PointValueTime> pvts = PointValueSnapshotIndex.instance.getLatestPointValues(vo, limit, useCache);
 				for(int i=0; i<pvts.size(); i++)
 					callback.row(pvts.get(i), i);
 				jgen.writeEndArray();
@@ -89,9 +87,8 @@ public class XidPointValueTimeLatestPointFacadeStream implements ObjectStream<Ma
 		boolean writeHeaders = true;
 		while(it.hasNext()){
 			DataPointVO vo = this.pointMap.get(it.next());
-			PointValueFacade pointValueFacade = new PointValueFacade(vo.getId(), useCache);
 			PointValueTimeCsvStreamCallback callback = new PointValueTimeCsvStreamCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, true, writeHeaders, null);
-			List<PointValueTime> pvts = pointValueFacade.getLatestPointValues(limit);
+			List<PointValueTime> pvts = PointValueSnapshotIndex.instance.getLatestPointValues(vo, limit, useCache);
 			for(int i=0; i<pvts.size(); i++)
 				callback.row(pvts.get(i), i);
 			writeHeaders = false;
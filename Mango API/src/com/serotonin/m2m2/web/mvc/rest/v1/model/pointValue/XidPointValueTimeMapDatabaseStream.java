@@ -5,14 +5,22 @@
 package com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
@@ -24,10 +32,14 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.ObjectStream;
  * 
  * CSV Format is point per column 
  * 
+ * In parallel mode the points are queried concurrently on the PointValueQueryExecutor
+ * and each point's values are buffered until it is that point's turn to be written,
+ * so the output is identical to the sequential mode.
+ * 
  * @author Terry Packer
  *
  */
-public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<String, List<PointValueTime>>>{
+public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<String, List<PointValueTime>>>, PointValueTimeBinaryStream{
 	
 	private final Log LOG = LogFactory.getLog(XidPointValueTimeMapDatabaseStream.class);
 
@@ -40,6 +52,7 @@ public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<Stri
 	private PointValueDao dao;
 	private final Map<Integer,DataPointVO> pointMap;
 	private final Integer limit;
+	private final boolean parallel;
 	
 	/**
 	 * @param id
@@ -47,6 +60,13 @@ public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<Stri
 	 * @param to
 	 */
 	public XidPointValueTimeMapDatabaseStream(String host, int port, Map<Integer,DataPointVO> pointMap, boolean useRendered,  boolean unitConversion, long from, long to, PointValueDao dao, Integer limit) {
+		this(host, port, pointMap, useRendered, unitConversion, from, to, dao, limit, false);
+	}
+	
+	/**
+	 * @param parallel - query the points concurrently
+	 */
+	public XidPointValueTimeMapDatabaseStream(String host, int port, Map<Integer,DataPointVO> pointMap, boolean useRendered,  boolean unitConversion, long from, long to, PointValueDao dao, Integer limit, boolean parallel) {
 		this.host = host;
 		this.port = port;
 		this.pointMap = pointMap;
@@ -56,6 +76,7 @@ public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<Stri
 		this.to = to;
 		this.dao = dao;
 		this.limit = limit;
+		this.parallel = parallel;
 	}
 
 	/*
@@ -63,17 +84,45 @@ public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<Stri
 	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.ObjectStream#streamData(com.fasterxml.jackson.core.JsonGenerator)
 	 */
 	@Override
-	public void streamData(JsonGenerator jgen) {
+	public void streamData(final JsonGenerator jgen) {
+		if(parallel){
+			try {
+				streamParallel(new PointValueBufferWriter(){
+					@Override
+					public void write(DataPointVO vo, List<PointValueTime> values) throws IOException {
+						jgen.writeArrayFieldStart(vo.getXid());
+						PointValueTimeJsonStreamCallback callback = new PointValueTimeJsonStreamCallback(host, port, jgen, vo, useRendered, unitConversion, limit);
+						try{
+							for(int i=0; i<values.size(); i++)
+								callback.row(values.get(i), i);
+						}catch(QueryCancelledException e){
+							e.rethrowIOException();
+						}
+						jgen.writeEndArray();
+					}
+				});
+			} catch (IOException e) {
+				LOG.error(e.getMessage(), e);
+			}
+			return;
+		}
+		
 		Iterator<Integer> it = this.pointMap.keySet().iterator();
 		while(it.hasNext()){
 			DataPointVO vo = this.pointMap.get(it.next());
 			try {
 				jgen.writeArrayFieldStart(vo.getXid());
 				PointValueTimeJsonStreamCallback callback = new PointValueTimeJsonStreamCallback(host, port, jgen, vo, useRendered, unitConversion, limit);
-				this.dao.getPointValuesBetween(vo.getId(), from, to, callback);
+				try{
+					this.dao.getPointValuesBetween(vo.getId(), from, to, callback);
+				}catch(QueryCancelledException e){
+					e.rethrowIOException();
+				}
 				jgen.writeEndArray();
 			} catch (IOException e) {
+				//Client has gone away, don't query the remaining points
 				LOG.error(e.getMessage(), e);
+				return;
 			}
 		}
 	}
@@ -86,13 +135,148 @@ public class XidPointValueTimeMapDatabaseStream implements ObjectStream<Map<Stri
 	@Override
 	public void streamData(CSVPojoWriter<Map<String, List<PointValueTime>>> writer)
 			throws IOException {
+		if(parallel){
+			final CSVPojoWriter<Map<String, List<PointValueTime>>> csvWriter = writer;
+			streamParallel(new PointValueBufferWriter(){
+				boolean writeHeaders = true;
+				@Override
+				public void write(DataPointVO vo, List<PointValueTime> values) throws IOException {
+					PointValueTimeCsvStreamCallback callback = new PointValueTimeCsvStreamCallback(host, port, csvWriter.getWriter(), vo, useRendered, unitConversion, true, writeHeaders, limit);
+					try{
+						for(int i=0; i<values.size(); i++)
+							callback.row(values.get(i), i);
+					}catch(QueryCancelledException e){
+						e.rethrowIOException();
+					}
+					writeHeaders = false;
+				}
+			});
+			return;
+		}
+		
 		Iterator<Integer> it = this.pointMap.keySet().iterator();
 		boolean writeHeaders = true;
 		while(it.hasNext()){
 			DataPointVO vo = this.pointMap.get(it.next());
 			PointValueTimeCsvStreamCallback callback = new PointValueTimeCsvStreamCallback(host, port, writer.getWriter(), vo, useRendered, unitConversion, true, writeHeaders, limit);
-			this.dao.getPointValuesBetween(vo.getId(), from, to, callback);
+			try{
+				this.dao.getPointValuesBetween(vo.getId(), from, to, callback);
+			}catch(QueryCancelledException e){
+				e.rethrowIOException();
+			}
 			writeHeaders = false;
 		}
 	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeBinaryStream#streamData(java.io.OutputStream)
+	 */
+	@Override
+	public void streamData(OutputStream out) throws IOException {
+		final PointValueTimeBinaryWriter binaryWriter = new PointValueTimeBinaryWriter(host, port, out, useRendered, unitConversion);
+		if(parallel){
+			streamParallel(new PointValueBufferWriter(){
+				@Override
+				public void write(DataPointVO vo, List<PointValueTime> values) throws IOException {
+					binaryWriter.startSeries(vo);
+					PointValueTimeBinaryStreamCallback callback = new PointValueTimeBinaryStreamCallback(binaryWriter, vo, limit);
+					try{
+						for(int i=0; i<values.size(); i++)
+							callback.row(values.get(i), i);
+					}catch(QueryCancelledException e){
+						e.rethrowIOException();
+					}
+				}
+			});
+		}else{
+			Iterator<Integer> it = this.pointMap.keySet().iterator();
+			while(it.hasNext()){
+				DataPointVO vo = this.pointMap.get(it.next());
+				binaryWriter.startSeries(vo);
+				try{
+					this.dao.getPointValuesBetween(vo.getId(), from, to, new PointValueTimeBinaryStreamCallback(binaryWriter, vo, limit));
+				}catch(QueryCancelledException e){
+					e.rethrowIOException();
+				}
+			}
+		}
+		binaryWriter.finish();
+	}
+	
+	/**
+	 * Query all points on the shared executor and hand each point's values to the writer in point order.
+	 * At most 2x the executor's thread count of points are buffered ahead of the writer at any time.
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	private void streamParallel(PointValueBufferWriter writer) throws IOException{
+		PointValueQueryExecutor executor = PointValueQueryExecutor.getInstance();
+		int window = executor.getThreads() * 2;
+		
+		List<DataPointVO> points = new ArrayList<DataPointVO>(this.pointMap.values());
+		LinkedList<Future<List<PointValueTime>>> pending = new LinkedList<Future<List<PointValueTime>>>();
+		int next = 0;
+		try{
+			for(int i=0; i<points.size(); i++){
+				while((next < points.size())&&(pending.size() < window)){
+					pending.add(executor.submit(new PointValueFetch(points.get(next))));
+					next++;
+				}
+				List<PointValueTime> values;
+				try {
+					values = pending.removeFirst().get();
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause();
+					throw new ShouldNeverHappenException(e.getCause());
+				}
+				writer.write(points.get(i), values);
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}finally{
+			//Don't leave queries running if we failed part way
+			for(Future<List<PointValueTime>> f : pending)
+				f.cancel(true);
+		}
+	}
+	
+	/**
+	 * Collect the values of one point into a buffer, stopping the query once the limit is reached
+	 */
+	class PointValueFetch implements Callable<List<PointValueTime>>{
+		
+		private final DataPointVO vo;
+		
+		public PointValueFetch(DataPointVO vo){
+			this.vo = vo;
+		}
+		
+		@Override
+		public List<PointValueTime> call() throws Exception {
+			final List<PointValueTime> values = new ArrayList<PointValueTime>();
+			final LimitCounter limiter = new LimitCounter(limit);
+			try{
+				dao.getPointValuesBetween(vo.getId(), from, to, new MappedRowCallback<PointValueTime>(){
+					@Override
+					public void row(PointValueTime pvt, int index) {
+						if(!limiter.limited())
+							values.add(pvt);
+						//Stop the query rather than read values that would be dropped
+						if(limiter.reached())
+							throw new QueryCancelledException();
+					}
+				});
+			}catch(QueryCancelledException e){
+				//Limit reached
+			}
+			return values;
+		}
+	}
+	
+	interface PointValueBufferWriter{
+		void write(DataPointVO vo, List<PointValueTime> values) throws IOException;
+	}
 }
@@ -204,7 +204,7 @@ public class IdPointValueStatisticsQuantizerCsvCallback extends PointValueTimeCs
 			}else if(unitConversion){
 				//Convert Value, must be numeric
 				if (value instanceof NumericValue)
-					this.rowData[this.columnMap.get(vo.getId())] = Double.toString(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value.getDoubleValue()));
+					this.rowData[this.columnMap.get(vo.getId())] = Double.toString(this.transformer.convert(vo, value.getDoubleValue()));
 				else
 					this.rowData[this.columnMap.get(vo.getId())] = this.createDataValueString(value, timestamp, vo);
 			}else{
@@ -220,7 +220,7 @@ public class IdPointValueStatisticsQuantizerCsvCallback extends PointValueTimeCs
 	    	if(useRendered){
 	    		this.rowData[this.columnMap.get(vo.getId())] = vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL);
 			}else if(unitConversion){
-				this.rowData[this.columnMap.get(vo.getId())] = Double.toString(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value));
+				this.rowData[this.columnMap.get(vo.getId())] = Double.toString(this.transformer.convert(vo, value));
 			}else{
 				this.rowData[this.columnMap.get(vo.getId())] = Double.toString(value);
 			}
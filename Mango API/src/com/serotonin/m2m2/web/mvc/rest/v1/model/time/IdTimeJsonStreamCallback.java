@@ -17,6 +17,7 @@ import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.rt.dataImage.IdTime;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.LimitCounter;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.QueryCancelledException;
 
 /**
  * Abstract Base Class to Write IdTime Objects
@@ -72,7 +73,7 @@ public abstract class IdTimeJsonStreamCallback<T extends IdTime> implements Mapp
 				//Flush an entry if we have one
 				if(this.objectOpen){
 					if(this.limiter.limited())
-						return;
+						throw new QueryCancelledException();
 					writeEntry();
 				}
 				this.objectOpen = true;
@@ -81,7 +82,8 @@ public abstract class IdTimeJsonStreamCallback<T extends IdTime> implements Mapp
 			
 			this.currentValueMap.put(vo, item);
 		}catch(IOException e){
-			LOG.error(e.getMessage(), e);
+			//Client has gone away, stop the query
+			throw new QueryCancelledException(e);
 		}
 	}
 	
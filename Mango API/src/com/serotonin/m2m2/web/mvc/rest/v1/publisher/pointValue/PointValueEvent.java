@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.publisher.pointValue;
+
+import java.util.Map;
+
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeModel;
+import com.serotonin.m2m2.web.mvc.websocket.MangoWebSocketResponseModel;
+import com.serotonin.m2m2.web.mvc.websocket.MangoWebSocketResponseStatus;
+import com.serotonin.m2m2.web.taglib.Functions;
+
+/**
+ * One point value event that is shared by every session listening to the point.
+ *
+ * The value is rendered, converted and serialized the first time a session sends
+ * it and the bytes are reused by the others.  Image values are serialized per session
+ * because their URL is built from the host the session connected to.
+ *
+ * @author Terry Packer
+ */
+public class PointValueEvent {
+
+	private final DataPointVO vo;
+	private final PointValueEventType type;
+	private final PointValueTime pvt;
+	//Null when the point is not running
+	private final DataPointRT rt;
+
+	private boolean rendered;
+	private String renderedValue;
+	private Double convertedValue;
+	private byte[] payload;
+
+	public PointValueEvent(DataPointVO vo, PointValueEventType type, PointValueTime pvt, DataPointRT rt){
+		this.vo = vo;
+		this.type = type;
+		this.pvt = pvt;
+		this.rt = rt;
+	}
+
+	public PointValueEventType getType() {
+		return type;
+	}
+
+	/**
+	 * Get the message to send as it would be written by MangoWebSocketPublisher.sendMessage()
+	 * @param jacksonMapper
+	 * @param imageServletBuilder - only used for image points
+	 * @return
+	 * @throws JsonProcessingException
+	 */
+	public byte[] getPayload(ObjectMapper jacksonMapper, UriComponentsBuilder imageServletBuilder) throws JsonProcessingException{
+		if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
+			return serialize(jacksonMapper, imageServletBuilder);
+
+		synchronized(this){
+			if(payload == null)
+				payload = serialize(jacksonMapper, null);
+			return payload;
+		}
+	}
+
+	private byte[] serialize(ObjectMapper jacksonMapper, UriComponentsBuilder imageServletBuilder) throws JsonProcessingException{
+		return jacksonMapper.writeValueAsBytes(new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.OK, createModel(imageServletBuilder)));
+	}
+
+	private PointValueEventModel createModel(UriComponentsBuilder imageServletBuilder){
+		if(type == PointValueEventType.TERMINATE)
+			return new PointValueEventModel(vo.getXid(), false, null, type, null, null, null);
+
+		boolean enabled = false;
+		Map<String,Object> attributes = null;
+		if(rt != null){
+			enabled = true; //We are enabled
+			attributes = rt.getAttributes();
+			render();
+		}
+		PointValueTimeModel pvtModel = null;
+		if(pvt != null){
+			pvtModel = new PointValueTimeModel(pvt);
+			if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
+				pvtModel.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
+		}
+		return new PointValueEventModel(vo.getXid(), enabled, attributes, type, pvtModel, renderedValue, convertedValue);
+	}
+
+	private synchronized void render(){
+		if(rendered)
+			return;
+		renderedValue = Functions.getRenderedText(vo, pvt);
+		if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(pvt != null))
+			convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
+		rendered = true;
+	}
+}
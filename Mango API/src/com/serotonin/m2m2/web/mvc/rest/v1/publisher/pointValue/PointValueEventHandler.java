@@ -38,6 +38,7 @@ public class PointValueEventHandler extends MangoWebSocketHandler {
 
 	private final Map<Integer, PointValueWebSocketPublisher> map = new HashMap<Integer, PointValueWebSocketPublisher>();
 	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private PointValueWebSocketOutbox outbox;
 
 	public PointValueEventHandler(){
 		super(MangoRestSpringConfiguration.getObjectMapper());
@@ -46,6 +47,7 @@ public class PointValueEventHandler extends MangoWebSocketHandler {
 	@Override
 	public void afterConnectionEstablished(WebSocketSession session) throws Exception{
 		super.afterConnectionEstablished(session);
+		this.outbox = new PointValueWebSocketOutbox(session, this.jacksonMapper);
 	}
 
 	@Override
@@ -84,7 +86,7 @@ public class PointValueEventHandler extends MangoWebSocketHandler {
 	                        pub.setEventTypes(events);
 					    }
 					} else {
-						pub = new PointValueWebSocketPublisher(session.getUri(), vo, model.getEventTypes(), session, this.jacksonMapper);
+						pub = new PointValueWebSocketPublisher(session.getUri(), vo, model.getEventTypes(), session, this.outbox);
 						pub.initialize();
 						map.put(vo.getId(), pub);
 						//Immediately send the most recent Point Value and the status of the data point
@@ -122,6 +124,8 @@ public class PointValueEventHandler extends MangoWebSocketHandler {
 				pub.terminate();
 			}
 			map.clear();
+			if(outbox != null)
+				outbox.terminate();
 		}finally{
 			lock.writeLock().unlock();
 		}
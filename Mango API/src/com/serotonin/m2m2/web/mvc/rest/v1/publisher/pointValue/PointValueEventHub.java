@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.publisher.pointValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Registers a single data point listener for each point that has websocket subscribers
+ * and hands each event to all of them as one shared PointValueEvent.
+ *
+ * Events carry the point as it is in the running point, so renders and units saved
+ * since the first subscriber joined are used rather than that subscriber's copy.
+ *
+ * @author Terry Packer
+ */
+public class PointValueEventHub {
+
+	private static final Log LOG = LogFactory.getLog(PointValueEventHub.class);
+
+	public static final PointValueEventHub instance = new PointValueEventHub();
+
+	private final Map<Integer, PointFanOut> fanOuts = new HashMap<Integer, PointFanOut>();
+
+	private PointValueEventHub(){ }
+
+	/**
+	 * Start sending events for the publisher's point to the publisher
+	 * @param publisher
+	 */
+	public void subscribe(PointValueWebSocketPublisher publisher){
+		DataPointVO vo = publisher.getVo();
+		synchronized(fanOuts){
+			PointFanOut fanOut = fanOuts.get(vo.getId());
+			if(fanOut == null){
+				fanOut = new PointFanOut(vo);
+				fanOuts.put(vo.getId(), fanOut);
+				fanOut.publishers.add(publisher);
+				Common.runtimeManager.addDataPointListener(vo.getId(), fanOut);
+			}else{
+				fanOut.publishers.add(publisher);
+			}
+		}
+	}
+
+	/**
+	 * Stop sending events to the publisher, the listener is removed with the last publisher
+	 * @param publisher
+	 */
+	public void unsubscribe(PointValueWebSocketPublisher publisher){
+		int dataPointId = publisher.getVo().getId();
+		synchronized(fanOuts){
+			PointFanOut fanOut = fanOuts.get(dataPointId);
+			if(fanOut == null)
+				return;
+			fanOut.publishers.remove(publisher);
+			if(fanOut.publishers.isEmpty()){
+				fanOuts.remove(dataPointId);
+				Common.runtimeManager.removeDataPointListener(dataPointId, fanOut);
+			}
+		}
+	}
+
+	/**
+	 * The one listener for a data point
+	 *
+	 * @author Terry Packer
+	 */
+	class PointFanOut implements DataPointListener{
+
+		//Point as last seen running, replaced when the point is saved and restarted
+		private volatile DataPointVO vo;
+		private final CopyOnWriteArrayList<PointValueWebSocketPublisher> publishers = new CopyOnWriteArrayList<PointValueWebSocketPublisher>();
+		private volatile DataPointRT rt;
+
+		public PointFanOut(DataPointVO vo){
+			this.rt = Common.runtimeManager.getDataPoint(vo.getId());
+			this.vo = rt == null ? vo : rt.getVO();
+		}
+
+		private void publish(PointValueEventType type, PointValueTime pvt){
+			DataPointRT current = rt;
+			if(current != null)
+				vo = current.getVO();
+			PointValueEvent event = new PointValueEvent(vo, type, pvt, current);
+			for(PointValueWebSocketPublisher publisher : publishers){
+				try{
+					publisher.publish(event);
+				}catch(Exception e){
+					LOG.error(e.getMessage(), e);
+				}
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointInitialized()
+		 */
+		@Override
+		public void pointInitialized() {
+			rt = Common.runtimeManager.getDataPoint(vo.getId());
+			DataPointRT current = rt;
+			publish(PointValueEventType.INITIALIZE, current == null ? null : current.getPointValue());
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointUpdated(com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public void pointUpdated(PointValueTime newValue) {
+			publish(PointValueEventType.UPDATE, newValue);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointChanged(com.serotonin.m2m2.rt.dataImage.PointValueTime, com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+			publish(PointValueEventType.CHANGE, newValue);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointSet(com.serotonin.m2m2.rt.dataImage.PointValueTime, com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+			publish(PointValueEventType.SET, newValue);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointBackdated(com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public void pointBackdated(PointValueTime value) {
+			publish(PointValueEventType.BACKDATE, value);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointTerminated()
+		 */
+		@Override
+		public void pointTerminated() {
+			rt = null;
+			publish(PointValueEventType.TERMINATE, null);
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointLogged(com.serotonin.m2m2.rt.dataImage.PointValueTime)
+		 */
+		@Override
+		public void pointLogged(PointValueTime value) {
+			//Do nothing for now
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#getListenerName()
+		 */
+		@Override
+		public String getListenerName() {
+			return "Websockets for DP " + vo.getXid() + "'s point values.";
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.publisher.pointValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+
+/**
+ * Outbound queue for all point value events of 1 Web socket session.
+ *
+ * Subscriptions only queue the event, a timer task every rest.websocket.pointValues.flushPeriod ms
+ * hands the flush to a pool of rest.websocket.pointValues.sendThreads sender threads that
+ * serialize and send, so a slow client never holds up the timer.  While an
+ * event is waiting to be sent a newer value of the same type for the same point
+ * replaces it, so a slow client gets the latest values rather than a backlog.
+ * If the queue still grows past rest.websocket.pointValues.maxQueueSize the oldest
+ * events are dropped.
+ *
+ * A client that stops reading would hold a sender thread in a blocking send, so the session is
+ * wrapped in a ConcurrentWebSocketSessionDecorator with rest.websocket.pointValues.sendTimeLimit ms
+ * and rest.websocket.pointValues.sendBufferSizeLimit bytes, and a session whose send has taken
+ * longer than the time limit when the next event is queued is closed, which fails the blocked send.
+ *
+ * @author Terry Packer
+ */
+public class PointValueWebSocketOutbox {
+
+	private static final Log LOG = LogFactory.getLog(PointValueWebSocketOutbox.class);
+
+	//Sends for every session, the sockets block while a client is slow
+	private static final ThreadPoolExecutor SENDERS;
+	static {
+		int threads = Math.max(1, Common.envProps.getInt("rest.websocket.pointValues.sendThreads", 4));
+		SENDERS = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Point value websocket sender " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		SENDERS.allowCoreThreadTimeOut(true);
+	}
+
+	private final WebSocketSession session;
+	private final ObjectMapper jacksonMapper;
+	private final long flushPeriod;
+	private final int maxQueueSize;
+	private final int sendTimeLimit;
+	//When the send in progress started, 0 when not sending
+	private volatile long sendStarted;
+
+	//Events in send order
+	private final ArrayDeque<QueuedEvent> queue = new ArrayDeque<QueuedEvent>();
+	//Queued value events that can still be replaced by a newer value, by xid and event type
+	private final Map<String, QueuedEvent> replaceable = new HashMap<String, QueuedEvent>();
+	private final FlushClient flushClient = new FlushClient();
+	private final Runnable flushRunnable = new Runnable(){
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+	//Set from scheduling a flush until the flush starts
+	private TimeoutTask task;
+	private boolean flushing;
+	private boolean terminated;
+	private int dropped;
+
+	public PointValueWebSocketOutbox(WebSocketSession session, ObjectMapper jacksonMapper){
+		this.jacksonMapper = jacksonMapper;
+		this.flushPeriod = Common.envProps.getLong("rest.websocket.pointValues.flushPeriod", 100L);
+		this.maxQueueSize = Common.envProps.getInt("rest.websocket.pointValues.maxQueueSize", 1000);
+		this.sendTimeLimit = Common.envProps.getInt("rest.websocket.pointValues.sendTimeLimit", 10000);
+		int bufferSizeLimit = Common.envProps.getInt("rest.websocket.pointValues.sendBufferSizeLimit", 512 * 1024);
+		this.session = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, bufferSizeLimit);
+	}
+
+	/**
+	 * Queue an event to be sent on the next flush, never blocks on the socket
+	 * @param publisher
+	 * @param event
+	 */
+	public void queue(PointValueWebSocketPublisher publisher, PointValueEvent event){
+		long started = sendStarted;
+		if(started > 0 && Common.timer.currentTimeMillis() - started > sendTimeLimit){
+			close("send took longer than " + sendTimeLimit + " ms");
+			return;
+		}
+
+		synchronized(this){
+			if(terminated)
+				return;
+
+			switch(event.getType()){
+				case REGISTERED:
+				case INITIALIZE:
+				case TERMINATE:
+					//Values queued so far must go out before the status change
+					for(PointValueEventType valueType : PointValueEventType.values())
+						replaceable.remove(getKey(publisher, valueType));
+					add(new QueuedEvent(publisher, event), null);
+				break;
+				default:
+					String key = getKey(publisher, event.getType());
+					QueuedEvent existing = replaceable.get(key);
+					if(existing != null)
+						existing.event = event;
+					else
+						add(new QueuedEvent(publisher, event), key);
+				break;
+			}
+
+			if(task == null && !flushing)
+				task = new TimeoutTask(flushPeriod, flushClient);
+		}
+	}
+
+	/**
+	 * Stop sending and discard anything queued
+	 */
+	public void terminate(){
+		synchronized(this){
+			terminated = true;
+			queue.clear();
+			replaceable.clear();
+			if(task != null){
+				task.cancel();
+				task = null;
+			}
+		}
+	}
+
+	/**
+	 * Close a session that is not keeping up, a blocked send fails and the handler
+	 * terminates the outbox when the close completes
+	 * @param reason
+	 */
+	private void close(String reason){
+		terminate();
+		LOG.warn("Closing websocket session " + session.getId() + ", " + reason);
+		try{
+			session.close(CloseStatus.SESSION_NOT_RELIABLE);
+		}catch(Exception e){
+			LOG.debug("Failed to close websocket session " + session.getId(), e);
+		}
+	}
+
+	private void add(QueuedEvent event, String key){
+		queue.add(event);
+		if(key != null)
+			replaceable.put(key, event);
+		while(queue.size() > maxQueueSize){
+			QueuedEvent oldest = queue.poll();
+			replaceable.values().remove(oldest);
+			dropped++;
+		}
+	}
+
+	private String getKey(PointValueWebSocketPublisher publisher, PointValueEventType type){
+		return publisher.getXid() + "/" + type;
+	}
+
+	/**
+	 * Send everything queued, any events that arrive while sending
+	 * are coalesced and sent on the next flush.
+	 */
+	private void flush(){
+		List<QueuedEvent> events;
+		int droppedEvents;
+		synchronized(this){
+			task = null;
+			if(terminated)
+				return;
+			events = new ArrayList<QueuedEvent>(queue);
+			queue.clear();
+			replaceable.clear();
+			droppedEvents = dropped;
+			dropped = 0;
+			flushing = true;
+		}
+
+		try{
+			if(droppedEvents > 0)
+				LOG.warn("Websocket session " + session.getId() + " is not keeping up, dropped " + droppedEvents + " point value events");
+			for(QueuedEvent event : events){
+				if(!session.isOpen())
+					break;
+				TextMessage message;
+				try{
+					message = new TextMessage(event.publisher.getPayload(event.event, jacksonMapper));
+				}catch(Exception e){
+					LOG.error(e.getMessage(), e);
+					continue;
+				}
+				sendStarted = Common.timer.currentTimeMillis();
+				try{
+					session.sendMessage(message);
+				}catch(SessionLimitExceededException e){
+					close(e.getMessage());
+					break;
+				}catch(Exception e){
+					LOG.error(e.getMessage(), e);
+				}finally{
+					sendStarted = 0;
+				}
+			}
+		}finally{
+			synchronized(this){
+				flushing = false;
+				if(!terminated && !queue.isEmpty())
+					task = new TimeoutTask(flushPeriod, flushClient);
+			}
+		}
+	}
+
+	class QueuedEvent{
+		final PointValueWebSocketPublisher publisher;
+		PointValueEvent event;
+
+		QueuedEvent(PointValueWebSocketPublisher publisher, PointValueEvent event){
+			this.publisher = publisher;
+			this.event = event;
+		}
+	}
+
+	class FlushClient extends TimeoutClient{
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.util.timeout.TimeoutClient#scheduleTimeout(long)
+		 */
+		@Override
+		public void scheduleTimeout(long fireTime) {
+			//Only scheduling happens on the timer thread
+			try{
+				SENDERS.execute(flushRunnable);
+			}catch(RejectedExecutionException e){
+				synchronized(PointValueWebSocketOutbox.this){
+					task = null;
+				}
+				LOG.warn("Point value websocket flush rejected for session " + session.getId());
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.m2m2.util.timeout.TimeoutClient#getThreadName()
+		 */
+		@Override
+		public String getThreadName() {
+			return "Point value websocket flush " + session.getId();
+		}
+	}
+}
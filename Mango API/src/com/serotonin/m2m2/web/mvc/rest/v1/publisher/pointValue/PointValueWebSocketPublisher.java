@@ -6,40 +6,30 @@ package com.serotonin.m2m2.web.mvc.rest.v1.publisher.pointValue;
 
 import java.net.URI;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
-import com.serotonin.m2m2.rt.dataImage.DataPointListener;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
-import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
-import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeModel;
-import com.serotonin.m2m2.web.mvc.websocket.MangoWebSocketPublisher;
-import com.serotonin.m2m2.web.taglib.Functions;
 
 /**
- * This class should contain some form of synchronization that will allow for the 
- * Listener events to return without doing any work if the socket is trying to send
- * a current message.  This way we won't clog up the medium priority level with hung up tasks.
- * 
+ * Subscription of 1 Web socket session to 1 data point.  Events arrive from the
+ * PointValueEventHub and are only queued on the session's outbox so the data source's
+ * thread never waits on the socket.
  * 
  * @author Terry Packer
  *
  */
-public class PointValueWebSocketPublisher extends MangoWebSocketPublisher implements DataPointListener{
+public class PointValueWebSocketPublisher {
 	
-	private static final Log LOG = LogFactory.getLog(PointValueWebSocketPublisher.class);
-
 	private WebSocketSession session;
+	private PointValueWebSocketOutbox outbox;
 	private DataPointVO vo;
-	private DataPointRT rt;
 	private UriComponentsBuilder imageServletBuilder;
 	
 	private boolean sendPointInitialized = false;
@@ -50,10 +40,9 @@ public class PointValueWebSocketPublisher extends MangoWebSocketPublisher implem
 	private boolean sendPointTerminated = false;
 	
 	public PointValueWebSocketPublisher(URI uri, DataPointVO vo,  List<PointValueEventType> eventTypes,
-			WebSocketSession session, ObjectMapper jacksonMapper){
-		super(jacksonMapper);
-
+			WebSocketSession session, PointValueWebSocketOutbox outbox){
 		this.session = session;
+		this.outbox = outbox;
 		this.vo = vo;
 		
 		if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE){
@@ -74,235 +63,65 @@ public class PointValueWebSocketPublisher extends MangoWebSocketPublisher implem
 	 * Initial response upon new registration
 	 */
 	public void sendPointStatus(){
-		try {
-			if(!session.isOpen())
-				this.terminate();
-				
-				rt = Common.runtimeManager.getDataPoint(vo.getId());
-				boolean enabled = false;
-				Map<String,Object> attributes = null;
-				PointValueTime pvt = null;
-				Double convertedValue = null;
-				String renderedValue = null;
-				if(rt != null){
-					enabled = true; //We are enabled
-					pvt = rt.getPointValue(); //Get the value
-					attributes = rt.getAttributes();
-					renderedValue = Functions.getRenderedText(vo, pvt);
-					if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(pvt != null))
-						convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
-				}
-				PointValueTimeModel pvtModel = null;
-				if(pvt != null){
-					pvtModel = new PointValueTimeModel(pvt);
-					if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-						pvtModel.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
-				}
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), enabled, attributes, PointValueEventType.REGISTERED, pvtModel, renderedValue, convertedValue));
-
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
-		}
-	}
-	
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointInitialized()
-	 */
-	@Override
-	public void pointInitialized() {
-		
-		try {
-			if(!session.isOpen())
-				this.terminate();
-			
-			rt = Common.runtimeManager.getDataPoint(vo.getId()); //Set us up
-			
-			if(sendPointInitialized){
-				boolean enabled = false;
-				Map<String,Object> attributes = null;
-				PointValueTime pvt = null;
-				Double convertedValue = null;
-				String renderedValue = null;
-				if(rt != null){
-					enabled = true; //We are enabled
-					pvt = rt.getPointValue(); //Get the value
-					attributes = rt.getAttributes();
-					renderedValue = Functions.getRenderedText(vo, pvt);
-					if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(pvt != null))
-						convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
-				}
-				PointValueTimeModel pvtModel = null;
-				if(pvt != null){
-					pvtModel = new PointValueTimeModel(pvt);
-					if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-						pvtModel.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
-				}
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), enabled, attributes, PointValueEventType.INITIALIZE, pvtModel, renderedValue, convertedValue));
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
-		}
-		
+		if(!session.isOpen())
+			this.terminate();
+
+		DataPointRT rt = Common.runtimeManager.getDataPoint(vo.getId());
+		if(rt == null)
+			outbox.queue(this, new PointValueEvent(vo, PointValueEventType.REGISTERED, null, null));
+		else
+			outbox.queue(this, new PointValueEvent(rt.getVO(), PointValueEventType.REGISTERED, rt.getPointValue(), rt));
 	}
 
-
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointUpdated(com.serotonin.m2m2.rt.dataImage.PointValueTime)
-	 */
-	@Override
-	public void pointUpdated(PointValueTime newValue) {
-		try {
-			if(!session.isOpen())
-				this.terminate();
-			
-			if(sendPointUpdated){
-				boolean enabled = false;
-				Map<String,Object> attributes = null;
-				Double convertedValue = null;
-				String renderedValue = null;
-				if(rt != null){
-					enabled = true; //We are enabled
-					attributes = rt.getAttributes();
-					renderedValue = Functions.getRenderedText(vo, newValue);
-					if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(newValue != null))
-						convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(newValue.getValue().getDoubleValue());
-				}
-				PointValueTimeModel pvtModel = null;
-				if(newValue != null){
-					pvtModel = new PointValueTimeModel(newValue);
-					if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-						pvtModel.setValue(imageServletBuilder.buildAndExpand(newValue.getTime(), vo.getId()).toUri().toString());
-				}
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), enabled, attributes, PointValueEventType.UPDATE, pvtModel, renderedValue, convertedValue));
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
-		}
-		
-	}
-
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointChanged(com.serotonin.m2m2.rt.dataImage.PointValueTime, com.serotonin.m2m2.rt.dataImage.PointValueTime)
-	 */
-	@Override
-	public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
-		try {
-			if(!session.isOpen())
-				this.terminate();
-			
-			if(sendPointChanged){
-				boolean enabled = false;
-				Map<String,Object> attributes = null;
-				Double convertedValue = null;
-				String renderedValue = null;
-				if(rt != null){
-					enabled = true; //We are enabled
-					attributes = rt.getAttributes();
-					renderedValue = Functions.getRenderedText(vo, newValue);
-					if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(newValue != null))
-						convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(newValue.getValue().getDoubleValue());
-				}
-				PointValueTimeModel pvtModel = null;
-				if(newValue != null){
-					pvtModel = new PointValueTimeModel(newValue);
-					if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-						pvtModel.setValue(imageServletBuilder.buildAndExpand(newValue.getTime(), vo.getId()).toUri().toString());
-				}
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), enabled, attributes, PointValueEventType.CHANGE, pvtModel, renderedValue, convertedValue));
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
-		}
-	}
-
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointSet(com.serotonin.m2m2.rt.dataImage.PointValueTime, com.serotonin.m2m2.rt.dataImage.PointValueTime)
+	/**
+	 * Queue the event if this session wants it
+	 * @param event
 	 */
-	@Override
-	public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
-		try {
-			if(!session.isOpen())
-				this.terminate();
-			
-			if(sendPointSet){
-				boolean enabled = false;
-				Map<String,Object> attributes = null;
-				Double convertedValue = null;
-				String renderedValue = null;
-				if(rt != null){
-					enabled = true; //We are enabled
-					attributes = rt.getAttributes();
-					renderedValue = Functions.getRenderedText(vo, newValue);
-					if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(newValue != null))
-						convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(newValue.getValue().getDoubleValue());
-				}
-				PointValueTimeModel pvtModel = null;
-				if(newValue != null){
-					pvtModel = new PointValueTimeModel(newValue);
-					if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-						pvtModel.setValue(imageServletBuilder.buildAndExpand(newValue.getTime(), vo.getId()).toUri().toString());
-				}
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), enabled, attributes, PointValueEventType.SET, pvtModel, renderedValue, convertedValue));
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
+	public void publish(PointValueEvent event){
+		if(!session.isOpen()){
+			this.terminate();
+			return;
 		}
-	}
 
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointBackdated(com.serotonin.m2m2.rt.dataImage.PointValueTime)
-	 */
-	@Override
-	public void pointBackdated(PointValueTime value) {
-		try {
-			if(!session.isOpen())
-				this.terminate();
-			
-			if(sendPointBackdated){
-				boolean enabled = false;
-				Map<String,Object> attributes = null;
-				Double convertedValue = null;
-				String renderedValue = null;
-				if(rt != null){
-					enabled = true; //We are enabled
-					attributes = rt.getAttributes();
-					renderedValue = Functions.getRenderedText(vo, value);
-					if((vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)&&(value != null))
-						convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value.getValue().getDoubleValue());
-				}
-				PointValueTimeModel pvtModel = null;
-				if(value != null){
-					pvtModel = new PointValueTimeModel(value);
-					if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-						pvtModel.setValue(imageServletBuilder.buildAndExpand(value.getTime(), vo.getId()).toUri().toString());
-				}
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), enabled, attributes, PointValueEventType.BACKDATE, pvtModel, renderedValue, convertedValue));
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
+		boolean send;
+		switch(event.getType()){
+			case INITIALIZE:
+				send = sendPointInitialized;
+			break;
+			case UPDATE:
+				send = sendPointUpdated;
+			break;
+			case CHANGE:
+				send = sendPointChanged;
+			break;
+			case SET:
+				send = sendPointSet;
+			break;
+			case BACKDATE:
+				send = sendPointBackdated;
+			break;
+			case TERMINATE:
+				send = sendPointTerminated;
+			break;
+			default:
+				send = true;
+			break;
 		}
+		if(send)
+			outbox.queue(this, event);
 	}
 
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointTerminated()
+	/**
+	 * Get the bytes to send for an event, the image URL is specific to this session
+	 * @param event
+	 * @param jacksonMapper
+	 * @return
+	 * @throws JsonProcessingException
 	 */
-	@Override
-	public void pointTerminated() {
-		try {
-			if(!session.isOpen())
-				this.terminate();
-			
-			this.rt = null;
-			
-			if(sendPointTerminated){
-				this.sendMessage(session, new PointValueEventModel(vo.getXid(), false, null, PointValueEventType.TERMINATE, null, null, null));
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(),e);
-		}
+	public byte[] getPayload(PointValueEvent event, ObjectMapper jacksonMapper) throws JsonProcessingException{
+		return event.getPayload(jacksonMapper, imageServletBuilder);
 	}
 
-
 	/**
 	 * Re-set the event types
 	 * @param eventTypes
@@ -345,33 +164,25 @@ public class PointValueWebSocketPublisher extends MangoWebSocketPublisher implem
 	
 
 	/**
-	 * @param session
+	 * Start receiving events for the point
 	 */
 	public void initialize() {
-		Common.runtimeManager.addDataPointListener(vo.getId(), this);
+		PointValueEventHub.instance.subscribe(this);
 	}
 
 	public void terminate(){
-		Common.runtimeManager.removeDataPointListener(vo.getId(), this);
+		PointValueEventHub.instance.unsubscribe(this);
 	}
 	
 	public WebSocketSession getSession(){
 		return this.session;
 	}
-
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#pointLogged(com.serotonin.m2m2.rt.dataImage.PointValueTime)
-	 */
-	@Override
-	public void pointLogged(PointValueTime value) {
-		//Do nothing for now
+	
+	public DataPointVO getVo(){
+		return this.vo;
 	}
-
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#getListenerName()
-	 */
-	@Override
-	public String getListenerName() {
-		return "Websocket for DP " + this.vo.getXid() + "'s point values.";
+	
+	public String getXid(){
+		return this.vo.getXid();
 	}
 }
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.statistics;
+
+/**
+ * Window applied to each segment before its FFT to reduce spectral leakage
+ *
+ * @author Terry Packer
+ */
+public enum FftWindowFunction {
+
+	RECTANGULAR,
+	HANN,
+	HAMMING,
+	BLACKMAN;
+
+	/**
+	 * Create the window coefficients
+	 * @param size
+	 * @return
+	 */
+	public double[] create(int size){
+		double[] window = new double[size];
+		if(size == 1){
+			window[0] = 1d;
+			return window;
+		}
+		double m = size - 1;
+		for(int i=0; i<size; i++){
+			switch(this){
+				case HANN:
+					window[i] = 0.5d - 0.5d * Math.cos(2d * Math.PI * i / m);
+				break;
+				case HAMMING:
+					window[i] = 0.54d - 0.46d * Math.cos(2d * Math.PI * i / m);
+				break;
+				case BLACKMAN:
+					window[i] = 0.42d - 0.5d * Math.cos(2d * Math.PI * i / m) + 0.08d * Math.cos(4d * Math.PI * i / m);
+				break;
+				default:
+					window[i] = 1d;
+				break;
+			}
+		}
+		return window;
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.db.MappedRowCallback;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.view.quantize2.BucketCalculator;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueQueryExecutor;
+
+/**
+ * Rolls up many points in a single time ordered pass over the point values table.
+ *
+ * The start values are looked up together on the PointValueQueryExecutor before the
+ * scan and the end values are collected from the scan itself by extending it 1ms past
+ * the end of the last bucket, so a rollup costs one scan plus one lookup per point
+ * that all run at the same time.
+ *
+ * @author Terry Packer
+ */
+public class MultiPointRollupEngine {
+
+	private final Map<Integer, DataPointVO> voMap;
+	private final BucketCalculator bucketCalculator;
+	private final long startValueTime;
+	private final PointValueDao dao;
+
+	/**
+	 *
+	 * @param voMap - points to roll up
+	 * @param bucketCalculator - defines the range of the scan and the periods
+	 * @param startValueTime - time at which to find each point's value going into the first period
+	 */
+	public MultiPointRollupEngine(Map<Integer, DataPointVO> voMap, BucketCalculator bucketCalculator, long startValueTime){
+		this.voMap = voMap;
+		this.bucketCalculator = bucketCalculator;
+		this.startValueTime = startValueTime;
+		this.dao = Common.databaseProxy.newPointValueDao();
+	}
+
+	/**
+	 * Run the rollup, the callback will receive one statistics map per period
+	 * @param callback
+	 */
+	public void execute(ParentStatisticsQuantizerCallback callback){
+		final ParentDataQuantizer quantizer = new ParentDataQuantizer(bucketCalculator, callback);
+
+		Map<Integer, DataValue> startValues = getStartValues();
+		final Map<Integer, DataValue> endValues = new HashMap<Integer, DataValue>(voMap.size());
+		for(DataPointVO vo : voMap.values()){
+			if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC)
+				quantizer.startQuantizer(vo.getId(), startValues.get(vo.getId()), new AnalogStatisticsChildQuantizer(vo.getId(), quantizer));
+			else
+				quantizer.startQuantizer(vo.getId(), startValues.get(vo.getId()), new ValueChangeCounterChildQuantizer(vo.getId(), quantizer));
+			endValues.put(vo.getId(), null);
+		}
+
+		final long end = bucketCalculator.getEndTime().getMillis();
+		dao.getPointValuesBetween(new ArrayList<Integer>(voMap.keySet()), bucketCalculator.getStartTime().getMillis(), end + 1,
+				new MappedRowCallback<IdPointValueTime>() {
+					@Override
+					public void row(IdPointValueTime pvt, int row) {
+						//Values at the end time are not in any period, they are the end values
+						if(pvt.getTime() >= end)
+							endValues.put(pvt.getId(), pvt.getValue());
+						else
+							quantizer.data(pvt.getId(), pvt.getValue(), pvt.getTime());
+					}
+				});
+
+		quantizer.done(endValues);
+	}
+
+	/**
+	 * Find the value at or before the start time for all points at once
+	 * @return
+	 */
+	private Map<Integer, DataValue> getStartValues(){
+		PointValueQueryExecutor executor = PointValueQueryExecutor.getInstance();
+		Map<Integer, Future<PointValueTime>> pending = new LinkedHashMap<Integer, Future<PointValueTime>>(voMap.size());
+		for(final Integer id : voMap.keySet()){
+			pending.put(id, executor.submit(new Callable<PointValueTime>(){
+				@Override
+				public PointValueTime call() throws Exception {
+					return dao.getPointValueBefore(id, startValueTime + 1);
+				}
+			}));
+		}
+
+		Map<Integer, DataValue> startValues = new HashMap<Integer, DataValue>(voMap.size());
+		try{
+			for(Map.Entry<Integer, Future<PointValueTime>> entry : pending.entrySet())
+				startValues.put(entry.getKey(), PointValueTime.getValue(entry.getValue().get()));
+		}catch(ExecutionException e){
+			cancel(pending.values());
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new ShouldNeverHappenException(e.getCause());
+		}catch(InterruptedException e){
+			cancel(pending.values());
+			Thread.currentThread().interrupt();
+			throw new ShouldNeverHappenException(e);
+		}
+		return startValues;
+	}
+
+	private void cancel(Iterable<Future<PointValueTime>> futures){
+		for(Future<PointValueTime> f : futures)
+			f.cancel(true);
+	}
+
+	/**
+	 * Keep the statistics for each point so they can be written out one point at a time,
+	 * only the first limit periods are kept for each point.
+	 *
+	 * @author Terry Packer
+	 */
+	public static class StatisticsBuffer implements ParentStatisticsQuantizerCallback {
+
+		private final Map<Integer, List<StatisticsGenerator>> periods;
+		private final int limit;
+
+		public StatisticsBuffer(Integer limit){
+			this.periods = new HashMap<Integer, List<StatisticsGenerator>>();
+			this.limit = (limit == null || limit <= 0) ? Integer.MAX_VALUE : limit;
+		}
+
+		@Override
+		public void closePeriod(Map<Integer, StatisticsGenerator> periodStatsMap, long periodStartTime) {
+			for(Map.Entry<Integer, StatisticsGenerator> entry : periodStatsMap.entrySet()){
+				List<StatisticsGenerator> stats = periods.get(entry.getKey());
+				if(stats == null){
+					stats = new ArrayList<StatisticsGenerator>();
+					periods.put(entry.getKey(), stats);
+				}
+				if(stats.size() < limit)
+					stats.add(entry.getValue());
+			}
+		}
+
+		/**
+		 * Get the periods for a point in time order, never null
+		 * @param dataPointId
+		 * @return
+		 */
+		public List<StatisticsGenerator> getPeriods(int dataPointId){
+			List<StatisticsGenerator> stats = periods.get(dataPointId);
+			if(stats == null)
+				return new ArrayList<StatisticsGenerator>(0);
+			return stats;
+		}
+	}
+}
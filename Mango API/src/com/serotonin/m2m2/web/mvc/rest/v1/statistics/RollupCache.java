@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTimeZone;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.nosql.NoSQLDao;
+import com.serotonin.m2m2.db.dao.nosql.NoSQLQueryCallback;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.view.stats.ITime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.time.TimePeriod;
+
+/**
+ * Persistent store of finished rollup periods for numeric points, kept in the NoSQL database.
+ *
+ * There is one series per point, rollup, time period and time zone.  Only periods that ended
+ * before both the end of the query and the current time are stored.  A series is dropped when
+ * a backdated value arrives for its point, and point value imports drop the series of every
+ * point they write to.  Other changes the point's listener can't see, such as purges and values
+ * saved while the point was not running, are caught by comparing the number of values a series
+ * was computed from and the times of the first and last of them with the database.  That check
+ * is only made the first time a series is used after its point was tracked and then at most once
+ * per validation period, so those changes can be served from the cache for up to that long.
+ *
+ * The cache is only safe for history that is appended to.  A value changed in place, or values
+ * deleted and replaced inside a cached range keeping the count and the first and last times,
+ * are not noticed until the series is dropped.
+ *
+ * A point's listener and known series are dropped when the point stops.
+ *
+ * Enabled with the env property rest.pointValues.rollupCache.enabled, the validation period
+ * in ms is set with rest.pointValues.rollupCache.validationPeriod
+ *
+ * @author Terry Packer
+ */
+public class RollupCache {
+
+	private static final Log LOG = LogFactory.getLog(RollupCache.class);
+	private static final String STORE_NAME = "rollupCache";
+
+	public static final RollupCache instance = new RollupCache();
+
+	//Series we know of for each point, so they can all be dropped on a backdate
+	private final ConcurrentHashMap<Integer, Set<String>> pointSeries = new ConcurrentHashMap<Integer, Set<String>>();
+	private final ConcurrentHashMap<Integer, RollupCacheInvalidator> invalidators = new ConcurrentHashMap<Integer, RollupCacheInvalidator>();
+	//When each series was last checked against the database
+	private final ConcurrentHashMap<String, Long> validated = new ConcurrentHashMap<String, Long>();
+
+	private RollupCache(){ }
+
+	/**
+	 * Is the cache turned on and is there somewhere to put it
+	 * @return
+	 */
+	public boolean isEnabled(){
+		return Common.envProps.getBoolean("rest.pointValues.rollupCache.enabled", false) && (Common.databaseProxy.getNoSQLProxy() != null);
+	}
+
+	/**
+	 * Only periodic rollups of numeric points that reduce to a single value can be cached
+	 * @param vo
+	 * @param rollup
+	 * @param period
+	 * @return
+	 */
+	public boolean canCache(DataPointVO vo, RollupEnum rollup, TimePeriod period){
+		if(!isEnabled() || period == null)
+			return false;
+		if(vo.getPointLocator().getDataTypeId() != DataTypes.NUMERIC)
+			return false;
+		switch(rollup){
+			case NONE:
+			case FFT:
+			case ALL:
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	public String getSeriesId(DataPointVO vo, RollupEnum rollup, TimePeriod period, DateTimeZone zone){
+		return vo.getId() + "_" + rollup.name() + "_" + period.getPeriods() + "_" + period.getType() + "_" + zone.getID();
+	}
+
+	/**
+	 * Get the cached periods that start in the range
+	 * @param dataPointId
+	 * @param seriesId
+	 * @param from
+	 * @param to
+	 * @return map of period start time to entry
+	 */
+	public Map<Long, RollupCacheEntry> getEntries(int dataPointId, String seriesId, long from, final long to){
+		track(dataPointId, seriesId);
+		final Map<Long, RollupCacheEntry> entries = new HashMap<Long, RollupCacheEntry>();
+		getDao().getData(seriesId, from, to, -1, false, new NoSQLQueryCallback(){
+			@Override
+			public void entry(String storeName, long timestamp, ITime entry) {
+				if(timestamp < to)
+					entries.put(timestamp, (RollupCacheEntry)entry);
+			}
+		});
+		return entries;
+	}
+
+	/**
+	 * Save a finished period
+	 * @param dataPointId
+	 * @param seriesId
+	 * @param entry
+	 */
+	public void store(int dataPointId, String seriesId, RollupCacheEntry entry){
+		track(dataPointId, seriesId);
+		getDao().storeData(seriesId, entry);
+	}
+
+	/**
+	 * Should the series be checked against the database before it is used
+	 * @param seriesId
+	 * @return
+	 */
+	public boolean needsValidation(String seriesId){
+		Long last = validated.get(seriesId);
+		if(last == null)
+			return true;
+		long period = Common.envProps.getLong("rest.pointValues.rollupCache.validationPeriod", 3600000L);
+		return Common.timer.currentTimeMillis() - last >= period;
+	}
+
+	/**
+	 * Record that the series agrees with the database
+	 * @param seriesId
+	 */
+	public void validated(String seriesId){
+		validated.put(seriesId, Common.timer.currentTimeMillis());
+	}
+
+	/**
+	 * Drop a series that no longer agrees with the database
+	 * @param seriesId
+	 */
+	public void invalidate(String seriesId){
+		if(LOG.isDebugEnabled())
+			LOG.debug("Dropping rollup cache series " + seriesId);
+		validated.remove(seriesId);
+		getDao().deleteStore(seriesId);
+	}
+
+	/**
+	 * Drop all series we know of for a point
+	 * @param dataPointId
+	 */
+	public void invalidate(int dataPointId){
+		Set<String> series = pointSeries.get(dataPointId);
+		if(series == null)
+			return;
+		for(String seriesId : series)
+			invalidate(seriesId);
+		series.clear();
+	}
+
+	/**
+	 * Remember the series and listen for backdates on its point
+	 * @param dataPointId
+	 * @param seriesId
+	 */
+	private void track(int dataPointId, String seriesId){
+		Set<String> series = pointSeries.get(dataPointId);
+		if(series == null){
+			series = ConcurrentHashMap.newKeySet();
+			Set<String> existing = pointSeries.putIfAbsent(dataPointId, series);
+			if(existing != null)
+				series = existing;
+		}
+		series.add(seriesId);
+
+		if(!invalidators.containsKey(dataPointId)){
+			RollupCacheInvalidator invalidator = new RollupCacheInvalidator(dataPointId);
+			if(invalidators.putIfAbsent(dataPointId, invalidator) == null)
+				Common.runtimeManager.addDataPointListener(dataPointId, invalidator);
+		}
+	}
+
+	/**
+	 * Stop listening to a point and forget its series, its stored periods are kept
+	 * and checked against the database the next time they are used
+	 * @param dataPointId
+	 */
+	private void evict(int dataPointId){
+		RollupCacheInvalidator invalidator = invalidators.remove(dataPointId);
+		if(invalidator != null)
+			Common.runtimeManager.removeDataPointListener(dataPointId, invalidator);
+		Set<String> series = pointSeries.remove(dataPointId);
+		if(series != null){
+			for(String seriesId : series)
+				validated.remove(seriesId);
+		}
+	}
+
+	private NoSQLDao getDao(){
+		return Common.databaseProxy.getNoSQLProxy().createNoSQLDao(RollupCacheEntrySerializer.get(), STORE_NAME);
+	}
+
+	/**
+	 * Drops the cached rollups of a point when a value is inserted into its history
+	 *
+	 * @author Terry Packer
+	 */
+	class RollupCacheInvalidator implements DataPointListener{
+
+		private final int dataPointId;
+
+		public RollupCacheInvalidator(int dataPointId){
+			this.dataPointId = dataPointId;
+		}
+
+		@Override
+		public void pointBackdated(PointValueTime value) {
+			invalidate(dataPointId);
+		}
+
+		@Override
+		public void pointInitialized() { }
+
+		@Override
+		public void pointUpdated(PointValueTime newValue) { }
+
+		@Override
+		public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+
+		@Override
+		public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+
+		@Override
+		public void pointTerminated() {
+			//Values can be saved while the point is stopped, which we would not hear about
+			evict(dataPointId);
+		}
+
+		@Override
+		public void pointLogged(PointValueTime value) { }
+
+		@Override
+		public String getListenerName() {
+			return "Rollup cache for DP " + dataPointId;
+		}
+	}
+}
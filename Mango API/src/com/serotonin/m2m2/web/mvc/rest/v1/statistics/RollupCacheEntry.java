@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.statistics;
+
+import java.io.IOException;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.view.stats.AnalogStatistics;
+import com.serotonin.m2m2.view.stats.ITime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeWriter;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
+
+/**
+ * One finished period of a rollup, the value of the rollup and the number and the
+ * first and last times of the point values that were in the period when it was computed.
+ *
+ * @author Terry Packer
+ */
+public class RollupCacheEntry implements ITime{
+
+	private final long periodStart;
+	private final Double value;
+	private final int count;
+	//Times of the first and last values in the period, only meaningful when count > 0
+	private final long firstTime;
+	private final long lastTime;
+
+	public RollupCacheEntry(long periodStart, Double value, int count, long firstTime, long lastTime){
+		this.periodStart = periodStart;
+		this.value = value;
+		this.count = count;
+		this.firstTime = firstTime;
+		this.lastTime = lastTime;
+	}
+
+	/**
+	 * Extract the value for a rollup from the statistics
+	 * @param stats
+	 * @param rollup
+	 * @return
+	 */
+	public static RollupCacheEntry create(AnalogStatistics stats, RollupEnum rollup){
+		Double value;
+		switch(rollup){
+			case AVERAGE:
+				value = stats.getAverage();
+			break;
+			case DELTA:
+				value = stats.getDelta();
+			break;
+			case MINIMUM:
+				value = stats.getMinimumValue();
+			break;
+			case MAXIMUM:
+				value = stats.getMaximumValue();
+			break;
+			case ACCUMULATOR:
+				value = stats.getLastValue();
+				if(value == null)
+					value = stats.getMaximumValue();
+			break;
+			case SUM:
+				value = stats.getSum();
+			break;
+			case FIRST:
+				value = stats.getFirstValue();
+			break;
+			case LAST:
+				value = stats.getLastValue();
+			break;
+			case COUNT:
+				value = null;
+			break;
+			case INTEGRAL:
+				value = stats.getIntegral();
+			break;
+			default:
+				throw new ShouldNeverHappenException("Rollup not cacheable: " + rollup);
+		}
+		long firstTime = stats.getFirstTime() == null ? stats.getPeriodStartTime() : stats.getFirstTime();
+		long lastTime = stats.getLastTime() == null ? stats.getPeriodStartTime() : stats.getLastTime();
+		return new RollupCacheEntry(stats.getPeriodStartTime(), value, stats.getCount(), firstTime, lastTime);
+	}
+
+	/**
+	 * Write out the entry the same way the numeric statistics callbacks would
+	 * @param writer
+	 * @param vo
+	 * @param rollup
+	 * @throws IOException
+	 */
+	public void write(PointValueTimeWriter writer, DataPointVO vo, RollupEnum rollup) throws IOException{
+		switch(rollup){
+			case COUNT:
+				writer.writePointValueTime(count, periodStart, null, vo);
+			break;
+			case INTEGRAL:
+				writer.writeNonNullIntegral(value, periodStart, vo);
+			break;
+			default:
+				writer.writeNonNullDouble(value, periodStart, vo);
+			break;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.view.stats.ITime#getTime()
+	 */
+	@Override
+	public long getTime() {
+		return periodStart;
+	}
+
+	public Double getValue() {
+		return value;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getFirstTime() {
+		return firstTime;
+	}
+
+	public long getLastTime() {
+		return lastTime;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.statistics;
+
+import com.serotonin.m2m2.db.dao.nosql.ByteArrayBuilder;
+import com.serotonin.m2m2.db.dao.nosql.NoSQLDataSerializer;
+import com.serotonin.m2m2.view.stats.ITime;
+
+/**
+ * Store a RollupCacheEntry as [hasValue][value][count][firstTime][lastTime]
+ *
+ * @author Terry Packer
+ */
+public class RollupCacheEntrySerializer implements NoSQLDataSerializer{
+
+	public static final RollupCacheEntrySerializer instance = new RollupCacheEntrySerializer();
+
+	public static RollupCacheEntrySerializer get(){
+		return instance;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.db.dao.nosql.NoSQLDataSerializer#getObject(com.serotonin.m2m2.db.dao.nosql.ByteArrayBuilder, long, java.lang.String)
+	 */
+	@Override
+	public ITime getObject(ByteArrayBuilder b, long ts, String seriesId) {
+		boolean hasValue = b.getBoolean();
+		double value = b.getDouble();
+		int count = b.getInt();
+		long firstTime = b.getLong();
+		long lastTime = b.getLong();
+		return new RollupCacheEntry(ts, hasValue ? value : null, count, firstTime, lastTime);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.db.dao.nosql.NoSQLDataSerializer#putBytes(com.serotonin.m2m2.db.dao.nosql.ByteArrayBuilder, com.serotonin.m2m2.view.stats.ITime, long, java.lang.String)
+	 */
+	@Override
+	public void putBytes(ByteArrayBuilder b, ITime obj, long timestamp, String seriesId) {
+		RollupCacheEntry entry = (RollupCacheEntry)obj;
+		b.putBoolean(entry.getValue() != null);
+		b.putDouble(entry.getValue() == null ? 0d : entry.getValue());
+		b.putInt(entry.getCount());
+		b.putLong(entry.getFirstTime());
+		b.putLong(entry.getLastTime());
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.statistics;
+
+/**
+ * Welch's method of estimating the amplitude spectrum of a uniformly sampled signal.
+ *
+ * Samples are fed in one at a time, every time a segment of size samples is
+ * available it is windowed, transformed and its power added to the running average.
+ * Consecutive segments overlap, so memory use depends only on the segment size and
+ * not on the number of samples.
+ *
+ * @author Terry Packer
+ */
+public class WelchSpectrumEstimator {
+
+	private final int size;
+	private final int hop;
+	private final double sampleRateHz;
+	private final double[] window;
+	private final double windowSum;
+
+	//Last size samples, oldest at writeIndex once full
+	private final double[] buffer;
+	private int writeIndex;
+	private long sampleCount;
+
+	private final double[] real;
+	private final double[] imaginary;
+	private final double[] power;
+	private int segments;
+
+	/**
+	 *
+	 * @param size - samples per segment, must be a power of 2
+	 * @param overlap - fraction of each segment shared with the next, 0 <= overlap < 1
+	 * @param windowFunction
+	 * @param sampleRateHz
+	 */
+	public WelchSpectrumEstimator(int size, double overlap, FftWindowFunction windowFunction, double sampleRateHz){
+		if(size < 2 || (size & (size - 1)) != 0)
+			throw new IllegalArgumentException("FFT size must be a power of 2: " + size);
+		if(overlap < 0d || overlap >= 1d)
+			throw new IllegalArgumentException("FFT overlap must be in [0,1): " + overlap);
+		this.size = size;
+		this.hop = Math.max(1, (int)Math.round(size * (1d - overlap)));
+		this.sampleRateHz = sampleRateHz;
+		this.window = windowFunction.create(size);
+		double sum = 0;
+		for(double w : window)
+			sum += w;
+		this.windowSum = sum;
+
+		this.buffer = new double[size];
+		this.real = new double[size];
+		this.imaginary = new double[size];
+		this.power = new double[size / 2 + 1];
+	}
+
+	/**
+	 * Add the next sample
+	 * @param value
+	 */
+	public void addSample(double value){
+		buffer[writeIndex] = value;
+		writeIndex = (writeIndex + 1) & (size - 1);
+		sampleCount++;
+		if(sampleCount >= size && (sampleCount - size) % hop == 0)
+			processSegment();
+	}
+
+	private void processSegment(){
+		for(int i=0; i<size; i++){
+			real[i] = buffer[(writeIndex + i) & (size - 1)] * window[i];
+			imaginary[i] = 0d;
+		}
+		transform(real, imaginary);
+		for(int k=0; k<power.length; k++)
+			power[k] += real[k] * real[k] + imaginary[k] * imaginary[k];
+		segments++;
+	}
+
+	/**
+	 * In place iterative radix-2 FFT
+	 * @param re
+	 * @param im
+	 */
+	private static void transform(double[] re, double[] im){
+		int n = re.length;
+		//Bit reversal permutation
+		for(int i=1, j=0; i<n; i++){
+			int bit = n >> 1;
+			for(; (j & bit) != 0; bit >>= 1)
+				j ^= bit;
+			j ^= bit;
+			if(i < j){
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+		for(int length=2; length<=n; length <<= 1){
+			double angle = -2d * Math.PI / length;
+			double wRe = Math.cos(angle);
+			double wIm = Math.sin(angle);
+			int half = length >> 1;
+			for(int i=0; i<n; i+=length){
+				double curRe = 1d, curIm = 0d;
+				for(int j=0; j<half; j++){
+					int a = i + j, b = a + half;
+					double tRe = re[b] * curRe - im[b] * curIm;
+					double tIm = re[b] * curIm + im[b] * curRe;
+					re[b] = re[a] - tRe;
+					im[b] = im[a] - tIm;
+					re[a] += tRe;
+					im[a] += tIm;
+					double nextRe = curRe * wRe - curIm * wIm;
+					curIm = curRe * wIm + curIm * wRe;
+					curRe = nextRe;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of frequency bins, 0 to the Nyquist frequency
+	 * @return
+	 */
+	public int getBins(){
+		return power.length;
+	}
+
+	/**
+	 * Number of segments averaged so far
+	 * @return
+	 */
+	public int getSegments(){
+		return segments;
+	}
+
+	/**
+	 * Single sided amplitude of a bin, in the units of the samples
+	 * @param bin
+	 * @return
+	 */
+	public double getAmplitude(int bin){
+		if(segments == 0)
+			return 0d;
+		double amplitude = Math.sqrt(power[bin] / segments) / windowSum;
+		if(bin != 0 && bin != size / 2)
+			amplitude *= 2d;
+		return amplitude;
+	}
+
+	/**
+	 * Center frequency of a bin in Hz
+	 * @param bin
+	 * @return
+	 */
+	public double getFrequency(int bin){
+		return bin * sampleRateHz / size;
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Sets the target of a link and then runs the links chained off it in
+ * topological order, so a whole chain is one work item instead of a
+ * set and a listener notification per link.
+ *
+ * After each set the value is read back from the target and that is what the links
+ * below are given, the target's listeners may not have been notified yet.  When a link
+ * doesn't run, produces nothing or its set doesn't reach the target, for example
+ * because the data source failed or sets the value later, the links below it are left
+ * out of the chain and run through their listeners if the value does arrive.
+ *
+ * Links in the chain keep their event and execution mode, one that is busy or has values
+ * waiting is left to its listener, but their sets are made directly on the chain's thread
+ * rather than through the set point batch.
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointLinkChainWorkItem implements WorkItem {
+
+	private final PointLinkRT root;
+	private final PointLinkSetPointWorkItem rootSet;
+	private final List<PointLinkRT> chain;
+
+	/**
+	 * @param root - link that started the chain
+	 * @param rootSet - set of the link that started the chain
+	 * @param chain - downstream links in run order
+	 */
+	public PointLinkChainWorkItem(PointLinkRT root, PointLinkSetPointWorkItem rootSet, List<PointLinkRT> chain) {
+		this.root = root;
+		this.rootSet = rootSet;
+		this.chain = chain;
+	}
+
+	@Override
+	public void execute() {
+		//Values set by the chain, by point id
+		Map<Integer, ChainValue> set = new HashMap<Integer, ChainValue>();
+		PointValueTime previous = root.getTargetValue();
+		rootSet.execute();
+		ChainValue rootResult = ChainValue.afterSet(previous, root.getTargetValue());
+		if (rootResult == null)
+			return;
+		set.put(root.getTargetPointId(), rootResult);
+
+		for (PointLinkRT link : chain) {
+			ChainValue source = set.get(link.getSourcePointId());
+			//Nothing upstream set the source
+			if (source == null)
+				continue;
+			previous = link.getTargetValue();
+			if (link.runInChain(source.value, source.changed) == null)
+				continue;
+			ChainValue result = ChainValue.afterSet(previous, link.getTargetValue());
+			if (result != null)
+				set.put(link.getTargetPointId(), result);
+		}
+	}
+
+	@Override
+	public int getPriority() {
+		return rootSet.getPriority();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+		return "Point link chain of " + (chain.size() + 1) + " links";
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getTaskId()
+	 */
+	@Override
+	public String getTaskId() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getQueueSize()
+	 */
+	@Override
+	public int getQueueSize() {
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#rejected(com.serotonin.timer.RejectedTaskReason)
+	 */
+	@Override
+	public void rejected(RejectedTaskReason reason) {
+		rootSet.rejected(reason);
+	}
+
+	/**
+	 * A value the chain set on a point, as read back from the point
+	 */
+	static class ChainValue {
+		final PointValueTime value;
+		final boolean changed;
+
+		ChainValue(PointValueTime value, PointValueTime previous) {
+			this.value = value;
+			this.changed = previous == null || !previous.getValue().equals(value.getValue());
+		}
+
+		/**
+		 * @param previous - value of the target before the set
+		 * @param current - value of the target after the set
+		 * @return what the set left on the target, null if the target wasn't updated
+		 */
+		static ChainValue afterSet(PointValueTime previous, PointValueTime current) {
+			if (current == null)
+				return null;
+			if (previous != null && previous.getTime() == current.getTime() && previous.getValue().equals(current.getValue()))
+				return null;
+			return new ChainValue(current, previous);
+		}
+	}
+}
@@ -51,7 +51,7 @@ public class PointLinkDao extends BaseDao implements ValueMonitorOwner {
     	return ejt.queryForInt(POINT_LINK_COUNT, new Object[0], 0);
     }
     
-    private static final String POINT_LINK_SELECT = "select id, xid, sourcePointId, targetPointId, script, eventType, writeAnnotation, disabled, logLevel, scriptDataSourcePermission, scriptDataPointSetPermission, scriptDataPointReadPermission from pointLinks ";
+    private static final String POINT_LINK_SELECT = "select id, xid, sourcePointId, targetPointId, script, eventType, writeAnnotation, disabled, logLevel, scriptDataSourcePermission, scriptDataPointSetPermission, scriptDataPointReadPermission, executionMode, queueSize from pointLinks ";
 
     public List<PointLinkVO> getPointLinks() {
         return query(POINT_LINK_SELECT, new PointLinkRowMapper());
@@ -89,6 +89,8 @@ public class PointLinkDao extends BaseDao implements ValueMonitorOwner {
             permissions.setDataPointSetPermissions(rs.getString(++i));
             permissions.setDataPointReadPermissions(rs.getString(++i));
             pl.setScriptPermissions(permissions);
+            pl.setExecutionMode(rs.getInt(++i));
+            pl.setQueueSize(rs.getInt(++i));
             return pl;
         }
     }
@@ -101,8 +103,8 @@ public class PointLinkDao extends BaseDao implements ValueMonitorOwner {
     }
 
     private static final String POINT_LINK_INSERT = //
-    "insert into pointLinks (xid, sourcePointId, targetPointId, script, eventType, writeAnnotation, disabled, logLevel, scriptDataSourcePermission, scriptDataPointSetPermission, scriptDataPointReadPermission) "
-            + "values (?,?,?,?,?,?,?,?,?,?,?)";
+    "insert into pointLinks (xid, sourcePointId, targetPointId, script, eventType, writeAnnotation, disabled, logLevel, scriptDataSourcePermission, scriptDataPointSetPermission, scriptDataPointReadPermission, executionMode, queueSize) "
+            + "values (?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     private void insertPointLink(PointLinkVO pl) {
         int id = doInsert(POINT_LINK_INSERT, new Object[] { pl.getXid(), pl.getSourcePointId(), pl.getTargetPointId(),
@@ -110,14 +112,15 @@ public class PointLinkDao extends BaseDao implements ValueMonitorOwner {
                 boolToChar(pl.isDisabled()), pl.getLogLevel(),
                 pl.getScriptPermissions().getDataSourcePermissions(),
                 pl.getScriptPermissions().getDataPointSetPermissions(),
-                pl.getScriptPermissions().getDataPointReadPermissions()});
+                pl.getScriptPermissions().getDataPointReadPermissions(),
+                pl.getExecutionMode(), pl.getQueueSize()});
         pl.setId(id);
         AuditEventType.raiseAddedEvent(AuditEvent.TYPE_NAME, pl);
         this.countMonitor.increment();
     }
 
     private static final String POINT_LINK_UPDATE = //
-    "update pointLinks set xid=?, sourcePointId=?, targetPointId=?, script=?, eventType=?, writeAnnotation=?, disabled=?, logLevel=?, scriptDataSourcePermission=?, scriptDataPointSetPermission=?, scriptDataPointReadPermission=?"
+    "update pointLinks set xid=?, sourcePointId=?, targetPointId=?, script=?, eventType=?, writeAnnotation=?, disabled=?, logLevel=?, scriptDataSourcePermission=?, scriptDataPointSetPermission=?, scriptDataPointReadPermission=?, executionMode=?, queueSize=? "
             + "where id=?";
 
     private void updatePointLink(PointLinkVO pl) {
@@ -130,6 +133,7 @@ public class PointLinkDao extends BaseDao implements ValueMonitorOwner {
                         pl.getScriptPermissions().getDataSourcePermissions(),
                         pl.getScriptPermissions().getDataPointSetPermissions(),
                         pl.getScriptPermissions().getDataPointReadPermissions(),
+                        pl.getExecutionMode(), pl.getQueueSize(),
                         pl.getId() });
 
         AuditEventType.raiseChangedEvent(AuditEvent.TYPE_NAME, old, pl);
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Graph of the running point links, points are the nodes and links the edges from
+ * their source to their target.  Used to find the links downstream of a link so a
+ * chain such as A->B->C can be run in order in one work item.
+ *
+ * The graph is immutable, a new one is built whenever a link is started or stopped.
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointLinkGraph {
+
+	private final Map<Integer, List<PointLinkRT>> linksBySource = new HashMap<Integer, List<PointLinkRT>>();
+	//Downstream links in run order, by the id of the link that starts the chain
+	private final ConcurrentHashMap<Integer, List<PointLinkRT>> chains = new ConcurrentHashMap<Integer, List<PointLinkRT>>();
+
+	public PointLinkGraph(Collection<PointLinkRT> links) {
+		for (PointLinkRT link : links) {
+			List<PointLinkRT> fromSource = linksBySource.get(link.getSourcePointId());
+			if (fromSource == null) {
+				fromSource = new ArrayList<PointLinkRT>(1);
+				linksBySource.put(link.getSourcePointId(), fromSource);
+			}
+			fromSource.add(link);
+		}
+	}
+
+	/**
+	 * @param root
+	 * @return links downstream of the root's target in topological order, empty if there are none
+	 */
+	public List<PointLinkRT> getChain(PointLinkRT root) {
+		List<PointLinkRT> chain = chains.get(root.getId());
+		if (chain == null) {
+			chain = buildChain(root, linksBySource);
+			chains.putIfAbsent(root.getId(), chain);
+		}
+		return chain;
+	}
+
+	/**
+	 * @param root
+	 * @param linksBySource - links by their source point
+	 * @return links downstream of the root's target in topological order
+	 */
+	static <L extends Link> List<L> buildChain(L root, Map<Integer, List<L>> linksBySource) {
+		if (!linksBySource.containsKey(root.getTargetPointId()))
+			return Collections.emptyList();
+
+		//Find every link reachable from the root's target
+		Set<L> reachable = new LinkedHashSet<L>();
+		Set<Integer> visited = new HashSet<Integer>();
+		Deque<Integer> points = new ArrayDeque<Integer>();
+		visited.add(root.getTargetPointId());
+		points.add(root.getTargetPointId());
+		while (!points.isEmpty()) {
+			List<L> links = linksBySource.get(points.poll());
+			if (links == null)
+				continue;
+			for (L link : links) {
+				if (link != root && reachable.add(link) && visited.add(link.getTargetPointId()))
+					points.add(link.getTargetPointId());
+			}
+		}
+
+		//Order them so each link runs after every link that sets its source
+		Map<L, Integer> inDegree = new IdentityHashMap<L, Integer>();
+		Deque<L> ready = new ArrayDeque<L>();
+		for (L link : reachable) {
+			int count = 0;
+			for (L other : reachable) {
+				if (other.getTargetPointId() == link.getSourcePointId())
+					count++;
+			}
+			inDegree.put(link, count);
+			if (count == 0)
+				ready.add(link);
+		}
+
+		//Links on a cycle never become ready and are left to run through their listeners
+		List<L> chain = new ArrayList<L>(reachable.size());
+		while (!ready.isEmpty()) {
+			L link = ready.poll();
+			chain.add(link);
+			List<L> downstream = linksBySource.get(link.getTargetPointId());
+			if (downstream == null)
+				continue;
+			for (L next : downstream) {
+				Integer count = inDegree.get(next);
+				if (count == null)
+					continue;
+				inDegree.put(next, count - 1);
+				if (count == 1)
+					ready.add(next);
+			}
+		}
+		return Collections.unmodifiableList(chain);
+	}
+
+	/**
+	 * Would saving this link close a loop through the enabled links
+	 * @param vo - link being saved
+	 * @param links - saved links
+	 * @return
+	 */
+	public static boolean createsCycle(PointLinkVO vo, List<PointLinkVO> links) {
+		if (vo.isDisabled())
+			return false;
+
+		Map<Integer, List<Integer>> targetsBySource = new HashMap<Integer, List<Integer>>();
+		for (PointLinkVO link : links) {
+			if (link.isDisabled() || link.getId() == vo.getId())
+				continue;
+			List<Integer> targets = targetsBySource.get(link.getSourcePointId());
+			if (targets == null) {
+				targets = new ArrayList<Integer>(1);
+				targetsBySource.put(link.getSourcePointId(), targets);
+			}
+			targets.add(link.getTargetPointId());
+		}
+		return createsCycle(vo.getSourcePointId(), vo.getTargetPointId(), targetsBySource);
+	}
+
+	/**
+	 * Would a link from the source to the target close a loop, a loop exists if
+	 * the source can be reached from the target
+	 * @param sourcePointId
+	 * @param targetPointId
+	 * @param targetsBySource - targets of the other links by their source point
+	 * @return
+	 */
+	static boolean createsCycle(int sourcePointId, int targetPointId, Map<Integer, List<Integer>> targetsBySource) {
+		Set<Integer> visited = new HashSet<Integer>();
+		Deque<Integer> points = new ArrayDeque<Integer>();
+		points.add(targetPointId);
+		while (!points.isEmpty()) {
+			Integer pointId = points.poll();
+			if (pointId == sourcePointId)
+				return true;
+			if (!visited.add(pointId))
+				continue;
+			List<Integer> targets = targetsBySource.get(pointId);
+			if (targets != null)
+				points.addAll(targets);
+		}
+		return false;
+	}
+
+	/**
+	 * The ends of a link as the graph sees them
+	 */
+	interface Link {
+		int getId();
+
+		int getSourcePointId();
+
+		int getTargetPointId();
+	}
+}
@@ -11,6 +11,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.script.CompiledScript;
 import javax.script.ScriptException;
@@ -31,6 +36,7 @@ import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataSource.DataSourceRT;
 import com.serotonin.m2m2.rt.event.type.EventType;
 import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.rt.maint.work.SetPointWorkItem;
 import com.serotonin.m2m2.rt.script.CompiledScriptExecutor;
 import com.serotonin.m2m2.rt.script.JsonImportExclusion;
 import com.serotonin.m2m2.rt.script.OneTimePointAnnotation;
@@ -46,7 +52,7 @@ import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 /**
  * @author Matthew Lohbihler
  */
-public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
+public class PointLinkRT implements DataPointListener, PointLinkSetPointSource, PointLinkGraph.Link {
     public static final String CONTEXT_SOURCE_VAR_NAME = "source";
     public static final String CONTEXT_TARGET_VAR_NAME = "target";
     private final PointLinkVO vo;
@@ -58,8 +64,30 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
     private ScriptPointValueSetter setCallback;
     private final List<JsonImportExclusion> importExclusions;
     
-    //Added to stop excessive point link calls
-    private volatile Boolean ready;
+    //Set while a value is being run through the script or set on the target
+    private final AtomicBoolean running = new AtomicBoolean();
+    //Values waiting for the current run to complete, latest only or FIFO depending on the execution mode
+    private final AtomicReference<PointValueTime> pendingValue = new AtomicReference<PointValueTime>();
+    private final ConcurrentLinkedQueue<PointValueTime> queue = new ConcurrentLinkedQueue<PointValueTime>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    //Last source value run by either the listener or a chain, so whichever sees it second skips it
+    private final Object claimLock = new Object();
+    private PointValueTime claimed;
+    //Only raise and return the already running event on transitions
+    private final AtomicBoolean alreadyRunningActive = new AtomicBoolean();
+
+    //Statistics
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+    private final AtomicLong scriptNanos = new AtomicLong();
+
+    //Cached runtime state, refreshed when the source or target point starts or stops
+    private final TargetPointListener targetListener = new TargetPointListener();
+    private final PrintWriter scriptOut = new PrintWriter(new NullWriter());
+    private final boolean batchSetPoints;
+    private volatile DataPointRT targetPoint;
+    private volatile Map<String, IDataPointValueSource> context;
+    private volatile TranslatableMessage annotation;
 
     public PointLinkRT(PointLinkVO vo) {
         this.vo = vo;
@@ -69,7 +97,7 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
                 EventType.DuplicateHandling.IGNORE_SAME_MESSAGE);
         compiledScript = null;
         compiled = false;
-        ready = true;
+        batchSetPoints = Common.envProps.getBoolean(PointLinkSetPointBatchWorkItem.BATCH_SET_POINTS_PROPERTY, false);
         setCallback = new SetCallback(vo.getScriptPermissions());
         importExclusions = new ArrayList<>();
         importExclusions.add(new JsonImportExclusion("xid", vo.getXid()) {
@@ -82,6 +110,8 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 
     public void initialize() {
         Common.runtimeManager.addDataPointListener(vo.getSourcePointId(), this);
+        Common.runtimeManager.addDataPointListener(vo.getTargetPointId(), targetListener);
+        refreshPoints();
         checkSource();
         try {
         	compiledScript = CompiledScriptExecutor.compile(vo.getScript());
@@ -105,16 +135,54 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 
     public void terminate() {
         Common.runtimeManager.removeDataPointListener(vo.getSourcePointId(), this);
+        Common.runtimeManager.removeDataPointListener(vo.getTargetPointId(), targetListener);
+        pendingValue.set(null);
+        queue.clear();
+        queueDepth.set(0);
         returnToNormal();
+        if (alreadyRunningActive.compareAndSet(true, false))
+            SystemEventType.returnToNormal(alreadyRunningEvent, System.currentTimeMillis());
     }
 
     public int getId() {
         return vo.getId();
     }
 
-    private void checkSource() {
+    public int getSourcePointId() {
+        return vo.getSourcePointId();
+    }
+
+    public int getTargetPointId() {
+        return vo.getTargetPointId();
+    }
+
+    /**
+     * Look up the source and target runtimes and rebuild the script context,
+     * the context is replaced rather than modified so a running script keeps a consistent view
+     */
+    private void refreshPoints() {
         DataPointRT source = Common.runtimeManager.getDataPoint(vo.getSourcePointId());
-        if (source == null)
+        DataPointRT target = Common.runtimeManager.getDataPoint(vo.getTargetPointId());
+        Map<String, IDataPointValueSource> context = new HashMap<String, IDataPointValueSource>();
+        context.put(CONTEXT_SOURCE_VAR_NAME, source);
+        context.put(CONTEXT_TARGET_VAR_NAME, target);
+        this.context = context;
+        this.targetPoint = target;
+
+        if (vo.isWriteAnnotation()) {
+            String xid;
+            if (source != null)
+                xid = source.getVO().getXid();
+            else {
+                DataPointVO dp = DataPointDao.instance.get(vo.getSourcePointId());
+                xid = dp != null ? dp.getXid() : "unknown";
+            }
+            annotation = new TranslatableMessage("annotation.pointLink", xid);
+        }
+    }
+
+    private void checkSource() {
+        if (context.get(CONTEXT_SOURCE_VAR_NAME) == null)
             // The source has been terminated, was never enabled, or not longer exists.
             raiseFailureEvent(new TranslatableMessage("event.pointLink.sourceUnavailable"));
         else
@@ -134,81 +202,250 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
         SystemEventType.returnToNormal(eventType, System.currentTimeMillis());
     }
 
-    private void execute(PointValueTime newValue) {
-    	
-    	//Bail out if already running a point link operation
-	    synchronized(ready){
-	    	if(!ready){
-	    		SystemEventType.raiseEvent(alreadyRunningEvent, newValue.getTime(), true, new TranslatableMessage("event.pointLink.duplicateRuns"));
-	    		return;
-	    	}else{
-	    		ready = false; //Stop anyone else from using this 
-	    		SystemEventType.returnToNormal(alreadyRunningEvent, System.currentTimeMillis());
-	    	}
-    	}
+    /**
+     * Run a new source value according to the execution mode
+     * @param newValue
+     */
+    private void submit(PointValueTime newValue) {
+        //Already run as part of a chain
+        if (!claim(newValue))
+            return;
+
+        switch (vo.getExecutionMode()) {
+            case PointLinkVO.EXECUTION_COALESCE:
+                //A value that was still waiting is superseded by this one
+                if (pendingValue.getAndSet(newValue) != null)
+                    drops.incrementAndGet();
+                break;
+            case PointLinkVO.EXECUTION_QUEUE:
+                if (queueDepth.incrementAndGet() > vo.getQueueSize()) {
+                    queueDepth.decrementAndGet();
+                    dropped(newValue, new TranslatableMessage("event.pointLink.queueFull", vo.getQueueSize()));
+                    return;
+                }
+                queue.offer(newValue);
+                break;
+            default:
+                //Bail out if already running a point link operation
+                if (!running.compareAndSet(false, true)) {
+                    dropped(newValue, new TranslatableMessage("event.pointLink.duplicateRuns"));
+                    return;
+                }
+                accepted();
+                run(newValue);
+                return;
+        }
+        accepted();
+        drain();
+    }
+
+    /**
+     * Record a source value as run, a value is delivered by the listener and,
+     * when the source is set by a chain, by the chain as well
+     * @param value
+     * @return false if the value was already claimed
+     */
+    private boolean claim(PointValueTime value) {
+        synchronized (claimLock) {
+            if (claimed != null && claimed.getTime() == value.getTime() && claimed.getValue().equals(value.getValue()))
+                return false;
+            claimed = value;
+            return true;
+        }
+    }
+
+    /**
+     * Run pending values until one is handed to the background processing or none are left.
+     * Whoever wins the running flag does the work, so no values are stranded when a run
+     * completes while another thread is adding a value.
+     */
+    private void drain() {
+        while (running.compareAndSet(false, true)) {
+            PointValueTime next = pollPending();
+            if (next == null) {
+                running.set(false);
+                if (hasPending())
+                    continue;
+                return;
+            }
+            //The completion of the set will continue draining
+            if (run(next))
+                return;
+        }
+    }
+
+    /**
+     * Execute a value while holding the running flag, releasing it unless a set was queued
+     * @param value
+     * @return true if the set point work item will release the flag
+     */
+    private boolean run(PointValueTime value) {
+        boolean queued = false;
+        try {
+            queued = execute(value);
+        } finally {
+            if (!queued)
+                running.set(false);
+        }
+        return queued;
+    }
+
+    private PointValueTime pollPending() {
+        if (vo.getExecutionMode() == PointLinkVO.EXECUTION_QUEUE) {
+            PointValueTime value = queue.poll();
+            if (value != null)
+                queueDepth.decrementAndGet();
+            return value;
+        }
+        return pendingValue.getAndSet(null);
+    }
+
+    private boolean hasPending() {
+        if (vo.getExecutionMode() == PointLinkVO.EXECUTION_QUEUE)
+            return !queue.isEmpty();
+        return pendingValue.get() != null;
+    }
+
+    private void dropped(PointValueTime value, TranslatableMessage message) {
+        drops.incrementAndGet();
+        if (alreadyRunningActive.compareAndSet(false, true))
+            SystemEventType.raiseEvent(alreadyRunningEvent, value.getTime(), true, message);
+    }
+
+    private void accepted() {
+        if (alreadyRunningActive.compareAndSet(true, false))
+            SystemEventType.returnToNormal(alreadyRunningEvent, System.currentTimeMillis());
+    }
+
+    /**
+     * Run the script for a value and queue the set of the target, along with
+     * any links that are chained off the target
+     * @param newValue
+     * @return true if a set point work item was queued
+     */
+    private boolean execute(PointValueTime newValue) {
+        PointValueTime result = evaluate(newValue);
+        if (result == null)
+            return false;
+
+        // Queue a work item to perform the update.
+        PointLinkSetPointWorkItem item = new PointLinkSetPointWorkItem(vo.getTargetPointId(), result, this);
+        List<PointLinkRT> chain = RTMDefinition.instance.getGraph().getChain(this);
+        if (!chain.isEmpty())
+            Common.backgroundProcessing.addWorkItem(new PointLinkChainWorkItem(this, item, chain));
+        else if (batchSetPoints)
+            PointLinkSetPointBatchWorkItem.add(item);
+        else
+            Common.backgroundProcessing.addWorkItem(item);
+        return true;
+    }
+
+    /**
+     * Run this link as part of a chain, on the chain's thread, with the value the chain set on its source.
+     * Links on the logged event depend on the source's logging settings and are left to their listeners,
+     * as is a link that is already running, has values waiting to run in its execution mode or has
+     * already run the value through its listener.  The target is set directly rather than through
+     * a batch so the links below can read it back.
+     * @param value - value the chain set on the source
+     * @param changed - the value differs from the source's previous value
+     * @return value set on the target, null if the link didn't run or produced nothing
+     */
+    PointValueTime runInChain(PointValueTime value, boolean changed) {
+        if (vo.getEvent() == PointLinkVO.EVENT_LOGGED || (vo.getEvent() == PointLinkVO.EVENT_CHANGE && !changed))
+            return null;
+        if (!running.compareAndSet(false, true))
+            return null;
+        //Keep the order of values already waiting, this one will come through the listener behind them
+        if (hasPending()) {
+            running.set(false);
+            drain();
+            return null;
+        }
+        try {
+            if (!claim(value))
+                return null;
+            PointValueTime result = evaluate(value);
+            if (result != null)
+                new SetPointWorkItem(vo.getTargetPointId(), result, this).execute();
+            return result;
+        } finally {
+            running.set(false);
+            drain();
+        }
+    }
+
+    /**
+     * @return current value of the target, null if it isn't running
+     */
+    PointValueTime getTargetValue() {
+        DataPointRT target = targetPoint;
+        return target == null ? null : target.getPointValue();
+    }
+
+    /**
+     * Run the script for a value and check the result can be set on the target
+     * @param newValue
+     * @return value to set or null if it can't be set
+     */
+    private PointValueTime evaluate(PointValueTime newValue) {
+        runs.incrementAndGet();
         // Propagate the update to the target point. Validate that the target point is available.
-        DataPointRT targetPoint = Common.runtimeManager.getDataPoint(vo.getTargetPointId());
+        DataPointRT targetPoint = this.targetPoint;
         if (targetPoint == null) {
             raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.targetUnavailable"));
-            ready = true;
-            return;
+            return null;
         }
 
         if (!targetPoint.getPointLocator().isSettable()) {
             raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.targetNotSettable"));
-            ready = true;
-            return;
+            return null;
         }
 
         int targetDataType = targetPoint.getVO().getPointLocator().getDataTypeId();
 
         if (!StringUtils.isBlank(vo.getScript())) {
-            Map<String, IDataPointValueSource> context = new HashMap<String, IDataPointValueSource>();
-            context.put(CONTEXT_SOURCE_VAR_NAME, Common.runtimeManager.getDataPoint(vo.getSourcePointId()));
-            context.put(CONTEXT_TARGET_VAR_NAME, Common.runtimeManager.getDataPoint(vo.getTargetPointId()));
-
             try {
             	if(!compiled) {
             		compiledScript = CompiledScriptExecutor.compile(vo.getScript());
             		compiled = true;
             	}
             		
-                PointValueTime pvt = CompiledScriptExecutor.execute(compiledScript, context, null, newValue.getTime(),
-                        targetDataType, newValue.getTime(), vo.getScriptPermissions(), new PrintWriter(new NullWriter()), 
-                        scriptLog, setCallback, importExclusions, false);
+                long start = System.nanoTime();
+                PointValueTime pvt;
+                try {
+                    pvt = CompiledScriptExecutor.execute(compiledScript, context, null, newValue.getTime(),
+                            targetDataType, newValue.getTime(), vo.getScriptPermissions(), scriptOut, 
+                            scriptLog, setCallback, importExclusions, false);
+                } finally {
+                    scriptNanos.addAndGet(System.nanoTime() - start);
+                }
                 if (pvt.getValue() == null) {
                     raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.nullResult"));
-                    ready = true;
-                    return;
+                    return null;
                 }
                 newValue = pvt;
             }
             catch (ScriptException e) {
                 raiseFailureEvent(newValue.getTime(), new TranslatableMessage("pointLinks.validate.scriptError", e.getMessage()));
-                ready = true;
-                return;
+                return null;
             }
             catch(ScriptPermissionsException e) {
             	raiseFailureEvent(newValue.getTime(), e.getTranslatableMessage());
-            	ready = true;
-                return;
+                return null;
             }
             catch (ResultTypeException e) {
                 raiseFailureEvent(newValue.getTime(), e.getTranslatableMessage());
-                ready = true;
-                return;
+                return null;
             }
         }
 
         if (DataTypes.getDataType(newValue.getValue()) != targetDataType) {
             raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.convertError"));
-            ready = true;
-            return;
+            return null;
         }
 
-        // Queue a work item to perform the update.
-        Common.backgroundProcessing.addWorkItem(new PointLinkSetPointWorkItem(vo.getTargetPointId(), newValue, this));
         returnToNormal();
+        return newValue;
     }
 
     //
@@ -217,18 +454,20 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
     //
     @Override
     public void pointInitialized() {
+        refreshPoints();
         checkSource();
     }
 
     @Override
     public void pointTerminated() {
+        refreshPoints();
         checkSource();
     }
 
     @Override
     public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
         if (vo.getEvent() == PointLinkVO.EVENT_CHANGE)
-            execute(newValue);
+            submit(newValue);
     }
 
     @Override
@@ -244,13 +483,13 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
     @Override
     public void pointUpdated(PointValueTime newValue) {
         if (vo.getEvent() == PointLinkVO.EVENT_UPDATE)
-            execute(newValue);
+            submit(newValue);
     }
     
     @Override
 	public void pointLogged(PointValueTime value) {
 		if (vo.getEvent() == PointLinkVO.EVENT_LOGGED)
-			execute(value);
+			submit(value);
 	}
 
     //
@@ -269,15 +508,8 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 
     @Override
     public TranslatableMessage getSetPointSourceMessage() {
-        if (vo.isWriteAnnotation()){
-        	DataPointVO vo = DataPointDao.instance.get(this.vo.getSourcePointId());
-        	String xid;
-        	if(vo != null)
-        		xid = vo.getXid();
-        	else
-        		xid = "unknown";
-            return new TranslatableMessage("annotation.pointLink", xid);
-        }
+        if (vo.isWriteAnnotation())
+            return annotation;
         return null;
     }
 
@@ -291,7 +523,38 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 	 */
 	@Override
 	public void pointSetComplete() {
-		this.ready = true;
+		running.set(false);
+		drain();
+	}
+
+	/**
+	 * @return number of values run through the link
+	 */
+	public long getRuns() {
+		return runs.get();
+	}
+
+	/**
+	 * @return number of values dropped or superseded before they could run
+	 */
+	public long getDrops() {
+		return drops.get();
+	}
+
+	/**
+	 * @return number of values waiting to run
+	 */
+	public int getQueueDepth() {
+		if (vo.getExecutionMode() == PointLinkVO.EXECUTION_QUEUE)
+			return queueDepth.get();
+		return pendingValue.get() == null ? 0 : 1;
+	}
+
+	/**
+	 * @return total time spent executing the script in nanoseconds
+	 */
+	public long getScriptNanos() {
+		return scriptNanos.get();
 	}
 	
     public static File getLogFile(int pointId) {
@@ -306,6 +569,51 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 		return "Point Link " + this.vo.getXid();
 	}
 	
+	/**
+	 * Keeps the cached target runtime current
+	 */
+	class TargetPointListener implements DataPointListener {
+		@Override
+		public String getListenerName() {
+			return "Point Link " + vo.getXid() + " target";
+		}
+
+		@Override
+		public void pointInitialized() {
+			refreshPoints();
+		}
+
+		@Override
+		public void pointTerminated() {
+			refreshPoints();
+		}
+
+		@Override
+		public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+			// No op
+		}
+
+		@Override
+		public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+			// No op
+		}
+
+		@Override
+		public void pointUpdated(PointValueTime newValue) {
+			// No op
+		}
+
+		@Override
+		public void pointBackdated(PointValueTime value) {
+			// No op
+		}
+
+		@Override
+		public void pointLogged(PointValueTime value) {
+			// No op
+		}
+	}
+
 	class SetCallback extends ScriptPointValueSetter {
         public SetCallback(ScriptPermissions permissions) {
 			super(permissions);
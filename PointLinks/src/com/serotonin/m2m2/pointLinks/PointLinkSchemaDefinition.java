@@ -32,7 +32,7 @@ public class PointLinkSchemaDefinition extends DatabaseSchemaDefinition {
 
     @Override
     public int getDatabaseSchemaVersion() {
-        return 2;
+        return 3;
     }
 
     @Override
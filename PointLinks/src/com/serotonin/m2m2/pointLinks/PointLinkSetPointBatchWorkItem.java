@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Applies the results of many point links in one background work item instead of
+ * queuing a work item per result.  At most one batch is scheduled at a time, results
+ * added while it runs are picked up by it or by the next batch.
+ *
+ * Enabled with the pointLinks.batchSetPoints env property.
+ *
+ * @author Terry Packer
+ *
+ */
+public class PointLinkSetPointBatchWorkItem implements WorkItem {
+
+	private static final Log LOG = LogFactory.getLog(PointLinkSetPointBatchWorkItem.class);
+
+	public static final String BATCH_SET_POINTS_PROPERTY = "pointLinks.batchSetPoints";
+	//Let other work run between batches when links are very busy
+	private static final int MAX_BATCH_SIZE = 1000;
+
+	private static final PointLinkSetPointBatchWorkItem instance = new PointLinkSetPointBatchWorkItem();
+
+	private final ConcurrentLinkedQueue<PointLinkSetPointWorkItem> pending = new ConcurrentLinkedQueue<PointLinkSetPointWorkItem>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private PointLinkSetPointBatchWorkItem() { }
+
+	/**
+	 * Queue a set to be applied by the next batch
+	 * @param item
+	 */
+	public static void add(PointLinkSetPointWorkItem item) {
+		instance.pending.offer(item);
+		instance.schedule();
+	}
+
+	private void schedule() {
+		if (!pending.isEmpty() && scheduled.compareAndSet(false, true))
+			Common.backgroundProcessing.addWorkItem(this);
+	}
+
+	@Override
+	public void execute() {
+		try {
+			PointLinkSetPointWorkItem item;
+			int count = 0;
+			while (count < MAX_BATCH_SIZE && (item = pending.poll()) != null) {
+				count++;
+				try {
+					item.execute();
+				} catch (Exception e) {
+					LOG.error("Point link set point failed", e);
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			//Pick up anything added after the last poll
+			schedule();
+		}
+	}
+
+	@Override
+	public int getPriority() {
+		return WorkItem.PRIORITY_HIGH;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+		return "Point link set point batch";
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getTaskId()
+	 */
+	@Override
+	public String getTaskId() {
+		return "PLSPB";
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getQueueSize()
+	 */
+	@Override
+	public int getQueueSize() {
+		return 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#rejected(com.serotonin.timer.RejectedTaskReason)
+	 */
+	@Override
+	public void rejected(RejectedTaskReason reason) {
+		//Release the links waiting on these sets so they are not stuck running
+		PointLinkSetPointWorkItem item;
+		while ((item = pending.poll()) != null)
+			item.rejected(reason);
+		scheduled.set(false);
+		schedule();
+	}
+}
@@ -7,6 +7,7 @@ package com.serotonin.m2m2.pointLinks;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.rt.maint.work.SetPointWorkItem;
+import com.serotonin.timer.RejectedTaskReason;
 
 /**
  * @author Terry Packer
@@ -30,7 +31,19 @@ public class PointLinkSetPointWorkItem extends SetPointWorkItem{
 	
 	@Override
     public void execute() {
-		super.execute();
+		try {
+			super.execute();
+		} finally {
+			plSource.pointSetComplete();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.SetPointWorkItem#rejected(com.serotonin.timer.RejectedTaskReason)
+	 */
+	@Override
+	public void rejected(RejectedTaskReason reason) {
+		super.rejected(reason);
 		plSource.pointSetComplete();
 	}
 	
@@ -44,6 +44,20 @@ public class PointLinkVO extends AbstractVO<PointLinkVO> {
         EVENT_CODES.addElement(EVENT_LOGGED, "LOGGED", "pointLinks.event.logged");
     }
 
+    //What to do with values that arrive while the link is running
+    public static final int EXECUTION_DROP = 1;
+    public static final int EXECUTION_COALESCE = 2;
+    public static final int EXECUTION_QUEUE = 3;
+
+    public static ExportCodes EXECUTION_MODE_CODES = new ExportCodes();
+    static {
+        EXECUTION_MODE_CODES.addElement(EXECUTION_DROP, "DROP", "pointLinks.executionMode.drop");
+        EXECUTION_MODE_CODES.addElement(EXECUTION_COALESCE, "COALESCE", "pointLinks.executionMode.coalesce");
+        EXECUTION_MODE_CODES.addElement(EXECUTION_QUEUE, "QUEUE", "pointLinks.executionMode.queue");
+    }
+
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
     private int id = Common.NEW_ID;
     private String xid;
     private int sourcePointId;
@@ -56,6 +70,9 @@ public class PointLinkVO extends AbstractVO<PointLinkVO> {
     @JsonProperty
     private boolean disabled;
     private int logLevel = ScriptLog.LogLevel.NONE;
+    private int executionMode = EXECUTION_DROP;
+    @JsonProperty
+    private int queueSize = DEFAULT_QUEUE_SIZE;
     @JsonProperty
     private ScriptPermissions scriptPermissions = new ScriptPermissions(Common.getUser());
 
@@ -136,6 +153,22 @@ public class PointLinkVO extends AbstractVO<PointLinkVO> {
         this.logLevel = logLevel;
     }
     
+    public int getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(int executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
     public ScriptPermissions getScriptPermissions() {
 		return scriptPermissions;
 	}
@@ -156,6 +189,12 @@ public class PointLinkVO extends AbstractVO<PointLinkVO> {
             response.addContextualMessage("targetPointId", "pointLinks.validate.targetRequired");
         if (sourcePointId == targetPointId)
             response.addContextualMessage("targetPointId", "pointLinks.validate.samePoint");
+        else if (PointLinkGraph.createsCycle(this, PointLinkDao.instance.getPointLinks()))
+            response.addContextualMessage("targetPointId", "pointLinks.validate.cycle");
+        if (!EXECUTION_MODE_CODES.isValidId(executionMode))
+            response.addContextualMessage("executionMode", "validate.invalidValue");
+        else if (executionMode == EXECUTION_QUEUE && queueSize <= 0)
+            response.addContextualMessage("queueSize", "validate.greaterThanZero");
         this.scriptPermissions.validate(response, Common.getUser());
     }
 
@@ -179,6 +218,7 @@ public class PointLinkVO extends AbstractVO<PointLinkVO> {
 
         writer.writeEntry("event", EVENT_CODES.getCode(event));
         writer.writeEntry("logLevel", ScriptLog.LOG_LEVEL_CODES.getCode(logLevel));
+        writer.writeEntry("executionMode", EXECUTION_MODE_CODES.getCode(executionMode));
 
     }
 
@@ -218,6 +258,15 @@ public class PointLinkVO extends AbstractVO<PointLinkVO> {
         }else{
         	logLevel = ScriptLog.LogLevel.NONE;
         }
+        text = jsonObject.getString("executionMode");
+        if (text != null) {
+            executionMode = EXECUTION_MODE_CODES.getId(text);
+            if (executionMode == -1)
+                throw new TranslatableJsonException("emport.error.invalid", "executionMode", text,
+                        EXECUTION_MODE_CODES.getCodeList());
+        }else{
+            executionMode = EXECUTION_DROP;
+        }
 
     }
 
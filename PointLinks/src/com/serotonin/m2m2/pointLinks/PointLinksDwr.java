@@ -98,7 +98,8 @@ public class PointLinksDwr extends ModuleDwr {
 
     @DwrPermission(user = true)
     public ProcessResult savePointLink(int id, String xid, int sourcePointId, int targetPointId, String script,
-            int event, boolean writeAnnotation, boolean disabled, ScriptPermissions permissions, int logLevel) {
+            int event, boolean writeAnnotation, boolean disabled, ScriptPermissions permissions, int logLevel,
+            int executionMode, int queueSize) {
         // Validate the given information. If there is a problem, return an appropriate error message.
         PointLinkVO vo = new PointLinkVO();
         vo.setId(id);
@@ -111,6 +112,8 @@ public class PointLinksDwr extends ModuleDwr {
         vo.setDisabled(disabled);
         vo.setScriptPermissions(permissions);
         vo.setLogLevel(logLevel);
+        vo.setExecutionMode(executionMode);
+        vo.setQueueSize(queueSize);
 
         ProcessResult response = new ProcessResult();
         PointLinkDao pointLinkDao = PointLinkDao.instance;
@@ -214,5 +217,16 @@ public class PointLinksDwr extends ModuleDwr {
     public String getLogPath(int pointId) {
     	return PointLinkRT.getLogFile(pointId).getAbsolutePath();
     }
+
+    @DwrPermission(user = true)
+    public String getStatistics(int id) {
+        PointLinkRT rt = RTMDefinition.instance.getRunningPointLink(id);
+        if (rt == null)
+            return null;
+        long runs = rt.getRuns();
+        double averageMs = runs == 0 ? 0 : rt.getScriptNanos() / 1000000d / runs;
+        return translate("pointLinks.statistics.values", runs, rt.getDrops(), rt.getQueueDepth(),
+                String.format("%.3f", averageMs));
+    }
     
 }
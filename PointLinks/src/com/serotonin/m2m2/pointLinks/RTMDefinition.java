@@ -15,6 +15,7 @@ public class RTMDefinition extends RuntimeManagerDefinition {
     public static RTMDefinition instance;
 
     private final List<PointLinkRT> pointLinks = new CopyOnWriteArrayList<PointLinkRT>();
+    private volatile PointLinkGraph graph = new PointLinkGraph(pointLinks);
 
     public RTMDefinition() {
         instance = this;
@@ -51,7 +52,7 @@ public class RTMDefinition extends RuntimeManagerDefinition {
     //
     // Point links
     //
-    private PointLinkRT getRunningPointLink(int pointLinkId) {
+    public PointLinkRT getRunningPointLink(int pointLinkId) {
         for (PointLinkRT pointLink : pointLinks) {
             if (pointLink.getId() == pointLinkId)
                 return pointLink;
@@ -59,6 +60,13 @@ public class RTMDefinition extends RuntimeManagerDefinition {
         return null;
     }
 
+    /**
+     * @return graph of the running point links
+     */
+    public PointLinkGraph getGraph() {
+        return graph;
+    }
+
     public boolean isPointLinkRunning(int pointLinkId) {
         return getRunningPointLink(pointLinkId) != null;
     }
@@ -94,6 +102,7 @@ public class RTMDefinition extends RuntimeManagerDefinition {
 
             // Add it to the list of running point links.
             pointLinks.add(pointLink);
+            graph = new PointLinkGraph(pointLinks);
         }
     }
 
@@ -104,6 +113,7 @@ public class RTMDefinition extends RuntimeManagerDefinition {
                 return;
 
             pointLinks.remove(pointLink);
+            graph = new PointLinkGraph(pointLinks);
             pointLink.terminate();
         }
     }
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks.upgrade;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.db.upgrade.DBUpgrade;
+
+/**
+ * Add the execution mode and queue size, existing links keep dropping values while running
+ *
+ * @author Terry Packer
+ *
+ */
+public class Upgrade2 extends DBUpgrade {
+
+    @Override
+    protected void upgrade() throws Exception {
+        Map<String, String[]> scripts = new HashMap<>();
+        scripts.put(DatabaseProxy.DatabaseType.DERBY.name(), script);
+        scripts.put(DatabaseProxy.DatabaseType.MYSQL.name(), script);
+        scripts.put(DatabaseProxy.DatabaseType.MSSQL.name(), mssqlScript);
+        scripts.put(DatabaseProxy.DatabaseType.H2.name(), script);
+        scripts.put(DatabaseProxy.DatabaseType.POSTGRES.name(), script);
+        runScript(scripts);
+    }
+
+    @Override
+    protected String getNewSchemaVersion() {
+        return "3";
+    }
+
+    private final String[] mssqlScript = { //
+    	"ALTER TABLE pointLinks ADD executionMode int NOT NULL DEFAULT 1;", //
+    	"ALTER TABLE pointLinks ADD queueSize int NOT NULL DEFAULT 100;", //
+    };
+
+    private final String[] script = { //
+    	"ALTER TABLE pointLinks ADD COLUMN executionMode int NOT NULL DEFAULT 1;", //
+    	"ALTER TABLE pointLinks ADD COLUMN queueSize int NOT NULL DEFAULT 100;", //
+    };
+
+}
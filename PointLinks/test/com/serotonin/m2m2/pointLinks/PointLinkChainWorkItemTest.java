@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.pointLinks.PointLinkChainWorkItem.ChainValue;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * @author Terry Packer
+ *
+ */
+public class PointLinkChainWorkItemTest {
+
+	@Test
+	public void testSetReachedTarget() {
+		ChainValue value = ChainValue.afterSet(new PointValueTime(1d, 1000), new PointValueTime(2d, 2000));
+		assertEquals(2d, value.value.getDoubleValue(), 0);
+		assertTrue(value.changed);
+	}
+
+	@Test
+	public void testSameValueLater() {
+		//An update to the same value is passed on but isn't a change
+		ChainValue value = ChainValue.afterSet(new PointValueTime(1d, 1000), new PointValueTime(1d, 2000));
+		assertEquals(2000, value.value.getTime());
+		assertFalse(value.changed);
+	}
+
+	@Test
+	public void testFirstValue() {
+		assertTrue(ChainValue.afterSet(null, new PointValueTime(1d, 1000)).changed);
+	}
+
+	@Test
+	public void testSetFailed() {
+		//The target still has its old value or isn't running
+		PointValueTime previous = new PointValueTime(1d, 1000);
+		assertNull(ChainValue.afterSet(previous, previous));
+		assertNull(ChainValue.afterSet(previous, new PointValueTime(1d, 1000)));
+		assertNull(ChainValue.afterSet(previous, null));
+	}
+}
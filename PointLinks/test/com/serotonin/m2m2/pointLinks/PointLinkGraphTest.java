@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Terry Packer
+ *
+ */
+public class PointLinkGraphTest {
+
+	@Test
+	public void testSelfLink() {
+		assertTrue(PointLinkGraph.createsCycle(1, 1, links()));
+	}
+
+	@Test
+	public void testChainWithoutLoop() {
+		//1->2->3, adding 3->4
+		Map<Integer, List<Integer>> links = links(1, 2, 2, 3);
+		assertFalse(PointLinkGraph.createsCycle(3, 4, links));
+		//A second path to the same point is not a loop
+		assertFalse(PointLinkGraph.createsCycle(1, 3, links));
+	}
+
+	@Test
+	public void testClosingLoop() {
+		//1->2->3, adding 3->1
+		assertTrue(PointLinkGraph.createsCycle(3, 1, links(1, 2, 2, 3)));
+	}
+
+	@Test
+	public void testLoopThroughBranch() {
+		//1->2, 1->3, 3->4, 4->5, adding 5->1
+		Map<Integer, List<Integer>> links = links(1, 2, 1, 3, 3, 4, 4, 5);
+		assertTrue(PointLinkGraph.createsCycle(5, 1, links));
+		assertFalse(PointLinkGraph.createsCycle(5, 2, links));
+	}
+
+	@Test
+	public void testExistingLoopElsewhere() {
+		//7->8->7 already loops, adding 1->2 must still terminate
+		assertFalse(PointLinkGraph.createsCycle(1, 2, links(7, 8, 8, 7, 2, 7)));
+	}
+
+	@Test
+	public void testChainOrder() {
+		//1->2 is the root, 3->4 is listed before 2->3
+		TestLink root = new TestLink(1, 1, 2);
+		TestLink last = new TestLink(2, 3, 4);
+		TestLink middle = new TestLink(3, 2, 3);
+		assertEquals(Arrays.asList(middle, last), PointLinkGraph.buildChain(root, graph(root, last, middle)));
+	}
+
+	@Test
+	public void testChainDiamond() {
+		//1->2, 2->3, 2->4, 3->5, 4->5, 5->6
+		TestLink root = new TestLink(1, 1, 2);
+		TestLink toEnd = new TestLink(2, 5, 6);
+		TestLink left = new TestLink(3, 2, 3);
+		TestLink leftJoin = new TestLink(4, 3, 5);
+		TestLink right = new TestLink(5, 2, 4);
+		TestLink rightJoin = new TestLink(6, 4, 5);
+		List<TestLink> chain = PointLinkGraph.buildChain(root, graph(root, toEnd, leftJoin, rightJoin, left, right));
+
+		//Every link once, each after the links that set its source
+		assertEquals(5, chain.size());
+		assertTrue(chain.indexOf(left) < chain.indexOf(leftJoin));
+		assertTrue(chain.indexOf(right) < chain.indexOf(rightJoin));
+		assertEquals(toEnd, chain.get(4));
+	}
+
+	@Test
+	public void testChainWithoutDownstream() {
+		TestLink root = new TestLink(1, 1, 2);
+		assertTrue(PointLinkGraph.buildChain(root, graph(root, new TestLink(2, 3, 4))).isEmpty());
+	}
+
+	@Test
+	public void testChainLeavesOutLoop() {
+		//1->2->5, then 5->6->5 loops, the links on the loop never become ready
+		TestLink root = new TestLink(1, 1, 2);
+		TestLink after = new TestLink(2, 2, 5);
+		assertEquals(Arrays.asList(after), PointLinkGraph.buildChain(root,
+				graph(root, after, new TestLink(3, 5, 6), new TestLink(4, 6, 5))));
+	}
+
+	private Map<Integer, List<TestLink>> graph(TestLink... links) {
+		Map<Integer, List<TestLink>> bySource = new HashMap<Integer, List<TestLink>>();
+		for (TestLink link : links) {
+			List<TestLink> fromSource = bySource.get(link.getSourcePointId());
+			if (fromSource == null) {
+				fromSource = new ArrayList<TestLink>();
+				bySource.put(link.getSourcePointId(), fromSource);
+			}
+			fromSource.add(link);
+		}
+		return bySource;
+	}
+
+	/**
+	 * @param pairs - source, target, source, target ...
+	 */
+	private Map<Integer, List<Integer>> links(int... pairs) {
+		Map<Integer, List<Integer>> links = new HashMap<Integer, List<Integer>>();
+		for (int i = 0; i < pairs.length; i += 2) {
+			List<Integer> targets = links.get(pairs[i]);
+			if (targets == null) {
+				targets = new ArrayList<Integer>();
+				links.put(pairs[i], targets);
+			}
+			targets.add(pairs[i + 1]);
+		}
+		return links;
+	}
+
+	static class TestLink implements PointLinkGraph.Link {
+		final int id;
+		final int sourcePointId;
+		final int targetPointId;
+
+		TestLink(int id, int sourcePointId, int targetPointId) {
+			this.id = id;
+			this.sourcePointId = sourcePointId;
+			this.targetPointId = targetPointId;
+		}
+
+		@Override
+		public int getId() {
+			return id;
+		}
+
+		@Override
+		public int getSourcePointId() {
+			return sourcePointId;
+		}
+
+		@Override
+		public int getTargetPointId() {
+			return targetPointId;
+		}
+	}
+}
@@ -15,6 +15,8 @@ create table pointLinks (
   scriptDataSourcePermission nvarchar(255) not null,
   scriptDataPointSetPermission nvarchar(255) not null,
   scriptDataPointReadPermission nvarchar(255) not null,
+  executionMode int not null,
+  queueSize int not null,
   primary key (id)
 );
 alter table pointLinks add constraint pointLinksUn1 unique (xid);
@@ -15,6 +15,8 @@ create table pointLinks (
   scriptDataSourcePermission varchar(255) not null,
   scriptDataPointSetPermission varchar(255) not null,
   scriptDataPointReadPermission varchar(255) not null,
+  executionMode int not null,
+  queueSize int not null,
   primary key (id)
 ) engine=InnoDB;
 alter table pointLinks add constraint pointLinksUn1 unique (xid);
@@ -8,6 +8,7 @@
 <%@ include file="/WEB-INF/jsp/include/tech.jsp" %>
 <c:set var="NEW_ID"><%= Common.NEW_ID %></c:set>
 <c:set var="NONE_LOG"><%= ScriptLog.LogLevel.NONE %></c:set>
+<c:set var="QUEUE_MODE"><%= PointLinkVO.EXECUTION_QUEUE %></c:set>
 <tag:page dwr="PointLinksDwr" onload="init">
   <script type="text/javascript">
     dojo.require("dojo.store.Memory");
@@ -85,6 +86,10 @@
             
             setScriptPermissions(pl.scriptPermissions);
             $set("logLevel", pl.logLevel);
+            $set("executionMode", pl.executionMode);
+            $set("queueSize", pl.queueSize);
+            executionModeChanged();
+            updateStatistics(plId);
             
             startImageFader($("pl"+ plId +"Img"));
             display("deletePointLinkImg", plId != ${NEW_ID});
@@ -110,7 +115,7 @@
         		sourcePointId, targetPointId,
         		editor.getValue(), $get("event"), $get("writeAnnotation"), $get("disabled"),
                 getScriptPermissions(),
-                $get("logLevel"),
+                $get("logLevel"), $get("executionMode"), $get("queueSize"),
                 function(response) {
             if (response.hasMessages)
                 showDwrMessages(response.messages);
@@ -195,6 +200,17 @@
             updateImg(imgNode, "${modulePath}/web/link.png", "<m2m2:translate key="pointLinks.pointLink" escapeDQuotes="true"/>", true);
     }
     
+    function executionModeChanged() {
+        display("queueSizeRow", $get("executionMode") == ${QUEUE_MODE});
+    }
+    
+    function updateStatistics(plId) {
+        PointLinksDwr.getStatistics(plId, function(response) {
+            $set("statistics", response ? response : "");
+            display("statisticsRow", response != null);
+        });
+    }
+    
     function logLevelChanged() {
       
       PointLinksDwr.getLogPath(editingPointLink.id, function(response){
@@ -298,6 +314,19 @@
               </td>
             </tr>
             
+            <tr>
+              <td class="formLabelRequired"><fmt:message key="pointLinks.executionMode"/></td>
+              <td class="formField">
+                <tag:exportCodesOptions id="executionMode" optionList="<%= PointLinkVO.EXECUTION_MODE_CODES.getIdKeys() %>"
+                        onchange="executionModeChanged()"/>
+              </td>
+            </tr>
+            
+            <tr id="queueSizeRow">
+              <td class="formLabelRequired"><fmt:message key="pointLinks.queueSize"/></td>
+              <td class="formField"><input type="text" id="queueSize"/></td>
+            </tr>
+            
             <tr>
               <td class="formLabel"><fmt:message key="pointLinks.writeAnnotation"/></td>
               <td class="formField"><input type="checkbox" id="writeAnnotation"/></td>
@@ -307,6 +336,11 @@
               <td class="formLabel"><fmt:message key="common.disabled"/></td>
               <td class="formField"><input type="checkbox" id="disabled"/></td>
             </tr>
+            
+            <tr id="statisticsRow" style="display:none;">
+              <td class="formLabel"><fmt:message key="pointLinks.statistics"/></td>
+              <td class="formField" id="statistics"></td>
+            </tr>
           </table>
         </div>
       </td>
@@ -4,6 +4,7 @@
  */
 package com.serotonin.m2m2.reports;
 
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
@@ -12,14 +13,20 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
 import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
 import com.infiniteautomation.mango.rest.v1.reports.ReportWebSocketConfiguration;
+import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.db.pair.IntStringPair;
 import com.serotonin.m2m2.Common;
@@ -54,6 +61,7 @@ import com.serotonin.m2m2.vo.comment.UserCommentVO;
 import com.serotonin.m2m2.vo.export.ExportDataStreamHandler;
 import com.serotonin.m2m2.vo.export.ExportDataValue;
 import com.serotonin.m2m2.vo.export.ExportPointInfo;
+import com.serotonin.m2m2.vo.pair.LongPair;
 import com.serotonin.m2m2.vo.permission.Permissions;
 import com.serotonin.util.SerializationHelper;
 import com.serotonin.util.StringUtils;
@@ -67,7 +75,10 @@ import com.serotonin.web.taglib.Functions;
  */
 public class ReportDao extends AbstractDao<ReportVO> {
 	
+	private static final Log LOG = LogFactory.getLog(ReportDao.class);
+
 	public static final String TABLE_NAME = "reports";
+	public static final String PER_POINT_EVENT_QUERIES_PROPERTY = "reports.perPointEventQueries";
 	public static final ReportDao instance = new ReportDao();
 	
 	private ReportDao(){
@@ -171,7 +182,7 @@ public class ReportDao extends AbstractDao<ReportVO> {
     }
     
     private static final String REPORT_INSTANCE_SELECT = "select id, userId, reportId, name, template, includeEvents, includeUserComments, reportStartTime, reportEndTime, runStartTime, "
-            + "  runEndTime, recordCount, preventPurge, mapping " + "from reportInstances ";
+            + "  runEndTime, recordCount, preventPurge, referenceData, mapping " + "from reportInstances ";
     
     public List<ReportInstance> getReportInstances() {
     	return query(REPORT_INSTANCE_SELECT + "order by runStartTime desc", new ReportInstanceRowMapper());
@@ -207,6 +218,7 @@ public class ReportDao extends AbstractDao<ReportVO> {
             ri.setRunEndTime(rs.getLong(++i));
             ri.setRecordCount(rs.getInt(++i));
             ri.setPreventPurge(charToBool(rs.getString(++i)));
+            ri.setReferenceData(charToBool(rs.getString(++i)));
             ri.setXidMap((Map<String, String>)SerializationHelper.readObjectInContext(rs.getBlob(++i).getBinaryStream()));
             return ri;
         }
@@ -270,13 +282,24 @@ public class ReportDao extends AbstractDao<ReportVO> {
      * @param user
      */
     public void setReportInstancePreventPurge(int id, boolean preventPurge, User user) {
-    	
+    	int updated;
     	if(Permissions.hasAdmin(user))
-    		ejt.update("update reportInstances set preventPurge=? where id=?", new Object[] {
+    		updated = ejt.update("update reportInstances set preventPurge=? where id=?", new Object[] {
                     boolToChar(preventPurge), id });
     	else
-    		ejt.update("update reportInstances set preventPurge=? where id=? and userId=?", new Object[] {
+    		updated = ejt.update("update reportInstances set preventPurge=? where id=? and userId=?", new Object[] {
                 boolToChar(preventPurge), id, user.getId() });
+
+    	//Reference instances keep a copy of their values while they are kept from being purged
+    	if(updated > 0){
+    		ReportInstance instance = getReportInstance(id);
+    		if(instance != null && instance.isReferenceData()){
+    			if(preventPurge)
+    				Common.backgroundProcessing.addWorkItem(new ReportSnapshotWorkItem(instance));
+    			else
+    				deleteReportInstanceSnapshot(id);
+    		}
+    	}
     }
 
     /**
@@ -293,7 +316,7 @@ public class ReportDao extends AbstractDao<ReportVO> {
      */
     private static final String REPORT_INSTANCE_INSERT = "insert into reportInstances "
             + "  (userId, reportId, name, template, includeEvents, includeUserComments, reportStartTime, reportEndTime, runStartTime, "
-            + "     runEndTime, recordCount, preventPurge, mapping) " + "  values (?,?,?,?,?,?,?,?,?,?,?,?,?)";
+            + "     runEndTime, recordCount, preventPurge, referenceData, mapping) " + "  values (?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
     private static final String REPORT_INSTANCE_UPDATE = "update reportInstances set reportStartTime=?, reportEndTime=?, runStartTime=?, runEndTime=?, recordCount=? "
             + "where id=?";
 
@@ -304,7 +327,8 @@ public class ReportDao extends AbstractDao<ReportVO> {
                     new Object[] { instance.getUserId(), instance.getReportId(), instance.getName(), instance.getTemplateFile(), instance.getIncludeEvents(),
                             boolToChar(instance.isIncludeUserComments()), instance.getReportStartTime(),
                             instance.getReportEndTime(), instance.getRunStartTime(), instance.getRunEndTime(),
-                            instance.getRecordCount(), boolToChar(instance.isPreventPurge()), SerializationHelper.writeObject(instance.getXidMap()) }));
+                            instance.getRecordCount(), boolToChar(instance.isPreventPurge()), boolToChar(instance.isReferenceData()),
+                            SerializationHelper.writeObject(instance.getXidMap()) }));
             instanceCountMonitor.increment();
         }else
             ejt.update(
@@ -362,134 +386,56 @@ public class ReportDao extends AbstractDao<ReportVO> {
      * SQL Database Report
      * @param instance
      * @param points
+     * @param progress
+     * @param shared - report point ids by point xid of data already copied for the same time range by another
+     *            report instance, the data of those points is copied from that instance instead of the point
+     *            values. Points copied by this report are added to it.  May be null.
      * @return
      */
-    public int runReportSQL(final ReportInstance instance, List<PointInfo> points) {
+    public int runReportSQL(final ReportInstance instance, List<PointInfo> points, final ReportProgress progress,
+            Map<String, Integer> shared) {
         PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
         int count = 0;
 
         // The timestamp selection code is used multiple times for different tables
-        String timestampSql;
-        Object[] timestampParams;
-        if (instance.isFromInception() && instance.isToNow()) {
-            timestampSql = "";
-            timestampParams = new Object[0];
-        }
-        else if (instance.isFromInception()) {
-            timestampSql = "and ${field}<?";
-            timestampParams = new Object[] { instance.getReportEndTime() };
-        }
-        else if (instance.isToNow()) {
-            timestampSql = "and ${field}>=?";
-            timestampParams = new Object[] { instance.getReportStartTime() };
-        }
-        else {
-            timestampSql = "and ${field}>=? and ${field}<?";
-            timestampParams = new Object[] { instance.getReportStartTime(), instance.getReportEndTime() };
-        }
+        final String timestampSql = getTimestampSql(instance);
+        final Object[] timestampParams = getTimestampParams(instance);
 
-        // For each point.
+        // Insert the points in report order, then copy their data in parallel
+        progress.addSteps(points.size());
+        Map<Integer, Integer> reportPointIds = new LinkedHashMap<Integer, Integer>();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(points.size());
         for (PointInfo pointInfo : points) {
-            DataPointVO point = pointInfo.getPoint();
-            int dataType = point.getPointLocator().getDataTypeId();
-
-            DataValue startValue = null;
-            if (!instance.isFromInception()) {
-                // Get the value just before the start of the report
-                PointValueTime pvt = pointValueDao.getPointValueBefore(point.getId(), instance.getReportStartTime());
-                if (pvt != null)
-                    startValue = pvt.getValue();
-
-                // Make sure the data types match
-                if (DataTypes.getDataType(startValue) != dataType)
-                    startValue = null;
-            }
-
-            // Insert the reportInstancePoints record
-            String name = Functions.truncate(point.getName(), 100);
-
-            int reportPointId = doInsert(
-                    REPORT_INSTANCE_POINTS_INSERT,
-                    new Object[] { instance.getId(), point.getDeviceName(), name, pointInfo.getPoint().getXid(), dataType,
-                            DataTypes.valueToString(startValue),
-                            SerializationHelper.writeObject(point.getTextRenderer()), pointInfo.getColour(),
-                            pointInfo.getWeight(), boolToChar(pointInfo.isConsolidatedChart()), pointInfo.getPlotType() },
-                    new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.BLOB,
-                            Types.VARCHAR, Types.FLOAT, Types.CHAR, Types.INTEGER });
-
-            // Insert the reportInstanceData records
-            String insertSQL = "insert into reportInstanceData " //
-                    + "  select id, " + reportPointId + ", pointValue, ts from pointValues " //
-                    + "    where dataPointId=? and dataType=? " //
-                    + StringUtils.replaceMacro(timestampSql, "field", "ts");
-            count += ejt.update(insertSQL, appendParameters(timestampParams, point.getId(), dataType));
-
-            // Insert the reportInstanceDataAnnotations records
-            ejt.update(
-                    "insert into reportInstanceDataAnnotations " //
-                            + "  (pointValueId, reportInstancePointId, textPointValueShort, textPointValueLong, sourceMessage) " //
-                            + "  select rd.pointValueId, rd.reportInstancePointId, pva.textPointValueShort, " //
-                            + "    pva.textPointValueLong, pva.sourceMessage " //
-                            + "  from reportInstanceData rd " //
-                            + "    join reportInstancePoints rp on rd.reportInstancePointId = rp.id " //
-                            + "    join pointValueAnnotations pva on rd.pointValueId = pva.pointValueId " //
-                            + "  where rp.id = ?", new Object[] { reportPointId });
-
-            // Insert the reportInstanceEvents records for the point.
-            if (instance.getIncludeEvents() != ReportVO.EVENTS_NONE) {
-                String eventSQL = "insert into reportInstanceEvents " //
-                        + "  (eventId, reportInstanceId, typeName, subtypeName, typeRef1, typeRef2, activeTs, " //
-                        + "   rtnApplicable, rtnTs, rtnCause, alarmLevel, message, ackTs, ackUsername, " //
-                        + "   alternateAckSource)" //
-                        + "  select e.id, " + instance.getId() + ", e.typeName, e.subtypeName, e.typeRef1, " //
-                        + "    e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, e.rtnCause, e.alarmLevel, " //
-                        + "    e.message, e.ackTs, u.username, e.alternateAckSource " //
-                        + "  from events e join userEvents ue on ue.eventId=e.id " //
-                        + "    left join users u on e.ackUserId=u.id " //
-                        + "  where ue.userId=? " //
-                        + "    and e.typeName=? " //
-                        + "    and e.typeRef1=? ";
-
-                if (instance.getIncludeEvents() == ReportVO.EVENTS_ALARMS)
-                    eventSQL += "and e.alarmLevel > 0 ";
-
-                eventSQL += StringUtils.replaceMacro(timestampSql, "field", "e.activeTs");
-                ejt.update(
-                        eventSQL,
-                        appendParameters(timestampParams, instance.getUserId(), EventType.EventTypeNames.DATA_POINT,
-                                point.getId()));
-            }
-
-            // Insert the reportInstanceUserComments records for the point.
-            if (instance.isIncludeUserComments()) {
-                String commentSQL = "insert into reportInstanceUserComments " //
-                        + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
-                        + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_POINT + ", " //
-                        + reportPointId + ", uc.ts, uc.commentText " //
-                        + "  from userComments uc " //
-                        + "    left join users u on uc.userId=u.id " //
-                        + "  where uc.commentType=" + UserCommentVO.TYPE_POINT //
-                        + "    and uc.typeKey=? ";
-
-                // Only include comments made in the duration of the report.
-                commentSQL += StringUtils.replaceMacro(timestampSql, "field", "uc.ts");
-                ejt.update(commentSQL, appendParameters(timestampParams, point.getId()));
+            final DataPointVO point = pointInfo.getPoint();
+            final int reportPointId = insertReportInstancePoint(instance, pointInfo, pointValueDao);
+            reportPointIds.put(point.getId(), reportPointId);
+            final Integer sharedPointId = shared == null ? null : shared.get(point.getXid());
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Integer inserted = null;
+                    if (sharedPointId != null)
+                        inserted = copySharedReportInstanceData(sharedPointId, reportPointId);
+                    //The instance copied from was deleted, read the point values instead
+                    if (inserted == null)
+                        inserted = insertReportInstanceData(point, reportPointId, timestampSql, timestampParams);
+                    progress.stepComplete();
+                    return inserted;
+                }
+            });
+        }
+        for (Integer inserted : ReportPointExecutor.getInstance().invokeAll(tasks))
+            count += inserted;
+
+        if (shared != null) {
+            for (PointInfo pointInfo : points) {
+                String xid = pointInfo.getPoint().getXid();
+                if (!shared.containsKey(xid))
+                    shared.put(xid, reportPointIds.get(pointInfo.getPoint().getId()));
             }
         }
 
-        // Insert the reportInstanceUserComments records for the selected events
-        if (instance.isIncludeUserComments()) {
-            String commentSQL = "insert into reportInstanceUserComments " //
-                    + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
-                    + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_EVENT + ", uc.typeKey, " //
-                    + "    uc.ts, uc.commentText " //
-                    + "  from userComments uc " //
-                    + "    left join users u on uc.userId=u.id " //
-                    + "    join reportInstanceEvents re on re.eventId=uc.typeKey " //
-                    + "  where uc.commentType=" + UserCommentVO.TYPE_EVENT //
-                    + "    and re.reportInstanceId=? ";
-            ejt.update(commentSQL, new Object[] { instance.getId() });
-        }
+        insertEventsAndComments(instance, reportPointIds, timestampSql, timestampParams);
 
         // If the report had undefined start or end times, update them with values from the data.
         if (instance.isFromInception() || instance.isToNow()) {
@@ -512,6 +458,317 @@ public class ReportDao extends AbstractDao<ReportVO> {
         return count;
     }
 
+    /**
+     * Reference Report, only the points, events and comments are copied into the report tables.  The
+     * point values are read from the point value store whenever the instance is viewed or exported.
+     * @param instance
+     * @param points
+     * @param progress
+     * @return the number of values in the report's time range
+     */
+    public int runReportReference(final ReportInstance instance, List<PointInfo> points, final ReportProgress progress) {
+        PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
+        long count = 0;
+
+        final String timestampSql = getTimestampSql(instance);
+        final Object[] timestampParams = getTimestampParams(instance);
+
+        // Fix the end of the range now so later reads see the same values as the report run
+        final long startTime = instance.isFromInception() ? 0l : instance.getReportStartTime();
+        final long endTime = instance.isToNow() ? Common.timer.currentTimeMillis() : instance.getReportEndTime();
+
+        progress.addSteps(points.size());
+        List<Integer> pointIds = new ArrayList<Integer>(points.size());
+        Map<Integer, Integer> reportPointIds = new LinkedHashMap<Integer, Integer>();
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(points.size());
+        for (PointInfo pointInfo : points) {
+            final DataPointVO point = pointInfo.getPoint();
+            pointIds.add(point.getId());
+            reportPointIds.put(point.getId(), insertReportInstancePoint(instance, pointInfo, pointValueDao));
+            tasks.add(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    long pointCount = Common.databaseProxy.newPointValueDao().dateRangeCount(point.getId(), startTime, endTime);
+                    progress.stepComplete();
+                    return pointCount;
+                }
+            });
+        }
+        for (Long pointCount : ReportPointExecutor.getInstance().invokeAll(tasks))
+            count += pointCount;
+
+        insertEventsAndComments(instance, reportPointIds, timestampSql, timestampParams);
+
+        if (instance.isFromInception()) {
+            LongPair range = pointValueDao.getStartAndEndTime(pointIds);
+            if (range != null)
+                instance.setReportStartTime(range.getL1());
+        }
+        if (instance.isToNow())
+            instance.setReportEndTime(endTime);
+
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    private String getTimestampSql(ReportInstance instance) {
+        if (instance.isFromInception() && instance.isToNow())
+            return "";
+        else if (instance.isFromInception())
+            return "and ${field}<?";
+        else if (instance.isToNow())
+            return "and ${field}>=?";
+        else
+            return "and ${field}>=? and ${field}<?";
+    }
+
+    private Object[] getTimestampParams(ReportInstance instance) {
+        if (instance.isFromInception() && instance.isToNow())
+            return new Object[0];
+        else if (instance.isFromInception())
+            return new Object[] { instance.getReportEndTime() };
+        else if (instance.isToNow())
+            return new Object[] { instance.getReportStartTime() };
+        else
+            return new Object[] { instance.getReportStartTime(), instance.getReportEndTime() };
+    }
+
+    /**
+     * Insert the reportInstancePoints record for a point
+     * @return the id of the report point
+     */
+    private int insertReportInstancePoint(ReportInstance instance, PointInfo pointInfo, PointValueDao pointValueDao) {
+        DataPointVO point = pointInfo.getPoint();
+        int dataType = point.getPointLocator().getDataTypeId();
+
+        DataValue startValue = null;
+        if (!instance.isFromInception()) {
+            // Get the value just before the start of the report
+            PointValueTime pvt = pointValueDao.getPointValueBefore(point.getId(), instance.getReportStartTime());
+            if (pvt != null)
+                startValue = pvt.getValue();
+
+            // Make sure the data types match
+            if (DataTypes.getDataType(startValue) != dataType)
+                startValue = null;
+        }
+
+        String name = Functions.truncate(point.getName(), 100);
+
+        return doInsert(
+                REPORT_INSTANCE_POINTS_INSERT,
+                new Object[] { instance.getId(), point.getDeviceName(), name, point.getXid(), dataType,
+                        DataTypes.valueToString(startValue),
+                        SerializationHelper.writeObject(point.getTextRenderer()), pointInfo.getColour(),
+                        pointInfo.getWeight(), boolToChar(pointInfo.isConsolidatedChart()), pointInfo.getPlotType() },
+                new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.BLOB,
+                        Types.VARCHAR, Types.FLOAT, Types.CHAR, Types.INTEGER });
+    }
+
+    /**
+     * Insert the values of a point in the report's time range and their annotations
+     * @param point
+     * @param reportPointId
+     * @param timestampSql
+     * @param timestampParams
+     * @return the number of values inserted
+     */
+    private int insertReportInstanceData(DataPointVO point, int reportPointId, String timestampSql,
+            Object[] timestampParams) {
+        int dataType = point.getPointLocator().getDataTypeId();
+
+        // Insert the reportInstanceData records
+        String insertSQL = "insert into reportInstanceData " //
+                + "  select id, " + reportPointId + ", pointValue, ts from pointValues " //
+                + "    where dataPointId=? and dataType=? " //
+                + StringUtils.replaceMacro(timestampSql, "field", "ts");
+        int inserted = ejt.update(insertSQL, appendParameters(timestampParams, point.getId(), dataType));
+
+        // Insert the reportInstanceDataAnnotations records
+        ejt.update(
+                "insert into reportInstanceDataAnnotations " //
+                        + "  (pointValueId, reportInstancePointId, textPointValueShort, textPointValueLong, sourceMessage) " //
+                        + "  select rd.pointValueId, rd.reportInstancePointId, pva.textPointValueShort, " //
+                        + "    pva.textPointValueLong, pva.sourceMessage " //
+                        + "  from reportInstanceData rd " //
+                        + "    join reportInstancePoints rp on rd.reportInstancePointId = rp.id " //
+                        + "    join pointValueAnnotations pva on rd.pointValueId = pva.pointValueId " //
+                        + "  where rp.id = ?", new Object[] { reportPointId });
+        return inserted;
+    }
+
+    /**
+     * Copy the data and annotations of a point already copied by another report instance for the same time range.
+     * The other instance may be deleted by its user while this runs, so the copy is only kept if that instance's
+     * point still exists once it is done.
+     * @param sharedPointId - report point id to copy from
+     * @param reportPointId - report point id to copy to
+     * @return the number of values copied, null if the instance copied from was deleted
+     */
+    private Integer copySharedReportInstanceData(int sharedPointId, int reportPointId) {
+        int inserted = ejt.update("insert into reportInstanceData " //
+                + "  select pointValueId, " + reportPointId + ", pointValue, ts from reportInstanceData " //
+                + "    where reportInstancePointId=?", new Object[] { sharedPointId });
+        ejt.update("insert into reportInstanceDataAnnotations " //
+                + "  (pointValueId, reportInstancePointId, textPointValueShort, textPointValueLong, sourceMessage) " //
+                + "  select pointValueId, " + reportPointId + ", textPointValueShort, textPointValueLong, sourceMessage " //
+                + "  from reportInstanceDataAnnotations where reportInstancePointId=?", new Object[] { sharedPointId });
+
+        if (ejt.queryForInt("select count(*) from reportInstancePoints where id=?", new Object[] { sharedPointId }, 0) == 0) {
+            //Partial copy, start again from the point values
+            ejt.update("delete from reportInstanceDataAnnotations where reportInstancePointId=?", new Object[] { reportPointId });
+            ejt.update("delete from reportInstanceData where reportInstancePointId=?", new Object[] { reportPointId });
+            return null;
+        }
+        return inserted;
+    }
+
+    /**
+     * Insert the events and user comments for all points of the instance.  By default there is one
+     * statement per section for the whole report, finding the points through the reportInstancePoints
+     * just inserted, the reports.perPointEventQueries env property goes back to a statement per point.
+     * @param instance
+     * @param reportPointIds - report point id by data point id
+     * @param timestampSql
+     * @param timestampParams
+     */
+    private void insertEventsAndComments(ReportInstance instance, Map<Integer, Integer> reportPointIds,
+            String timestampSql, Object[] timestampParams) {
+        long started = System.currentTimeMillis();
+        if (Common.envProps.getBoolean(PER_POINT_EVENT_QUERIES_PROPERTY, false)) {
+            for (Map.Entry<Integer, Integer> entry : reportPointIds.entrySet())
+                insertPointEventsAndComments(instance, entry.getKey(), entry.getValue(), timestampSql, timestampParams);
+        }
+        else {
+            insertEvents(instance, timestampSql, timestampParams);
+            insertPointComments(instance, timestampSql, timestampParams);
+        }
+        insertEventComments(instance);
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Events and comments for " + reportPointIds.size() + " points of report instance "
+                    + instance.getId() + " took " + (System.currentTimeMillis() - started) + "ms");
+    }
+
+    //Data points of an instance, matched by xid since only the xid is kept in reportInstancePoints
+    private static final String REPORT_INSTANCE_DATA_POINT_IDS = "select dp.id from dataPoints dp "
+            + "join reportInstancePoints rp on rp.xid=dp.xid where rp.reportInstanceId=?";
+
+    /**
+     * Insert the reportInstanceEvents records for every point of the instance in one statement
+     */
+    private void insertEvents(ReportInstance instance, String timestampSql, Object[] timestampParams) {
+        if (instance.getIncludeEvents() == ReportVO.EVENTS_NONE)
+            return;
+
+        String eventSQL = "insert into reportInstanceEvents " //
+                + "  (eventId, reportInstanceId, typeName, subtypeName, typeRef1, typeRef2, activeTs, " //
+                + "   rtnApplicable, rtnTs, rtnCause, alarmLevel, message, ackTs, ackUsername, " //
+                + "   alternateAckSource)" //
+                + "  select e.id, " + instance.getId() + ", e.typeName, e.subtypeName, e.typeRef1, " //
+                + "    e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, e.rtnCause, e.alarmLevel, " //
+                + "    e.message, e.ackTs, u.username, e.alternateAckSource " //
+                + "  from events e join userEvents ue on ue.eventId=e.id " //
+                + "    left join users u on e.ackUserId=u.id " //
+                + "  where ue.userId=? " //
+                + "    and e.typeName=? " //
+                + "    and e.typeRef1 in (" + REPORT_INSTANCE_DATA_POINT_IDS + ") ";
+
+        if (instance.getIncludeEvents() == ReportVO.EVENTS_ALARMS)
+            eventSQL += "and e.alarmLevel > 0 ";
+
+        eventSQL += StringUtils.replaceMacro(timestampSql, "field", "e.activeTs");
+        ejt.update(
+                eventSQL,
+                appendParameters(timestampParams, instance.getUserId(), EventType.EventTypeNames.DATA_POINT,
+                        instance.getId()));
+    }
+
+    /**
+     * Insert the reportInstanceUserComments records for every point of the instance in one statement
+     */
+    private void insertPointComments(ReportInstance instance, String timestampSql, Object[] timestampParams) {
+        if (!instance.isIncludeUserComments())
+            return;
+
+        String commentSQL = "insert into reportInstanceUserComments " //
+                + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
+                + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_POINT + ", " //
+                + "    rp.id, uc.ts, uc.commentText " //
+                + "  from userComments uc " //
+                + "    join dataPoints dp on uc.typeKey=dp.id " //
+                + "    join reportInstancePoints rp on rp.xid=dp.xid " //
+                + "    left join users u on uc.userId=u.id " //
+                + "  where uc.commentType=" + UserCommentVO.TYPE_POINT //
+                + "    and rp.reportInstanceId=? ";
+
+        // Only include comments made in the duration of the report.
+        commentSQL += StringUtils.replaceMacro(timestampSql, "field", "uc.ts");
+        ejt.update(commentSQL, appendParameters(timestampParams, instance.getId()));
+    }
+
+    /**
+     * Insert the reportInstanceEvents and reportInstanceUserComments records for a point
+     */
+    private void insertPointEventsAndComments(ReportInstance instance, int pointId, int reportPointId,
+            String timestampSql, Object[] timestampParams) {
+        if (instance.getIncludeEvents() != ReportVO.EVENTS_NONE) {
+            String eventSQL = "insert into reportInstanceEvents " //
+                    + "  (eventId, reportInstanceId, typeName, subtypeName, typeRef1, typeRef2, activeTs, " //
+                    + "   rtnApplicable, rtnTs, rtnCause, alarmLevel, message, ackTs, ackUsername, " //
+                    + "   alternateAckSource)" //
+                    + "  select e.id, " + instance.getId() + ", e.typeName, e.subtypeName, e.typeRef1, " //
+                    + "    e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, e.rtnCause, e.alarmLevel, " //
+                    + "    e.message, e.ackTs, u.username, e.alternateAckSource " //
+                    + "  from events e join userEvents ue on ue.eventId=e.id " //
+                    + "    left join users u on e.ackUserId=u.id " //
+                    + "  where ue.userId=? " //
+                    + "    and e.typeName=? " //
+                    + "    and e.typeRef1=? ";
+
+            if (instance.getIncludeEvents() == ReportVO.EVENTS_ALARMS)
+                eventSQL += "and e.alarmLevel > 0 ";
+
+            eventSQL += StringUtils.replaceMacro(timestampSql, "field", "e.activeTs");
+            ejt.update(
+                    eventSQL,
+                    appendParameters(timestampParams, instance.getUserId(), EventType.EventTypeNames.DATA_POINT,
+                            pointId));
+        }
+
+        if (instance.isIncludeUserComments()) {
+            String commentSQL = "insert into reportInstanceUserComments " //
+                    + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
+                    + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_POINT + ", " //
+                    + reportPointId + ", uc.ts, uc.commentText " //
+                    + "  from userComments uc " //
+                    + "    left join users u on uc.userId=u.id " //
+                    + "  where uc.commentType=" + UserCommentVO.TYPE_POINT //
+                    + "    and uc.typeKey=? ";
+
+            // Only include comments made in the duration of the report.
+            commentSQL += StringUtils.replaceMacro(timestampSql, "field", "uc.ts");
+            ejt.update(commentSQL, appendParameters(timestampParams, pointId));
+        }
+    }
+
+    /**
+     * Insert the reportInstanceUserComments records for the selected events
+     */
+    private void insertEventComments(ReportInstance instance) {
+        if (instance.isIncludeUserComments()) {
+            String commentSQL = "insert into reportInstanceUserComments " //
+                    + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
+                    + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_EVENT + ", uc.typeKey, " //
+                    + "    uc.ts, uc.commentText " //
+                    + "  from userComments uc " //
+                    + "    left join users u on uc.userId=u.id " //
+                    + "    join reportInstanceEvents re on re.eventId=uc.typeKey " //
+                    + "  where uc.commentType=" + UserCommentVO.TYPE_EVENT //
+                    + "    and re.reportInstanceId=? ";
+            ejt.update(commentSQL, new Object[] { instance.getId() });
+        }
+    }
+
     private Object[] appendParameters(Object[] toAppend, Object... params) {
         if (toAppend.length == 0)
             return params;
@@ -569,6 +826,155 @@ public class ReportDao extends AbstractDao<ReportVO> {
             + "  left join reportInstanceDataAnnotations rda on "
             + "      rd.pointValueId=rda.pointValueId and rd.reportInstancePointId=rda.reportInstancePointId ";
 
+    /**
+     * Stream the data of an instance from wherever it is stored
+     * @param instance
+     * @param handler
+     */
+    public void reportInstanceData(ReportInstance instance, ExportDataStreamHandler handler) {
+        if (instance.isReferenceData())
+            reportInstanceDataReference(instance, handler);
+        else if (Common.databaseProxy.getNoSQLProxy() == null)
+            reportInstanceDataSQL(instance.getId(), handler);
+        else
+            reportInstanceDataNoSQL(instance.getId(), handler);
+    }
+
+    /**
+     * Stream the values of a reference instance from the point value store, or from its snapshot
+     * if it has one.
+     * @param instance
+     * @param handler
+     */
+    public void reportInstanceDataReference(ReportInstance instance, final ExportDataStreamHandler handler) {
+        List<ExportPointInfo> pointInfos = getReportInstancePoints(instance.getId());
+        PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
+        long startTime = instance.getReportStartTime() == -1 ? 0l : instance.getReportStartTime();
+        long endTime = instance.getReportEndTime() == -1 ? Common.timer.currentTimeMillis() : instance.getReportEndTime();
+
+        final ExportDataValue edv = new ExportDataValue();
+        MappedRowCallback<PointValueTime> callback = new MappedRowCallback<PointValueTime>() {
+            @Override
+            public void row(PointValueTime pvt, int rowId) {
+                edv.setValue(pvt.getValue());
+                edv.setTime(pvt.getTime());
+                if (pvt instanceof AnnotatedPointValueTime)
+                    edv.setAnnotation(((AnnotatedPointValueTime) pvt).getSourceMessage());
+                else
+                    edv.setAnnotation(null);
+                handler.pointData(edv);
+            }
+        };
+
+        for (ExportPointInfo point : pointInfos) {
+            DataPointVO vo = DataPointDao.instance.getByXid(point.getXid());
+            point.setDataPointId(vo == null ? -1 : vo.getId());
+            handler.startPoint(point);
+
+            edv.setReportPointId(point.getReportPointId());
+            if (instance.isPreventPurge() && hasReportInstanceSnapshot(point.getReportPointId()))
+                readReportInstanceSnapshot(point.getReportPointId(), callback);
+            else if (vo != null)
+                pointValueDao.getPointValuesBetween(vo.getId(), startTime, endTime, callback);
+        }
+        handler.done();
+    }
+
+    private static final String SNAPSHOT_INSERT = "insert into reportInstanceSnapshots (reportInstancePointId, chunk, data) values (?,?,?)";
+
+    /**
+     * Copy the values of a reference instance into compressed snapshot chunks so they outlive
+     * the point value purge.  Any existing snapshot is replaced.
+     *
+     * Each point's snapshot is replaced in its own transaction so an export running at the same
+     * time reads either the old or the new snapshot of a point, never part of one.  The snapshot
+     * of a point that has since been deleted is kept since its values can't be copied again.
+     * @param instance
+     */
+    public void createReportInstanceSnapshot(ReportInstance instance) {
+        final PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
+        final long startTime = instance.getReportStartTime() == -1 ? 0l : instance.getReportStartTime();
+        final long endTime = instance.getReportEndTime() == -1 ? Common.timer.currentTimeMillis() : instance.getReportEndTime();
+
+        for (final ExportPointInfo point : getReportInstancePoints(instance.getId())) {
+            final DataPointVO vo = DataPointDao.instance.getByXid(point.getXid());
+            if (vo == null)
+                continue;
+            getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    ejt.update("delete from reportInstanceSnapshots where reportInstancePointId=?",
+                            new Object[] { point.getReportPointId() });
+                    SnapshotChunkWriter writer = new SnapshotChunkWriter(point.getReportPointId());
+                    pointValueDao.getPointValuesBetween(vo.getId(), startTime, endTime, writer);
+                    writer.flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove the snapshot of an instance
+     * @param instanceId
+     */
+    public void deleteReportInstanceSnapshot(int instanceId) {
+        ejt.update("delete from reportInstanceSnapshots where reportInstancePointId in "
+                + "(select id from reportInstancePoints where reportInstanceId=?)", new Object[] { instanceId });
+    }
+
+    private boolean hasReportInstanceSnapshot(int reportPointId) {
+        return ejt.queryForInt("select count(*) from reportInstanceSnapshots where reportInstancePointId=?",
+                new Object[] { reportPointId }, 0) > 0;
+    }
+
+    private void readReportInstanceSnapshot(int reportPointId, final MappedRowCallback<PointValueTime> callback) {
+        ejt.query("select data from reportInstanceSnapshots where reportInstancePointId=? order by chunk",
+                new Object[] { reportPointId }, new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        try {
+                            ReportSnapshotCodec.decode(rs.getBlob(1).getBinaryStream(), callback);
+                        }
+                        catch (IOException e) {
+                            throw new SQLException("Unable to read report snapshot", e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Buffers the values of a point and writes them out a chunk at a time
+     */
+    class SnapshotChunkWriter implements MappedRowCallback<PointValueTime> {
+        private final int reportPointId;
+        private final List<PointValueTime> buffer = new ArrayList<PointValueTime>();
+        private int chunk;
+
+        SnapshotChunkWriter(int reportPointId) {
+            this.reportPointId = reportPointId;
+        }
+
+        @Override
+        public void row(PointValueTime pvt, int rowId) {
+            buffer.add(pvt);
+            if (buffer.size() >= ReportSnapshotCodec.CHUNK_SIZE)
+                flush();
+        }
+
+        void flush() {
+            if (buffer.isEmpty())
+                return;
+            try {
+                ejt.update(SNAPSHOT_INSERT, new Object[] { reportPointId, chunk++, ReportSnapshotCodec.encode(buffer) },
+                        new int[] { Types.INTEGER, Types.INTEGER, Types.BLOB });
+            }
+            catch (IOException e) {
+                throw new ShouldNeverHappenException(e);
+            }
+            buffer.clear();
+        }
+    }
+
     public void reportInstanceDataSQL(int instanceId, final ExportDataStreamHandler handler) {
         // Retrieve point information.
         List<ExportPointInfo> pointInfos = query(REPORT_INSTANCE_POINT_SELECT + "where reportInstanceId=?",
@@ -783,9 +1189,10 @@ public class ReportDao extends AbstractDao<ReportVO> {
      * Generate a report using the NoSQL DB for point value storage
      * @param instance
      * @param points
+     * @param progress
      * @return
      */
-    public int runReportNoSQL(final ReportInstance instance, List<PointInfo> points) {
+    public int runReportNoSQL(final ReportInstance instance, List<PointInfo> points, final ReportProgress progress) {
         PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
         final MappedCallbackCounter count = new MappedCallbackCounter();
         final NoSQLDao dao = Common.databaseProxy.getNoSQLProxy().createNoSQLDao(ReportPointValueTimeSerializer.get(), "reports");
@@ -825,93 +1232,20 @@ public class ReportDao extends AbstractDao<ReportVO> {
         final Map<Integer,Integer> pointIdMap = new HashMap<Integer,Integer>();
 
         //Loop over all points, pre-process them and prepare to transfer the data to
-        // the reports table/data store
+        // the reports table/data store, the data is copied in one pass afterwards
+        progress.addSteps(2);
         for (PointInfo pointInfo : points) {
             DataPointVO point = pointInfo.getPoint();
             pointIds.add(point.getId());
-            int dataType = point.getPointLocator().getDataTypeId();
-            
-            
-            DataValue startValue = null;
-            if (!instance.isFromInception()) {
-                // Get the value just before the start of the report
-                PointValueTime pvt = pointValueDao.getPointValueBefore(point.getId(), instance.getReportStartTime());
-                if (pvt != null)
-                    startValue = pvt.getValue();
-
-                // Make sure the data types match
-                if (DataTypes.getDataType(startValue) != dataType)
-                    startValue = null;
-            }
-
-            // Insert the reportInstancePoints record
-            String name = Functions.truncate(point.getName(), 100);
-            
-            int reportPointId = doInsert(
-                    REPORT_INSTANCE_POINTS_INSERT,
-                    new Object[] { instance.getId(), point.getDeviceName(), name, pointInfo.getPoint().getXid(), dataType,
-                            DataTypes.valueToString(startValue),
-                            SerializationHelper.writeObject(point.getTextRenderer()), pointInfo.getColour(),
-                            pointInfo.getWeight(), boolToChar(pointInfo.isConsolidatedChart()), pointInfo.getPlotType() },
-                    new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.BLOB,
-                            Types.VARCHAR, Types.FLOAT, Types.CHAR, Types.INTEGER });
+            int reportPointId = insertReportInstancePoint(instance, pointInfo, pointValueDao);
 
             //Keep the info in the map
             pointIdMap.put(pointInfo.getPoint().getId(), reportPointId);
-
-            // Insert the reportInstanceDataAnnotations records
-            ejt.update(
-                    "insert into reportInstanceDataAnnotations " //
-                            + "  (pointValueId, reportInstancePointId, textPointValueShort, textPointValueLong, sourceMessage) " //
-                            + "  select rd.pointValueId, rd.reportInstancePointId, pva.textPointValueShort, " //
-                            + "    pva.textPointValueLong, pva.sourceMessage " //
-                            + "  from reportInstanceData rd " //
-                            + "    join reportInstancePoints rp on rd.reportInstancePointId = rp.id " //
-                            + "    join pointValueAnnotations pva on rd.pointValueId = pva.pointValueId " //
-                            + "  where rp.id = ?", new Object[] { reportPointId });
-
-            // Insert the reportInstanceEvents records for the point.
-            if (instance.getIncludeEvents() != ReportVO.EVENTS_NONE) {
-                String eventSQL = "insert into reportInstanceEvents " //
-                        + "  (eventId, reportInstanceId, typeName, subtypeName, typeRef1, typeRef2, activeTs, " //
-                        + "   rtnApplicable, rtnTs, rtnCause, alarmLevel, message, ackTs, ackUsername, " //
-                        + "   alternateAckSource)" //
-                        + "  select e.id, " + instance.getId() + ", e.typeName, e.subtypeName, e.typeRef1, " //
-                        + "    e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, e.rtnCause, e.alarmLevel, " //
-                        + "    e.message, e.ackTs, u.username, e.alternateAckSource " //
-                        + "  from events e join userEvents ue on ue.eventId=e.id " //
-                        + "    left join users u on e.ackUserId=u.id " //
-                        + "  where ue.userId=? " //
-                        + "    and e.typeName=? " //
-                        + "    and e.typeRef1=? ";
-
-                if (instance.getIncludeEvents() == ReportVO.EVENTS_ALARMS)
-                    eventSQL += "and e.alarmLevel > 0 ";
-
-                eventSQL += StringUtils.replaceMacro(timestampSql, "field", "e.activeTs");
-                ejt.update(
-                        eventSQL,
-                        appendParameters(timestampParams, instance.getUserId(), EventType.EventTypeNames.DATA_POINT,
-                                point.getId()));
-            }
-
-            // Insert the reportInstanceUserComments records for the point.
-            if (instance.isIncludeUserComments()) {
-                String commentSQL = "insert into reportInstanceUserComments " //
-                        + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
-                        + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_POINT + ", " //
-                        + reportPointId + ", uc.ts, uc.commentText " //
-                        + "  from userComments uc " //
-                        + "    left join users u on uc.userId=u.id " //
-                        + "  where uc.commentType=" + UserCommentVO.TYPE_POINT //
-                        + "    and uc.typeKey=? ";
-
-                // Only include comments made in the duration of the report.
-                commentSQL += StringUtils.replaceMacro(timestampSql, "field", "uc.ts");
-                ejt.update(commentSQL, appendParameters(timestampParams, point.getId()));
-            }
         } //end for all points
 
+        insertEventsAndComments(instance, pointIdMap, timestampSql, timestampParams);
+        progress.stepComplete();
+
         //Insert the data into the NoSQL DB and track first/last times
         //The series name is reportInstanceId_reportPointId
         final AtomicLong firstPointTime = new AtomicLong(Long.MAX_VALUE);
@@ -928,20 +1262,7 @@ public class ReportDao extends AbstractDao<ReportVO> {
 					lastPointTime.set(ipvt.getTime());
 			}
        });
-        
-        // Insert the reportInstanceUserComments records for the selected events
-        if (instance.isIncludeUserComments()) {
-            String commentSQL = "insert into reportInstanceUserComments " //
-                    + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
-                    + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_EVENT + ", uc.typeKey, " //
-                    + "    uc.ts, uc.commentText " //
-                    + "  from userComments uc " //
-                    + "    left join users u on uc.userId=u.id " //
-                    + "    join reportInstanceEvents re on re.eventId=uc.typeKey " //
-                    + "  where uc.commentType=" + UserCommentVO.TYPE_EVENT //
-                    + "    and re.reportInstanceId=? ";
-            ejt.update(commentSQL, new Object[] { instance.getId() });
-        }
+       progress.stepComplete();
 
         // If the report had undefined start or end times, update them with values from the data.
         if (instance.isFromInception() || instance.isToNow()) {
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Bounded pool shared by all running reports to work on their points in parallel.
+ * The pool size is set by the env property reports.pointThreads and defaults to
+ * the number of processors, idle threads are released after a minute.
+ *
+ * @author Terry Packer
+ */
+public class ReportPointExecutor {
+
+	public static final String POINT_THREADS_PROPERTY = "reports.pointThreads";
+	private static volatile ReportPointExecutor instance;
+
+	private final ThreadPoolExecutor executor;
+
+	private ReportPointExecutor(int threads) {
+		this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Report point " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static ReportPointExecutor getInstance() {
+		if (instance == null) {
+			synchronized (ReportPointExecutor.class) {
+				if (instance == null) {
+					int threads = Common.envProps.getInt(POINT_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+					if (threads < 1)
+						threads = 1;
+					instance = new ReportPointExecutor(threads);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Run the tasks on the pool and wait for all of them to finish.  If any
+	 * task fails the remaining ones are cancelled and the failure is thrown.
+	 *
+	 * @param tasks
+	 * @return the results in the order of the tasks
+	 */
+	public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Callable<T> task : tasks)
+			futures.add(executor.submit(task));
+
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> future : futures)
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for report points", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException("Report point failed", e.getCause());
+		} finally {
+			for (Future<T> future : futures)
+				future.cancel(true);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a running report instance.  Each stage of the run adds the
+ * steps it will take and completes them as its points finish.
+ *
+ * @author Terry Packer
+ */
+public class ReportProgress {
+
+	private static final ConcurrentHashMap<Integer, ReportProgress> running = new ConcurrentHashMap<Integer, ReportProgress>();
+
+	private final AtomicInteger steps = new AtomicInteger();
+	private final AtomicInteger completed = new AtomicInteger();
+
+	/**
+	 * Start tracking an instance
+	 * @param instanceId
+	 * @return
+	 */
+	public static ReportProgress start(int instanceId) {
+		ReportProgress progress = new ReportProgress();
+		running.put(instanceId, progress);
+		return progress;
+	}
+
+	/**
+	 * Stop tracking an instance
+	 * @param instanceId
+	 */
+	public static void finish(int instanceId) {
+		running.remove(instanceId);
+	}
+
+	/**
+	 * @param instanceId
+	 * @return percent complete or -1 if the instance is not running
+	 */
+	public static int getPercent(int instanceId) {
+		ReportProgress progress = running.get(instanceId);
+		return progress == null ? -1 : progress.getPercent();
+	}
+
+	public void addSteps(int count) {
+		steps.addAndGet(count);
+	}
+
+	public void stepComplete() {
+		completed.incrementAndGet();
+	}
+
+	/**
+	 * @return percent of the known steps that are complete, 100 is only reached once the instance finishes
+	 */
+	public int getPercent() {
+		int total = steps.get();
+		if (total == 0)
+			return 0;
+		return Math.min(99, (int) (completed.get() * 100L / total));
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.serotonin.InvalidArgumentException;
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.db.MappedRowCallback;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.ImageValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+
+/**
+ * Encodes chunks of point values for the snapshots of reference report instances.
+ * Each chunk is a gzipped run of time, data type, value and annotation records using
+ * the same value layout as the ReportPointValueTimeSerializer.  Strings are written as a
+ * length and their UTF-8 bytes since writeUTF can't hold more than 64KB.
+ *
+ * @author Terry Packer
+ *
+ */
+public class ReportSnapshotCodec {
+
+	//Values per chunk, keeps each blob small enough to read and write in one go
+	public static final int CHUNK_SIZE = 10000;
+
+	/**
+	 * @param values
+	 * @return compressed chunk
+	 * @throws IOException
+	 */
+	public static byte[] encode(List<PointValueTime> values) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+		for (PointValueTime value : values) {
+			out.writeLong(value.getTime());
+			out.writeShort(value.getValue().getDataType());
+			switch (value.getValue().getDataType()) {
+				case DataTypes.ALPHANUMERIC:
+					writeString(out, value.getStringValue());
+					break;
+				case DataTypes.BINARY:
+					out.writeBoolean(value.getBooleanValue());
+					break;
+				case DataTypes.IMAGE:
+					writeString(out, ((ImageValue) value.getValue()).getFilename());
+					break;
+				case DataTypes.MULTISTATE:
+					out.writeInt(value.getIntegerValue());
+					break;
+				case DataTypes.NUMERIC:
+					out.writeDouble(value.getDoubleValue());
+					break;
+				default:
+					throw new ShouldNeverHappenException("Data type of " + value.getValue().getDataType() + " is not supported");
+			}
+
+			if (value.isAnnotated()) {
+				out.writeBoolean(true);
+				writeString(out, ((AnnotatedPointValueTime) value).getSourceMessage().serialize());
+			} else
+				out.writeBoolean(false);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read a chunk, values are passed to the callback in the order they were written
+	 * @param in - compressed chunk
+	 * @param callback
+	 * @throws IOException
+	 */
+	public static void decode(InputStream in, MappedRowCallback<PointValueTime> callback) throws IOException {
+		DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+		try {
+			int row = 0;
+			while (true) {
+				long time;
+				try {
+					time = data.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+
+				int dataType = data.readShort();
+				DataValue value = null;
+				switch (dataType) {
+					case DataTypes.ALPHANUMERIC:
+						value = new AlphanumericValue(readString(data));
+						break;
+					case DataTypes.BINARY:
+						value = new BinaryValue(data.readBoolean());
+						break;
+					case DataTypes.IMAGE:
+						String filename = readString(data);
+						try {
+							value = new ImageValue(filename);
+						} catch (InvalidArgumentException e) {
+							//Probably no file
+						}
+						break;
+					case DataTypes.MULTISTATE:
+						value = new MultistateValue(data.readInt());
+						break;
+					case DataTypes.NUMERIC:
+						value = new NumericValue(data.readDouble());
+						break;
+					default:
+						throw new IOException("Data type of " + dataType + " is not supported");
+				}
+
+				if (data.readBoolean()) {
+					TranslatableMessage annotation;
+					try {
+						annotation = TranslatableMessage.deserialize(readString(data));
+					} catch (Exception e) {
+						throw new IOException(e);
+					}
+					callback.row(new AnnotatedPointValueTime(value, time, annotation), row++);
+				} else
+					callback.row(new PointValueTime(value, time), row++);
+			}
+		} finally {
+			data.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			throw new IOException("Invalid string length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
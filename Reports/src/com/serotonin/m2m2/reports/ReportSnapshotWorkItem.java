@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.reports.vo.ReportInstance;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Copies the values of a reference report instance into its snapshot
+ * when the instance is marked to not be purged.
+ *
+ * @author Terry Packer
+ *
+ */
+public class ReportSnapshotWorkItem implements WorkItem {
+
+	private static final Log LOG = LogFactory.getLog(ReportSnapshotWorkItem.class);
+
+	private final int instanceId;
+	private final String name;
+
+	public ReportSnapshotWorkItem(ReportInstance instance) {
+		this.instanceId = instance.getId();
+		this.name = instance.getName();
+	}
+
+	@Override
+	public void execute() {
+		//The instance may have been deleted or released while this was queued
+		ReportInstance instance = ReportDao.instance.getReportInstance(instanceId);
+		if (instance == null || !instance.isPreventPurge())
+			return;
+		ReportDao.instance.createReportInstanceSnapshot(instance);
+	}
+
+	@Override
+	public int getPriority() {
+		return WorkItem.PRIORITY_LOW;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+		return "Snapshot of report: " + name;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getTaskId()
+	 */
+	@Override
+	public String getTaskId() {
+		return "RPRT_SNAP_" + instanceId;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getQueueSize()
+	 */
+	@Override
+	public int getQueueSize() {
+		return 2;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#rejected(com.serotonin.timer.RejectedTaskReason)
+	 */
+	@Override
+	public void rejected(RejectedTaskReason reason) {
+		LOG.warn("Snapshot of report instance " + instanceId + " was not taken: " + reason.getDescription());
+	}
+}
@@ -28,6 +28,7 @@ public class SchemaDefinition extends DatabaseSchemaDefinition {
         tableNames.add("reportInstanceData");
         tableNames.add("reportInstanceDataAnnotations");
         tableNames.add("reportInstanceEvents");
+        tableNames.add("reportInstanceSnapshots");
         tableNames.add("reportInstanceUserComments");
     }
 
@@ -38,7 +39,7 @@ public class SchemaDefinition extends DatabaseSchemaDefinition {
 
     @Override
     public int getDatabaseSchemaVersion() {
-        return 3;
+        return 4;
     }
 
     @Override
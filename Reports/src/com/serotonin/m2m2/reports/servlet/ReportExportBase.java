@@ -46,10 +46,7 @@ abstract public class ReportExportBase extends HttpServlet {
         Translations translations = Common.getTranslations();
         if (content == CONTENT_REPORT) {
             ExportCsvStreamer creator = new ExportCsvStreamer(request.getServerName(), request.getLocalPort(), response.getWriter(), translations);
-            if(Common.databaseProxy.getNoSQLProxy() == null)
-            	reportDao.reportInstanceDataSQL(instanceId, creator);
-            else
-            	reportDao.reportInstanceDataNoSQL(instanceId, creator);
+            reportDao.reportInstanceData(instance, creator);
         }
         else if (content == CONTENT_EVENTS)
             new EventCsvStreamer(response.getWriter(), reportDao.getReportInstanceEvents(instanceId), translations);
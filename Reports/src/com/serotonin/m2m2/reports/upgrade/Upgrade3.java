@@ -0,0 +1,58 @@
+package com.serotonin.m2m2.reports.upgrade;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.db.upgrade.DBUpgrade;
+
+/**
+ * Upgrade Schema 3 to 4, adds reference mode instances and their snapshots
+ * @author Terry Packer
+ *
+ */
+public class Upgrade3 extends DBUpgrade {
+    @Override
+    protected void upgrade() throws Exception {
+        Map<String, String[]> scripts = new HashMap<String, String[]>();
+        scripts.put(DatabaseProxy.DatabaseType.DERBY.name(), derbyScript);
+        scripts.put(DatabaseProxy.DatabaseType.MYSQL.name(), mysqlScript);
+        scripts.put(DatabaseProxy.DatabaseType.MSSQL.name(), mssqlScript);
+        scripts.put(DatabaseProxy.DatabaseType.H2.name(), h2Script);
+        runScript(scripts);
+    }
+
+    @Override
+    protected String getNewSchemaVersion() {
+        return "4";
+    }
+
+    private final String[] derbyScript = { //
+            "alter table reportInstances add referenceData char(1);", //
+            "update reportInstances set referenceData='N';", //
+            "create table reportInstanceSnapshots (reportInstancePointId int not null, chunk int not null, data blob not null);", //
+            "alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId) references reportInstancePoints(id) on delete cascade;", //
+            "alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsPk primary key (reportInstancePointId, chunk);", //
+    };
+
+    private final String[] mysqlScript = { //
+            "alter table reportInstances add referenceData char(1);", //
+            "update reportInstances set referenceData='N';", //
+            "create table reportInstanceSnapshots (reportInstancePointId int not null, chunk int not null, data longblob not null, primary key (reportInstancePointId, chunk)) engine=InnoDB;", //
+            "alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId) references reportInstancePoints(id) on delete cascade;", //
+    };
+
+    private final String[] mssqlScript = { //
+            "alter table reportInstances add referenceData char(1);", //
+            "update reportInstances set referenceData='N';", //
+            "create table reportInstanceSnapshots (reportInstancePointId int not null, chunk int not null, data image not null, primary key (reportInstancePointId, chunk));", //
+            "alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId) references reportInstancePoints(id) on delete cascade;", //
+    };
+
+    private final String[] h2Script = { //
+            "alter table reportInstances add referenceData char(1);", //
+            "update reportInstances set referenceData='N';", //
+            "create table reportInstanceSnapshots (reportInstancePointId int not null, chunk int not null, data longblob not null, primary key (reportInstancePointId, chunk));", //
+            "alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId) references reportInstancePoints(id) on delete cascade;", //
+    };
+}
@@ -10,6 +10,7 @@ import org.joda.time.DateTime;
 
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.UserDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.util.DateUtils;
 import com.serotonin.m2m2.vo.User;
@@ -38,8 +39,11 @@ public class ReportInstance {
     private long runEndTime = -1;
     private int recordCount = -1;
     private boolean preventPurge;
+    private boolean referenceData;
 
     private Translations translations;
+    //Percent complete while running, -1 otherwise
+    private int progress = -1;
 
     //For JSP View
     private String username;
@@ -56,6 +60,7 @@ public class ReportInstance {
         templateFile = template.getTemplate();
         includeEvents = template.getIncludeEvents();
         includeUserComments = template.isIncludeUserComments();
+        referenceData = template.isReferenceData();
 
         UserDao userDao = UserDao.instance;
         User reportUser = userDao.getUser(userId);
@@ -152,8 +157,11 @@ public class ReportInstance {
     public String getPrettyRecordCount() {
         if (runStartTime == -1)
             return "";
-        if (runEndTime == -1)
-            return "";
+        if (runEndTime == -1) {
+            if (progress == -1)
+                return "";
+            return new TranslatableMessage("reports.progress", progress).translate(translations);
+        }
         if (recordCount == -2)
             return translations.translate("reports.licenseExpired");
         if (recordCount == -1)
@@ -273,6 +281,22 @@ public class ReportInstance {
         this.preventPurge = preventPurge;
     }
 
+    public int getProgress() {
+        return progress;
+    }
+
+    public void setProgress(int progress) {
+        this.progress = progress;
+    }
+
+    public boolean isReferenceData() {
+        return referenceData;
+    }
+
+    public void setReferenceData(boolean referenceData) {
+        this.referenceData = referenceData;
+    }
+
 	public String getUsername() {
 		return username;
 	}
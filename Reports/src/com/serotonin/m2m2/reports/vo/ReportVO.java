@@ -143,6 +143,9 @@ public class ReportVO extends AbstractVO<ReportVO> implements Serializable, Json
     private List<RecipientListEntryBean> recipients = new ArrayList<RecipientListEntryBean>();
     private boolean includeData = true;
     private boolean zipData = false;
+    //Keep only the points and time range in instances and read values from the point value store
+    @JsonProperty
+    private boolean referenceData = false;
 
     public ReportVO() {
         // Default the specific date fields.
@@ -409,6 +412,14 @@ public class ReportVO extends AbstractVO<ReportVO> implements Serializable, Json
         this.zipData = zipData;
     }
 
+    public boolean isReferenceData() {
+        return referenceData;
+    }
+
+    public void setReferenceData(boolean referenceData) {
+        this.referenceData = referenceData;
+    }
+
     public int getRunDelayMinutes() {
         return runDelayMinutes;
     }
@@ -446,7 +457,7 @@ public class ReportVO extends AbstractVO<ReportVO> implements Serializable, Json
     // Serialization
     //
     private static final long serialVersionUID = -1;
-    private static final int version = 2;
+    private static final int version = 3;
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeInt(version);
@@ -484,6 +495,7 @@ public class ReportVO extends AbstractVO<ReportVO> implements Serializable, Json
         out.writeObject(recipients);
         out.writeBoolean(includeData);
         out.writeBoolean(zipData);
+        out.writeBoolean(referenceData);
     }
 
     @SuppressWarnings("unchecked")
@@ -528,7 +540,7 @@ public class ReportVO extends AbstractVO<ReportVO> implements Serializable, Json
             zipData = in.readBoolean();
         }
         
-        else if (ver == 2) {
+        else if (ver == 2 || ver == 3) {
             points = (List<ReportPointVO>) in.readObject();
             template = SerializationHelper.readSafeUTF(in);
             includeEvents = in.readInt();
@@ -563,6 +575,8 @@ public class ReportVO extends AbstractVO<ReportVO> implements Serializable, Json
             RecipientListEntryBean.cleanRecipientList(recipients);
             includeData = in.readBoolean();
             zipData = in.readBoolean();
+            if (ver == 3)
+                referenceData = in.readBoolean();
         }
     }
 
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import java.util.Date;
+
+import org.jfree.data.time.Millisecond;
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * Reduces a stream of numeric values to what can be drawn at a given chart width.
+ * The report range is split into one column per pixel and only the first, minimum,
+ * maximum and last value of each column are added to the series, so the line drawn
+ * looks the same as with every value but the series holds at most four values per
+ * pixel no matter how many values the point has.
+ *
+ * Values must arrive in time order.
+ *
+ * @author Terry Packer
+ */
+public class NumericPixelDecimator {
+
+    private final TimeSeries timeSeries;
+    private final long start;
+    private final long columnWidth;
+
+    private long column = Long.MIN_VALUE;
+    private int count;
+    private long firstTime, minTime, maxTime, lastTime;
+    private double first, min, max, last;
+
+    /**
+     * @param start - start of the chart
+     * @param end - end of the chart
+     * @param columns - width of the chart in pixels
+     * @param timeSeries - series to add the values to
+     */
+    public NumericPixelDecimator(long start, long end, int columns, TimeSeries timeSeries) {
+        this.timeSeries = timeSeries;
+        this.start = start;
+        this.columnWidth = Math.max(1, (end - start) / Math.max(1, columns));
+    }
+
+    public void data(long time, double value) {
+        long valueColumn = Math.max(0, (time - start) / columnWidth);
+        if (valueColumn != column) {
+            flush();
+            column = valueColumn;
+            firstTime = minTime = maxTime = time;
+            first = min = max = value;
+        }
+        else {
+            if (value < min) {
+                min = value;
+                minTime = time;
+            }
+            if (value > max) {
+                max = value;
+                maxTime = time;
+            }
+        }
+        lastTime = time;
+        last = value;
+        count++;
+    }
+
+    public void done() {
+        flush();
+    }
+
+    private void flush() {
+        if (count == 0)
+            return;
+
+        add(firstTime, first);
+        // Keep the extremes in time order so the line is drawn through them correctly
+        if (minTime <= maxTime) {
+            add(minTime, min);
+            add(maxTime, max);
+        }
+        else {
+            add(maxTime, max);
+            add(minTime, min);
+        }
+        add(lastTime, last);
+        count = 0;
+    }
+
+    private void add(long time, double value) {
+        timeSeries.addOrUpdate(new Millisecond(new Date(time)), value);
+    }
+}
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,6 +33,8 @@ import com.serotonin.m2m2.email.SubjectDirective;
 import com.serotonin.m2m2.email.UsedImagesDirective;
 import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.reports.ReportDao;
+import com.serotonin.m2m2.reports.ReportPointExecutor;
+import com.serotonin.m2m2.reports.ReportProgress;
 import com.serotonin.m2m2.reports.vo.ReportInstance;
 import com.serotonin.m2m2.reports.vo.ReportVO;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
@@ -45,8 +48,6 @@ import com.serotonin.m2m2.view.quantize.AbstractDataQuantizer;
 import com.serotonin.m2m2.view.quantize.BinaryDataQuantizer;
 import com.serotonin.m2m2.view.quantize.DiscreteTimeSeriesQuantizerCallback;
 import com.serotonin.m2m2.view.quantize.MultistateDataQuantizer;
-import com.serotonin.m2m2.view.quantize.NumericDataQuantizer;
-import com.serotonin.m2m2.view.quantize.TimeSeriesQuantizerCallback;
 import com.serotonin.m2m2.view.stats.AnalogStatistics;
 import com.serotonin.m2m2.view.stats.StartsAndRuntime;
 import com.serotonin.m2m2.view.stats.StartsAndRuntimeList;
@@ -94,6 +95,7 @@ public class ReportChartCreator {
     private List<PointStatistics> pointStatistics;
 	private HashMap<String, HashMap<String, PointStatistics>> devices;
 	private HashMap<String, PointStatistics> pointMap;
+	private ReportProgress progress;
 
     final Translations translations;
     final TimeZone timeZone;
@@ -103,6 +105,14 @@ public class ReportChartCreator {
         this.timeZone = timeZone;
     }
 
+    /**
+     * Report the charts rendered by createContent to the progress of a running report
+     * @param progress
+     */
+    public void setProgress(ReportProgress progress) {
+        this.progress = progress;
+    }
+
     /**
      * Uses the given parameters to create the data for the fields of this class. Once the content has been created the
      * getters for the fields can be used to retrieve.
@@ -125,10 +135,7 @@ public class ReportChartCreator {
         StreamHandler handler = new StreamHandler(host, port, reportInstance.getXidMap(), reportInstance.getReportStartTime(), 
                 reportInstance.getReportEndTime(), IMAGE_WIDTH, createExportFile, translations);
         // Process the report content with the handler.
-        if(Common.databaseProxy.getNoSQLProxy() == null)
-        	reportDao.reportInstanceDataSQL(reportInstance.getId(), handler);
-        else
-        	reportDao.reportInstanceDataNoSQL(reportInstance.getId(), handler);
+        reportDao.reportInstanceData(reportInstance, handler);
 
         pointStatistics = handler.getPointStatistics();
 		devices = handler.getDevices();
@@ -154,22 +161,40 @@ public class ReportChartCreator {
         model.put("NUMERIC", DataTypes.NUMERIC);
         model.put("IMAGE", DataTypes.IMAGE);
 
-        // Create the individual point charts
-        for (PointStatistics pointStat : pointStatistics) {
-            PointTimeSeriesCollection ptsc = new PointTimeSeriesCollection(timeZone);
+        // Render the individual point charts on the report pool
+        final long reportStartTime = reportInstance.getReportStartTime();
+        final long reportEndTime = reportInstance.getReportEndTime();
+        List<Callable<Boolean>> charts = new ArrayList<Callable<Boolean>>(pointStatistics.size());
+        for (final PointStatistics pointStat : pointStatistics) {
+            charts.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    PointTimeSeriesCollection ptsc = new PointTimeSeriesCollection(timeZone);
+
+                    if (pointStat.getNumericTimeSeries() != null)
+                        ptsc.addNumericTimeSeries(pointStat.getNumericTimeSeries());
+                    else if (pointStat.getDiscreteTimeSeries() != null)
+                        ptsc.addDiscreteTimeSeries(pointStat.getDiscreteTimeSeries());
+
+                    boolean hasData = ptsc.hasData();
+                    if (hasData)
+                        pointStat.setImageData(ImageChartUtils.getChartData(ptsc, POINT_IMAGE_WIDTH, POINT_IMAGE_HEIGHT,
+                                reportStartTime, reportEndTime));
+                    if (progress != null)
+                        progress.stepComplete();
+                    return hasData;
+                }
+            });
+        }
+        if (progress != null)
+            progress.addSteps(charts.size() + 1);
+        List<Boolean> charted = ReportPointExecutor.getInstance().invokeAll(charts);
 
-            if (pointStat.getNumericTimeSeries() != null)
-                ptsc.addNumericTimeSeries(pointStat.getNumericTimeSeries());
-            else if (pointStat.getDiscreteTimeSeries() != null)
-                ptsc.addDiscreteTimeSeries(pointStat.getDiscreteTimeSeries());
+        for (int i = 0; i < pointStatistics.size(); i++) {
+            PointStatistics pointStat = pointStatistics.get(i);
+            if (charted.get(i) && inlinePrefix != null)
+                model.put("chartName", inlinePrefix + pointStat.getChartName());
 
-            if (ptsc.hasData()) {
-                if (inlinePrefix != null)
-                    model.put("chartName", inlinePrefix + pointStat.getChartName());
-                pointStat.setImageData(ImageChartUtils.getChartData(ptsc, POINT_IMAGE_WIDTH, POINT_IMAGE_HEIGHT,
-                        reportInstance.getReportStartTime(), reportInstance.getReportEndTime()));
-            }
-            
         	//  Since I just want to include the most recent image
         	// in the report I'll add it here while we are already iterating over the points that are included in the report
         	if (pointStat.getDataType() == DataTypes.IMAGE) {
@@ -194,7 +219,7 @@ public class ReportChartCreator {
         	}
         }
 
-        // consolidated chart
+        // consolidated chart, rendered once the point charts are done since it shares their series
         PointTimeSeriesCollection ptsc = handler.getPointTimeSeriesCollection();
         if (ptsc.hasData()) {
             if (inlinePrefix != null)
@@ -208,6 +233,8 @@ public class ReportChartCreator {
             imageData = ImageChartUtils.getChartData(ptsc, true, IMAGE_WIDTH, IMAGE_HEIGHT,
                     reportInstance.getReportStartTime(), reportInstance.getReportEndTime());
         }
+        if (progress != null)
+            progress.stepComplete();
 
         List<EventInstance> events = null;
         if (reportInstance.getIncludeEvents() != ReportVO.EVENTS_NONE) {
@@ -525,6 +552,7 @@ public class ReportChartCreator {
         private final long start;
         private final long end;
         private final int imageWidth;
+        private final int chartWidth;
 
         File exportFile;
         private ExportCsvStreamer exportCsvStreamer;
@@ -536,6 +564,7 @@ public class ReportChartCreator {
         private NumericTimeSeries numericTimeSeries;
         private DiscreteTimeSeries discreteTimeSeries;
         private AbstractDataQuantizer quantizer;
+        private NumericPixelDecimator decimator;
         
         private Map<String, String> xidMapping;
         private HashMap<String, PointStatistics> statisticsMap;
@@ -552,6 +581,7 @@ public class ReportChartCreator {
             this.start = start;
             this.end = end;
             this.imageWidth = imageWidth * 10;
+            this.chartWidth = imageWidth;
             try {
                 if (createExportFile) {
                     exportFile = File.createTempFile("tempCSV", ".csv");
@@ -608,6 +638,7 @@ public class ReportChartCreator {
             }
 
             Stroke stroke = new BasicStroke(pointInfo.getWeight());
+            decimator = null;
 
             if (pointInfo.getDataType() == DataTypes.NUMERIC) {
                 point.setStats(new AnalogStatistics(start, end, pointInfo.getStartValue() == null ? null : pointInfo
@@ -621,8 +652,9 @@ public class ReportChartCreator {
                 if (pointInfo.isConsolidatedChart())
                     pointTimeSeriesCollection.addNumericTimeSeries(numericTimeSeries);
 
-                quantizer = new NumericDataQuantizer(start, end, imageWidth,
-                        new TimeSeriesQuantizerCallback(timeSeries));
+                // Only keep what can be drawn at the widest chart the series is used in
+                quantizer = null;
+                decimator = new NumericPixelDecimator(start, end, chartWidth, timeSeries);
             }
             else if (pointInfo.getDataType() == DataTypes.MULTISTATE) {
                 point.setStats(new StartsAndRuntimeList(start, end, pointInfo.getStartValue()));
@@ -676,6 +708,8 @@ public class ReportChartCreator {
         public void pointData(ExportDataValue rdv) {
             if (quantizer != null)
                 quantizer.data(rdv);
+            else if (decimator != null && rdv.getValue() != null)
+                decimator.data(rdv.getTime(), rdv.getValue().getDoubleValue());
             point.getStats().addValueTime(rdv);
             if (exportCsvStreamer != null)
                 exportCsvStreamer.pointData(rdv);
@@ -684,6 +718,8 @@ public class ReportChartCreator {
         private void donePoint() {
             if (quantizer != null)
                 quantizer.done();
+            if (decimator != null)
+                decimator.done();
             if (point != null)
                 // Add in an end value to calculate stats until the end of the report. 
                 point.getStats().done(new PointValueTime(0D, end));
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Runs the reports admitted together by the ReportScheduler one after the other.  The reports
+ * share a time range so each copies the points it has in common with an earlier report of the
+ * group from that report's data instead of the point values.
+ *
+ * @author Terry Packer
+ *
+ */
+public class ReportGroupWorkItem implements WorkItem {
+
+	private static final Log LOG = LogFactory.getLog(ReportGroupWorkItem.class);
+
+	private final ReportScheduler scheduler;
+	private final String shareKey;
+	private final List<ReportWorkItem> items = new ArrayList<ReportWorkItem>(1);
+	private boolean started;
+	private boolean finished;
+
+	/**
+	 * @param scheduler
+	 * @param shareKey - key of the reports in the group, null if it can't be joined
+	 * @param first - first report of the group
+	 */
+	ReportGroupWorkItem(ReportScheduler scheduler, String shareKey, ReportWorkItem first) {
+		this.scheduler = scheduler;
+		this.shareKey = shareKey;
+		this.items.add(first);
+	}
+
+	/**
+	 * Add a report, only called by the scheduler before the group has started
+	 * @param item
+	 */
+	void add(ReportWorkItem item) {
+		if (started)
+			throw new IllegalStateException("Report group already started");
+		items.add(item);
+	}
+
+	void setStarted() {
+		started = true;
+	}
+
+	/**
+	 * Mark the group finished, only called by the scheduler
+	 * @return false if it already was
+	 */
+	boolean setFinished() {
+		if (finished)
+			return false;
+		finished = true;
+		return true;
+	}
+
+	String getShareKey() {
+		return shareKey;
+	}
+
+	int getFirstInstanceId() {
+		return items.get(0).getReportInstance().getId();
+	}
+
+	@Override
+	public void execute() {
+		scheduler.started(this);
+		try {
+			if (items.size() == 1) {
+				items.get(0).execute();
+				return;
+			}
+
+			Map<String, Integer> shared = new HashMap<String, Integer>();
+			for (ReportWorkItem item : items)
+				item.setHoldInstance(true);
+			try {
+				for (ReportWorkItem item : items) {
+					try {
+						item.run(shared);
+					} catch (Exception e) {
+						LOG.error("Report instance " + item.getReportInstance().getId() + " failed", e);
+					}
+				}
+			} finally {
+				for (ReportWorkItem item : items)
+					item.releaseInstance();
+			}
+		} finally {
+			scheduler.finished(this);
+		}
+	}
+
+	@Override
+	public int getPriority() {
+		return items.get(0).getPriority();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+		if (items.size() == 1)
+			return items.get(0).getDescription();
+		return "Generating " + items.size() + " reports";
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getTaskId()
+	 */
+	@Override
+	public String getTaskId() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#getQueueSize()
+	 */
+	@Override
+	public int getQueueSize() {
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.maint.work.WorkItem#rejected(com.serotonin.timer.RejectedTaskReason)
+	 */
+	@Override
+	public void rejected(RejectedTaskReason reason) {
+		LOG.warn("Report group rejected: " + reason.getDescription());
+		//Nothing can join once it is rejected
+		scheduler.started(this);
+		try {
+			for (ReportWorkItem item : items)
+				item.rejected(reason);
+		} finally {
+			scheduler.finished(this);
+		}
+	}
+}
@@ -69,6 +69,6 @@ public class ReportJob extends TimerTask {
 
     @Override
     public void run(long runtime) {
-        ReportWorkItem.queueReport(host, port, report);
+        ReportWorkItem.scheduleReport(host, port, report);
     }
 }
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.timer.OneTimeTrigger;
+import com.serotonin.timer.TimerTask;
+
+/**
+ * Admission control for report runs so many reports scheduled at the same moment, such as
+ * daily reports at midnight, don't all query the point values at once.
+ *
+ * Scheduled reports are started after a random delay within reports.scheduleJitterSeconds
+ * (at most an hour), at most reports.maxConcurrent groups run at a time and the rest wait in
+ * order.  Scheduled reports with the same time range that are waiting together are run as one
+ * group, points they have in common are copied from the point values once and from the first
+ * report's data for the others.
+ *
+ * @author Terry Packer
+ *
+ */
+public class ReportScheduler {
+
+	private static final Log LOG = LogFactory.getLog(ReportScheduler.class);
+
+	public static final String MAX_CONCURRENT_PROPERTY = "reports.maxConcurrent";
+	public static final String JITTER_SECONDS_PROPERTY = "reports.scheduleJitterSeconds";
+	//Longest delay a scheduled report can be given
+	public static final int MAX_JITTER_SECONDS = 3600;
+
+	private static final ReportScheduler instance = new ReportScheduler();
+
+	public static ReportScheduler getInstance() {
+		return instance;
+	}
+
+	private final Object lock = new Object();
+	private final Random random = new Random();
+	//Groups that have not started, by share key, that later reports can join
+	private final Map<String, ReportGroupWorkItem> pending = new HashMap<String, ReportGroupWorkItem>();
+	//Groups past their delay waiting for a free slot
+	private final Deque<ReportGroupWorkItem> waiting = new ArrayDeque<ReportGroupWorkItem>();
+	private int running;
+
+	ReportScheduler() { }
+
+	/**
+	 * Submit a report to run.  Only scheduled reports are grouped, a report run by hand
+	 * starts without the delay and is never held back for a group.
+	 * @param item - report with its instance saved
+	 * @param scheduled - delay the start by the jitter
+	 */
+	public void submit(ReportWorkItem item, boolean scheduled) {
+		String key = scheduled ? item.getShareKey() : null;
+		int jitterSeconds = scheduled ? Math.min(Math.max(getJitterSeconds(), 0), MAX_JITTER_SECONDS) : 0;
+
+		ReportGroupWorkItem group;
+		synchronized (lock) {
+			if (key != null) {
+				group = pending.get(key);
+				if (group != null) {
+					group.add(item);
+					return;
+				}
+			}
+
+			group = new ReportGroupWorkItem(this, key, item);
+			if (key != null)
+				pending.put(key, group);
+		}
+
+		if (jitterSeconds <= 0)
+			admit(group);
+		else
+			release(group, (long) random.nextInt(jitterSeconds * 1000));
+	}
+
+	/**
+	 * Start the group if there is a free slot, otherwise queue it.  The work item is added outside
+	 * the lock as it can be rejected, and so finished, on this thread.
+	 * @param group
+	 */
+	void admit(ReportGroupWorkItem group) {
+		synchronized (lock) {
+			if (running >= getMaxConcurrent()) {
+				waiting.add(group);
+				return;
+			}
+			running++;
+		}
+		start(group);
+	}
+
+	/**
+	 * The group has started, reports submitted from now on can't join it
+	 * @param group
+	 */
+	void started(ReportGroupWorkItem group) {
+		synchronized (lock) {
+			if (group.getShareKey() != null && pending.get(group.getShareKey()) == group)
+				pending.remove(group.getShareKey());
+			group.setStarted();
+		}
+	}
+
+	/**
+	 * The group finished or was rejected, free its slot and start the next waiting group.
+	 * Only the first call for a group counts.
+	 * @param group
+	 */
+	void finished(ReportGroupWorkItem group) {
+		ReportGroupWorkItem next;
+		synchronized (lock) {
+			if (!group.setFinished())
+				return;
+			started(group);
+			running--;
+			next = waiting.poll();
+		}
+		if (next != null)
+			admit(next);
+	}
+
+	/**
+	 * @return number of groups holding a slot
+	 */
+	int getRunning() {
+		synchronized (lock) {
+			return running;
+		}
+	}
+
+	/**
+	 * @return number of groups waiting for a slot
+	 */
+	int getWaiting() {
+		synchronized (lock) {
+			return waiting.size();
+		}
+	}
+
+	/**
+	 * Run the group in the background
+	 * @param group
+	 */
+	void start(ReportGroupWorkItem group) {
+		Common.backgroundProcessing.addWorkItem(group);
+	}
+
+	/**
+	 * Admit the group after a delay
+	 * @param group
+	 * @param delay - ms
+	 */
+	void release(ReportGroupWorkItem group, long delay) {
+		Common.timer.schedule(new ReleaseTask(group, delay));
+	}
+
+	int getMaxConcurrent() {
+		return Math.max(1, Common.envProps.getInt(MAX_CONCURRENT_PROPERTY, 2));
+	}
+
+	/**
+	 * @return the jitter setting, limited to [0, MAX_JITTER_SECONDS] when used
+	 */
+	int getJitterSeconds() {
+		return Common.envProps.getInt(JITTER_SECONDS_PROPERTY, 0);
+	}
+
+	/**
+	 * Admits a group once its jitter delay has passed
+	 */
+	class ReleaseTask extends TimerTask {
+
+		private final ReportGroupWorkItem group;
+
+		ReleaseTask(ReportGroupWorkItem group, long delay) {
+			super(new OneTimeTrigger(delay), "Report release " + group.getFirstInstanceId(),
+					"RPRT_REL_" + group.getFirstInstanceId(), 1);
+			this.group = group;
+		}
+
+		/* (non-Javadoc)
+		 * @see com.serotonin.timer.TimerTask#run(long)
+		 */
+		@Override
+		public void run(long runtime) {
+			if (LOG.isDebugEnabled())
+				LOG.debug("Releasing " + group.getDescription());
+			admit(group);
+		}
+	}
+}
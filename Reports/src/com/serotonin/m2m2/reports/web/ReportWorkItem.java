@@ -10,6 +10,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.zip.ZipEntry;
@@ -35,6 +36,7 @@ import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.reports.ReportDao;
 import com.serotonin.m2m2.reports.ReportLicenseChecker;
+import com.serotonin.m2m2.reports.ReportProgress;
 import com.serotonin.m2m2.reports.vo.ReportInstance;
 import com.serotonin.m2m2.reports.vo.ReportPointVO;
 import com.serotonin.m2m2.reports.vo.ReportVO;
@@ -79,12 +81,30 @@ public class ReportWorkItem implements WorkItem {
     }
 
     public static void queueReport(String host, int port, ReportVO report) {
+        ReportWorkItem item = createItem(host, port, report);
+        if (item != null)
+            ReportScheduler.getInstance().submit(item, false);
+    }
+
+    /**
+     * Queue a report from its schedule, the start may be delayed by the scheduler's jitter
+     * @param host
+     * @param port
+     * @param report
+     */
+    public static void scheduleReport(String host, int port, ReportVO report) {
+        ReportWorkItem item = createItem(host, port, report);
+        if (item != null)
+            ReportScheduler.getInstance().submit(item, true);
+    }
+
+    private static ReportWorkItem createItem(String host, int port, ReportVO report) {
         LOG.debug("Queuing report with id " + report.getId());
 
         // Verify that the user is not disabled.
         User user = UserDao.instance.getUser(report.getUserId());
         if (user.isDisabled())
-            return;
+            return null;
 
         // User is ok. Continue...
         ReportWorkItem item = new ReportWorkItem(host, port);
@@ -97,11 +117,11 @@ public class ReportWorkItem implements WorkItem {
         item.reportDao = ReportDao.instance;
         item.reportDao.saveReportInstance(reportInstance);
 
-        // Start the report work item out of process.
+        // The time range is fixed now, the scheduler starts the report work item out of process.
         item.reportInstance = reportInstance;
-        Common.backgroundProcessing.addWorkItem(item);
 
         LOG.debug("Queued report with id " + report.getId() + ", instance id " + reportInstance.getId());
+        return item;
     }
 
     ReportVO reportConfig;
@@ -109,9 +129,21 @@ public class ReportWorkItem implements WorkItem {
     private ReportDao reportDao;
     private ReportInstance reportInstance;
     List<File> filesToDelete = new ArrayList<File>();
+    //Keep an emailed scheduled instance until releaseInstance so other reports can copy its data
+    private boolean holdInstance;
+    private boolean deleteInstance;
 
     @Override
     public void execute() {
+        run(null);
+    }
+
+    /**
+     * Run the report
+     * @param shared - report point ids by point xid of data already copied for the same time range, see
+     *            ReportDao.runReportSQL. May be null.
+     */
+    void run(Map<String, Integer> shared) {
     	try {
     		ReportLicenseChecker.checkLicense();
     	} catch(LicenseViolatedException e) {
@@ -149,13 +181,28 @@ public class ReportWorkItem implements WorkItem {
             }
         }
 
+        ReportProgress progress = ReportProgress.start(reportInstance.getId());
+        try {
+            runReport(points, progress, translations, shared);
+        }
+        finally {
+            ReportProgress.finish(reportInstance.getId());
+        }
+
+        LOG.debug("Finished running report with id " + reportConfig.getId() + ", instance id " + reportInstance.getId());
+    }
+
+    private void runReport(List<ReportDao.PointInfo> points, ReportProgress progress, Translations translations,
+            Map<String, Integer> shared) {
         int recordCount = 0;
         try {
             if (!points.isEmpty()){
-                if(Common.databaseProxy.getNoSQLProxy() == null)
-                	recordCount = reportDao.runReportSQL(reportInstance, points);
+                if(reportInstance.isReferenceData())
+                	recordCount = reportDao.runReportReference(reportInstance, points, progress);
+                else if(Common.databaseProxy.getNoSQLProxy() == null)
+                	recordCount = reportDao.runReportSQL(reportInstance, points, progress, shared);
                 else
-                	recordCount = reportDao.runReportNoSQL(reportInstance, points);
+                	recordCount = reportDao.runReportNoSQL(reportInstance, points, progress);
             }
         }
         catch (RuntimeException e) {
@@ -179,6 +226,7 @@ public class ReportWorkItem implements WorkItem {
 
             // We are creating an email from the result. Create the content.
             final ReportChartCreator creator = new ReportChartCreator(translations, TimeZone.getDefault());
+            creator.setProgress(progress);
             creator.createContent(host, port, reportInstance, reportDao, inlinePrefix, reportConfig.isIncludeData());
 
             // Create the to list
@@ -242,11 +290,44 @@ public class ReportWorkItem implements WorkItem {
             
             if(reportConfig.isSchedule()){
 	            // Delete the report instance.
-	            reportDao.deleteReportInstance(reportInstance.getId(), user.getId());
+            	deleteInstance = true;
+            	if(!holdInstance)
+            		releaseInstance();
             }
         }
+    }
 
-        LOG.debug("Finished running report with id " + reportConfig.getId() + ", instance id " + reportInstance.getId());
+    /**
+     * Keep the instance of an emailed scheduled report until releaseInstance is called
+     * @param holdInstance
+     */
+    void setHoldInstance(boolean holdInstance) {
+        this.holdInstance = holdInstance;
+    }
+
+    /**
+     * Delete the instance of an emailed scheduled report that was held
+     */
+    void releaseInstance() {
+        if (deleteInstance) {
+            deleteInstance = false;
+            reportDao.deleteReportInstance(reportInstance.getId(), user.getId());
+        }
+    }
+
+    /**
+     * Reports with the same key copy the same values for the points they have in common
+     * @return the key, or null if this report can't share its data pass
+     */
+    String getShareKey() {
+        if (reportInstance.isReferenceData() || Common.databaseProxy.getNoSQLProxy() != null
+                || reportInstance.isFromInception() || reportInstance.isToNow())
+            return null;
+        return reportInstance.getReportStartTime() + "-" + reportInstance.getReportEndTime();
+    }
+
+    ReportInstance getReportInstance() {
+        return reportInstance;
     }
 
     private void addImage(EmailContent emailContent, String imagePath) {
@@ -30,6 +30,7 @@ import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.module.ModuleRegistry;
 import com.serotonin.m2m2.reports.ReportDao;
 import com.serotonin.m2m2.reports.ReportPermissionDefinition;
+import com.serotonin.m2m2.reports.ReportProgress;
 import com.serotonin.m2m2.reports.ReportPurgeDefinition;
 import com.serotonin.m2m2.reports.vo.ReportInstance;
 import com.serotonin.m2m2.reports.vo.ReportPointVO;
@@ -119,7 +120,7 @@ public class ReportsDwr extends ModuleDwr {
 
 	@DwrPermission(custom = ReportPermissionDefinition.PERMISSION)
     public ProcessResult saveReport(int id, String name, String xid, List<ReportPointVO> points, String template, int includeEvents,
-            boolean includeUserComments, int dateRangeType, int relativeDateType, int previousPeriodCount,
+            boolean includeUserComments, boolean referenceData, int dateRangeType, int relativeDateType, int previousPeriodCount,
             int previousPeriodType, int pastPeriodCount, int pastPeriodType, boolean fromNone, int fromYear,
             int fromMonth, int fromDay, int fromHour, int fromMinute, boolean toNone, int toYear, int toMonth,
             int toDay, int toHour, int toMinute, boolean schedule, int schedulePeriod, int runDelayMinutes,
@@ -182,6 +183,7 @@ public class ReportsDwr extends ModuleDwr {
         report.setTemplate(template);
         report.setIncludeEvents(includeEvents);
         report.setIncludeUserComments(includeUserComments);
+        report.setReferenceData(referenceData);
         report.setDateRangeType(dateRangeType);
         report.setRelativeDateType(relativeDateType);
         report.setPreviousPeriodCount(previousPeriodCount);
@@ -271,7 +273,7 @@ public class ReportsDwr extends ModuleDwr {
     
 	@DwrPermission(custom = ReportPermissionDefinition.PERMISSION)
     public ProcessResult runReport(String xid, String name, List<ReportPointVO> points, String template, int includeEvents,
-            boolean includeUserComments, int dateRangeType, int relativeDateType, int previousPeriodCount,
+            boolean includeUserComments, boolean referenceData, int dateRangeType, int relativeDateType, int previousPeriodCount,
             int previousPeriodType, int pastPeriodCount, int pastPeriodType, boolean fromNone, int fromYear,
             int fromMonth, int fromDay, int fromHour, int fromMinute, boolean toNone, int toYear, int toMonth,
             int toDay, int toHour, int toMinute, boolean email, boolean includeData, boolean zipData,
@@ -291,6 +293,7 @@ public class ReportsDwr extends ModuleDwr {
             report.setTemplate(template);
             report.setIncludeEvents(includeEvents);
             report.setIncludeUserComments(includeUserComments);
+            report.setReferenceData(referenceData);
             report.setDateRangeType(dateRangeType);
             report.setRelativeDateType(relativeDateType);
             report.setPreviousPeriodCount(previousPeriodCount);
@@ -410,6 +413,7 @@ public class ReportsDwr extends ModuleDwr {
         UserDao userDao = UserDao.instance;
         for (ReportInstance i : result){
             i.setTranslations(translations);
+            i.setProgress(ReportProgress.getPercent(i.getId()));
             User reportUser = userDao.getUser(i.getUserId());
             if(reportUser != null)
             	i.setUsername(reportUser.getUsername());
@@ -420,6 +424,20 @@ public class ReportsDwr extends ModuleDwr {
         return result;
     }
 
+    /**
+     * Percent complete of a running report instance
+     * @param instanceId
+     * @return -1 if the instance is not running
+     */
+    @DwrPermission(custom = ReportPermissionDefinition.PERMISSION)
+    public int getReportInstanceProgress(int instanceId) {
+        ReportInstance instance = ReportDao.instance.getReportInstance(instanceId);
+        if (instance == null)
+            return -1;
+        ReportCommon.ensureReportInstancePermission(Common.getUser(), instance);
+        return ReportProgress.getPercent(instanceId);
+    }
+
     @DwrPermission(custom = ReportPermissionDefinition.PERMISSION)
     public void setPreventPurge(int instanceId, boolean value) {
         ReportDao.instance.setReportInstancePreventPurge(instanceId, value, Common.getUser());
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jfree.data.time.TimeSeries;
+import org.junit.Test;
+
+/**
+ * @author Terry Packer
+ *
+ */
+public class NumericPixelDecimatorTest {
+
+	private static final double DELTA = 0.0001;
+
+	@Test
+	public void testFirstMinMaxLast() {
+		//10 columns of 100ms
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(0, 1000, 10, series);
+		decimator.data(0, 5);
+		decimator.data(10, 6);
+		decimator.data(20, 1);
+		decimator.data(30, 3);
+		decimator.data(40, 9);
+		decimator.data(50, 7);
+		decimator.data(60, 4);
+		decimator.done();
+
+		assertSeries(series, 0, 5, 20, 1, 40, 9, 60, 4);
+	}
+
+	@Test
+	public void testMaxBeforeMin() {
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(0, 1000, 10, series);
+		decimator.data(0, 5);
+		decimator.data(10, 9);
+		decimator.data(20, 1);
+		decimator.data(30, 4);
+		decimator.done();
+
+		//Extremes are kept in time order
+		assertSeries(series, 0, 5, 10, 9, 20, 1, 30, 4);
+	}
+
+	@Test
+	public void testAtMostFourPerColumn() {
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(0, 1000, 1, series);
+		for(int i=0; i<1000; i++){
+			if(i == 250)
+				decimator.data(i, -50);
+			else if(i == 700)
+				decimator.data(i, 150);
+			else
+				decimator.data(i, i % 10);
+		}
+		decimator.done();
+
+		assertSeries(series, 0, 0, 250, -50, 700, 150, 999, 9);
+	}
+
+	@Test
+	public void testColumnsAreSeparate() {
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(0, 1000, 10, series);
+		decimator.data(0, 1);
+		decimator.data(50, 2);
+		decimator.data(150, 3);
+		decimator.data(160, 0);
+		decimator.done();
+
+		//The first column's max is its last value, the second's first is its max
+		assertSeries(series, 0, 1, 50, 2, 150, 3, 160, 0);
+	}
+
+	@Test
+	public void testSharedPointsAreAddedOnce() {
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(0, 1000, 10, series);
+		decimator.data(0, 1);
+		decimator.data(10, 5);
+		decimator.data(20, 3);
+		//A column with a single value
+		decimator.data(500, 7);
+		decimator.done();
+
+		assertSeries(series, 0, 1, 10, 5, 20, 3, 500, 7);
+	}
+
+	@Test
+	public void testValuesBeforeStart() {
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(100, 1100, 10, series);
+		decimator.data(50, 2);
+		decimator.data(120, 8);
+		decimator.done();
+
+		//Both fall in the first column
+		assertSeries(series, 50, 2, 120, 8);
+	}
+
+	@Test
+	public void testNoValues() {
+		TimeSeries series = series();
+		NumericPixelDecimator decimator = new NumericPixelDecimator(0, 1000, 10, series);
+		decimator.done();
+		decimator.done();
+		assertEquals(0, series.getItemCount());
+	}
+
+	private TimeSeries series() {
+		return new TimeSeries("test", null, null);
+	}
+
+	/**
+	 * @param series
+	 * @param expected - pairs of time and value
+	 */
+	private void assertSeries(TimeSeries series, double... expected) {
+		assertEquals(expected.length / 2, series.getItemCount());
+		for(int i=0; i<series.getItemCount(); i++){
+			assertEquals((long)expected[i * 2], series.getTimePeriod(i).getFirstMillisecond());
+			assertEquals(expected[i * 2 + 1], series.getValue(i).doubleValue(), DELTA);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Runs the scheduler with the background processing and timer replaced by lists
+ * of the groups that were started and released.
+ *
+ * @author Terry Packer
+ *
+ */
+public class ReportSchedulerTest {
+
+	private final List<String> log = new ArrayList<String>();
+
+	@Test
+	public void testSlots() {
+		TestScheduler scheduler = new TestScheduler(2);
+		for (int i = 0; i < 4; i++)
+			scheduler.submit(new TestReport("r" + i, null), false);
+		assertEquals(2, scheduler.started.size());
+		assertEquals(2, scheduler.getRunning());
+		assertEquals(2, scheduler.getWaiting());
+
+		//Each finished group lets one waiting group start
+		scheduler.started.get(0).execute();
+		assertEquals(3, scheduler.started.size());
+		assertEquals(2, scheduler.getRunning());
+		assertEquals(1, scheduler.getWaiting());
+
+		for (int i = 1; i < 4; i++)
+			scheduler.started.get(i).execute();
+		assertEquals(0, scheduler.getRunning());
+		assertEquals(0, scheduler.getWaiting());
+		assertEquals(Arrays.asList("r0", "r1", "r2", "r3"), log);
+	}
+
+	@Test
+	public void testReleaseOrder() {
+		TestScheduler scheduler = new TestScheduler(1);
+		for (int i = 0; i < 4; i++)
+			scheduler.submit(new TestReport("r" + i, null), false);
+
+		//Waiting groups start in the order they were admitted
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i + 1, scheduler.started.size());
+			scheduler.started.get(i).execute();
+		}
+		assertEquals(Arrays.asList("r0", "r1", "r2", "r3"), log);
+		assertEquals(0, scheduler.getRunning());
+	}
+
+	@Test
+	public void testJoinPendingGroup() {
+		TestScheduler scheduler = new TestScheduler(2);
+		scheduler.jitterSeconds = 10;
+		scheduler.submit(new TestReport("a", "range"), true);
+		scheduler.submit(new TestReport("b", "range"), true);
+		scheduler.submit(new TestReport("c", "other"), true);
+		//Run by hand, never joins or waits for a group
+		scheduler.submit(new TestReport("manual", "range"), false);
+
+		assertEquals(2, scheduler.released.size());
+		assertEquals(1, scheduler.started.size());
+		scheduler.started.get(0).execute();
+		assertEquals(Arrays.asList("manual"), log);
+		log.clear();
+
+		ReportGroupWorkItem group = scheduler.released.get(0);
+		scheduler.admit(group);
+		group.execute();
+		assertEquals(Arrays.asList("a shared", "b shared", "a released", "b released"), log);
+	}
+
+	@Test
+	public void testGroupClosesWhenStarted() {
+		TestScheduler scheduler = new TestScheduler(1);
+		scheduler.submit(new TestReport("a", "range"), true);
+		ReportGroupWorkItem first = scheduler.started.get(0);
+		first.execute();
+
+		//Same range after the group has run is a new group
+		scheduler.submit(new TestReport("b", "range"), true);
+		assertEquals(2, scheduler.started.size());
+		assertNotSame(first, scheduler.started.get(1));
+	}
+
+	@Test
+	public void testWaitingGroupCanBeJoined() {
+		TestScheduler scheduler = new TestScheduler(1);
+		scheduler.submit(new TestReport("busy", null), false);
+		scheduler.submit(new TestReport("a", "range"), true);
+		scheduler.submit(new TestReport("b", "range"), true);
+		assertEquals(1, scheduler.getWaiting());
+
+		scheduler.started.get(0).execute();
+		scheduler.started.get(1).execute();
+		assertEquals(Arrays.asList("busy", "a shared", "b shared", "a released", "b released"), log);
+	}
+
+	@Test
+	public void testRejectedWhenAdmitted() {
+		TestScheduler scheduler = new TestScheduler(1);
+		scheduler.submit(new TestReport("a", null), false);
+		scheduler.submit(new TestReport("b", null), false);
+
+		//b is rejected on the thread that finishes a, and finished again by mistake
+		scheduler.reject = true;
+		scheduler.started.get(0).execute();
+		assertEquals(0, scheduler.getRunning());
+		assertEquals(0, scheduler.getWaiting());
+		assertEquals(Arrays.asList("a", "rejected b"), log);
+
+		//The slot is free again
+		scheduler.submit(new TestReport("c", null), false);
+		assertEquals(1, scheduler.getRunning());
+		scheduler.started.get(scheduler.started.size() - 1).execute();
+		assertEquals(0, scheduler.getRunning());
+	}
+
+	@Test
+	public void testFinishedTwice() {
+		TestScheduler scheduler = new TestScheduler(1);
+		scheduler.submit(new TestReport("a", null), false);
+		scheduler.submit(new TestReport("b", null), false);
+		ReportGroupWorkItem first = scheduler.started.get(0);
+		first.execute();
+		scheduler.finished(first);
+
+		//Only b holds a slot
+		assertEquals(1, scheduler.getRunning());
+		assertEquals(2, scheduler.started.size());
+	}
+
+	@Test
+	public void testJitterLimited() {
+		TestScheduler scheduler = new TestScheduler(1);
+		scheduler.jitterSeconds = Integer.MAX_VALUE;
+		for (int i = 0; i < 20; i++)
+			scheduler.submit(new TestReport("r" + i, null), true);
+		for (long delay : scheduler.delays)
+			assertTrue(delay >= 0 && delay < ReportScheduler.MAX_JITTER_SECONDS * 1000L);
+
+		scheduler.jitterSeconds = -5;
+		scheduler.submit(new TestReport("now", null), true);
+		assertEquals(1, scheduler.started.size());
+		assertEquals(20, scheduler.released.size());
+	}
+
+	class TestScheduler extends ReportScheduler {
+		final int maxConcurrent;
+		int jitterSeconds;
+		boolean reject;
+		final List<ReportGroupWorkItem> started = new ArrayList<ReportGroupWorkItem>();
+		final List<ReportGroupWorkItem> released = new ArrayList<ReportGroupWorkItem>();
+		final List<Long> delays = new ArrayList<Long>();
+
+		TestScheduler(int maxConcurrent) {
+			this.maxConcurrent = maxConcurrent;
+		}
+
+		@Override
+		void start(ReportGroupWorkItem group) {
+			//What ReportGroupWorkItem.rejected does, followed by a second finish
+			if (reject) {
+				reject = false;
+				started(group);
+				log.add("rejected " + group.getDescription());
+				finished(group);
+				finished(group);
+				return;
+			}
+			started.add(group);
+		}
+
+		@Override
+		void release(ReportGroupWorkItem group, long delay) {
+			released.add(group);
+			delays.add(delay);
+		}
+
+		@Override
+		int getMaxConcurrent() {
+			return maxConcurrent;
+		}
+
+		@Override
+		int getJitterSeconds() {
+			return jitterSeconds;
+		}
+	}
+
+	class TestReport extends ReportWorkItem {
+		final String name;
+		final String key;
+
+		TestReport(String name, String key) {
+			super("localhost", 8080);
+			this.name = name;
+			this.key = key;
+		}
+
+		@Override
+		String getShareKey() {
+			return key;
+		}
+
+		@Override
+		public void execute() {
+			log.add(name);
+		}
+
+		@Override
+		void run(Map<String, Integer> shared) {
+			log.add(name + " shared");
+		}
+
+		@Override
+		void setHoldInstance(boolean holdInstance) {
+		}
+
+		@Override
+		public String getDescription() {
+			return name;
+		}
+
+		@Override
+		void releaseInstance() {
+			log.add(name + " released");
+		}
+	}
+}
@@ -26,6 +26,7 @@ create table reportInstances (
   runEndTime bigint,
   recordCount int,
   preventPurge char(1),
+  referenceData char(1),
   mapping blob
 );
 alter table reportInstances add constraint reportInstancesPk primary key (id);
@@ -103,3 +104,12 @@ create table reportInstanceUserComments (
 );
 alter table reportInstanceUserComments add constraint reportInstanceUserCommentsFk1 foreign key (reportInstanceId)
   references reportInstances(id) on delete cascade;
+
+create table reportInstanceSnapshots (
+  reportInstancePointId int not null,
+  chunk int not null,
+  data blob not null
+);
+alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId)
+  references reportInstancePoints(id) on delete cascade;
+alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsPk primary key (reportInstancePointId, chunk);
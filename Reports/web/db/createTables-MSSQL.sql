@@ -30,6 +30,7 @@ create table reportInstances (
   runEndTime bigint,
   recordCount int,
   preventPurge char(1),
+  referenceData char(1),
   primary key (id),
   mapping blob
 );
@@ -107,4 +108,11 @@ create table reportInstanceUserComments (
 alter table reportInstanceUserComments add constraint reportInstanceUserCommentsFk1 foreign key (reportInstanceId)
   references reportInstances(id) on delete cascade;
 
-  
+create table reportInstanceSnapshots (
+  reportInstancePointId int not null,
+  chunk int not null,
+  data image not null,
+  primary key (reportInstancePointId, chunk)
+);
+alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId)
+  references reportInstancePoints(id) on delete cascade;
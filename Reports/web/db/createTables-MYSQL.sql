@@ -26,6 +26,7 @@ create table reportInstances (
   runEndTime bigint,
   recordCount int,
   preventPurge char(1),
+  referenceData char(1),
   primary key (id),
   mapping blob
 ) engine=InnoDB;
@@ -102,3 +103,12 @@ create table reportInstanceUserComments (
 ) engine=InnoDB;
 alter table reportInstanceUserComments add constraint reportInstanceUserCommentsFk1 foreign key (reportInstanceId)
   references reportInstances(id) on delete cascade;
+
+create table reportInstanceSnapshots (
+  reportInstancePointId int not null,
+  chunk int not null,
+  data longblob not null,
+  primary key (reportInstancePointId, chunk)
+) engine=InnoDB;
+alter table reportInstanceSnapshots add constraint reportInstanceSnapshotsFk1 foreign key (reportInstancePointId)
+  references reportInstancePoints(id) on delete cascade;
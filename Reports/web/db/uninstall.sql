@@ -2,6 +2,7 @@
 --    Copyright (C) 2014 Infinite Automation Systems Inc. All rights reserved.
 --    @author Matthew Lohbihler
 --
+drop table reportInstanceSnapshots;
 drop table reportInstanceUserComments;
 drop table reportInstanceEvents;
 drop table reportInstanceDataAnnotations;
@@ -116,6 +116,7 @@
         $set("template", report.template);
         $set("includeEvents", report.includeEvents);
         $set("includeUserComments", report.includeUserComments);
+        $set("referenceData", report.referenceData);
         $set("dateRangeType", report.dateRangeType);
         $set("relativeType", report.relativeDateType);
         $set("prevPeriodCount", report.previousPeriodCount);
@@ -296,6 +297,7 @@
         writeReportPointsArray();
     }
     
+    var reportInstancesTimeout;
     function updateReportInstancesList(instanceArray) {
         stopImageFader("reportInstancesRefreshImg");
         dwr.util.removeAllRows("reportInstancesList");
@@ -303,6 +305,16 @@
             show("noReportInstances");
         else {
             hide("noReportInstances");
+            
+            // Keep the progress of running reports up to date
+            clearTimeout(reportInstancesTimeout);
+            for (var i=0; i<instanceArray.length; i++) {
+                if (instanceArray[i].progress != -1) {
+                    reportInstancesTimeout = setTimeout(refreshReportInstanceList, 2000);
+                    break;
+                }
+            }
+            
             dwr.util.addRows("reportInstancesList", instanceArray,
                 [
                     function(ri) { return ri.name; },
@@ -480,7 +492,7 @@
     
     function saveReport() {
         ReportsDwr.saveReport(selectedReport.id, $get("name"), $get("xid"), getReportPointIdsArray(), $get("template"), $get("includeEvents"),
-                $get("includeUserComments"), $get("dateRangeType"), $get("relativeType"), $get("prevPeriodCount"),
+                $get("includeUserComments"), $get("referenceData"), $get("dateRangeType"), $get("relativeType"), $get("prevPeriodCount"),
                 $get("prevPeriodType"), $get("pastPeriodCount"), $get("pastPeriodType"), $get("fromNone"),
                 $get("fromYear"), $get("fromMonth"), $get("fromDay"), $get("fromHour"), $get("fromMinute"),
                 $get("toNone"), $get("toYear"), $get("toMonth"), $get("toDay"), $get("toHour"), $get("toMinute"),
@@ -551,7 +563,7 @@
             return;
         
         ReportsDwr.runReport($get("xid"), $get("name"), getReportPointIdsArray(), $get("template"), $get("includeEvents"),
-                $get("includeUserComments"), $get("dateRangeType"), $get("relativeType"), $get("prevPeriodCount"),
+                $get("includeUserComments"), $get("referenceData"), $get("dateRangeType"), $get("relativeType"), $get("prevPeriodCount"),
                 $get("prevPeriodType"), $get("pastPeriodCount"), $get("pastPeriodType"), $get("fromNone"),
                 $get("fromYear"), $get("fromMonth"), $get("fromDay"), $get("fromHour"), $get("fromMinute"),
                 $get("toNone"), $get("toYear"), $get("toMonth"), $get("toDay"), $get("toHour"), $get("toMinute"),
@@ -731,6 +743,13 @@
 								id="includeUserComments" /></td>
 						</tr>
 
+						<tr>
+							<td class="formLabelRequired"><fmt:message
+									key="reports.referenceData" /></td>
+							<td class="formField"><input type="checkbox"
+								id="referenceData" /></td>
+						</tr>
+
 						<tr>
 							<td class="formLabelRequired"><fmt:message
 									key="reports.dateRange" /></td>
@@ -1,10 +1,13 @@
 package com.infiniteautomation.serial.rt;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,7 +38,6 @@ import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.rt.dataSource.EventDataSource;
 import com.serotonin.m2m2.util.timeout.TimeoutClient;
 import com.serotonin.m2m2.util.timeout.TimeoutTask;
-import com.serotonin.util.queue.ByteQueue;
 
 public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> implements SerialPortProxyEventListener{
 	private final Log LOG = LogFactory.getLog(SerialDataSourceRT.class);
@@ -47,14 +49,63 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     private static final String HEX_REGEX = "^[0-9A-Fa-f]*$";
     
 	private SerialPortProxy port; //Serial Communication Port
-	private ByteQueue buffer; //Max size is Max Message Size
+	private final SerialMessageBuffer buffer; //Max size is Max Message Size
 	private TimeoutTask timeoutTask; //Task to retrieve buffer contents after timeout
 	
 	private RollingIOLog ioLog;
 	
+	private String terminator; //Terminator the bytes were computed from
+	private byte[] terminatorBytes;
+	
+	private final Pattern messagePattern; //Compiled once, run once per message
+	private final Map<String, List<DataPointRT>> pointsByIdentifier; //Guarded by pointListChangeLock
+	
 	public SerialDataSourceRT(SerialDataSourceVO vo) {
 		super(vo);
-		buffer = new ByteQueue(vo.getMaxMessageSize());
+		buffer = new SerialMessageBuffer(vo.getMaxMessageSize());
+		messagePattern = vo.getMessageRegex() == null ? null : Pattern.compile(vo.getMessageRegex());
+		pointsByIdentifier = new HashMap<String, List<DataPointRT>>();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.dataSource.EventDataSource#addDataPoint(com.serotonin.m2m2.rt.dataImage.DataPointRT)
+	 */
+	@Override
+	public void addDataPoint(DataPointRT dataPoint) {
+		synchronized(pointListChangeLock){
+			super.addDataPoint(dataPoint);
+			//The identifier may have changed if this is an edited point
+			removeFromIdentifierMap(dataPoint);
+			SerialPointLocatorRT pl = dataPoint.getPointLocator();
+			String identifier = pl.getVo().getPointIdentifier();
+			List<DataPointRT> points = pointsByIdentifier.get(identifier);
+			if(points == null){
+				points = new ArrayList<DataPointRT>(1);
+				pointsByIdentifier.put(identifier, points);
+			}
+			points.add(dataPoint);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.serotonin.m2m2.rt.dataSource.EventDataSource#removeDataPoint(com.serotonin.m2m2.rt.dataImage.DataPointRT)
+	 */
+	@Override
+	public void removeDataPoint(DataPointRT dataPoint) {
+		synchronized(pointListChangeLock){
+			super.removeDataPoint(dataPoint);
+			removeFromIdentifierMap(dataPoint);
+		}
+	}
+	
+	private void removeFromIdentifierMap(DataPointRT dataPoint){
+		Iterator<List<DataPointRT>> it = pointsByIdentifier.values().iterator();
+		while(it.hasNext()){
+			List<DataPointRT> points = it.next();
+			points.remove(dataPoint);
+			if(points.isEmpty())
+				it.remove();
+		}
 	}
 
 
@@ -246,21 +297,17 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
 				//Read the data in from the port
 				//Don't read during timeout events as there could be no data and this would block till there is
 				if(!(evt instanceof TimeoutSerialEvent)){
-					InputStream in = this.port.getInputStream();
-		            int data;
-		            //Read in all the data we can from the InputStream
+		            //Read in all the data we can from the InputStream in bulk
 		            // this may not be the full message, or may read multiple messages
-		            while (( data = in.read()) > -1 ){
-		            	if(buffer.size() >= this.vo.getMaxMessageSize()){
-		            		buffer.popAll();
-		    				raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", "Max message size reached!"));
-		    				return; //Give up
-		            	}
-		            	buffer.push(data);
-		            }
-		            //Log our buffer contents 
-	            	byte[] logMsg = buffer.peekAll();
-	            	if(this.vo.isLogIO()) {
+					int read = buffer.read(this.port.getInputStream());
+	            	if(read < 0){
+	            		buffer.clear();
+	    				raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", "Max message size reached!"));
+	    				return; //Give up
+	            	}
+		            //Log what we just read
+	            	if(this.vo.isLogIO() && read > 0) {
+	            		byte[] logMsg = buffer.peekLast(read);
 	            		if(this.vo.isHex())
 	            			this.ioLog.log(true, logMsg);
 	            		else
@@ -280,96 +327,29 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
 	            	//If timeout then process the buffer
 	            	//If serial event then read input and process buffer
 	            	
-	                String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-	                //DS Information
-	                int pointIdentifierIndex = vo.getPointIdentifierIndex();
-	            	
-	            	//Create a String so we can use Regex and matching
-	                String msg = null;
-        			if(this.vo.isHex()){
-        				msg = convertFromHex(buffer.peekAll());
-            		}else{
-            			msg = new String(buffer.peekAll(), Common.UTF8_CS);
-            		}
-            		
-            		//Now we have a string that contains the entire contents of the buffer,
-            		// split on terminator, keep it on the end of the message and process any full messages
-            		// and pop them from the buffer
-            		String[] messages = splitMessages(msg, this.vo.getMessageTerminator());
-            		for(String message : messages) {
-            			//Does our message contain the terminator?
-            			//It should be impossible to have a non-terminated message
-            			// that is before a message with a terminator in the buffer
-            			// so it is assumed here that popping from the buffer will 
-            			// not cause any issues. As the only data left in the buffer will 
-            			// potentially be one incomplete message.
-            			if(canProcessTerminatedMessage(message, this.vo.getMessageTerminator())){
-            				//Pop off this message
-                   			this.buffer.pop(message.length());
-                			if(LOG.isDebugEnabled())
-                    			LOG.debug("Matching will use String: " + message);
-                			final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-                			synchronized (pointListChangeLock) {
-	                			for(final DataPointRT dp: this.dataPoints){
-	                        		SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-	                        		MatchCallback callback = new MatchCallback(){
-	                        			
-										@Override
-										public void onMatch(String pointIdentifier, PointValueTime value) {
-											if(!updatePointValue(value, dp)){
-												matcherFailed.set(true);
-									        	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-											}
-										}
-	
-										@Override
-										public void pointPatternMismatch(String message, String messageRegex) {
-											//Ignore as this just isn't a message we care about
-										}
-										
-										@Override
-										public void messagePatternMismatch(String message, String messageRegex) { 
-							            	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-											matcherFailed.set(true);
-										}
-	
-										@Override
-										public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-											//Don't Care
-										}
-										
-										@Override
-										public void matchGeneralFailure(Exception e) {
-							            	raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-											matcherFailed.set(true);
-										}
-	                        		};
-	                        		
-	                        		try{
-	                        			matchPointValue(msg, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-	                        		}catch(Exception e){
-	                        			callback.matchGeneralFailure(e);
-	                        		}
-	                			}
-                			}
-                			
-                			//Did we have a failure?
-                			//If no failures...
-                			if(!matcherFailed.get())
-                				returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-                			returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());	
-            			}
-            			
-            			if(evt instanceof TimeoutSerialEvent){
-            				//Clear the buffer
-            				this.buffer.popAll();
-            			}else{
-            				//Check to see if we have remaining data, if not cancel timeout
-            				if(this.buffer.size() == 0)
-            					this.timeoutTask.cancel();
-            			}
+            		//Scan the buffer for terminators in place and only
+	            	// decode the complete messages, the only data left in the buffer 
+	            	// will potentially be one incomplete message.
+	            	byte[] terminator = getTerminatorBytes();
+	            	byte[] frame;
+	            	while((frame = buffer.nextFrame(terminator)) != null){
+	            		//Create a String so we can use Regex and matching
+	            		String message = this.vo.isHex() ? convertFromHex(frame) : new String(frame, Common.UTF8_CS);
+            			//Did we have a failure?
+            			//If no failures...
+            			if(dispatchMessage(message))
+            				returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
+            			returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+	            	}
             			
-            		}
+        			if(evt instanceof TimeoutSerialEvent){
+        				//Clear the buffer
+        				this.buffer.clear();
+        			}else{
+        				//Check to see if we have remaining data, if not cancel timeout
+        				if(this.buffer.size() == 0 && this.timeoutTask != null)
+        					this.timeoutTask.cancel();
+        			}
 	            	return;
 	            }else{
 	            	//No Terminator case
@@ -383,76 +363,82 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
 		        			msg = new String(buffer.popAll(), Common.UTF8_CS);
 		        		}
 		            	//Just do a match on the Entire Message because we are not using Terminator
-		            	//String messageRegex = ".*"; //Match everything
-		            	//int pointIdentifierIndex = 0; //Whole message
-		            	String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-		                //DS Information
-		                int pointIdentifierIndex = vo.getPointIdentifierIndex();
-		            	
-		            	if(LOG.isDebugEnabled())
-                			LOG.debug("Matching will use String: " + msg);
-            			final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-            			synchronized (pointListChangeLock) {
-	            			for(final DataPointRT dp: this.dataPoints){
-	                    		SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-	                    		MatchCallback callback = new MatchCallback(){
-	                    			
-									@Override
-									public void onMatch(String pointIdentifier, PointValueTime pvt) {
-										if(!updatePointValue(pvt, dp)){
-											matcherFailed.set(true);
-								        	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-										}
-										buffer.popAll(); //Ensure we clear out the buffer...
-									}
-	
-									@Override
-									public void pointPatternMismatch(String message, String messageRegex) {
-										//Ignore as this just isn't a message we care about
-									}
-									
-									@Override
-									public void messagePatternMismatch(String message, String messageRegex) { 
-						            	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-										matcherFailed.set(true);
-									}
-									
-									@Override
-									public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-										//Don't Care
-									}
-
-									@Override
-									public void matchGeneralFailure(Exception e) {
-						            	raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-										matcherFailed.set(true);
-									}
-	                    			
-	                    		};
-	                    		try{
-	                    			matchPointValue(msg, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-	                    		}catch(Exception e){
-	                    			callback.matchGeneralFailure(e);
-	                    		}
-	            			}
-            			}
-            			
             			//Did we have a failure?
             			//If no failures...
-            			if(!matcherFailed.get())
+            			if(dispatchMessage(msg))
             				returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
             			returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
 	            	}
 	            }
 			}catch(Exception e){
 				LOG.error(e.getMessage(),e);
-	        	this.buffer.popAll(); //Ensure we clear out the buffer...
+	        	this.buffer.clear(); //Ensure we clear out the buffer...
 				raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed",e.getMessage()));
 				
 			}
 		}//End synch
 	}
 	
+	/**
+	 * Terminator as it appears on the wire
+	 * @return
+	 * @throws ConvertHexException
+	 */
+	private byte[] getTerminatorBytes() throws ConvertHexException{
+		String current = vo.getMessageTerminator();
+		if(terminatorBytes == null || !current.equals(terminator)){
+			terminatorBytes = vo.isHex() ? convertToHex(current) : current.getBytes(Common.UTF8_CS);
+			terminator = current;
+		}
+		return terminatorBytes;
+	}
+	
+	/**
+	 * Run the message regex once and hand the message to the points with 
+	 * the identifier it contains, the caller must hold the buffer lock.
+	 * 
+	 * @param msg
+	 * @return true if no failures occurred
+	 */
+	private boolean dispatchMessage(String msg){
+		if(LOG.isDebugEnabled())
+			LOG.debug("Matching will use String: " + msg);
+		
+		if(messagePattern == null)
+			return true;
+		Matcher messageMatcher = messagePattern.matcher(msg);
+		if(!messageMatcher.find())
+			return true; //Not a message we care about
+		
+		String pointIdentifier;
+		try{
+			pointIdentifier = messageMatcher.group(vo.getPointIdentifierIndex());
+		}catch(Exception e){
+			return true; //Don't Care
+		}
+		if(LOG.isDebugEnabled())
+			LOG.debug("Message matched regex: " + vo.getMessageRegex() + " with identifier " + pointIdentifier);
+		
+		boolean success = true;
+		synchronized (pointListChangeLock) {
+			List<DataPointRT> points = pointsByIdentifier.get(pointIdentifier);
+			if(points == null)
+				return true;
+			for(DataPointRT dp : points){
+				PointMatchCallback callback = new PointMatchCallback(dp);
+				SerialPointLocatorRT pl = dp.getPointLocator();
+				try{
+					matchPointValue(msg, pointIdentifier, pl.getPattern(), pl.getVo(), vo.isHex(), LOG, callback);
+				}catch(Exception e){
+					callback.matchGeneralFailure(e);
+				}
+				if(callback.failed)
+					success = false;
+			}
+		}
+		return success;
+	}
+	
 	/**
 	 * Convert to a point value time or NULL if not possible
 	 * @param value
@@ -620,25 +606,84 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
         	}
     		
         	if(plVo.getPointIdentifier().equals(pointIdentifier)){
-        		if(log.isDebugEnabled())
-            		log.debug("Point Identified: " + pointIdentifier);
-        		Pattern pointValuePattern = Pattern.compile(plVo.getValueRegex());
-        		Matcher pointValueMatcher = pointValuePattern.matcher(msg); //Use the index from the above message
-        		if(pointValueMatcher.find()){
-        			String value = pointValueMatcher.group(plVo.getValueIndex());
-        			if(log.isDebugEnabled()){
-        				log.debug("Point Value matched regex: " + plVo.getValueRegex() + " and extracted value " + value);
-        			}
-        			PointValueTime pvt = convertToPointValue(value, plVo.getDataTypeId(), isHex);
-        			callback.onMatch(pointIdentifier, pvt);
-        		} else {
-        			callback.pointPatternMismatch(msg, plVo.getValueRegex());
-        		}
+        		matchPointValue(msg, pointIdentifier, Pattern.compile(plVo.getValueRegex()), plVo, isHex, log, callback);
         	}else{
         		callback.pointNotIdentified(msg, messageRegex, pointIdentifierIndex);
         	}
         }
     }
+    
+    /**
+     * Extract the value for an already identified point
+     * @param msg
+     * @param pointIdentifier
+     * @param pointValuePattern - compiled value regex of the point
+     * @param plVo
+     * @param isHex
+     * @param log
+     * @param callback
+     * @throws Exception
+     */
+    public static void matchPointValue(String msg, String pointIdentifier, Pattern pointValuePattern, SerialPointLocatorVO plVo, boolean isHex, Log log, MatchCallback callback) throws Exception{
+		if(log.isDebugEnabled())
+    		log.debug("Point Identified: " + pointIdentifier);
+		Matcher pointValueMatcher = pointValuePattern.matcher(msg); //Use the index from the above message
+		if(pointValueMatcher.find()){
+			String value = pointValueMatcher.group(plVo.getValueIndex());
+			if(log.isDebugEnabled()){
+				log.debug("Point Value matched regex: " + plVo.getValueRegex() + " and extracted value " + value);
+			}
+			PointValueTime pvt = convertToPointValue(value, plVo.getDataTypeId(), isHex);
+			callback.onMatch(pointIdentifier, pvt);
+		} else {
+			callback.pointPatternMismatch(msg, plVo.getValueRegex());
+		}
+    }
+    
+    /**
+     * Callback to update a point from a received message
+     * @author Terry Packer
+     *
+     */
+    class PointMatchCallback implements MatchCallback{
+    	
+    	private final DataPointRT dp;
+    	boolean failed;
+    	
+    	public PointMatchCallback(DataPointRT dp){
+    		this.dp = dp;
+    	}
+    	
+		@Override
+		public void onMatch(String pointIdentifier, PointValueTime value) {
+			if(!updatePointValue(value, dp)){
+				failed = true;
+	        	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
+			}
+		}
+
+		@Override
+		public void pointPatternMismatch(String message, String messageRegex) {
+			//Ignore as this just isn't a message we care about
+		}
+		
+		@Override
+		public void messagePatternMismatch(String message, String messageRegex) { 
+        	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
+			failed = true;
+		}
+
+		@Override
+		public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+			//Don't Care
+		}
+		
+		@Override
+		public void matchGeneralFailure(Exception e) {
+        	raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
+			failed = true;
+		}
+    }
 
     /**
      * Class for timeout generated events
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.infiniteautomation.serial.rt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable receive buffer for a serial port.  Data is read from the port in bulk
+ * directly into the backing array and complete frames are found by scanning for
+ * the terminator bytes in place, so only finished messages are ever copied out.
+ *
+ * The buffer is kept in write mode between calls: bytes [0, position) are unread.
+ * Frames are consumed from the front and the remainder is compacted once at the
+ * end of processing.
+ *
+ * Not thread safe, the data source synchronizes on it.
+ *
+ * @author Terry Packer
+ */
+public class SerialMessageBuffer {
+
+	private final ByteBuffer buffer;
+	//Start of the first unconsumed frame
+	private int frameStart;
+	//Where to continue looking for a terminator, avoids re-scanning partial frames
+	private int scanStart;
+
+	/**
+	 * @param maxMessageSize - capacity of the buffer
+	 */
+	public SerialMessageBuffer(int maxMessageSize){
+		this.buffer = ByteBuffer.allocate(maxMessageSize);
+	}
+
+	/**
+	 * Read everything available from the stream
+	 * @param in
+	 * @return number of bytes read or -1 if the buffer filled up before the stream was drained
+	 * @throws IOException
+	 */
+	public int read(InputStream in) throws IOException{
+		compact();
+		int total = 0;
+		while(true){
+			if(!buffer.hasRemaining()){
+				if(in.available() > 0)
+					return -1;
+				break;
+			}
+			int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if(read <= 0)
+				break;
+			buffer.position(buffer.position() + read);
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Copy of the last count bytes read, for IO logging
+	 * @param count
+	 * @return
+	 */
+	public byte[] peekLast(int count){
+		int end = buffer.position();
+		return Arrays.copyOfRange(buffer.array(), end - count, end);
+	}
+
+	/**
+	 * Remove the next complete frame, including its terminator
+	 * @param terminator
+	 * @return frame or null if there is no complete frame
+	 */
+	public byte[] nextFrame(byte[] terminator){
+		if(terminator.length == 0)
+			return null;
+		byte[] data = buffer.array();
+		int end = buffer.position();
+		int last = end - terminator.length;
+		int i = Math.max(scanStart, frameStart);
+		for(; i<=last; i++){
+			if(data[i] != terminator[0])
+				continue;
+			int t = 1;
+			while(t < terminator.length && data[i + t] == terminator[t])
+				t++;
+			if(t == terminator.length){
+				int frameEnd = i + terminator.length;
+				byte[] frame = Arrays.copyOfRange(data, frameStart, frameEnd);
+				frameStart = frameEnd;
+				scanStart = frameEnd;
+				return frame;
+			}
+		}
+		//A terminator could still start in the last few bytes
+		scanStart = Math.max(frameStart, i);
+		return null;
+	}
+
+	/**
+	 * Remove all unconsumed data
+	 * @return
+	 */
+	public byte[] popAll(){
+		byte[] all = Arrays.copyOfRange(buffer.array(), frameStart, buffer.position());
+		clear();
+		return all;
+	}
+
+	public void clear(){
+		buffer.clear();
+		frameStart = 0;
+		scanStart = 0;
+	}
+
+	/**
+	 * @return number of unconsumed bytes
+	 */
+	public int size(){
+		return buffer.position() - frameStart;
+	}
+
+	/**
+	 * Move any partial frame to the front of the buffer
+	 */
+	private void compact(){
+		if(frameStart == 0)
+			return;
+		buffer.flip();
+		buffer.position(frameStart);
+		buffer.compact();
+		scanStart -= frameStart;
+		frameStart = 0;
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2017 Infinite Automation Software. All rights reserved.
+ *
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * @author Terry Packer
+ *
+ */
+public class SerialMessageBufferTest {
+
+	private static final byte[] TERMINATOR = "\r\n".getBytes();
+
+	@Test
+	public void testFramesAcrossReads() throws IOException{
+		SerialMessageBuffer buffer = new SerialMessageBuffer(64);
+		assertEquals(8, buffer.read(new ByteArrayInputStream("one\r\ntw\r".getBytes())));
+		assertEquals("one\r\n", new String(buffer.nextFrame(TERMINATOR)));
+		assertNull(buffer.nextFrame(TERMINATOR));
+		assertEquals(3, buffer.size());
+
+		//Terminator split over two reads
+		buffer.read(new ByteArrayInputStream("\nthree\r\nfo".getBytes()));
+		assertEquals("tw\r\n", new String(buffer.nextFrame(TERMINATOR)));
+		assertEquals("three\r\n", new String(buffer.nextFrame(TERMINATOR)));
+		assertNull(buffer.nextFrame(TERMINATOR));
+		assertEquals("fo", new String(buffer.popAll()));
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void testOverflow() throws IOException{
+		SerialMessageBuffer buffer = new SerialMessageBuffer(4);
+		assertEquals(-1, buffer.read(new ByteArrayInputStream("abcdef".getBytes())));
+		buffer.clear();
+		assertEquals(4, buffer.read(new ByteArrayInputStream("abcd".getBytes())));
+	}
+}